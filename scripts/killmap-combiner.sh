@@ -43,7 +43,8 @@ KILLMAP_FULL="$3"
 [ -f "$KILLMAP_BASE" ] || die "$KILLMAP_BASE does not exist"
 [ -f "$KILLMAP_EXTENSION" ] || die "$KILLMAP_EXTENSION does not exist"
 
-FIRST_EXTENSION_TEST_AND_MUTANT=$(zcat "$KILLMAP_EXTENSION" | head -n 1 | cut -d , -f 1,2)
+# (Skip dictionary entries, printed with --dictionary-output: they are not rows.)
+FIRST_EXTENSION_TEST_AND_MUTANT=$(zcat "$KILLMAP_EXTENSION" | grep -v '^!' | head -n 1 | cut -d , -f 1,2)
 (zcat "$KILLMAP_BASE" | sed -e "/^$FIRST_EXTENSION_TEST_AND_MUTANT,/q" | head -n -1; zcat "$KILLMAP_EXTENSION") | gzip > "$KILLMAP_FULL"
 
 # EOF
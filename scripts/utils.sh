@@ -149,10 +149,11 @@ d4j_prepare() {
 ##
 # Once in a while, when the matrix-generator runs a test, something gets
 # printed to stdout somehow. This function filters out any lines that
-# don't look like matrix-generator output.
+# don't look like matrix-generator output (rows, or dictionary entries
+# printed with --dictionary-output).
 ##
 filter_dumb_lines_printed_by_tests() {
-  egrep -a '^[a-zA-Z0-9_$.]+#[a-zA-Z0-9_]+,[0-9]+,[0-9]+,'
+  egrep -a '^[a-zA-Z0-9_$.]+#[a-zA-Z0-9_]+,[0-9]+,[0-9]+,|^![0-9]+,'
 }
 
 ##
@@ -0,0 +1,366 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import killmap.Main;
+import killmap.runners.WorkerReaper;
+
+/**
+ * Runs killmap end to end on a SyntheticProject, so that its throughput can be measured without a
+ * Defects4J checkout or Major, and reports:
+ *   - how many test-runs it did per second;
+ *   - how many workers it started (so, how many times a worker had to be replaced);
+ *   - the median and 99th-percentile time between consecutive rows of output, i.e. how long each
+ *     work order took, all overheads included;
+ *   - how much tests' runtimes vary from one run to the next: the coefficient of variation of each
+ *     test's passing runs (which do the same work each time), averaged over the tests, and how much
+ *     longer than its test's median the slowest run took. Timeouts are derived from runtimes, so
+ *     the less they vary, the less padding they need;
+ *   - the peak resident memory of killmap alone, and of killmap and its workers together (sampled
+ *     from /proc, so only on Linux).
+ *
+ * Run as
+ *   java -cp killmap.jar:bin-bench killmap.benchmarks.EndToEndBenchmark [--tests N] [--mutants N]
+ *       [--mutants-per-test N] [--runtime fixed:MS|uniform:MIN:MAX|exponential:MEAN]
+ *       [--kill-rate F] [--crash-rate F] [--loop-rate F] [--seed S] [--work deadline|fixed]
+ *       [--background-load THREADS] [--dir DIR] [-- KILLMAP-ARGUMENTS...]
+ * (or `ant end-to-end-benchmark -Dend-to-end.args="..."`). Everything is written to DIR (by
+ * default a new temporary directory): the project, killmap's output (matrix.csv) and its log
+ * (killmap.log).
+ * Killmap is run with --run-mutants-unkilled-by-failing-tests, so that every mutant is run against
+ * every test that covers it, plus any KILLMAP-ARGUMENTS.
+ *
+ * To see what pinning (--worker-cpus and --coordinator-cpus) does for runtime variance, give the
+ * tests fixed work (see SyntheticProject.fixedWork), keep some other CPUs busy with
+ * --background-load, and compare runs with and without pinning, e.g. on a 4-CPU machine:
+ *   taskset -c 0-3 java ... EndToEndBenchmark --runtime fixed:50 --work fixed --background-load 4
+ *   taskset -c 2-3 java ... EndToEndBenchmark --runtime fixed:50 --work fixed --background-load 4
+ *       -- --coordinator-cpus 0 --worker-cpus 1
+ * (In the second, the load stays on CPUs 2-3, where the benchmark runs, and killmap moves itself
+ * and its workers off them.)
+ */
+public class EndToEndBenchmark {
+
+  private static final long RSS_SAMPLE_INTERVAL_MILLIS = 100;
+
+  private static final String USAGE =
+      "EndToEndBenchmark [--tests N] [--mutants N] [--mutants-per-test N] [--runtime fixed:MS|uniform:MIN:MAX|exponential:MEAN] [--kill-rate F] [--crash-rate F] [--loop-rate F] [--seed S] [--work deadline|fixed] [--background-load THREADS] [--dir DIR] [-- KILLMAP-ARGUMENTS...]";
+
+  private static long rssKilobytes(long pid) {
+    // Returns 0 if the process has gone (or there's no /proc).
+    try {
+      for (String line : Files.readAllLines(new File("/proc/" + pid + "/status").toPath(),
+          StandardCharsets.UTF_8)) {
+        if (line.startsWith("VmRSS:")) {
+          return Long.parseLong(line.replaceAll("[^0-9]", ""));
+        }
+      }
+    } catch (IOException | NumberFormatException e) {
+      // (fall through)
+    }
+    return 0;
+  }
+
+  private static class RssSampler extends Thread {
+    // Keeps track of the peak RSS of a process, and of it and its descendants together.
+    private final long pid;
+
+    volatile long peakOwnKilobytes = 0;
+
+    volatile long peakTotalKilobytes = 0;
+
+    RssSampler(long pid_) {
+      pid = pid_;
+      setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+      while (!isInterrupted()) {
+        long own = rssKilobytes(pid);
+        long total = own;
+        for (long descendant : WorkerReaper.descendantsFromProc(pid)) {
+          total += rssKilobytes(descendant);
+        }
+        peakOwnKilobytes = Math.max(peakOwnKilobytes, own);
+        peakTotalKilobytes = Math.max(peakTotalKilobytes, total);
+        try {
+          Thread.sleep(RSS_SAMPLE_INTERVAL_MILLIS);
+        } catch (InterruptedException e) {
+          return;
+        }
+      }
+    }
+  }
+
+  private static class LogReader extends Thread {
+    // Copies killmap's stderr to a file, counting the workers it starts.
+    private final BufferedReader in;
+
+    private final File file;
+
+    volatile int nWorkersStarted = 0;
+
+    LogReader(Process process, File file_) {
+      in = new BufferedReader(new InputStreamReader(process.getErrorStream()));
+      file = file_;
+    }
+
+    @Override
+    public void run() {
+      try (PrintStream out = new PrintStream(file)) {
+        String line;
+        while ((line = in.readLine()) != null) {
+          out.println(line);
+          if (line.startsWith("Created worker with pid")) {
+            nWorkersStarted++;
+          }
+        }
+      } catch (IOException e) {
+        System.err.println("[warning: unable to copy killmap's log: " + e + "]");
+      }
+    }
+  }
+
+  private static void startBackgroundLoad(int nThreads) {
+    // Keeps the given number of CPUs busy until this JVM exits, standing in for whatever else
+    // shares the machine (e.g. other killmaps).
+    for (int i = 0; i < nThreads; i++) {
+      Thread thread = new Thread("background-load-" + i) {
+        @Override
+        public void run() {
+          while (true) {
+            SyntheticProject.spin(1000000);
+          }
+        }
+      };
+      thread.setDaemon(true);
+      thread.start();
+    }
+  }
+
+  private static String runtimeSpread(Map<String, List<Long>> runtimesByTest) {
+    // Sums up how much each test's runtimes vary (see the class comment).
+    double totalVariation = 0;
+    double worstRatio = 0;
+    int nTests = 0;
+    for (List<Long> runtimes : runtimesByTest.values()) {
+      if (runtimes.size() < 3) {
+        continue;
+      }
+      double mean = 0;
+      for (long runtime : runtimes) {
+        mean += runtime;
+      }
+      mean /= runtimes.size();
+      double variance = 0;
+      for (long runtime : runtimes) {
+        variance += (runtime - mean) * (runtime - mean);
+      }
+      variance /= runtimes.size() - 1;
+      Collections.sort(runtimes);
+      long median = runtimes.get(runtimes.size() / 2);
+      if (mean == 0 || median == 0) {
+        continue; // (too quick to tell)
+      }
+      totalVariation += Math.sqrt(variance) / mean;
+      worstRatio = Math.max(worstRatio, (double) runtimes.get(runtimes.size() - 1) / median);
+      nTests++;
+    }
+    if (nTests == 0) {
+      return "unknown (no test passed 3 or more times)";
+    }
+    return String.format("coefficient of variation %.1f%% (mean over %d tests), slowest run %.2fx"
+        + " its test's median", 100 * totalVariation / nTests, nTests, worstRatio);
+  }
+
+  private static String percentile(List<Long> sortedNanos, double fraction) {
+    if (sortedNanos.isEmpty()) {
+      return "-";
+    }
+    int index = Math.min(sortedNanos.size() - 1, (int) (fraction * sortedNanos.size()));
+    return String.format("%.1fms", sortedNanos.get(index) / 1e6);
+  }
+
+  public static void main(String... args) throws IOException, InterruptedException {
+    SyntheticProject project = new SyntheticProject();
+    File dir = null;
+    int backgroundLoad = 0;
+    List<String> killmapArguments = new ArrayList<String>();
+    List<String> argv = new ArrayList<String>(Arrays.asList(args));
+    try {
+      while (!argv.isEmpty()) {
+        if (argv.get(0).equals("--")) {
+          killmapArguments.addAll(argv.subList(1, argv.size()));
+          break;
+        }
+        switch (argv.get(0)) {
+          case "--tests":
+            project.nTests = Integer.parseInt(argv.get(1));
+            break;
+          case "--mutants":
+            project.nMutants = Integer.parseInt(argv.get(1));
+            break;
+          case "--mutants-per-test":
+            project.mutantsPerTest = Integer.parseInt(argv.get(1));
+            break;
+          case "--runtime":
+            project.runtime = argv.get(1);
+            break;
+          case "--kill-rate":
+            project.killRate = Double.parseDouble(argv.get(1));
+            break;
+          case "--crash-rate":
+            project.crashRate = Double.parseDouble(argv.get(1));
+            break;
+          case "--loop-rate":
+            project.loopRate = Double.parseDouble(argv.get(1));
+            break;
+          case "--seed":
+            project.seed = Long.parseLong(argv.get(1));
+            break;
+          case "--work":
+            if (!Arrays.asList("deadline", "fixed").contains(argv.get(1))) {
+              System.err.println("usage: " + USAGE);
+              System.exit(1);
+            }
+            project.fixedWork = argv.get(1).equals("fixed");
+            break;
+          case "--background-load":
+            backgroundLoad = Integer.parseInt(argv.get(1));
+            break;
+          case "--dir":
+            dir = new File(argv.get(1));
+            break;
+          default:
+            System.err.println("usage: " + USAGE);
+            System.exit(1);
+        }
+        argv.remove(0);
+        argv.remove(0);
+      }
+    } catch (IndexOutOfBoundsException | NumberFormatException e) {
+      System.err.println("usage: " + USAGE);
+      System.exit(1);
+    }
+    if (dir == null) {
+      dir = Files.createTempDirectory("killmap-synthetic").toFile();
+    }
+
+    try {
+      project.generate(dir);
+    } catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      System.exit(1);
+    }
+    System.out.println("synthetic project: " + project.nTests + " tests, " + project.nMutants
+        + " mutants (" + project.count('F') + " failing tests, " + project.count('C')
+        + " crashing, " + project.count('L') + " looping), in " + dir);
+
+    String java =
+        System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+    List<String> command = new ArrayList<String>(Arrays.asList(java, "-cp",
+        project.classesDir + File.pathSeparator + System.getProperty("java.class.path"),
+        Main.class.getName(), "--mutants-log", project.mutantsLog.getPath(),
+        "--run-mutants-unkilled-by-failing-tests"));
+    command.addAll(killmapArguments);
+    command.addAll(Arrays.asList(project.triggeringTests.getPath(),
+        project.relevantTestClasses.getPath(), project.partialRun.getPath()));
+
+    startBackgroundLoad(backgroundLoad);
+    long start = System.nanoTime();
+    Process killmap = new ProcessBuilder(command).start();
+    killmap.getOutputStream().close();
+    LogReader log = new LogReader(killmap, new File(dir, "killmap.log"));
+    log.start();
+    Long pid = WorkerReaper.pid(killmap);
+    RssSampler rss = pid == null ? null : new RssSampler(pid);
+    if (rss != null) {
+      rss.start();
+    }
+
+    // Each row of the matrix is printed as soon as its test-run is done, so the gaps between rows
+    // are how long each work order took.
+    List<Long> gaps = new ArrayList<Long>();
+    Map<String, Integer> outcomeTypes = new TreeMap<String, Integer>();
+    Map<String, List<Long>> passingRuntimes = new HashMap<String, List<Long>>();
+    long last = start;
+    try (BufferedReader matrix =
+        new BufferedReader(new InputStreamReader(killmap.getInputStream()));
+        PrintStream out = new PrintStream(new File(dir, "matrix.csv"))) {
+      String line;
+      while ((line = matrix.readLine()) != null) {
+        out.println(line);
+        String[] fields = line.split(",", 6); // (test, mutant, timeout, type, runtime, ...)
+        if (fields.length < 5) {
+          continue; // (e.g. a dictionary entry)
+        }
+        long now = System.nanoTime();
+        gaps.add(now - last);
+        last = now;
+        Integer n = outcomeTypes.get(fields[3]);
+        outcomeTypes.put(fields[3], n == null ? 1 : n + 1);
+        if (fields[3].equals("PASS")) {
+          List<Long> runtimes = passingRuntimes.get(fields[0]);
+          if (runtimes == null) {
+            runtimes = new ArrayList<Long>();
+            passingRuntimes.put(fields[0], runtimes);
+          }
+          runtimes.add(Long.parseLong(fields[4]));
+        }
+      }
+    }
+    int exitValue = killmap.waitFor();
+    double seconds = (System.nanoTime() - start) / 1e9;
+    log.join();
+    if (rss != null) {
+      rss.interrupt();
+    }
+
+    Collections.sort(gaps);
+    System.out.println(String.format("test-runs:       %d in %.1fs (%.1f/s)", gaps.size(),
+        seconds, gaps.size() / seconds));
+    System.out.println("outcomes:        " + outcomeTypes);
+    System.out.println("workers started: " + log.nWorkersStarted + " ("
+        + Math.max(0, log.nWorkersStarted - 1) + " replacements)");
+    System.out.println("per work order:  p50 " + percentile(gaps, 0.5) + ", p99 "
+        + percentile(gaps, 0.99) + ", max " + percentile(gaps, 1));
+    System.out.println("runtime spread:  " + runtimeSpread(passingRuntimes));
+    System.out.println("peak RSS:        " + (rss == null || rss.peakOwnKilobytes == 0 ? "unknown"
+        : rss.peakOwnKilobytes / 1024 + "MB (killmap), " + rss.peakTotalKilobytes / 1024
+            + "MB (killmap and workers)"));
+    if (exitValue != 0) {
+      System.err.println("killmap exited with status " + exitValue + "; see " + dir
+          + File.separator + "killmap.log");
+      System.exit(exitValue);
+    }
+  }
+}
@@ -0,0 +1,315 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+/**
+ * A made-up project for killmap to run, standing in for a Defects4J checkout mutated by Major.
+ *
+ * It consists of:
+ *   - a stand-in for Major's major.mutation.Config (__M_NO, reset, COVERED, getCoverageList);
+ *   - test classes (synthetic.SyntheticTest0, ...), each test of which covers a random run of
+ *     consecutive mutants, and keeps the CPU busy for a while (drawn from a runtime distribution);
+ *     except that the first test, the "triggering" one, covers every mutant (so that killmap
+ *     considers every mutant worth running);
+ *   - synthetic.Mutants, which says what each mutant does to the tests that cover it: nothing,
+ *     make them fail (killRate), kill the worker JVM (crashRate), or loop forever, ignoring
+ *     interrupts (loopRate);
+ *   - the mutants.log, triggering-tests.txt, relevant-test-classes.txt and (empty) partial-run.csv
+ *     that killmap needs to run it.
+ *
+ * The same seed gives the same project.
+ *
+ * Tests spin until their runtime is up, so they take as long however busy the machine is; with
+ * fixedWork, they do a fixed amount of computation instead (as much as this machine does in their
+ * runtime, when idle), so that they slow down when they have to share a CPU, as real tests do.
+ */
+public class SyntheticProject {
+
+  private static final int TESTS_PER_CLASS = 10;
+
+  private static final int MAX_LITERAL_LENGTH = 30000; // (class-file constants are limited to 64KB)
+
+  public int nTests = 50;
+
+  public int nMutants = 500;
+
+  public int mutantsPerTest = 20;
+
+  public String runtime = "exponential:5"; // fixed:MS, uniform:MIN:MAX or exponential:MEAN
+
+  public double killRate = 0.3;
+
+  public double crashRate = 0.01;
+
+  public double loopRate = 0.01;
+
+  public long seed = 0;
+
+  public boolean fixedWork = false;
+
+  private long iterationsPerMilli = 0; // (if fixedWork) how many `spin` iterations make a ms
+
+  private static volatile long sink; // (so that `spin` isn't optimized away)
+
+  private char[] behaviours; // by mutant id: 'S'urvive, 'F'ail, 'C'rash or 'L'oop
+
+  public File classesDir;
+
+  public File mutantsLog;
+
+  public File triggeringTests;
+
+  public File relevantTestClasses;
+
+  public File partialRun;
+
+  public int count(char behaviour) {
+    int result = 0;
+    for (int id = 1; id <= nMutants; id++) {
+      result += behaviours[id] == behaviour ? 1 : 0;
+    }
+    return result;
+  }
+
+  public static long spin(long iterations) {
+    // The computation fixedWork tests do (generated into synthetic.Mutants as well).
+    long x = 1;
+    for (long i = 0; i < iterations; i++) {
+      x = x * 6364136223846793005L + 1442695040888963407L;
+    }
+    return x;
+  }
+
+  private static long calibrate() {
+    // Returns how many `spin` iterations this machine does in a millisecond, once it's warmed up.
+    for (int i = 0; i < 20; i++) {
+      sink = spin(1000000);
+    }
+    long best = Long.MAX_VALUE;
+    for (int i = 0; i < 5; i++) {
+      long start = System.nanoTime();
+      sink = spin(10000000);
+      best = Math.min(best, System.nanoTime() - start);
+    }
+    return Math.max(1, 10000000 * 1000000L / best);
+  }
+
+  private long drawRuntimeMicros(Random random) throws IllegalArgumentException {
+    String[] fields = runtime.split(":");
+    try {
+      switch (fields[0]) {
+        case "fixed":
+          return (long) (1000 * Double.parseDouble(fields[1]));
+        case "uniform":
+          double min = Double.parseDouble(fields[1]);
+          double max = Double.parseDouble(fields[2]);
+          return (long) (1000 * (min + random.nextDouble() * (max - min)));
+        case "exponential":
+          double mean = Double.parseDouble(fields[1]);
+          return (long) (1000 * -mean * Math.log(1 - random.nextDouble()));
+        default:
+          break;
+      }
+    } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+      // (fall through)
+    }
+    throw new IllegalArgumentException("bad runtime distribution: " + runtime);
+  }
+
+  public void generate(File dir) throws IOException, IllegalArgumentException {
+    // Writes the project into the given directory, and compiles it into dir/classes.
+    if (mutantsPerTest > nMutants) {
+      throw new IllegalArgumentException("more mutants per test than mutants");
+    }
+    Random random = new Random(seed);
+    if (fixedWork) {
+      iterationsPerMilli = calibrate();
+    }
+    behaviours = new char[nMutants + 1];
+    behaviours[0] = 'S'; // (mutant 0 is the original program)
+    for (int id = 1; id <= nMutants; id++) {
+      double r = random.nextDouble();
+      behaviours[id] = r < crashRate ? 'C' : r < crashRate + loopRate ? 'L'
+          : r < crashRate + loopRate + killRate ? 'F' : 'S';
+    }
+
+    File src = new File(dir, "src");
+    List<File> sources = new ArrayList<File>();
+    sources.add(write(new File(src, "major/mutation/Config.java"), configSource()));
+    sources.add(write(new File(src, "synthetic/Mutants.java"), mutantsSource()));
+    List<String> testClasses = new ArrayList<String>();
+    for (int first = 0; first < nTests; first += TESTS_PER_CLASS) {
+      String name = "SyntheticTest" + first / TESTS_PER_CLASS;
+      StringBuilder source = new StringBuilder();
+      source.append("package synthetic;\n\n")
+          .append("public class ").append(name).append(" extends junit.framework.TestCase {\n");
+      for (int i = first; i < Math.min(first + TESTS_PER_CLASS, nTests); i++) {
+        int from = 1 + random.nextInt(nMutants - mutantsPerTest + 1);
+        int to = from + mutantsPerTest - 1;
+        if (i == 0) {
+          from = 1;
+          to = nMutants;
+        }
+        source.append("  @org.junit.Test public void test").append(i)
+            .append("() throws Exception { Mutants.run(").append(from).append(", ").append(to)
+            .append(", ").append(drawRuntimeMicros(random))
+            .append("L); }\n");
+      }
+      source.append("}\n");
+      sources.add(write(new File(src, "synthetic/" + name + ".java"), source.toString()));
+      testClasses.add("synthetic." + name);
+    }
+
+    StringBuilder log = new StringBuilder();
+    for (int id = 1; id <= nMutants; id++) {
+      // (Ten mutants to a method, as if Major had mutated a method's expressions several ways.)
+      log.append(id).append(":ROR:a < b:a <= b:synthetic.Subject@method").append(id / 10)
+          .append("():").append(id).append(":a < b |==> a <= b\n");
+    }
+    mutantsLog = write(new File(dir, "mutants.log"), log.toString());
+    triggeringTests = write(new File(dir, "triggering-tests.txt"),
+        "--- synthetic.SyntheticTest0::test0\n");
+    StringBuilder classes = new StringBuilder();
+    for (String testClass : testClasses) {
+      classes.append(testClass).append('\n');
+    }
+    relevantTestClasses = write(new File(dir, "relevant-test-classes.txt"), classes.toString());
+    partialRun = write(new File(dir, "partial-run.csv"), "");
+
+    classesDir = new File(dir, "classes");
+    compile(sources, classesDir);
+  }
+
+  private static File write(File file, String contents) throws IOException {
+    file.getParentFile().mkdirs();
+    try (PrintStream out = new PrintStream(file, "UTF-8")) {
+      out.print(contents);
+    }
+    return file;
+  }
+
+  private static void compile(List<File> sources, File destination) throws IOException {
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    if (compiler == null) {
+      throw new IOException("no Java compiler available (this needs a JDK, not a JRE)");
+    }
+    destination.mkdirs();
+    List<String> arguments = new ArrayList<String>(Arrays.asList("-nowarn", "-d",
+        destination.getPath(), "-cp", System.getProperty("java.class.path")));
+    for (File source : sources) {
+      arguments.add(source.getPath());
+    }
+    if (compiler.run(null, null, null, arguments.toArray(new String[0])) != 0) {
+      throw new IOException("unable to compile the synthetic project");
+    }
+  }
+
+  private String workSource() {
+    if (!fixedWork) {
+      return "  private static void work(long micros) {\n"
+          + "    long end = System.nanoTime() + 1000 * micros;\n"
+          + "    while (System.nanoTime() < end) {\n"
+          + "      // (busy)\n"
+          + "    }\n"
+          + "  }\n";
+    }
+    return "  private static void work(long micros) {\n"
+        + "    long x = 1;\n"
+        + "    for (long i = 0; i < micros * " + iterationsPerMilli + "L / 1000; i++) {\n"
+        + "      x = x * 6364136223846793005L + 1442695040888963407L;\n"
+        + "    }\n"
+        + "    sink = x;\n"
+        + "  }\n";
+  }
+
+  private static String configSource() {
+    return "package major.mutation;\n"
+        + "\n"
+        + "import java.util.ArrayList;\n"
+        + "import java.util.List;\n"
+        + "import java.util.TreeSet;\n"
+        + "\n"
+        + "public class Config {\n"
+        + "  public static int __M_NO = 0;\n"
+        + "  private static final TreeSet<Integer> covered = new TreeSet<Integer>();\n"
+        + "  public static void reset() { covered.clear(); }\n"
+        + "  public static boolean COVERED(int from, int to) {\n"
+        + "    for (int i = from; i <= to; i++) { covered.add(i); }\n"
+        + "    return false;\n"
+        + "  }\n"
+        + "  public static List<Integer> getCoverageList() {\n"
+        + "    return new ArrayList<Integer>(covered);\n"
+        + "  }\n"
+        + "}\n";
+  }
+
+  private String mutantsSource() {
+    StringBuilder behaviourTable = new StringBuilder("new StringBuilder()");
+    String all = new String(behaviours);
+    for (int i = 0; i < all.length(); i += MAX_LITERAL_LENGTH) {
+      behaviourTable.append("\n      .append(\"")
+          .append(all.substring(i, Math.min(all.length(), i + MAX_LITERAL_LENGTH)))
+          .append("\")");
+    }
+    return "package synthetic;\n"
+        + "\n"
+        + "import java.lang.management.ManagementFactory;\n"
+        + "import major.mutation.Config;\n"
+        + "\n"
+        + "public class Mutants {\n"
+        + "  private static final String BEHAVIOURS = " + behaviourTable + ".toString();\n"
+        + "\n"
+        + "  public static volatile long sink;\n"
+        + "\n"
+        + workSource()
+        + "\n"
+        + "  public static void run(int from, int to, long micros) throws Exception {\n"
+        + "    Config.COVERED(from, to);\n"
+        + "    work(micros);\n"
+        + "    int mutant = Config.__M_NO;\n"
+        + "    if (mutant < from || mutant > to) {\n"
+        + "      return;\n"
+        + "    }\n"
+        + "    switch (BEHAVIOURS.charAt(mutant)) {\n"
+        + "      case 'F':\n"
+        + "        throw new AssertionError(\"broken by mutant \" + mutant);\n"
+        + "      case 'C':\n"
+        + "        String pid = ManagementFactory.getRuntimeMXBean().getName().split(\"@\")[0];\n"
+        + "        new ProcessBuilder(\"kill\", \"-9\", pid).start().waitFor();\n"
+        + "        Thread.sleep(60000);\n"
+        + "        break;\n"
+        + "      case 'L':\n"
+        + "        while (true) {\n"
+        + "          work(1000);\n"
+        + "        }\n"
+        + "      default:\n"
+        + "        break;\n"
+        + "    }\n"
+        + "  }\n"
+        + "}\n";
+  }
+}
@@ -0,0 +1,90 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import killmap.TestMethod;
+import killmap.runners.communication.Outcome;
+import killmap.runners.communication.WorkOrder;
+
+/**
+ * How long it takes to turn the messages killmap sends for every test-run (work orders and
+ * outcomes, see killmap.runners.communication) into strings and back, and to normalize a failure's
+ * stack trace.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommunicationBenchmark {
+
+  private WorkOrder workOrder;
+
+  private String workOrderLine;
+
+  private Outcome failure;
+
+  private String failureLine;
+
+  private String rawStackTrace;
+
+  @Setup
+  public void setUp() {
+    workOrder = new WorkOrder(new TestMethod(TrivialTest.class, "testNothing"), 1234, 60000L);
+    workOrderLine = workOrder.toString();
+    rawStackTrace = Samples.stackTrace();
+    failure = Samples.failure(rawStackTrace);
+    failureLine = failure.toString();
+  }
+
+  @Benchmark
+  public String workOrderToString() {
+    return workOrder.toString();
+  }
+
+  @Benchmark
+  public WorkOrder workOrderFromString() throws Exception {
+    return WorkOrder.fromString(workOrderLine);
+  }
+
+  @Benchmark
+  public String outcomeToString() {
+    return failure.toString();
+  }
+
+  @Benchmark
+  public Outcome outcomeFromString() {
+    return Outcome.fromString(failureLine);
+  }
+
+  @Benchmark
+  public String normalizeStackTrace() {
+    return Outcome.normalizeStackTrace(rawStackTrace);
+  }
+}
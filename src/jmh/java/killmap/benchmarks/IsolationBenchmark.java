@@ -0,0 +1,47 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import killmap.runners.isolation.IsolatingClassLoader;
+
+/**
+ * How long it takes to set up the fresh class loader every test-run gets (see TestRunner), and to
+ * load a first class through it: a test class, which brings in junit.framework.TestCase and the
+ * JDK classes they use.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IsolationBenchmark {
+
+  @Benchmark
+  public Class<?> createAndLoadTestClass() throws Exception {
+    try (IsolatingClassLoader loader = new IsolatingClassLoader()) {
+      return Class.forName(TrivialTest.class.getName(), true, loader);
+    }
+  }
+}
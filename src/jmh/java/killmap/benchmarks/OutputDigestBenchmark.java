@@ -0,0 +1,91 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap.benchmarks;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import killmap.runners.isolation.DeadEndDigestOutputStream;
+
+/**
+ * How many bytes per second DeadEndDigestOutputStream digests, with each hash it offers, written
+ * the two ways tests write them: in bulk (e.g. a logger flushing its buffer), or line by line
+ * through the buffered PrintStream the worker puts in front of it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OutputDigestBenchmark {
+
+  private static final int BYTES = 1 << 20;
+
+  private static final String LINE = "DEBUG 12:34:56.789 [main] o.a.c.Foo - processing item 1234";
+
+  private static final int LINES = BYTES / (LINE.length() + 1);
+
+  @Param({"sha1", "murmur3", "none"})
+  public String algorithm;
+
+  private byte[] chunk;
+
+  @Setup
+  public void setUp() {
+    chunk = new byte[8192];
+    Arrays.fill(chunk, (byte) 'x');
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BYTES)
+  public String bulkWrites() throws IOException {
+    // (Scores are bytes per second.)
+    DeadEndDigestOutputStream out = new DeadEndDigestOutputStream(algorithm, -1);
+    for (int i = 0; i < BYTES; i += chunk.length) {
+      out.write(chunk, 0, chunk.length);
+    }
+    return out.getDigestString();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BYTES)
+  public String printedLines() {
+    // (Scores are bytes per second, near enough.)
+    DeadEndDigestOutputStream out = new DeadEndDigestOutputStream(algorithm, -1);
+    PrintStream printStream = new PrintStream(new BufferedOutputStream(out, 8192));
+    for (int i = 0; i < LINES; i++) {
+      printStream.println(LINE);
+    }
+    printStream.flush();
+    return out.getDigestString();
+  }
+}
@@ -0,0 +1,80 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import killmap.TestMethod;
+import killmap.runners.RemoteTestRunner;
+import killmap.runners.communication.Outcome;
+import killmap.runners.communication.WorkOrder;
+
+/**
+ * How long a whole test-run takes for a test that does nothing: sending the work order to a worker,
+ * the worker isolating and running the test, and the outcome coming back. That is killmap's
+ * overhead on every test-run.
+ *
+ * Like RemoteTestRunnerTest, needs KILLMAP_CLASSPATH to be set (to a classpath with this class on
+ * it). "unix" can be added with `-p transport=tcp,pipe,unix` on Java 16 or later.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoundTripBenchmark {
+
+  @Param({"tcp", "pipe"})
+  public String transport;
+
+  private RemoteTestRunner runner;
+
+  private WorkOrder workOrder;
+
+  @Setup
+  public void setUp() throws IOException {
+    runner = new RemoteTestRunner(transport);
+    workOrder = new WorkOrder(new TestMethod(TrivialTest.class, "testNothing"), 0, 10000L);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    runner.close();
+  }
+
+  @Benchmark
+  public Outcome runTrivialTest() throws IOException {
+    Outcome outcome = runner.runTest(workOrder);
+    if (outcome.type != Outcome.Type.PASS) {
+      throw new IllegalStateException("trivial test didn't pass: " + outcome);
+    }
+    return outcome;
+  }
+}
@@ -0,0 +1,59 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap.benchmarks;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import killmap.runners.communication.MutantSet;
+import killmap.runners.communication.Outcome;
+
+/**
+ * Typical data for the benchmarks: a failure that looks like what a real project's test produces
+ * (a few dozen stack frames, a few hundred covered mutants).
+ */
+class Samples {
+
+  private Samples() {
+  }
+
+  static String stackTrace() {
+    // The multi-line stack trace of an exception thrown 30 calls deep, as JUnit would report it.
+    StringWriter trace = new StringWriter();
+    deepException(30).printStackTrace(new PrintWriter(trace));
+    return trace.toString();
+  }
+
+  private static AssertionError deepException(int depth) {
+    return depth == 0 ? new AssertionError("expected:<1> but was:<2>") : deepException(depth - 1);
+  }
+
+  static MutantSet coveredMutants() {
+    // 400 mutants, in runs of consecutive ids like Major gives the mutants of one method.
+    MutantSet result = new MutantSet();
+    for (int run = 0; run < 40; run++) {
+      result.addRange(run * 50 + 1, run * 50 + 10);
+    }
+    return result;
+  }
+
+  static Outcome failure(String stackTrace) {
+    Outcome result = Outcome.create(Outcome.Type.FAIL, 42, stackTrace, coveredMutants());
+    result.digest = "da39a3ee5e6b4b0d3255bfef95601890afd80709"
+        + "da39a3ee5e6b4b0d3255bfef95601890afd80709";
+    return result;
+  }
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import killmap.OutcomeDictionary;
+import killmap.TestMethod;
+import killmap.TestRunCache;
+import killmap.runners.communication.Outcome;
+import killmap.runners.communication.WorkOrder;
+
+/**
+ * How many rows of a partial-run file a TestRunCache gets through per second, when every row is a
+ * hit (as when resuming a long run), in plain and dictionary-output form.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TestRunCacheBenchmark {
+
+  private static final int ROWS = 10000;
+
+  @Param({"false", "true"})
+  public boolean dictionaryOutput;
+
+  private File file;
+
+  private WorkOrder[] workOrders;
+
+  @Setup
+  public void setUp() throws IOException {
+    String stackTrace = Samples.stackTrace();
+    TestMethod test = new TestMethod(TrivialTest.class, "testNothing");
+    workOrders = new WorkOrder[ROWS];
+    file = File.createTempFile("killmap-bench", ".csv");
+    OutcomeDictionary dictionary = new OutcomeDictionary();
+    try (PrintStream out = new PrintStream(file)) {
+      for (int i = 0; i < ROWS; i++) {
+        workOrders[i] = new WorkOrder(test, i, 60000L);
+        Outcome outcome = Samples.failure(stackTrace);
+        if (dictionaryOutput) {
+          outcome = dictionary.encode(outcome, out);
+        }
+        out.println(workOrders[i] + "," + outcome);
+      }
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    file.delete();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ROWS)
+  public int scan() throws IOException {
+    // (Scores are rows per second.)
+    TestRunCache cache = new TestRunCache(file.getPath());
+    int hits = 0;
+    for (WorkOrder workOrder : workOrders) {
+      if (cache.tryGet(workOrder) != null) {
+        hits++;
+      }
+    }
+    if (hits != ROWS - 1) { // (the file's last line is never trusted: it may be half-written)
+      throw new IllegalStateException("only " + hits + " of " + ROWS + " rows were hits");
+    }
+    return hits;
+  }
+}
@@ -0,0 +1,109 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import killmap.runners.transport.Connection;
+import killmap.runners.transport.Transport;
+
+/**
+ * Measures how long a message takes to get to a worker and back, for each Transport.
+ *
+ * Not a JMH benchmark (each measurement needs its own worker JVM), but built with them. Run as
+ *   java -cp killmap.jar:bin-jmh killmap.benchmarks.TransportBenchmark [N [TRANSPORT ...]]
+ * For each transport (by default, all of them), it starts a worker JVM (with the same java) that
+ * echoes lines back, sends it N (by default 20000) lines the size of a typical work order, after as
+ * many again to warm up, and prints the median, 99th-percentile and maximum round-trip times, in
+ * microseconds.
+ * Transports that aren't available (e.g. "unix" before Java 16) are skipped.
+ */
+public class TransportBenchmark {
+
+  private static final String MESSAGE =
+      "org.apache.commons.lang3.text.StrBuilderTest#testAppendFixedWidthPadLeft,1234,60000";
+
+  private static long[] measure(Transport transport, int n) throws IOException {
+    String java =
+        System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+    List<String> command = new ArrayList<String>(Arrays.asList(java, "-cp",
+        System.getProperty("java.class.path"), TransportBenchmark.class.getName(), "echo"));
+    command.addAll(transport.workerArguments());
+    Process worker =
+        new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+    Connection connection = transport.accept(worker);
+    try {
+      long[] nanos = new long[n];
+      for (int i = -n; i < n; i++) {
+        long t0 = System.nanoTime();
+        connection.out.println(MESSAGE);
+        if (!MESSAGE.equals(connection.in.readLine())) {
+          throw new IOException("worker didn't echo the message");
+        }
+        if (i >= 0) {
+          nanos[i] = System.nanoTime() - t0;
+        }
+      }
+      Arrays.sort(nanos);
+      return nanos;
+    } finally {
+      connection.close();
+      try {
+        worker.waitFor();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length > 0 && args[0].equals("echo")) {
+      Connection connection =
+          Transport.connectAsWorker(Arrays.asList(args).subList(1, args.length));
+      String line;
+      while ((line = connection.in.readLine()) != null) {
+        connection.out.println(line);
+      }
+      return;
+    }
+
+    int n = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+    List<String> names =
+        args.length > 1 ? Arrays.asList(args).subList(1, args.length) : Arrays.asList(
+            Transport.NAMES);
+    System.out.println("transport,median_us,p99_us,max_us");
+    for (String name : names) {
+      Transport transport;
+      try {
+        transport = Transport.create(name);
+      } catch (IOException e) {
+        System.err.println("[skipping " + name + ": " + e.getMessage() + "]");
+        continue;
+      }
+      try {
+        long[] nanos = measure(transport, n);
+        System.out.println(name + "," + nanos[n / 2] / 1000 + "," + nanos[n * 99 / 100] / 1000
+            + "," + nanos[n - 1] / 1000);
+      } finally {
+        transport.close();
+      }
+    }
+  }
+}
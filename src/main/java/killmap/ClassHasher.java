@@ -0,0 +1,101 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hashes the bytecode of classes, as found by some class loader (e.g. the system class loader, for
+ * the classpath killmap runs with, or `forClasspath`, for another build's classpath). Hashes are
+ * remembered, so each class file is only read once.
+ */
+public class ClassHasher {
+
+  private final ClassLoader loader;
+
+  private final Map<String, String> hashes; // class name => hash of its bytecode
+
+  public ClassHasher(ClassLoader loader_) {
+    loader = loader_;
+    hashes = new HashMap<String, String>();
+  }
+
+  public static ClassHasher forClasspath(String classpath) throws MalformedURLException {
+    // Hashes the classes on the given classpath (directories and jars, separated as usual for the
+    // platform), without the classpath killmap runs with getting in the way.
+    List<URL> urls = new ArrayList<URL>();
+    for (String entry : classpath.split(File.pathSeparator)) {
+      if (!entry.isEmpty()) {
+        urls.add(new File(entry).toURI().toURL());
+      }
+    }
+    return new ClassHasher(new URLClassLoader(urls.toArray(new URL[urls.size()]), null));
+  }
+
+  public String hash(String className) {
+    // Returns the hash of the named class's bytecode ("missing" if there is no such class).
+    String result = hashes.get(className);
+    if (result != null) {
+      return result;
+    }
+    result = "missing";
+    try (InputStream in = loader.getResourceAsStream(className.replace('.', '/') + ".class")) {
+      if (in != null) {
+        MessageDigest digest = MessageDigest.getInstance("SHA-1");
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+          digest.update(buffer, 0, n);
+        }
+        result = toHex(digest.digest());
+      }
+    } catch (IOException | NoSuchAlgorithmException e) {
+      result = "unreadable";
+    }
+    hashes.put(className, result);
+    return result;
+  }
+
+  static String sha1(String s) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-1");
+      return toHex(digest.digest(s.getBytes(StandardCharsets.UTF_8)));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static String toHex(byte[] bytes) {
+    StringBuilder sb = new StringBuilder(2 * bytes.length);
+    for (byte b : bytes) {
+      sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+    }
+    return sb.toString();
+  }
+}
@@ -0,0 +1,86 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decides in what order to run a mutant's covering tests, when all we want to know is whether any
+ * of them kills it.
+ *
+ * Tests that are quick, and that have killed many of the mutants they've been run on so far, go
+ * first: a test's kill rate (with one kill and one survival assumed up front, so that untried tests
+ * aren't ruled out) divided by its unmutated runtime. Kill rates are updated as results come in, so
+ * later mutants benefit from what earlier ones showed. Mutants don't otherwise depend on each
+ * other, so the methods here are synchronized, for several runners to share one schedule.
+ */
+public class FirstKillSchedule {
+
+  private final Map<TestMethod, long[]> killsAndRuns;
+
+  private final Map<TestMethod, Long> runTimes;
+
+  public FirstKillSchedule(Map<TestMethod, Long> runTimes_) {
+    // runTimes_ gives how long each test took to run without mutants.
+    killsAndRuns = new HashMap<TestMethod, long[]>();
+    runTimes = runTimes_;
+  }
+
+  public synchronized void record(TestMethod test, boolean killed) {
+    long[] counts = killsAndRuns.get(test);
+    if (counts == null) {
+      counts = new long[2];
+      killsAndRuns.put(test, counts);
+    }
+    if (killed) {
+      counts[0]++;
+    }
+    counts[1]++;
+  }
+
+  public synchronized double killRate(TestMethod test) {
+    long[] counts = killsAndRuns.get(test);
+    return counts == null ? 0.5 : (counts[0] + 1.0) / (counts[1] + 2.0);
+  }
+
+  private long runTime(TestMethod test) {
+    Long t = runTimes.get(test);
+    return t == null ? 1 : Math.max(1, t);
+  }
+
+  public synchronized List<TestMethod> order(Collection<TestMethod> coveringTests) {
+    // Returns the given tests, most promising first. (The sort is stable, so ties keep the given
+    // order.)
+    final Map<TestMethod, Double> priority = new HashMap<TestMethod, Double>();
+    for (TestMethod test : coveringTests) {
+      priority.put(test, killRate(test) / runTime(test));
+    }
+    List<TestMethod> result = new ArrayList<TestMethod>(coveringTests);
+    Collections.sort(result, new Comparator<TestMethod>() {
+      public int compare(TestMethod a, TestMethod b) {
+        return Double.compare(priority.get(b), priority.get(a));
+      }
+    });
+    return result;
+  }
+}
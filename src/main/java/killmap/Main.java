@@ -16,19 +16,41 @@
  */
 package killmap;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.lang.reflect.Field;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import killmap.matrix.MatrixParser;
+import killmap.mutants.MutantReducer;
+import killmap.mutants.MutantSampler;
+import killmap.mutants.MutantsLog;
+import killmap.runners.CpuAffinity;
+import killmap.runners.PhaseEvents;
+import killmap.runners.PhaseSummary;
+import killmap.runners.RecyclingPolicy;
 import killmap.runners.RemoteTestRunner;
+import killmap.runners.WorkerProfile;
+import killmap.runners.communication.MutantSet;
 import killmap.runners.communication.Outcome;
 import killmap.runners.communication.WorkOrder;
+import killmap.runners.isolation.DeadEndDigestOutputStream;
+import killmap.runners.transport.Transport;
+import killmap.score.Score;
+import killmap.score.SuspiciousnessScorer;
 
 /**
  * Builds a ((test,mutant) => outcome) matrix and prints it to stdout.
@@ -40,16 +62,95 @@ import killmap.runners.communication.WorkOrder;
  *   mypackage.MyTestClass#testMethod,<mutantId>,<timeout>,<summary>,<runtime>,<digest>,<mutants>,<message>
  * where <mutantId> (e.g. "0", "4") is which mutant is enabled
  *       <timeout> (e.g. "100", "376") is the time allotted for the test to run
- *       <summary> (i.e. "PASS", "FAIL", "TIMEOUT" or "CRASH") is the general
- *         category the outcome lies in (CRASH is if the worker JVM dies or seems to hang)
+ *       <summary> (i.e. "PASS", "FAIL", "TIMEOUT", "CRASH" or "EXIT") is the general
+ *         category the outcome lies in (CRASH is if the worker JVM dies or seems to hang; EXIT
+ *         is if the test tried to exit the JVM, which the worker prevents)
  *       <runtime> (e.g. "100", "376") is how long the test actually took to run
  *       <digest> (e.g. "d5a89...443f") is a hash of what the test wrote to stdout/stderr
- *       <mutants> (e.g. "", "2 5 8 ") is a space-separated list of mutants covered
- *         by the test (maybe followed by a space), if the mutant number is 0;
- *         or "" otherwise
+ *       <mutants> (e.g. "", "2 5 8", "2 10-250") is a space-separated list of mutants
+ *         covered by the test, with runs of consecutive mutants written as ranges, if the
+ *         mutant number is 0; or "" otherwise
  *       <message> (e.g. "", "java.lang.IOException: ...") is the failure message,
  *         if any
  *
+ * With --dictionary-output, each distinct non-empty <digest> and <message> is instead printed once,
+ * on a line of its own
+ *   !<id>,<digest or message>
+ * before the first row that uses it, and rows contain "@<id>" in its place (see OutcomeDictionary).
+ *
+ * With --sample-fraction, the passing tests are only run on a random sample of the interesting
+ * mutants, drawn uniformly or per operator/method (--sample-strata, using --mutants-log) with a
+ * fixed --sample-seed (see MutantSampler). With --sample-adaptive, the sample doubles until the top
+ * of the Metallaxis ranking stops changing. The final sample is written to --sample-output, for the
+ * score stage to estimate scores (with confidence intervals) from just the sampled mutants.
+ *
+ * With --time-budget, the same test-runs are done in order of expected fault-localization value per
+ * millisecond (triggering tests first, then runs of passing tests on the mutants that affect the
+ * most failing tests, cheapest first), and runs that might not finish in time are skipped. The rows
+ * are then printed in that order; the skipped runs are listed in --skipped-output.
+ *
+ * With --first-kill, only whether each covered mutant is killed is found out: each mutant's
+ * covering tests are run, quickest and most often killing first, until one kills it (see
+ * FirstKillSchedule). Every mutant covered by any test is considered, not just the interesting
+ * ones.
+ *
+ * With --outcome-store DIR, outcomes are also looked up in (and saved to) a persistent store
+ * shared between runs, keyed by the test, the mutant and the bytecode involved rather than by
+ * position (see OutcomeStore). It is consulted after partial-run.csv, and is kept under
+ * --outcome-store-max-mb (1024 by default) by evicting the least recently used outcomes.
+ *
+ * With --previous-matrix FILE --previous-classpath PATH, only the tests affected by the changes
+ * since a previous run (on the build with that classpath) are run again: the previous outcomes of
+ * every test whose class and covered classes have the same bytecode in both builds are carried
+ * over (see PreviousMatrix). That needs --mutants-log; --previous-mutants-log, the previous build's
+ * mutants.log, lets mutants be matched up if their ids have changed.
+ *
+ * With --reduce-subsumed MATRIX (and --mutants-log), mutants that behaved exactly like another
+ * mutant of the same expression in MATRIX, a previously built matrix, are not run: their rows copy
+ * the other mutant's outcome for the same test, with runtime 0 and an "inferred:" digest (see
+ * MutantReducer). --verify-reduced FRACTION runs that fraction of those runs anyway, and warns
+ * about wrong inferences.
+ *
+ * A test that times out and ignores being interrupted is left running in the worker, quarantined
+ * (see ThreadQuarantine), rather than costing a new worker JVM each time. The worker is only
+ * replaced once more than --max-leaked-threads (4 by default) such threads are running, or they
+ * have burnt more than --max-leaked-cpu-seconds (1 by default) of CPU time.
+ *
+ * Workers are also retired between tests, before they wear out (see RecyclingPolicy): after
+ * --recycle-after-tests N tests (no limit by default), once the memory still in use after garbage
+ * collection passes --recycle-memory-fraction F of the maximum (0.8 by default), or once they spend
+ * more than --recycle-gc-overhead F of their time collecting garbage (0.3 by default).
+ *
+ * What tests print is only kept as a hash (see DeadEndDigestOutputStream): SHA-1 by default, or
+ * --output-digest murmur3 (much faster), none (no hashing; the digest column is left empty), or any
+ * other MessageDigest algorithm. --output-digest-max-bytes N only hashes the first N bytes of each
+ * stream, and then just counts them.
+ *
+ * --transport tcp|unix|pipe chooses how workers talk to this process (see Transport): a loopback
+ * TCP port (the default), a Unix domain socket (Java 16 or later), or the workers' stdin and
+ * stdout.
+ *
+ * --flight-recording FILE.jfr records how long each phase of each test-run takes (see PhaseEvents)
+ * with Java Flight Recorder, in this process to FILE.jfr and in each worker to FILE-worker-<n>.jfr.
+ * `java -jar killmap.jar phases FILE.jfr FILE-worker-*.jfr` sums them up (see PhaseSummary).
+ *
+ * --metrics-address [HOST:]PORT serves live metrics (rows by outcome, cache hits, work-order
+ * latencies, worker replacements and an estimated time to completion; see Metrics) in Prometheus'
+ * format at http://HOST:PORT/metrics. HOST is the loopback address by default.
+ *
+ * Workers are started with --worker-java PATH ("java" by default) and any --worker-jvm-options
+ * "OPTIONS" (see WorkerProfile). Their heap is sized automatically, unless given with
+ * --worker-heap-mb N (0 leaves it to the JVM). They start from an AppCDS archive of their classes,
+ * made on first use and kept in --worker-cds-dir DIR (~/.cache/killmap/cds by default; "none" for
+ * no archive).
+ *
+ * --worker-cpus LIST pins workers to the given CPUs (in taskset's format, e.g. 2-3), and
+ * --coordinator-cpus LIST pins killmap's own JVM, so that tests' runtimes, and so their timeouts,
+ * don't vary with what else runs on the machine (see CpuAffinity). Each killmap sharing a machine
+ * should get CPUs of its own. Workers get all of --worker-cpus, except while a spare worker starts
+ * up: then it gets one half, and the worker it will replace the other, so that it doesn't slow down
+ * that one's tests (see WorkerProfile).
+ *
  * (Note: it also logs some information to stderr.)
  */
 public class Main {
@@ -66,10 +167,101 @@ public class Main {
 
   private static TestMethod onlyTestToRun = null;
 
-  private static Collection<Integer> mutantsToRun = null;
+  private static MutantSet mutantsToRun = null;
+
+  // With --dictionary-output, every digest and stack trace we see gets interned here, since the
+  // dictionary holds a copy of each anyway; otherwise null, and nothing is kept.
+  private static OutcomeDictionary dictionary = null;
+
+  private static String mutantsLogPath = null;
+
+  private static Double sampleFraction = null;
+
+  private static MutantSampler.Strata sampleStrata = MutantSampler.Strata.UNIFORM;
+
+  private static long sampleSeed = 0;
+
+  private static boolean sampleAdaptive = false;
+
+  private static String sampleOutputPath = null;
+
+  // In adaptive sampling mode, the sample stops growing once this many of the most suspicious
+  // lines are the same (and in the same order) as in the previous round.
+  private static final int SAMPLE_STABLE_TOP = 10;
+
+  // Only used in adaptive sampling mode, to score the rows as they are printed.
+  private static SuspiciousnessScorer scorer = null;
+
+  private static Long timeBudgetMillis = null;
+
+  private static String skippedOutputPath = null;
+
+  private static boolean firstKill = false;
+
+  private static String outcomeStorePath = null;
+
+  private static long outcomeStoreMaxBytes = 1024L * 1024 * 1024;
+
+  private static OutcomeStore outcomeStore = null;
+
+  private static String previousMatrixPath = null;
+
+  private static String previousClasspath = null;
+
+  private static String previousMutantsLogPath = null;
+
+  private static PreviousMatrix previousMatrix = null;
+
+  private static String reduceSubsumedPath = null;
+
+  private static MutantReducer reducer = null;
+
+  private static double verifyReducedFraction = 0;
+
+  // Fixed seed, so that a rerun spot-checks the same runs (and can replay them from its cache).
+  private static final Random verifyReducedRandom = new Random(0);
+
+  // The outcomes of runs with the mutants that others are inferred from, by test and mutant. Kept
+  // for every test: --first-kill and --time-budget don't run tests one after the other.
+  private static final Map<TestMethod, Map<Integer, Outcome>> representativeOutcomes =
+      new HashMap<TestMethod, Map<Integer, Outcome>>();
+
+  private static long nInferredReduced = 0;
+
+  private static long nVerifiedReduced = 0;
+
+  private static long nMisinferredReduced = 0;
+
+  private static Integer maxLeakedThreads = null;
+
+  private static Long maxLeakedCpuMillis = null;
+
+  private static String transport = Transport.DEFAULT;
+
+  private static String outputDigest = null;
+
+  private static Long outputDigestMaxBytes = null;
+
+  private static int recycleAfterTests = 0;
+
+  private static double recycleMemoryFraction = RecyclingPolicy.DEFAULT_MAX_MEMORY_FRACTION;
+
+  private static double recycleGcOverhead = RecyclingPolicy.DEFAULT_MAX_GC_OVERHEAD;
+
+  private static String flightRecording = null;
+
+  private static String metricsAddress = null;
+
+  private static boolean cdsDirectoryGiven = false;
+
+  private static String coordinatorCpus = null;
+
+  private static final Metrics metrics = new Metrics();
+
+  private static final WorkerProfile workerProfile = new WorkerProfile();
 
   private static final String USAGE =
-      "java -jar killmap.jar [--help] [--run-mutants-unkilled-by-failing-tests] [--only-test-to-run CLASS#METHOD] [--mutants-to-run MUT,MUT,...] triggering-tests.txt relevant-test-classes.txt partial-run.csv";
+      "java -jar killmap.jar [--help] [--run-mutants-unkilled-by-failing-tests] [--only-test-to-run CLASS#METHOD] [--mutants-to-run MUT,MUT,...] [--dictionary-output] [--mutants-log mutants.log] [--sample-fraction FRACTION [--sample-strata uniform|operator|method] [--sample-seed SEED] [--sample-adaptive] [--sample-output FILE]] [--time-budget SECONDS [--skipped-output FILE]] [--first-kill] [--outcome-store DIR [--outcome-store-max-mb MB]] [--previous-matrix FILE --previous-classpath PATH [--previous-mutants-log FILE]] [--reduce-subsumed MATRIX [--verify-reduced FRACTION]] [--max-leaked-threads N] [--max-leaked-cpu-seconds SECONDS] [--recycle-after-tests N] [--recycle-memory-fraction FRACTION] [--recycle-gc-overhead FRACTION] [--transport tcp|unix|pipe] [--output-digest sha1|murmur3|none|ALGORITHM] [--output-digest-max-bytes N] [--flight-recording FILE.jfr] [--metrics-address [HOST:]PORT] [--worker-java PATH] [--worker-jvm-options \"OPTIONS\"] [--worker-heap-mb N] [--worker-cds-dir DIR|none] [--worker-cpus LIST] [--coordinator-cpus LIST] triggering-tests.txt relevant-test-classes.txt partial-run.csv";
 
   private static long timeoutFromOriginalRunTime(long originalRunTime) {
     // If an unmutated test originally took ____ms, how long should we allow the mutated versions?
@@ -88,15 +280,72 @@ public class Main {
     return 2 * originalRunTime;
   }
 
+  private static void printRow(WorkOrder workOrder, Outcome outcome) {
+    metrics.rowPrinted(workOrder, outcome);
+    if (dictionary != null) {
+      dictionary.intern(outcome);
+    }
+    if (scorer != null) {
+      scorer.add(TestFinder.getTestFullName(workOrder.test, "#"), workOrder.mutantId, outcome.type,
+          outcome.stackTrace);
+    }
+    if (dictionary != null) {
+      Outcome encoded = dictionary.encode(outcome, System.out);
+      System.out.println(workOrder + "," + encoded);
+    } else {
+      System.out.println(workOrder + "," + outcome);
+    }
+  }
+
+  private static void storeOutcome(WorkOrder workOrder, Outcome outcome) {
+    if (outcomeStore == null) {
+      return;
+    }
+    try {
+      outcomeStore.put(workOrder, outcome);
+    } catch (IOException e) {
+      System.err.println("[warning: unable to store outcome of " + workOrder + ": " + e + "]");
+    }
+  }
+
   private static Outcome runOrExit(RemoteTestRunner runner, WorkOrder workOrder) {
+    // Looks for the outcome in the partial run, then the previous matrix, then the outcome store,
+    // and only runs the test if none of them has it.
+    PhaseEvents lookups = new PhaseEvents();
+    Object lookup = lookups.begin(PhaseEvents.Phase.CACHE_LOOKUP);
     Outcome cachedResult = cache.tryGet(workOrder);
+    Outcome previousResult = cachedResult != null || previousMatrix == null ? null
+        : previousMatrix.get(workOrder);
+    Outcome storedResult = cachedResult != null || previousResult != null || outcomeStore == null
+        ? null : outcomeStore.get(workOrder);
+    lookups.end(lookup);
+    Outcome found = cachedResult != null ? cachedResult
+        : previousResult != null ? previousResult : storedResult;
+    lookups.commit(workOrder, found == null ? null : found.type);
+
     if (cachedResult != null) {
-      System.out.println(workOrder + "," + cachedResult);
+      metrics.cacheHit("partial_run");
+      printRow(workOrder, cachedResult);
+      storeOutcome(workOrder, cachedResult);
       return cachedResult;
     }
+    if (previousResult != null) {
+      metrics.cacheHit("previous_matrix");
+      printRow(workOrder, previousResult);
+      storeOutcome(workOrder, previousResult);
+      return previousResult;
+    }
+    if (storedResult != null) {
+      metrics.cacheHit("outcome_store");
+      printRow(workOrder, storedResult);
+      return storedResult;
+    }
     try {
+      long t0 = System.nanoTime();
       Outcome result = runner.runTest(workOrder);
-      System.out.println(workOrder + "," + result);
+      metrics.ran(result, (System.nanoTime() - t0) / 1000000);
+      printRow(workOrder, result);
+      storeOutcome(workOrder, result);
       return result;
     } catch (RemoteTestRunner.WorkerCreationError e) {
       System.err.println("error creating child process");
@@ -110,6 +359,62 @@ public class Main {
     return null;
   }
 
+  private static Outcome runMutantOrExit(RemoteTestRunner runner, WorkOrder workOrder) {
+    // Like runOrExit, for a run with a mutant -- unless, with --reduce-subsumed, the mutant is
+    // redundant and its representative has already been run with this test. Then the run's outcome
+    // is inferred from the representative's (see MutantReducer). With --verify-reduced, a random
+    // fraction of those runs is done anyway, to check the inference.
+    if (reducer == null) {
+      return runOrExit(runner, workOrder);
+    }
+    Map<Integer, Outcome> testOutcomes = representativeOutcomes.get(workOrder.test);
+    if (testOutcomes == null) {
+      testOutcomes = new HashMap<Integer, Outcome>();
+      representativeOutcomes.put(workOrder.test, testOutcomes);
+    }
+    Integer representative = reducer.representativeOf(workOrder.mutantId);
+    Outcome representativeOutcome =
+        representative == null ? null : testOutcomes.get(representative);
+    if (representativeOutcome == null) {
+      Outcome outcome = runOrExit(runner, workOrder);
+      if (reducer.isRepresentative(workOrder.mutantId)) {
+        Outcome kept = outcome.copy();
+        kept.coveredMutants = new MutantSet(); // (only the type, digest and stack trace are used)
+        testOutcomes.put(workOrder.mutantId, kept);
+      }
+      return outcome;
+    }
+    if (verifyReducedRandom.nextDouble() < verifyReducedFraction) {
+      nVerifiedReduced++;
+      Outcome outcome = runOrExit(runner, workOrder);
+      if (changesBehaviour(representativeOutcome, outcome)) {
+        nMisinferredReduced++;
+        System.err.println("[warning: " + workOrder + " doesn't behave like mutant "
+            + representative + ", though it was inferred to]");
+      }
+      return outcome;
+    }
+    nInferredReduced++;
+    Outcome cachedResult = cache.tryGet(workOrder);
+    Outcome outcome =
+        cachedResult != null ? cachedResult : Outcome.createInferred(representativeOutcome);
+    printRow(workOrder, outcome);
+    return outcome;
+  }
+
+  private static void reportReduced() {
+    if (reducer == null) {
+      return;
+    }
+    int nObserved = reducer.observedMutantCount();
+    int nRedundant = reducer.redundantMutantCount();
+    System.err.println("[subsumption: " + nRedundant + " of " + nObserved + " observed mutants ("
+        + (nObserved == 0 ? 0 : 100 * nRedundant / nObserved) + "%) at " + reducer.siteCount()
+        + " sites behave like another mutant; inferred " + nInferredReduced
+        + " runs without running them; spot-checked " + nVerifiedReduced + ", of which "
+        + nMisinferredReduced + " behaved differently]");
+  }
+
   private static Collection<TestMethod> getTestsOrExit(String testClassNamesFileName) {
     try {
       return TestFinder.getTestsFromTestClassNameFile(testClassNamesFileName);
@@ -134,15 +439,195 @@ public class Main {
 
   private static RemoteTestRunner createRunnerOrExit() {
     try {
-      return new RemoteTestRunner();
+      RemoteTestRunner runner = new RemoteTestRunner(transport);
+      runner.maxLeakedThreads = maxLeakedThreads;
+      runner.maxLeakedCpuMillis = maxLeakedCpuMillis;
+      runner.outputDigest = outputDigest;
+      runner.outputDigestMaxBytes = outputDigestMaxBytes;
+      runner.recyclingPolicy =
+          new RecyclingPolicy(recycleAfterTests, recycleMemoryFraction, recycleGcOverhead);
+      metrics.watch(runner);
+      runner.workerProfile = workerProfile;
+      runner.flightRecordingPrefix =
+          flightRecording == null ? null : flightRecording.replaceFirst("\\.jfr$", "");
+      return runner;
+    } catch (IOException e) {
+      System.err.println("unable to set up the " + transport + " transport");
+      e.printStackTrace();
+      System.exit(1);
+    }
+    return null;
+  }
+
+  private static String cpuListOrExit(String cpus) {
+    try {
+      CpuAffinity.parseCpuList(cpus);
+    } catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      System.exit(1);
+    }
+    return cpus;
+  }
+
+  private static void pinToCpusOrExit() {
+    try {
+      if (coordinatorCpus != null) {
+        CpuAffinity.pinSelf(coordinatorCpus);
+        System.err.println("[killmap pinned to CPUs " + coordinatorCpus + "]");
+      }
+      if (workerProfile.cpus != null) {
+        CpuAffinity.check(workerProfile.cpus);
+      }
+    } catch (IOException e) {
+      System.err.println("unable to pin to CPUs: " + e.getMessage());
+      System.exit(1);
+    }
+  }
+
+  private static void startFlightRecordingOrExit() {
+    try {
+      if (PhaseEvents.startRecording(flightRecording) == null) {
+        System.err.println("[warning: this JVM has no Flight Recorder; not recording]");
+        flightRecording = null;
+      }
+    } catch (IOException e) {
+      System.err.println(e.getMessage());
+      e.printStackTrace();
+      System.exit(1);
+    }
+  }
+
+  private static void serveMetricsOrExit() {
+    int colon = metricsAddress.lastIndexOf(':');
+    try {
+      int port = Integer.parseInt(metricsAddress.substring(colon + 1));
+      InetSocketAddress address = colon < 0
+          ? new InetSocketAddress(InetAddress.getLoopbackAddress(), port)
+          : new InetSocketAddress(metricsAddress.substring(0, colon), port);
+      InetSocketAddress bound = metrics.serve(address).getAddress();
+      System.err.println("[serving metrics at http://" + bound.getHostString() + ":"
+          + bound.getPort() + "/metrics]");
+    } catch (NumberFormatException e) {
+      System.err.println("bad --metrics-address: " + metricsAddress);
+      System.exit(1);
+    } catch (IOException | IllegalArgumentException e) {
+      System.err.println("unable to serve metrics at " + metricsAddress + ": " + e);
+      System.exit(1);
+    }
+  }
+
+  private static MutantsLog loadMutantsLogOrExit(String path) {
+    try {
+      return MutantsLog.load(path);
+    } catch (IOException e) {
+      System.err.println("unable to read " + path);
+      e.printStackTrace();
+      System.exit(1);
+    }
+    return null;
+  }
+
+  private static void writeSampleOrExit(MutantSet sample) {
+    if (sampleOutputPath == null) {
+      System.err.println("[sample: " + sample + "]");
+      return;
+    }
+    try (PrintStream out =
+        new PrintStream(new FileOutputStream(sampleOutputPath), false, "UTF-8")) {
+      out.println(sample);
+    } catch (IOException e) {
+      System.err.println("unable to write " + sampleOutputPath);
+      e.printStackTrace();
+      System.exit(1);
+    }
+  }
+
+  private static void reportSkippedOrExit(TimeBudget budget) {
+    int nUnrunTests = 0;
+    for (WorkOrder workOrder : budget.skipped()) {
+      if (workOrder.mutantId == 0) {
+        nUnrunTests++;
+      }
+    }
+    System.err.println("[time budget ran out: skipped " + budget.skipped().size() + " test-runs, "
+        + nUnrunTests + " of them unmutated (so their mutants weren't considered at all)]");
+    if (skippedOutputPath == null) {
+      return;
+    }
+    try (PrintStream out =
+        new PrintStream(new FileOutputStream(skippedOutputPath), false, "UTF-8")) {
+      for (WorkOrder workOrder : budget.skipped()) {
+        out.println(workOrder);
+      }
+    } catch (IOException e) {
+      System.err.println("unable to write " + skippedOutputPath);
+      e.printStackTrace();
+      System.exit(1);
+    }
+  }
+
+  private static OutcomeStore openOutcomeStoreOrExit(MutantsLog mutantsLog) {
+    try {
+      return new OutcomeStore(new File(outcomeStorePath), outcomeStoreMaxBytes, mutantsLog);
+    } catch (IOException e) {
+      System.err.println("unable to open outcome store " + outcomeStorePath);
+      e.printStackTrace();
+      System.exit(1);
+    }
+    return null;
+  }
+
+  private static PreviousMatrix loadPreviousMatrixOrExit(MutantsLog mutantsLog) {
+    MutantsLog previousMutantsLog =
+        previousMutantsLogPath == null ? null : loadMutantsLogOrExit(previousMutantsLogPath);
+    try (BufferedReader reader = MatrixParser.open(previousMatrixPath)) {
+      PreviousMatrix result = new PreviousMatrix(previousMutantsLog, mutantsLog,
+          ClassHasher.forClasspath(previousClasspath),
+          new ClassHasher(ClassLoader.getSystemClassLoader()));
+      result.addAll(reader);
+      return result;
     } catch (IOException e) {
-      System.err.println("unable to open socket");
+      System.err.println("unable to read " + previousMatrixPath);
       e.printStackTrace();
       System.exit(1);
     }
     return null;
   }
 
+  private static MutantReducer loadReducerOrExit(MutantsLog mutantsLog) {
+    MutantReducer result = new MutantReducer(mutantsLog);
+    try (BufferedReader reader = MatrixParser.open(reduceSubsumedPath)) {
+      new MatrixParser(result).addAll(reader);
+    } catch (IOException e) {
+      System.err.println("unable to read " + reduceSubsumedPath);
+      e.printStackTrace();
+      System.exit(1);
+    }
+    return result;
+  }
+
+  private static void reportPreviousMatrix() {
+    if (previousMatrix == null) {
+      return;
+    }
+    System.err.println("[previous matrix: " + previousMatrix.unaffectedTestCount() + " of "
+        + previousMatrix.testCount() + " tests unaffected; carried over "
+        + previousMatrix.carriedOverCount() + " test-runs]");
+  }
+
+  private static void closeOutcomeStore() {
+    if (outcomeStore == null) {
+      return;
+    }
+    System.err.println("[outcome store: " + outcomeStore.hitCount() + " hits, "
+        + outcomeStore.missCount() + " misses]");
+    try {
+      outcomeStore.evict();
+    } catch (IOException e) {
+      System.err.println("[warning: unable to evict old outcomes: " + e + "]");
+    }
+  }
+
   private static void closeRunnerOrExit(RemoteTestRunner runner) {
     try {
       runner.close();
@@ -154,23 +639,34 @@ public class Main {
   }
 
 
-  public static Collection<Integer> behaviourChangingMutants(Outcome originalOutcome,
+  public static MutantSet behaviourChangingMutants(Outcome originalOutcome,
       Map<WorkOrder, Outcome> outcomes) {
     // Given a bunch of results for a test with various mutants enabled,
     // figure out which mutants had any significant effect on the test outcome.
-    Collection<Integer> result = new HashSet<Integer>();
+    MutantSet result = new MutantSet();
     for (WorkOrder order : outcomes.keySet()) {
-      Outcome outcome = outcomes.get(order);
-      if (!(outcome.type.equals(originalOutcome.type)
-          && outcome.stackTrace.equals(originalOutcome.stackTrace))) {
+      if (changesBehaviour(originalOutcome, outcomes.get(order))) {
         result.add(order.mutantId);
       }
     }
     return result;
   }
 
+  private static boolean changesBehaviour(Outcome originalOutcome, Outcome outcome) {
+    return !(outcome.type.equals(originalOutcome.type)
+        && outcome.stackTrace.equals(originalOutcome.stackTrace));
+  }
+
+  private static MutantSet interestingMutants(MutantSet mutantsCoveredByTriggeringTests,
+      MutantSet mutantsChangingBehaviourOfTriggeringTests) {
+    // The mutants that the non-triggering tests need to be run on.
+    return (mutantsToRun != null) ? mutantsToRun
+        : ignoreMutantsUncoveredByFailingTests ? mutantsChangingBehaviourOfTriggeringTests
+            : mutantsCoveredByTriggeringTests;
+  }
+
   public static Map<WorkOrder, Outcome> runTestWithAllMutantsIntersectGiven(RemoteTestRunner runner,
-      TestMethod test, Collection<Integer> givenMutants) {
+      TestMethod test, MutantSet givenMutants) {
     /*
      * Runs the given test (a) without any mutant, to gather coverage information, and then (b) with
      * each mutant in the given set. Returns a map describing the result of every test-run thus
@@ -182,15 +678,25 @@ public class Main {
     WorkOrder workOrder = new WorkOrder(test, 0, TIMEOUT_FOR_UNMUTATED_TESTS);
     Outcome outcome = runOrExit(runner, workOrder);
     result.put(workOrder, outcome);
-    Long timeout = timeoutFromOriginalRunTime(outcome.runTime);
+
+    runTestWithCoveredMutantsIntersectGiven(runner, test, outcome, givenMutants, result);
+    return result;
+  }
+
+  private static void runTestWithCoveredMutantsIntersectGiven(RemoteTestRunner runner,
+      TestMethod test, Outcome originalOutcome, MutantSet givenMutants,
+      Map<WorkOrder, Outcome> result) {
+    // Runs the given test with each mutant in the given set that its original run covered, adding
+    // the outcomes to `result`.
+    Long timeout = timeoutFromOriginalRunTime(originalOutcome.runTime);
 
     // Figure out which mutants we need to run.
-    List<Integer> mutantsToRun = new ArrayList<Integer>(outcome.coveredMutants);
+    MutantSet mutantsToRun = originalOutcome.coveredMutants.copy();
     int originalNm = mutantsToRun.size();
     if (givenMutants != null) {
       mutantsToRun.retainAll(givenMutants);
     }
-    Collections.sort(mutantsToRun);
+    metrics.mutantsPlanned(mutantsToRun.size(), originalOutcome.runTime);
 
     { // Just logging stuff.
       int nm = mutantsToRun.size();
@@ -202,15 +708,15 @@ public class Main {
 
     // Run all those mutants.
     Long t0 = System.currentTimeMillis(); // (just logging stuff)
-    for (Integer mutantId : mutantsToRun) {
-      workOrder = new WorkOrder(test, mutantId, timeout);
-      outcome = runOrExit(runner, workOrder);
-      result.put(workOrder, outcome);
+    for (int mutantId = mutantsToRun.nextMutant(0); mutantId >= 0;
+        mutantId = mutantsToRun.nextMutant(mutantId + 1)) {
+      WorkOrder workOrder = new WorkOrder(test, mutantId, timeout);
+      result.put(workOrder, runMutantOrExit(runner, workOrder));
     }
 
     { // Just logging stuff.
       Long t1 = System.currentTimeMillis();
-      int nPass = 0, nFail = 0, nTimeout = 0, nCrash = 0;
+      int nPass = 0, nFail = 0, nTimeout = 0, nCrash = 0, nExit = 0;
       for (Outcome o : result.values()) {
         if (o.type == Outcome.Type.PASS) {
           nPass += 1;
@@ -220,19 +726,299 @@ public class Main {
           nTimeout += 1;
         } else if (o.type == Outcome.Type.CRASH) {
           nCrash += 1;
+        } else if (o.type == Outcome.Type.EXIT) {
+          nExit += 1;
         } else {
           System.err.println("[unrecognized outcome type: " + o.type.toString() + "]");
         }
       }
       System.err.println("[actually took " + ((t1 - t0) / 1000.0) + "s; " + nPass + "/" + nFail
-          + "/" + nTimeout + "/" + nCrash + " pass/fail/timeout/crash]");
+          + "/" + nTimeout + "/" + nCrash + "/" + nExit + " pass/fail/timeout/crash/exit]");
+    }
+  }
+
+  private static Outcome runUnmutatedWithinBudget(RemoteTestRunner runner, TestMethod test,
+      TimeBudget budget) {
+    // Runs the given test without mutants, unless the budget has run out. (How long that takes
+    // isn't known in advance, so this doesn't insist on there being time for the whole timeout.)
+    WorkOrder workOrder = new WorkOrder(test, 0, TIMEOUT_FOR_UNMUTATED_TESTS);
+    if (!budget.allows(workOrder, 0)) {
+      return null;
     }
+    metrics.testStarted();
+    return runOrExit(runner, workOrder);
+  }
 
+  private static Map<WorkOrder, Outcome> runWithinBudget(RemoteTestRunner runner,
+      List<TimeBudget.Candidate> candidates, TimeBudget budget) {
+    // Runs the candidates, most valuable per millisecond first, skipping the ones that might not
+    // finish before the deadline.
+    Map<WorkOrder, Outcome> result = new LinkedHashMap<WorkOrder, Outcome>();
+    for (WorkOrder workOrder : TimeBudget.byValuePerMillisecond(candidates)) {
+      if (budget.allows(workOrder, workOrder.timeout)) {
+        result.put(workOrder, runMutantOrExit(runner, workOrder));
+      } else {
+        metrics.runsSkipped(1);
+      }
+    }
     return result;
   }
 
+  private static void runWithinTimeBudget(RemoteTestRunner runner, MutantsLog mutantsLog) {
+    // Runs the same test-runs as the default mode, but in order of how much each one is expected
+    // to tell us about where the fault is, per millisecond; and stops starting new ones when they
+    // might not finish within the time budget. The rows printed so far are then a well-formed
+    // partial matrix (each test's unmutated run still comes before its mutated ones), and the
+    // skipped runs are reported.
+    TimeBudget budget = TimeBudget.fromNow(timeBudgetMillis);
+    metrics.limitTo(budget);
+    metrics.testsPlanned(runnableTestCount(triggeringTests)
+        + runnableTestCount(nontriggeringTests));
+
+    // Triggering tests come first: they decide which mutants are interesting at all. Cheap runs
+    // first.
+    Map<TestMethod, Outcome> originalOutcomes = new HashMap<TestMethod, Outcome>();
+    MutantSet mutantsCoveredByTriggeringTests = new MutantSet();
+    List<TimeBudget.Candidate> candidates = new ArrayList<TimeBudget.Candidate>();
+    for (TestMethod test : triggeringTests) {
+      if (onlyTestToRun != null && !test.equals(onlyTestToRun)) {
+        continue;
+      }
+      Outcome originalOutcome = runUnmutatedWithinBudget(runner, test, budget);
+      if (originalOutcome == null) {
+        continue;
+      }
+      originalOutcomes.put(test, originalOutcome);
+      mutantsCoveredByTriggeringTests.addAll(originalOutcome.coveredMutants);
+      MutantSet covered = originalOutcome.coveredMutants.copy();
+      if (mutantsToRun != null) {
+        covered.retainAll(mutantsToRun);
+      }
+      long timeout = timeoutFromOriginalRunTime(originalOutcome.runTime);
+      for (int id = covered.nextMutant(0); id >= 0; id = covered.nextMutant(id + 1)) {
+        candidates.add(new TimeBudget.Candidate(new WorkOrder(test, id, timeout), 1,
+            originalOutcome.runTime));
+      }
+      metrics.mutantsPlanned(covered.size(), originalOutcome.runTime);
+      metrics.deferMutants();
+    }
+    Map<WorkOrder, Outcome> outcomes = runWithinBudget(runner, candidates, budget);
+
+    // Count how many triggering tests each mutant changes the behaviour of, and note the methods
+    // those mutants are in.
+    MutantSet mutantsChangingBehaviourOfTriggeringTests = new MutantSet();
+    Map<Integer, Integer> nChangedTests = new HashMap<Integer, Integer>();
+    Set<String> implicatedMethods = new HashSet<String>();
+    for (Map.Entry<WorkOrder, Outcome> e : outcomes.entrySet()) {
+      int id = e.getKey().mutantId;
+      if (!changesBehaviour(originalOutcomes.get(e.getKey().test), e.getValue())) {
+        continue;
+      }
+      mutantsChangingBehaviourOfTriggeringTests.add(id);
+      Integer n = nChangedTests.get(id);
+      nChangedTests.put(id, n == null ? 1 : n + 1);
+      if (mutantsLog != null && mutantsLog.get(id) != null) {
+        implicatedMethods.add(mutantsLog.get(id).methodKey());
+      }
+    }
+    MutantSet interestingMutants = interestingMutants(mutantsCoveredByTriggeringTests,
+        mutantsChangingBehaviourOfTriggeringTests);
+    System.err.println("[" + interestingMutants.size() + " mutants are interesting to run passing "
+        + "tests on; " + budget.remainingMillis() / 1000 + "s left]");
+
+    // Then the non-triggering tests. Running one on a mutant matters more the more failing tests
+    // the mutant affects, and if it's in a method that one of those mutants is in (with
+    // --run-mutants-unkilled-by-failing-tests, not all interesting mutants are).
+    candidates = new ArrayList<TimeBudget.Candidate>();
+    for (TestMethod test : nontriggeringTests) {
+      if (onlyTestToRun != null && !onlyTestToRun.equals(test)) {
+        continue;
+      }
+      Outcome originalOutcome = runUnmutatedWithinBudget(runner, test, budget);
+      if (originalOutcome == null) {
+        continue;
+      }
+      MutantSet covered = originalOutcome.coveredMutants.copy();
+      covered.retainAll(interestingMutants);
+      long timeout = timeoutFromOriginalRunTime(originalOutcome.runTime);
+      for (int id = covered.nextMutant(0); id >= 0; id = covered.nextMutant(id + 1)) {
+        Integer nChanged = nChangedTests.get(id);
+        boolean implicated = mutantsLog != null && mutantsLog.get(id) != null
+            && implicatedMethods.contains(mutantsLog.get(id).methodKey());
+        double value = 1 + (nChanged == null ? 0 : nChanged) + (implicated ? 1 : 0);
+        candidates.add(new TimeBudget.Candidate(new WorkOrder(test, id, timeout), value,
+            originalOutcome.runTime));
+      }
+      metrics.mutantsPlanned(covered.size(), originalOutcome.runTime);
+      metrics.deferMutants();
+    }
+    runWithinBudget(runner, candidates, budget);
+
+    if (budget.skipped().isEmpty()) {
+      System.err.println("[finished within the time budget]");
+    } else {
+      reportSkippedOrExit(budget);
+    }
+  }
+
+  private static void runUntilFirstKill(RemoteTestRunner runner) {
+    // Finds out which mutants are killed, rather than the whole matrix: runs every test without
+    // mutants, then, for each mutant covered by any test, runs the tests that cover it (most
+    // promising first, see FirstKillSchedule) until one of them kills it. The rows printed are the
+    // ones actually run; a mutant is killed iff one of its rows differs from the test's unmutated
+    // one.
+    Map<TestMethod, Outcome> originalOutcomes = new LinkedHashMap<TestMethod, Outcome>();
+    Map<TestMethod, Long> runTimes = new HashMap<TestMethod, Long>();
+    List<TestMethod> tests = new ArrayList<TestMethod>(triggeringTests);
+    tests.addAll(nontriggeringTests);
+    metrics.testsPlanned(runnableTestCount(tests));
+    for (TestMethod test : tests) {
+      if (onlyTestToRun != null && !onlyTestToRun.equals(test)) {
+        continue;
+      }
+      metrics.testStarted();
+      Outcome originalOutcome =
+          runOrExit(runner, new WorkOrder(test, 0, TIMEOUT_FOR_UNMUTATED_TESTS));
+      metrics.mutantsPlanned(0, originalOutcome.runTime);
+      originalOutcomes.put(test, originalOutcome);
+      runTimes.put(test, originalOutcome.runTime);
+    }
+
+    // Which tests cover each mutant?
+    MutantSet mutants = new MutantSet();
+    Map<Integer, List<TestMethod>> coveringTests = new HashMap<Integer, List<TestMethod>>();
+    for (Map.Entry<TestMethod, Outcome> e : originalOutcomes.entrySet()) {
+      MutantSet covered = e.getValue().coveredMutants;
+      for (int id = covered.nextMutant(0); id >= 0; id = covered.nextMutant(id + 1)) {
+        if (mutantsToRun != null && !mutantsToRun.contains(id)) {
+          continue;
+        }
+        List<TestMethod> covering = coveringTests.get(id);
+        if (covering == null) {
+          covering = new ArrayList<TestMethod>();
+          coveringTests.put(id, covering);
+          mutants.add(id);
+        }
+        covering.add(e.getKey());
+        // (Until the mutant is killed, each of its covering tests might have to be run.)
+        metrics.runsPlanned(1, e.getValue().runTime);
+      }
+    }
+    System.err.println("[" + mutants.size() + " mutants are covered by some test]");
+
+    FirstKillSchedule schedule = new FirstKillSchedule(runTimes);
+    int nKilled = 0;
+    long nRuns = 0;
+    long nSkipped = 0;
+    for (int id = mutants.nextMutant(0); id >= 0; id = mutants.nextMutant(id + 1)) {
+      List<TestMethod> ordered = schedule.order(coveringTests.get(id));
+      for (int i = 0; i < ordered.size(); i++) {
+        TestMethod test = ordered.get(i);
+        Outcome originalOutcome = originalOutcomes.get(test);
+        Outcome outcome = runMutantOrExit(runner,
+            new WorkOrder(test, id, timeoutFromOriginalRunTime(originalOutcome.runTime)));
+        nRuns++;
+        boolean killed = changesBehaviour(originalOutcome, outcome);
+        schedule.record(test, killed);
+        if (killed) {
+          nKilled++;
+          nSkipped += ordered.size() - i - 1;
+          metrics.runsSkipped(ordered.size() - i - 1);
+          break;
+        }
+      }
+    }
+
+    System.err.println("[first-kill: " + nKilled + "/" + mutants.size() + " mutants killed; ran "
+        + nRuns + " test-runs, skipped " + nSkipped + " (" + (100.0 * nSkipped
+            / Math.max(1, nRuns + nSkipped)) + "%) of the covering ones]");
+  }
+
+  private static int runnableTestCount(Collection<TestMethod> tests) {
+    // How many of the given tests this run starts (see --only-test-to-run).
+    if (onlyTestToRun == null) {
+      return tests.size();
+    }
+    return tests.contains(onlyTestToRun) ? 1 : 0;
+  }
+
+  private static List<String> topLines(SuspiciousnessScorer scorer, int n) {
+    List<String> result = new ArrayList<String>(n);
+    for (SuspiciousnessScorer.LineScore s : scorer
+        .lineScores(SuspiciousnessScorer.Formula.METALLAXIS)) {
+      if (result.size() == n) {
+        break;
+      }
+      result.add(s.line);
+    }
+    return result;
+  }
+
+  private static void runNontriggeringTestsOnSample(RemoteTestRunner runner,
+      MutantSet interestingMutants, MutantsLog mutantsLog) {
+    // Runs the non-triggering tests on a sample of the interesting mutants (see MutantSampler). In
+    // adaptive mode, the sample then doubles, round after round, until the most suspicious lines
+    // stop changing or every interesting mutant is in it. Each round only runs the mutants that the
+    // previous rounds didn't, reusing the tests' original runs from the first round.
+    MutantSampler sampler =
+        new MutantSampler(interestingMutants, mutantsLog, sampleStrata, sampleSeed);
+    System.err.println("[sampling from " + sampler.populationSize() + " mutants in "
+        + sampler.stratumCount() + " strata]");
+
+    Map<TestMethod, Outcome> originalOutcomes = new LinkedHashMap<TestMethod, Outcome>();
+    MutantSet sample = new MutantSet();
+    List<String> previousTop = null;
+    double fraction = sampleFraction;
+    for (int round = 1;; round++) {
+      MutantSet newMutants = sampler.sample(fraction);
+      newMutants.removeAll(sample);
+      sample.addAll(newMutants);
+      System.err.println("[sampling round " + round + ": " + (100 * fraction)
+          + "% of each stratum, " + newMutants.size() + " new mutants, " + sample.size()
+          + " in all]");
+      if (round > 1) {
+        // (The first round's tests were planned with the triggering ones.)
+        metrics.testsPlanned(runnableTestCount(nontriggeringTests));
+      }
+
+      int nTestsRun = 0;
+      for (TestMethod test : nontriggeringTests) {
+        if (onlyTestToRun != null && !onlyTestToRun.equals(test)) {
+          continue;
+        }
+        System.err.println("[round " + round + ", starting test " + (++nTestsRun) + "/"
+            + nontriggeringTests.size() + ": " + test + "]");
+        metrics.testStarted();
+        Outcome originalOutcome = originalOutcomes.get(test);
+        if (originalOutcome == null) {
+          Map<WorkOrder, Outcome> outcomes =
+              runTestWithAllMutantsIntersectGiven(runner, test, newMutants);
+          originalOutcomes.put(test,
+              outcomes.get(new WorkOrder(test, 0, TIMEOUT_FOR_UNMUTATED_TESTS)));
+        } else {
+          runTestWithCoveredMutantsIntersectGiven(runner, test, originalOutcome, newMutants,
+              new LinkedHashMap<WorkOrder, Outcome>());
+        }
+      }
+
+      if (!sampleAdaptive || fraction >= 1) {
+        break;
+      }
+      scorer.restrictTo(sample);
+      List<String> top = topLines(scorer, SAMPLE_STABLE_TOP);
+      if (top.equals(previousTop)) {
+        System.err.println("[top " + top.size() + " lines unchanged; sample is stable]");
+        break;
+      }
+      previousTop = top;
+      fraction = Math.min(1, 2 * fraction);
+    }
+
+    writeSampleOrExit(sample);
+  }
+
   private static void parseArgs(String[] argArray) {
-    List<String> argv = Arrays.asList(argArray);
+    List<String> argv = new ArrayList<String>(Arrays.asList(argArray));
 
     while (argv.get(0).startsWith("--")) {
       switch (argv.get(0)) {
@@ -254,13 +1040,184 @@ public class Main {
           argv.remove(0);
           break;
         case "--mutants-to-run":
-          mutantsToRun = new HashSet<Integer>();
-          for (String mut : Arrays.asList(argv.get(1).split(","))) {
-            mutantsToRun.add(Integer.valueOf(mut));
+          mutantsToRun = MutantSet.fromString(argv.get(1).replace(',', ' '));
+          argv.remove(0);
+          argv.remove(0);
+          break;
+        case "--dictionary-output":
+          dictionary = new OutcomeDictionary();
+          argv.remove(0);
+          break;
+        case "--mutants-log":
+          mutantsLogPath = argv.get(1);
+          argv.remove(0);
+          argv.remove(0);
+          break;
+        case "--sample-fraction":
+          sampleFraction = Double.parseDouble(argv.get(1));
+          argv.remove(0);
+          argv.remove(0);
+          break;
+        case "--sample-strata":
+          sampleStrata = MutantSampler.Strata.valueOf(argv.get(1).toUpperCase());
+          argv.remove(0);
+          argv.remove(0);
+          break;
+        case "--sample-seed":
+          sampleSeed = Long.parseLong(argv.get(1));
+          argv.remove(0);
+          argv.remove(0);
+          break;
+        case "--sample-adaptive":
+          sampleAdaptive = true;
+          argv.remove(0);
+          break;
+        case "--sample-output":
+          sampleOutputPath = argv.get(1);
+          argv.remove(0);
+          argv.remove(0);
+          break;
+        case "--time-budget":
+          timeBudgetMillis = 1000 * Long.parseLong(argv.get(1));
+          argv.remove(0);
+          argv.remove(0);
+          break;
+        case "--skipped-output":
+          skippedOutputPath = argv.get(1);
+          argv.remove(0);
+          argv.remove(0);
+          break;
+        case "--first-kill":
+          firstKill = true;
+          argv.remove(0);
+          break;
+        case "--outcome-store":
+          outcomeStorePath = argv.get(1);
+          argv.remove(0);
+          argv.remove(0);
+          break;
+        case "--outcome-store-max-mb":
+          outcomeStoreMaxBytes = 1024L * 1024 * Long.parseLong(argv.get(1));
+          argv.remove(0);
+          argv.remove(0);
+          break;
+        case "--previous-matrix":
+          previousMatrixPath = argv.get(1);
+          argv.remove(0);
+          argv.remove(0);
+          break;
+        case "--previous-classpath":
+          previousClasspath = argv.get(1);
+          argv.remove(0);
+          argv.remove(0);
+          break;
+        case "--previous-mutants-log":
+          previousMutantsLogPath = argv.get(1);
+          argv.remove(0);
+          argv.remove(0);
+          break;
+        case "--reduce-subsumed":
+          reduceSubsumedPath = argv.get(1);
+          argv.remove(0);
+          argv.remove(0);
+          break;
+        case "--verify-reduced":
+          verifyReducedFraction = Double.parseDouble(argv.get(1));
+          argv.remove(0);
+          argv.remove(0);
+          break;
+        case "--max-leaked-threads":
+          maxLeakedThreads = Integer.parseInt(argv.get(1));
+          argv.remove(0);
+          argv.remove(0);
+          break;
+        case "--max-leaked-cpu-seconds":
+          maxLeakedCpuMillis = (long) (1000 * Double.parseDouble(argv.get(1)));
+          argv.remove(0);
+          argv.remove(0);
+          break;
+        case "--transport":
+          transport = argv.get(1);
+          if (!Arrays.asList(Transport.NAMES).contains(transport)) {
+            System.err.println("unknown transport: " + transport);
+            System.exit(1);
+          }
+          argv.remove(0);
+          argv.remove(0);
+          break;
+        case "--output-digest":
+          outputDigest = argv.get(1);
+          try {
+            DeadEndDigestOutputStream.createDigest(outputDigest);
+          } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
           }
           argv.remove(0);
           argv.remove(0);
           break;
+        case "--output-digest-max-bytes":
+          outputDigestMaxBytes = Long.parseLong(argv.get(1));
+          argv.remove(0);
+          argv.remove(0);
+          break;
+        case "--recycle-after-tests":
+          recycleAfterTests = Integer.parseInt(argv.get(1));
+          argv.remove(0);
+          argv.remove(0);
+          break;
+        case "--recycle-memory-fraction":
+          recycleMemoryFraction = Double.parseDouble(argv.get(1));
+          argv.remove(0);
+          argv.remove(0);
+          break;
+        case "--recycle-gc-overhead":
+          recycleGcOverhead = Double.parseDouble(argv.get(1));
+          argv.remove(0);
+          argv.remove(0);
+          break;
+        case "--flight-recording":
+          flightRecording = argv.get(1);
+          argv.remove(0);
+          argv.remove(0);
+          break;
+        case "--metrics-address":
+          metricsAddress = argv.get(1);
+          argv.remove(0);
+          argv.remove(0);
+          break;
+        case "--worker-java":
+          workerProfile.java = argv.get(1);
+          argv.remove(0);
+          argv.remove(0);
+          break;
+        case "--worker-jvm-options":
+          workerProfile.options.addAll(Arrays.asList(argv.get(1).trim().split("\\s+")));
+          workerProfile.options.remove("");
+          argv.remove(0);
+          argv.remove(0);
+          break;
+        case "--worker-heap-mb":
+          workerProfile.heapMegabytes = Long.parseLong(argv.get(1));
+          argv.remove(0);
+          argv.remove(0);
+          break;
+        case "--worker-cds-dir":
+          workerProfile.cdsDirectory = argv.get(1).equals("none") ? null : new File(argv.get(1));
+          cdsDirectoryGiven = true;
+          argv.remove(0);
+          argv.remove(0);
+          break;
+        case "--worker-cpus":
+          workerProfile.cpus = cpuListOrExit(argv.get(1));
+          argv.remove(0);
+          argv.remove(0);
+          break;
+        case "--coordinator-cpus":
+          coordinatorCpus = cpuListOrExit(argv.get(1));
+          argv.remove(0);
+          argv.remove(0);
+          break;
         case "--":
           break;
         default:
@@ -273,6 +1230,43 @@ public class Main {
       System.err.println("usage: " + USAGE);
       System.exit(1);
     }
+    if (workerProfile.cpus != null && coordinatorCpus != null
+        && CpuAffinity.overlap(workerProfile.cpus, coordinatorCpus)) {
+      System.err.println("[warning: --worker-cpus and --coordinator-cpus overlap]");
+    }
+    if (!cdsDirectoryGiven) {
+      workerProfile.cdsDirectory = new File(System.getProperty("user.home"),
+          ".cache" + File.separator + "killmap" + File.separator + "cds");
+    }
+    if (sampleFraction != null && !(sampleFraction > 0 && sampleFraction <= 1)) {
+      System.err.println("--sample-fraction must be in (0,1]");
+      System.exit(1);
+    }
+    if (sampleFraction != null && mutantsLogPath == null
+        && (sampleAdaptive || sampleStrata != MutantSampler.Strata.UNIFORM)) {
+      System.err.println("stratified or adaptive sampling needs --mutants-log");
+      System.exit(1);
+    }
+    if (timeBudgetMillis != null && sampleFraction != null) {
+      System.err.println("--time-budget and --sample-fraction can't be used together");
+      System.exit(1);
+    }
+    if (outcomeStorePath != null && mutantsLogPath == null) {
+      System.err.println("--outcome-store needs --mutants-log");
+      System.exit(1);
+    }
+    if (previousMatrixPath != null && (previousClasspath == null || mutantsLogPath == null)) {
+      System.err.println("--previous-matrix needs --previous-classpath and --mutants-log");
+      System.exit(1);
+    }
+    if (reduceSubsumedPath != null && mutantsLogPath == null) {
+      System.err.println("--reduce-subsumed needs --mutants-log");
+      System.exit(1);
+    }
+    if (firstKill && (timeBudgetMillis != null || sampleFraction != null)) {
+      System.err.println("--first-kill can't be used with --time-budget or --sample-fraction");
+      System.exit(1);
+    }
 
     triggeringTests = getTriggeringTestsOrExit(argv.get(0));
     nontriggeringTests = getTestsOrExit(argv.get(1));
@@ -287,6 +1281,10 @@ public class Main {
 
     System.err.println("Only test to run: " + onlyTestToRun);
     System.err.println("Only considering mutants: " + mutantsToRun);
+    if (sampleFraction != null) {
+      System.err.println("Sampling: " + sampleFraction + ", " + sampleStrata + ", seed "
+          + sampleSeed + (sampleAdaptive ? ", adaptive" : ""));
+    }
   }
 
   /**
@@ -312,21 +1310,71 @@ public class Main {
    */
   public static void main(String... args) {
 
+    // `java -jar killmap.jar score ...` runs the scoring stage instead (see killmap.score.Score).
+    if (args.length > 0 && args[0].equals("score")) {
+      Score.main(Arrays.copyOfRange(args, 1, args.length));
+      return;
+    }
+    // ... and `java -jar killmap.jar phases ...` sums up flight recordings (see PhaseSummary).
+    if (args.length > 0 && args[0].equals("phases")) {
+      PhaseSummary.main(Arrays.copyOfRange(args, 1, args.length));
+      return;
+    }
+
     System.err.println("Args: " + Arrays.toString(args));
     parseArgs(args);
 
+    if (coordinatorCpus != null || workerProfile.cpus != null) {
+      pinToCpusOrExit();
+    }
+    if (flightRecording != null) {
+      startFlightRecordingOrExit();
+    }
+    if (metricsAddress != null) {
+      serveMetricsOrExit();
+    }
+
     // set env variable KILLMAP_CLASSPATH
     Main.setEnv("KILLMAP_CLASSPATH", System.getProperty("java.class.path"));
 
+    MutantsLog mutantsLog = mutantsLogPath == null ? null : loadMutantsLogOrExit(mutantsLogPath);
+    if (sampleFraction != null && sampleAdaptive) {
+      scorer = new SuspiciousnessScorer(mutantsLog);
+    }
+    if (outcomeStorePath != null) {
+      outcomeStore = openOutcomeStoreOrExit(mutantsLog);
+    }
+    if (previousMatrixPath != null) {
+      previousMatrix = loadPreviousMatrixOrExit(mutantsLog);
+    }
+    if (reduceSubsumedPath != null) {
+      reducer = loadReducerOrExit(mutantsLog);
+    }
+
     RemoteTestRunner runner = createRunnerOrExit();
 
+    if (timeBudgetMillis != null || firstKill) {
+      if (firstKill) {
+        runUntilFirstKill(runner);
+      } else {
+        runWithinTimeBudget(runner, mutantsLog);
+      }
+      closeRunnerOrExit(runner);
+      reportReduced();
+      reportPreviousMatrix();
+      closeOutcomeStore();
+      System.err.println("Completed successfully!");
+      System.exit(0);
+    }
+
     // (just for logging)
     Integer nTests = triggeringTests.size() + nontriggeringTests.size();
     Integer nTestsRun = 0;
+    metrics.testsPlanned(onlyTestToRun != null ? 1 : nTests);
 
     // Run the triggering tests and determine which mutants change their behaviour.
-    Collection<Integer> mutantsCoveredByTriggeringTests = new HashSet<Integer>();
-    Collection<Integer> mutantsChangingBehaviourOfTriggeringTests = new HashSet<Integer>();
+    MutantSet mutantsCoveredByTriggeringTests = new MutantSet();
+    MutantSet mutantsChangingBehaviourOfTriggeringTests = new MutantSet();
     for (TestMethod test : triggeringTests) {
       if (onlyTestToRun != null && !test.equals(onlyTestToRun)) {
         continue;
@@ -334,6 +1382,7 @@ public class Main {
       // For each triggering test, run it with all the mutants; figure out which mutants change its
       // behaviour, and add them to the set.
       System.err.println("[starting test " + (++nTestsRun) + "/" + nTests + ": " + test + "]");
+      metrics.testStarted();
       Map<WorkOrder, Outcome> outcomes = runTestWithAllMutantsIntersectGiven(runner, test, null);
       Outcome originalOutcome = outcomes.get(new WorkOrder(test, 0, TIMEOUT_FOR_UNMUTATED_TESTS));
       System.err.println("[covered " + originalOutcome.coveredMutants.size() + " mutants]");
@@ -345,23 +1394,30 @@ public class Main {
     System.err.println("[" + mutantsChangingBehaviourOfTriggeringTests.size()
         + " mutants change behaviour of triggering tests]");
 
-    Collection<Integer> interestingMutants = (mutantsToRun != null) ? mutantsToRun
-        : ignoreMutantsUncoveredByFailingTests ? mutantsChangingBehaviourOfTriggeringTests
-            : mutantsCoveredByTriggeringTests;
+    MutantSet interestingMutants = interestingMutants(mutantsCoveredByTriggeringTests,
+        mutantsChangingBehaviourOfTriggeringTests);
 
     System.err.println(
         "[" + interestingMutants.size() + " mutants are interesting to run passing tests on]");
 
-    // Run the non-triggering tests on all necessary mutants.
-    for (TestMethod test : nontriggeringTests) {
-      if (onlyTestToRun != null && !onlyTestToRun.equals(test)) {
-        continue;
+    // Run the non-triggering tests on all necessary mutants (or on a sample of them).
+    if (sampleFraction != null) {
+      runNontriggeringTestsOnSample(runner, interestingMutants, mutantsLog);
+    } else {
+      for (TestMethod test : nontriggeringTests) {
+        if (onlyTestToRun != null && !onlyTestToRun.equals(test)) {
+          continue;
+        }
+        System.err.println("[starting test " + (++nTestsRun) + "/" + nTests + ": " + test + "]");
+        metrics.testStarted();
+        runTestWithAllMutantsIntersectGiven(runner, test, interestingMutants);
       }
-      System.err.println("[starting test " + (++nTestsRun) + "/" + nTests + ": " + test + "]");
-      runTestWithAllMutantsIntersectGiven(runner, test, interestingMutants);
     }
 
     closeRunnerOrExit(runner);
+    reportReduced();
+    reportPreviousMatrix();
+    closeOutcomeStore();
 
     System.err.println("Completed successfully!");
     System.exit(0);
@@ -0,0 +1,336 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import killmap.runners.RemoteTestRunner;
+import killmap.runners.communication.Outcome;
+import killmap.runners.communication.WorkOrder;
+
+/**
+ * Live statistics about a run, for dashboards to follow it by: rows produced by outcome type, where
+ * outcomes came from (cache hits by source, and misses, which had to be run), how long the work
+ * orders that were run took, how many workers were started and why they had to be replaced, and an
+ * estimate of how long the rest of the run will take.
+ *
+ * They're served in Prometheus' text format by `serve` (see `--metrics-address` in Main).
+ *
+ * The estimate is made from what's known at the time: the current test has its remaining covered
+ * mutants to run, each expected to take as long as the test's unmutated run plus the average
+ * overhead per work order seen so far (the time a work order took, minus the test's own run time);
+ * each test not yet started is expected to take as long as the tests started so far, on average.
+ * The other kinds of run plan their work differently, and say so as they go: --sample-fraction
+ * plans each round's tests when the round starts; --time-budget runs each test's mutants later,
+ * all tests' together, so they stay planned after the next test starts (`deferMutants`), and the
+ * estimate is never more than what's left of the budget; and --first-kill plans, once every test
+ * has run without mutants, every covering test of every mutant, dropping the rest of a mutant's
+ * tests once one kills it (so until then, the estimate is an upper bound).
+ */
+public class Metrics {
+
+  // Upper bounds of the latency histogram's buckets, in seconds.
+  private static final double[] LATENCY_BUCKETS =
+      {0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 120};
+
+  private static class Histogram {
+    final long[] counts = new long[LATENCY_BUCKETS.length]; // (not cumulative)
+
+    long count = 0;
+
+    double sum = 0;
+
+    void observe(double seconds) {
+      for (int i = 0; i < LATENCY_BUCKETS.length; i++) {
+        if (seconds <= LATENCY_BUCKETS[i]) {
+          counts[i]++;
+          break;
+        }
+      }
+      count++;
+      sum += seconds;
+    }
+  }
+
+  private final long startMillis;
+
+  private final Map<String, Long> rows = new TreeMap<String, Long>(); // by outcome type
+
+  private final Map<String, Long> cacheHits = new TreeMap<String, Long>(); // by source
+
+  private long cacheMisses = 0;
+
+  private final Map<String, Histogram> latencies = new TreeMap<String, Histogram>(); // by type
+
+  private long nRuns = 0;
+
+  private long totalOverheadMillis = 0;
+
+  private RemoteTestRunner runner = null;
+
+  // For the estimate:
+  private int nTestsPlanned = 0; // 0 if there's no estimate
+
+  private int nTestsStarted = 0;
+
+  private int nTestsPlannedOut = 0; // started, and with their mutants known
+
+  private long sumOrdersPlannedOut = 0; // over those tests
+
+  private long sumOrderBaselineMillisPlannedOut = 0; // their work orders times their run times
+
+  private int currentMutants = 0;
+
+  private int currentMutantsDone = 0;
+
+  private long currentBaselineMillis = 0;
+
+  private long pendingRuns = 0; // planned, but not part of the current test's mutants
+
+  private long pendingBaselineMillis = 0; // their run times without mutants, summed
+
+  private TimeBudget budget = null;
+
+  public Metrics() {
+    startMillis = System.currentTimeMillis();
+  }
+
+  private static void increment(Map<String, Long> counts, String key) {
+    Long n = counts.get(key);
+    counts.put(key, n == null ? 1 : n + 1);
+  }
+
+  public synchronized void watch(RemoteTestRunner runner_) {
+    // Reports the given runner's worker starts and replacements too.
+    runner = runner_;
+  }
+
+  public synchronized void rowPrinted(WorkOrder workOrder, Outcome outcome) {
+    increment(rows, outcome.type.toString());
+    if (workOrder.mutantId == 0) {
+      return;
+    }
+    if (currentMutantsDone < currentMutants || pendingRuns == 0) {
+      currentMutantsDone++;
+    } else {
+      dropPendingRuns(1);
+    }
+  }
+
+  public synchronized void cacheHit(String source) {
+    // source: "partial_run", "previous_matrix" or "outcome_store".
+    increment(cacheHits, source);
+  }
+
+  public synchronized void ran(Outcome outcome, long millis) {
+    // Records a work order that had to be run (a cache miss), and how long it took, overheads and
+    // all.
+    cacheMisses++;
+    Histogram histogram = latencies.get(outcome.type.toString());
+    if (histogram == null) {
+      histogram = new Histogram();
+      latencies.put(outcome.type.toString(), histogram);
+    }
+    histogram.observe(millis / 1000.0);
+    nRuns++;
+    totalOverheadMillis += Math.max(0, millis - outcome.runTime);
+  }
+
+  public synchronized void testsPlanned(int n) {
+    // n more tests are to be started (usually all at once, at the beginning).
+    nTestsPlanned += n;
+  }
+
+  public synchronized void testStarted() {
+    nTestsStarted++;
+    currentMutants = 0;
+    currentMutantsDone = 0;
+    currentBaselineMillis = 0;
+  }
+
+  public synchronized void mutantsPlanned(int nMutants, long baselineMillis) {
+    // The current test is to be run with nMutants mutants, and took baselineMillis without any.
+    currentMutants = nMutants;
+    currentMutantsDone = 0;
+    currentBaselineMillis = baselineMillis;
+    nTestsPlannedOut++;
+    sumOrdersPlannedOut += nMutants + 1;
+    sumOrderBaselineMillisPlannedOut += (nMutants + 1) * baselineMillis;
+  }
+
+  public synchronized void deferMutants() {
+    // The current test's remaining mutants will be run after other tests have started.
+    runsPlanned(Math.max(0, currentMutants - currentMutantsDone), currentBaselineMillis);
+    currentMutants = 0;
+    currentMutantsDone = 0;
+  }
+
+  public synchronized void runsPlanned(long nRuns, long baselineMillis) {
+    // nRuns more mutated test-runs are to be done, apart from the current test's; their tests took
+    // baselineMillis each, on average, without mutants.
+    pendingRuns += nRuns;
+    pendingBaselineMillis += nRuns * baselineMillis;
+  }
+
+  public synchronized void runsSkipped(long nRuns) {
+    // nRuns of the test-runs planned by `runsPlanned` won't be done after all.
+    dropPendingRuns(nRuns);
+  }
+
+  private void dropPendingRuns(long nRuns) {
+    // (Their run times aren't known one by one: each one is taken to be the average.)
+    nRuns = Math.min(nRuns, pendingRuns);
+    if (nRuns > 0) {
+      pendingBaselineMillis -= pendingBaselineMillis / pendingRuns * nRuns;
+      pendingRuns -= nRuns;
+    }
+    if (pendingRuns == 0) {
+      pendingBaselineMillis = 0;
+    }
+  }
+
+  public synchronized void limitTo(TimeBudget budget_) {
+    // The run stops when the given budget runs out, so the estimate never goes beyond that.
+    budget = budget_;
+  }
+
+  public synchronized double etaSeconds() {
+    // Returns NaN if there's no estimate (yet).
+    double estimate = Double.NaN;
+    if (nTestsPlanned != 0 && nTestsPlannedOut != 0) {
+      double overhead = nRuns == 0 ? 0 : (double) totalOverheadMillis / nRuns;
+      double current = Math.max(0, currentMutants - currentMutantsDone)
+          * (currentBaselineMillis + overhead) + pendingBaselineMillis + pendingRuns * overhead;
+      double perTest =
+          (sumOrderBaselineMillisPlannedOut + sumOrdersPlannedOut * overhead) / nTestsPlannedOut;
+      estimate = (current + Math.max(0, nTestsPlanned - nTestsStarted) * perTest) / 1000;
+    }
+    if (budget != null) {
+      double left = budget.remainingMillis() / 1000.0;
+      return Double.isNaN(estimate) ? left : Math.min(estimate, left);
+    }
+    return estimate;
+  }
+
+  public synchronized String render() {
+    // Returns the metrics in Prometheus' text exposition format.
+    StringBuilder out = new StringBuilder();
+    double elapsed = (System.currentTimeMillis() - startMillis) / 1000.0;
+    long nRows = 0;
+    header(out, "killmap_work_orders_total", "counter", "Rows produced, by outcome type.");
+    for (Map.Entry<String, Long> e : rows.entrySet()) {
+      sample(out, "killmap_work_orders_total{outcome=\"" + e.getKey() + "\"}", e.getValue());
+      nRows += e.getValue();
+    }
+    header(out, "killmap_work_orders_per_second", "gauge", "Rows produced per second, so far.");
+    sample(out, "killmap_work_orders_per_second", elapsed == 0 ? 0 : nRows / elapsed);
+
+    long nHits = 0;
+    header(out, "killmap_cache_hits_total", "counter",
+        "Outcomes found without running, by source.");
+    for (Map.Entry<String, Long> e : cacheHits.entrySet()) {
+      sample(out, "killmap_cache_hits_total{source=\"" + e.getKey() + "\"}", e.getValue());
+      nHits += e.getValue();
+    }
+    header(out, "killmap_cache_misses_total", "counter", "Work orders that had to be run.");
+    sample(out, "killmap_cache_misses_total", cacheMisses);
+    header(out, "killmap_cache_hit_ratio", "gauge", "Share of lookups that were hits.");
+    sample(out, "killmap_cache_hit_ratio",
+        nHits + cacheMisses == 0 ? Double.NaN : (double) nHits / (nHits + cacheMisses));
+
+    header(out, "killmap_work_order_duration_seconds", "histogram",
+        "How long work orders that were run took, overheads included, by outcome type.");
+    for (Map.Entry<String, Histogram> e : latencies.entrySet()) {
+      String name = "killmap_work_order_duration_seconds";
+      String outcome = "outcome=\"" + e.getKey() + "\"";
+      Histogram h = e.getValue();
+      long cumulative = 0;
+      for (int i = 0; i < LATENCY_BUCKETS.length; i++) {
+        cumulative += h.counts[i];
+        sample(out, name + "_bucket{" + outcome + ",le=\"" + format(LATENCY_BUCKETS[i]) + "\"}",
+            cumulative);
+      }
+      sample(out, name + "_bucket{" + outcome + ",le=\"+Inf\"}", h.count);
+      sample(out, name + "_sum{" + outcome + "}", h.sum);
+      sample(out, name + "_count{" + outcome + "}", h.count);
+    }
+
+    if (runner != null) {
+      header(out, "killmap_workers_started_total", "counter", "Worker JVMs started.");
+      sample(out, "killmap_workers_started_total", runner.workersStarted());
+      header(out, "killmap_worker_replacements_total", "counter",
+          "Workers that had to be replaced, by cause.");
+      for (Map.Entry<String, Long> e : runner.replacementCounts().entrySet()) {
+        sample(out, "killmap_worker_replacements_total{cause=\"" + e.getKey() + "\"}",
+            e.getValue());
+      }
+    }
+
+    header(out, "killmap_tests_planned", "gauge", "Tests this run is to run.");
+    sample(out, "killmap_tests_planned", nTestsPlanned);
+    header(out, "killmap_tests_started", "gauge", "Tests started so far.");
+    sample(out, "killmap_tests_started", nTestsStarted);
+    header(out, "killmap_elapsed_seconds", "gauge", "Time since the run started.");
+    sample(out, "killmap_elapsed_seconds", elapsed);
+    header(out, "killmap_eta_seconds", "gauge", "Estimated time until the run is done.");
+    sample(out, "killmap_eta_seconds", etaSeconds());
+    return out.toString();
+  }
+
+  private static void header(StringBuilder out, String name, String type, String help) {
+    out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+  }
+
+  private static void sample(StringBuilder out, String name, double value) {
+    out.append(name).append(' ').append(format(value)).append('\n');
+  }
+
+  private static String format(double value) {
+    if (Double.isNaN(value)) {
+      return "NaN";
+    }
+    if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+      return Long.toString((long) value);
+    }
+    return Double.toString(value);
+  }
+
+  public HttpServer serve(InetSocketAddress address) throws IOException {
+    // Serves the metrics at http://<address>/metrics, from a background thread.
+    HttpServer server = HttpServer.create(address, 0);
+    server.createContext("/metrics", new HttpHandler() {
+      public void handle(HttpExchange exchange) throws IOException {
+        byte[] body = render().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+          out.write(body);
+        }
+      }
+    });
+    server.start();
+    return server;
+  }
+}
@@ -0,0 +1,155 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import killmap.runners.communication.Outcome;
+
+/**
+ * Gives every distinct digest and stack trace a small integer id.
+ *
+ * Across a whole matrix, the same few hundred digests and stack traces are repeated millions of
+ * times. An OutcomeDictionary (a) interns them, so that every Outcome holding "the same" stack
+ * trace holds the same String instance; and (b) in dictionary-output mode, prints each of them
+ * only once, as a dictionary entry
+ *   !<id>,<string>
+ * printed just before the first row that uses it. Rows then hold the reference "@<id>" instead of
+ * the string itself. Empty digests/stack traces are never put in the dictionary.
+ *
+ * The same class reads such output back: feed it every entry line (see `define`), then `decode`
+ * the Outcomes parsed from the rows. An entry applies to the rows after it, until an entry with the
+ * same id comes along, so concatenated outputs (e.g. by killmap-combiner.sh) still decode
+ * correctly.
+ */
+public class OutcomeDictionary {
+
+  public static final String ENTRY_PREFIX = "!";
+
+  public static final String REFERENCE_PREFIX = "@";
+
+  private final Map<String, Integer> ids;
+
+  private final List<String> values;
+
+  private final BitSet printed; // ids whose entry has already been printed
+
+  public OutcomeDictionary() {
+    ids = new HashMap<String, Integer>();
+    values = new ArrayList<String>();
+    printed = new BitSet();
+  }
+
+  public int size() {
+    return values.size();
+  }
+
+  private int idOf(String s) {
+    Integer id = ids.get(s);
+    if (id == null) {
+      id = values.size();
+      ids.put(s, id);
+      values.add(s);
+    }
+    return id;
+  }
+
+  public String intern(String s) {
+    // Returns the canonical instance of the given string.
+    if (s.isEmpty()) {
+      return s;
+    }
+    return values.get(idOf(s));
+  }
+
+  public void intern(Outcome outcome) {
+    outcome.digest = intern(outcome.digest);
+    outcome.stackTrace = intern(outcome.stackTrace);
+  }
+
+  private String reference(String s, PrintStream entryStream) {
+    // Returns the reference to put in a row in place of `s`, first printing the dictionary entry
+    // for `s` if it hasn't been printed yet.
+    if (s.isEmpty()) {
+      return s;
+    }
+    int id = idOf(s);
+    if (!printed.get(id)) {
+      entryStream.println(ENTRY_PREFIX + id + "," + s);
+      printed.set(id);
+    }
+    return REFERENCE_PREFIX + id;
+  }
+
+  public Outcome encode(Outcome outcome, PrintStream entryStream) {
+    // Returns a copy of the given outcome whose digest and stack trace are replaced by references,
+    // printing any dictionary entries that those references need to entryStream.
+    Outcome result = outcome.copy();
+    result.digest = reference(outcome.digest, entryStream);
+    result.stackTrace = reference(outcome.stackTrace, entryStream);
+    return result;
+  }
+
+  public static boolean isEntry(String line) {
+    return line.startsWith(ENTRY_PREFIX);
+  }
+
+  public boolean define(String line) {
+    // Parses a dictionary entry line and remembers it. Returns whether `line` was a well-formed
+    // entry.
+    if (!isEntry(line)) {
+      return false;
+    }
+    String[] id_value = line.substring(ENTRY_PREFIX.length()).split(",", 2);
+    if (id_value.length != 2 || !id_value[0].matches("[0-9]+")) {
+      return false;
+    }
+    int id = Integer.parseInt(id_value[0]);
+    while (values.size() <= id) {
+      values.add(null);
+    }
+    values.set(id, id_value[1]);
+    ids.put(id_value[1], id);
+    return true;
+  }
+
+  public String resolve(String field) {
+    // Inverse of `reference`. Fields that aren't references to a known entry are left untouched.
+    if (!field.startsWith(REFERENCE_PREFIX)) {
+      return field;
+    }
+    String idStr = field.substring(REFERENCE_PREFIX.length());
+    if (!idStr.matches("[0-9]+")) {
+      return field;
+    }
+    int id = Integer.parseInt(idStr);
+    if (id >= values.size() || values.get(id) == null) {
+      return field;
+    }
+    return values.get(id);
+  }
+
+  public void decode(Outcome outcome) {
+    // Inverse of `encode`: replaces references in the given outcome with the strings they refer to.
+    outcome.digest = resolve(outcome.digest);
+    outcome.stackTrace = resolve(outcome.stackTrace);
+  }
+}
@@ -0,0 +1,331 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import killmap.mutants.Mutant;
+import killmap.mutants.MutantsLog;
+import killmap.runners.communication.MutantSet;
+import killmap.runners.communication.Outcome;
+import killmap.runners.communication.WorkOrder;
+
+/**
+ * A persistent, size-bounded store of test-run outcomes, shared between runs (e.g. for nearby
+ * versions of the same project).
+ *
+ * Unlike TestRunCache, which replays one previous run in order, an OutcomeStore is keyed by what
+ * determines an outcome: the test (its name and the bytecode of its class), the mutant (its line in
+ * mutants.log, minus the id, which changes between versions), the timeout, and the bytecode of the
+ * classes the test covers (the classes that mutants.log puts its covered mutants in). Class bytes
+ * are read through the system class loader, i.e. from the classpath killmap runs with.
+ *
+ * Which classes a test covers is only known once it has run without mutants, so entries for those
+ * runs are keyed without the classes, and list the covered classes and their hashes instead; they
+ * are only used if those classes are unchanged. Runs with a mutant are only looked up or stored
+ * after the test's unmutated run. Likewise, an entry lists the mutants its run covered by their
+ * signatures (see Mutant.signature), not their ids, and they're renumbered for the mutants.log at
+ * hand when the entry is read; if one of them isn't in it, the entry isn't used.
+ *
+ * The store is a directory with one file per entry, in subdirectories named by the first two hex
+ * digits of the key. Entries are written to a temporary file and renamed into place, so several
+ * processes can use one store at once without ever reading half an entry. A hit touches the
+ * entry's modification time, and `evict` deletes the least recently used entries when the store
+ * outgrows its size limit (holding a lock file while it does, so only one process evicts at a
+ * time). Crashes aren't stored: they usually say more about the worker than about the test.
+ */
+public class OutcomeStore {
+
+  private static final String LOCK_FILE_NAME = ".lock";
+
+  private final File directory;
+
+  private final long maxBytes;
+
+  private final MutantsLog mutantsLog;
+
+  private final Map<String, List<Integer>> idsBySignature; // in increasing order of id
+
+  private final ClassHasher classes;
+
+  private final Map<TestMethod, String> coveredClassesHashes; // from each test's unmutated run
+
+  private long bytesWrittenSinceEviction;
+
+  private long nHits;
+
+  private long nMisses;
+
+  public OutcomeStore(File directory_, long maxBytes_, MutantsLog mutantsLog_) throws IOException {
+    directory = directory_;
+    maxBytes = maxBytes_;
+    mutantsLog = mutantsLog_;
+    idsBySignature = new HashMap<String, List<Integer>>();
+    for (Mutant m : mutantsLog.mutants()) {
+      List<Integer> ids = idsBySignature.get(m.signature());
+      if (ids == null) {
+        ids = new ArrayList<Integer>();
+        idsBySignature.put(m.signature(), ids);
+      }
+      ids.add(m.id);
+    }
+    classes = new ClassHasher(ClassLoader.getSystemClassLoader());
+    coveredClassesHashes = new HashMap<TestMethod, String>();
+    bytesWrittenSinceEviction = 0;
+    nHits = 0;
+    nMisses = 0;
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("unable to create " + directory);
+    }
+  }
+
+  public long hitCount() {
+    return nHits;
+  }
+
+  public long missCount() {
+    return nMisses;
+  }
+
+  private String coveredClasses(MutantSet coveredMutants) {
+    // Lists the classes the given mutants are in, with their hashes: "Class=hash Class=hash ...".
+    TreeSet<String> classNames = new TreeSet<String>();
+    for (int id = coveredMutants.nextMutant(0); id >= 0; id = coveredMutants.nextMutant(id + 1)) {
+      Mutant m = mutantsLog.get(id);
+      if (m != null) {
+        classNames.add(m.className);
+      }
+    }
+    StringBuilder sb = new StringBuilder();
+    for (String className : classNames) {
+      sb.append(sb.length() == 0 ? "" : " ").append(className).append('=')
+          .append(classes.hash(className));
+    }
+    return sb.toString();
+  }
+
+  private List<String> signatures(MutantSet mutants) {
+    // Returns the signatures of the given mutants, in order of id, or null if one of them isn't in
+    // mutants.log.
+    List<String> result = new ArrayList<String>();
+    for (int id = mutants.nextMutant(0); id >= 0; id = mutants.nextMutant(id + 1)) {
+      Mutant m = mutantsLog.get(id);
+      if (m == null) {
+        return null;
+      }
+      result.add(m.signature());
+    }
+    return result;
+  }
+
+  private MutantSet mutantsWithSignatures(List<String> signatures) {
+    // The inverse of `signatures`, or null if one of them isn't in mutants.log. A line can have
+    // several identical mutants (e.g. in `a < b && c < d`), so they're matched up in order of id.
+    MutantSet result = new MutantSet();
+    Map<String, Integer> nMatched = new HashMap<String, Integer>();
+    for (String signature : signatures) {
+      List<Integer> ids = idsBySignature.get(signature);
+      Integer n = nMatched.get(signature);
+      n = n == null ? 0 : n;
+      if (ids == null || n >= ids.size()) {
+        return null;
+      }
+      result.add(ids.get(n));
+      nMatched.put(signature, n + 1);
+    }
+    return result;
+  }
+
+  private boolean classesAreUnchanged(String coveredClasses) {
+    if (coveredClasses.isEmpty()) {
+      return true;
+    }
+    for (String entry : coveredClasses.split(" ")) {
+      int eq = entry.indexOf('=');
+      if (eq < 0 || !classes.hash(entry.substring(0, eq)).equals(entry.substring(eq + 1))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private String key(WorkOrder workOrder) {
+    // Returns the key of the given work order, or null if it can't be known yet.
+    String test = TestFinder.getTestFullName(workOrder.test, "#") + "\n"
+        + classes.hash(workOrder.test.getTestClass().getName()) + "\n" + workOrder.timeout;
+    if (workOrder.mutantId == 0) {
+      return ClassHasher.sha1(test + "\n0");
+    }
+    Mutant m = mutantsLog.get(workOrder.mutantId);
+    String coveredClasses = coveredClassesHashes.get(workOrder.test);
+    if (m == null || coveredClasses == null) {
+      return null;
+    }
+    return ClassHasher.sha1(test + "\n" + m.signature() + "\n" + ClassHasher.sha1(coveredClasses));
+  }
+
+  private File fileFor(String key) {
+    return new File(new File(directory, key.substring(0, 2)), key);
+  }
+
+  public Outcome get(WorkOrder workOrder) {
+    // Returns the stored outcome of the given work order, or null if there isn't one.
+    String key = key(workOrder);
+    File file = key == null ? null : fileFor(key);
+    if (file == null || !file.isFile()) {
+      nMisses++;
+      return null;
+    }
+    Outcome outcome;
+    String coveredClasses;
+    List<String> coveredMutants = new ArrayList<String>();
+    try (BufferedReader reader = new BufferedReader(
+        new InputStreamReader(Files.newInputStream(file.toPath()), StandardCharsets.UTF_8))) {
+      outcome = Outcome.fromString(reader.readLine());
+      coveredClasses = reader.readLine();
+      String line;
+      while ((line = reader.readLine()) != null) {
+        coveredMutants.add(line);
+      }
+    } catch (IOException | RuntimeException e) {
+      // Evicted or half-deleted under our feet, or garbage: a miss either way.
+      nMisses++;
+      return null;
+    }
+    outcome.coveredMutants = mutantsWithSignatures(coveredMutants);
+    if (outcome.coveredMutants == null) {
+      nMisses++;
+      return null;
+    }
+    if (workOrder.mutantId == 0) {
+      if (coveredClasses == null || !classesAreUnchanged(coveredClasses)) {
+        nMisses++;
+        return null;
+      }
+      coveredClassesHashes.put(workOrder.test, coveredClasses);
+    }
+    file.setLastModified(System.currentTimeMillis());
+    nHits++;
+    return outcome;
+  }
+
+  public void put(WorkOrder workOrder, Outcome outcome) throws IOException {
+    if (workOrder.mutantId == 0) {
+      coveredClassesHashes.put(workOrder.test, coveredClasses(outcome.coveredMutants));
+    }
+    String key = key(workOrder);
+    if (key == null || outcome.type == Outcome.Type.CRASH || outcome.isInferred()) {
+      return;
+    }
+    List<String> coveredMutants = signatures(outcome.coveredMutants);
+    if (coveredMutants == null) {
+      return;
+    }
+    File file = fileFor(key);
+    File parent = file.getParentFile();
+    if (!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+      throw new IOException("unable to create " + parent);
+    }
+    File tmp = File.createTempFile(key, ".tmp", parent);
+    try (PrintStream out = new PrintStream(new FileOutputStream(tmp), false, "UTF-8")) {
+      // The outcome, without its covered mutants; the classes it covers, if it's the unmutated
+      // run (an empty line otherwise); and then the covered mutants' signatures, one per line.
+      Outcome withoutIds = outcome.copy();
+      withoutIds.coveredMutants = new MutantSet();
+      out.println(withoutIds);
+      out.println(workOrder.mutantId == 0 ? coveredClassesHashes.get(workOrder.test) : "");
+      for (String signature : coveredMutants) {
+        out.println(signature);
+      }
+    }
+    bytesWrittenSinceEviction += tmp.length();
+    Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+    if (bytesWrittenSinceEviction > maxBytes / 10) {
+      evict();
+    }
+  }
+
+  public void evict() throws IOException {
+    // Deletes the least recently used entries until the store is down to 90% of its size limit, if
+    // it's over the limit. Does nothing if another process is already evicting.
+    bytesWrittenSinceEviction = 0;
+    try (RandomAccessFile lockFile =
+        new RandomAccessFile(new File(directory, LOCK_FILE_NAME), "rw");
+        FileChannel channel = lockFile.getChannel()) {
+      FileLock lock = channel.tryLock();
+      if (lock == null) {
+        return;
+      }
+      try {
+        List<File> entries = new ArrayList<File>();
+        long totalBytes = 0;
+        File[] shards = directory.listFiles();
+        for (File shard : shards == null ? new File[0] : shards) {
+          File[] files = shard.isDirectory() ? shard.listFiles() : null;
+          for (File file : files == null ? new File[0] : files) {
+            // (Leave other processes' half-written entries alone.)
+            if (!file.getName().endsWith(".tmp")) {
+              entries.add(file);
+            }
+          }
+        }
+        final Map<File, Long> lastUsed = new HashMap<File, Long>();
+        for (File entry : entries) {
+          lastUsed.put(entry, entry.lastModified());
+          totalBytes += entry.length();
+        }
+        if (totalBytes <= maxBytes) {
+          return;
+        }
+        Collections.sort(entries, new Comparator<File>() {
+          public int compare(File a, File b) {
+            return Long.compare(lastUsed.get(a), lastUsed.get(b));
+          }
+        });
+        long target = maxBytes / 10 * 9;
+        for (File entry : entries) {
+          if (totalBytes <= target) {
+            break;
+          }
+          long length = entry.length();
+          Files.deleteIfExists(entry.toPath());
+          totalBytes -= length;
+        }
+      } finally {
+        lock.release();
+      }
+    }
+  }
+}
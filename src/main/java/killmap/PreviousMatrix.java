@@ -0,0 +1,249 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import killmap.mutants.Mutant;
+import killmap.mutants.MutantsLog;
+import killmap.runners.communication.MutantSet;
+import killmap.runners.communication.Outcome;
+import killmap.runners.communication.WorkOrder;
+
+/**
+ * The output of a previous run of killmap, on an earlier build of the same project, from which the
+ * outcomes of tests that aren't affected by the changes since can be carried over.
+ *
+ * A test counts as unaffected if its class, and every class that its (previous) unmutated run
+ * covered mutants in, have the same bytecode in both builds (see ClassHasher). (Classes without
+ * mutants aren't noticed, like in OutcomeStore.) Any test-run of an unaffected test that the
+ * previous matrix has is carried over as is; everything else -- changed tests, new tests, runs the
+ * previous matrix doesn't have -- is left to be run.
+ *
+ * Mutant ids shift whenever a mutant is added or removed before them, so with the previous build's
+ * mutants.log, mutants are matched up by what they are (see Mutant.signature) rather than by id,
+ * and the covered mutants of carried-over rows are renumbered accordingly; an unaffected test only
+ * covers unchanged classes, so all its mutants are still there. Without it, ids are assumed not to
+ * have changed.
+ *
+ * Unlike TestRunCache, the whole matrix is read up front, so the order of test-runs doesn't matter.
+ */
+public class PreviousMatrix {
+
+  private final Map<WorkOrder, Outcome> outcomes; // with the previous build's mutant ids
+
+  private final OutcomeDictionary dictionary;
+
+  private final MutantsLog previousMutantsLog;
+
+  private final ClassHasher previousClasses;
+
+  private final ClassHasher currentClasses;
+
+  private final Map<Integer, Integer> currentToPreviousIds; // null if ids haven't changed
+
+  private final Map<Integer, Integer> previousToCurrentIds; // null if ids haven't changed
+
+  private final Map<TestMethod, Outcome> previousUnmutatedOutcomes;
+
+  private final Map<TestMethod, Boolean> unaffected; // memoizes `isUnaffected`
+
+  private long nSkippedLines;
+
+  private long nCarriedOver;
+
+  public PreviousMatrix(MutantsLog previousMutantsLog_, MutantsLog currentMutantsLog,
+      ClassHasher previousClasses_, ClassHasher currentClasses_) {
+    // previousMutantsLog_ may be null, if mutant ids are the same in both builds.
+    outcomes = new HashMap<WorkOrder, Outcome>();
+    dictionary = new OutcomeDictionary();
+    previousMutantsLog = previousMutantsLog_ == null ? currentMutantsLog : previousMutantsLog_;
+    previousClasses = previousClasses_;
+    currentClasses = currentClasses_;
+    if (previousMutantsLog_ == null) {
+      currentToPreviousIds = null;
+      previousToCurrentIds = null;
+    } else {
+      currentToPreviousIds = new HashMap<Integer, Integer>();
+      previousToCurrentIds = new HashMap<Integer, Integer>();
+      matchMutants(previousMutantsLog_, currentMutantsLog);
+    }
+    previousUnmutatedOutcomes = new HashMap<TestMethod, Outcome>();
+    unaffected = new HashMap<TestMethod, Boolean>();
+    nSkippedLines = 0;
+    nCarriedOver = 0;
+  }
+
+  private void matchMutants(MutantsLog previous, MutantsLog current) {
+    // Pairs up the mutants of the two builds with the same signature, in order of id (a line can
+    // have several identical mutants, e.g. in `a < b && c < d`, if it's all on one line).
+    Map<String, List<Integer>> currentIdsBySignature = new HashMap<String, List<Integer>>();
+    for (Mutant m : current.mutants()) {
+      List<Integer> ids = currentIdsBySignature.get(m.signature());
+      if (ids == null) {
+        ids = new ArrayList<Integer>();
+        currentIdsBySignature.put(m.signature(), ids);
+      }
+      ids.add(m.id);
+    }
+    Map<String, Integer> nMatched = new HashMap<String, Integer>();
+    for (Mutant m : previous.mutants()) {
+      List<Integer> ids = currentIdsBySignature.get(m.signature());
+      Integer n = nMatched.get(m.signature());
+      n = n == null ? 0 : n;
+      if (ids != null && n < ids.size()) {
+        previousToCurrentIds.put(m.id, ids.get(n));
+        currentToPreviousIds.put(ids.get(n), m.id);
+      }
+      nMatched.put(m.signature(), n + 1);
+    }
+  }
+
+  public boolean addLine(String line) {
+    // Reads one line of the previous run's output (which may have been written in dictionary-output
+    // mode; see OutcomeDictionary). Returns whether it was a row of a test that still exists.
+    if (OutcomeDictionary.isEntry(line)) {
+      dictionary.define(line);
+      return false;
+    }
+    String[] test_mutant_timeout_outcome = line.split(",", 4);
+    if (test_mutant_timeout_outcome.length != 4) {
+      nSkippedLines++;
+      return false;
+    }
+    WorkOrder workOrder;
+    Outcome outcome;
+    try {
+      workOrder = WorkOrder.fromString(test_mutant_timeout_outcome[0] + ","
+          + test_mutant_timeout_outcome[1] + "," + test_mutant_timeout_outcome[2]);
+      outcome = Outcome.fromString(test_mutant_timeout_outcome[3]);
+    } catch (ClassNotFoundException | NoSuchMethodException | IllegalArgumentException e) {
+      // (ClassNotFoundException and NoSuchMethodException mean the test has been removed.)
+      nSkippedLines++;
+      return false;
+    }
+    dictionary.decode(outcome);
+    outcomes.put(workOrder, outcome);
+    if (workOrder.mutantId == 0) {
+      previousUnmutatedOutcomes.put(workOrder.test, outcome);
+    }
+    return true;
+  }
+
+  public void addAll(BufferedReader reader) throws IOException {
+    String line;
+    while ((line = reader.readLine()) != null) {
+      addLine(line);
+    }
+  }
+
+  public long skippedLineCount() {
+    return nSkippedLines;
+  }
+
+  public long carriedOverCount() {
+    return nCarriedOver;
+  }
+
+  public boolean isUnaffected(TestMethod test) {
+    // Returns whether the given test's outcomes can be carried over: it was run without mutants
+    // last time, and neither its class nor any class it covered mutants in has changed since.
+    Boolean result = unaffected.get(test);
+    if (result != null) {
+      return result;
+    }
+    result = false;
+    Outcome previousOutcome = previousUnmutatedOutcomes.get(test);
+    if (previousOutcome != null) {
+      TreeSet<String> classNames = new TreeSet<String>();
+      classNames.add(test.getTestClass().getName());
+      result = true;
+      MutantSet covered = previousOutcome.coveredMutants;
+      for (int id = covered.nextMutant(0); id >= 0; id = covered.nextMutant(id + 1)) {
+        Mutant m = previousMutantsLog.get(id);
+        if (m == null || (previousToCurrentIds != null && !previousToCurrentIds.containsKey(id))) {
+          result = false; // the mutant is gone, so its class must have changed
+          break;
+        }
+        classNames.add(m.className);
+      }
+      for (String className : classNames) {
+        if (!result) {
+          break;
+        }
+        result = previousClasses.hash(className).equals(currentClasses.hash(className));
+      }
+    }
+    unaffected.put(test, result);
+    return result;
+  }
+
+  public int unaffectedTestCount() {
+    // How many of the tests asked about so far are unaffected.
+    int result = 0;
+    for (boolean b : unaffected.values()) {
+      result += b ? 1 : 0;
+    }
+    return result;
+  }
+
+  public int testCount() {
+    // How many tests have been asked about so far.
+    return unaffected.size();
+  }
+
+  public Outcome get(WorkOrder workOrder) {
+    // Returns the previous outcome of the given work order (with current mutant ids), or null if
+    // it has to be run again.
+    if (!isUnaffected(workOrder.test)) {
+      return null;
+    }
+    Integer previousId = workOrder.mutantId;
+    if (currentToPreviousIds != null && previousId != 0) {
+      previousId = currentToPreviousIds.get(previousId);
+      if (previousId == null) {
+        return null;
+      }
+    }
+    Outcome result = outcomes.get(new WorkOrder(workOrder.test, previousId, workOrder.timeout));
+    if (result == null) {
+      return null;
+    }
+    if (previousToCurrentIds != null && !result.coveredMutants.isEmpty()) {
+      result = result.copy();
+      MutantSet renumbered = new MutantSet();
+      MutantSet covered = result.coveredMutants;
+      for (int id = covered.nextMutant(0); id >= 0; id = covered.nextMutant(id + 1)) {
+        Integer currentId = previousToCurrentIds.get(id);
+        if (currentId == null) {
+          // (A mutated run can cover mutants the unmutated run didn't, e.g. behind a branch the
+          // mutant flipped; if one of those has no match in this build, run it again.)
+          return null;
+        }
+        renumbered.add(currentId);
+      }
+      result.coveredMutants = renumbered;
+    }
+    nCarriedOver++;
+    return result;
+  }
+}
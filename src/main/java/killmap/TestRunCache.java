@@ -38,6 +38,9 @@ import killmap.runners.communication.WorkOrder;
  * (That said, a TestRunCache *will* skip over poorly-formatted lines, just in case something
  * malformed sneaks into a test-run file -- perhaps the process writing the file got interrupted,
  * say.)
+ * 
+ * The file may have been written in dictionary-output mode (see OutcomeDictionary): dictionary
+ * entries are remembered as they're read, and the references in later rows are resolved.
  */
 public class TestRunCache {
 
@@ -49,8 +52,11 @@ public class TestRunCache {
 
   private boolean reachedEOF;
 
+  private OutcomeDictionary dictionary;
+
   public TestRunCache(String path) throws java.io.FileNotFoundException {
     reader = new BufferedReader(new FileReader(path));
+    dictionary = new OutcomeDictionary();
     reachedEOF = false;
     advance();
   }
@@ -89,6 +95,7 @@ public class TestRunCache {
     } catch (IllegalArgumentException e) {
       return false;
     }
+    dictionary.decode(lastReadOutcome);
 
     return true;
   }
@@ -100,18 +107,32 @@ public class TestRunCache {
       try {
         line = reader.readLine();
       } catch (IOException e) {
-        reachedEOF = true;
+        finish();
         return;
       }
       if (line == null || readerFinished()) {
-        reachedEOF = true;
+        finish();
         return;
       }
 
+      if (OutcomeDictionary.isEntry(line)) {
+        dictionary.define(line);
+        continue;
+      }
       lineIsWellFormed = setLastReadFromLine(line);
     }
   }
 
+  private void finish() {
+    // Nothing more will be read, so the file can be let go of.
+    reachedEOF = true;
+    try {
+      reader.close();
+    } catch (IOException e) {
+      // (We were done with it anyway.)
+    }
+  }
+
   private boolean readerFinished() {
     try {
       reader.mark(1);
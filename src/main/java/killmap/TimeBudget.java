@@ -0,0 +1,107 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import killmap.runners.communication.WorkOrder;
+
+/**
+ * A wall-clock deadline for a whole run, and the bookkeeping for what had to be skipped to meet it.
+ *
+ * Work orders are only started if they can finish (i.e. time out, at worst) before the deadline;
+ * the ones that can't are recorded as skipped, so that a run that is cut short still knows exactly
+ * what its partial matrix is missing. To get the most out of the time there is, candidate work
+ * orders are run in order of decreasing value per millisecond (see `byValuePerMillisecond`).
+ */
+public class TimeBudget {
+
+  /**
+   * A work order that might be run, with how much it's expected to tell us and how long it's
+   * expected to take.
+   */
+  public static class Candidate {
+    public final WorkOrder workOrder;
+
+    public final double value;
+
+    public final long expectedMillis;
+
+    public Candidate(WorkOrder workOrder_, double value_, long expectedMillis_) {
+      workOrder = workOrder_;
+      value = value_;
+      expectedMillis = expectedMillis_;
+    }
+
+    public double valuePerMillisecond() {
+      return value / Math.max(1, expectedMillis);
+    }
+  }
+
+  private final long deadline;
+
+  private final List<WorkOrder> skipped;
+
+  public TimeBudget(long deadline_) {
+    // deadline_ is a time as given by System.currentTimeMillis().
+    deadline = deadline_;
+    skipped = new ArrayList<WorkOrder>();
+  }
+
+  public static TimeBudget fromNow(long budgetMillis) {
+    return new TimeBudget(System.currentTimeMillis() + budgetMillis);
+  }
+
+  public long remainingMillis() {
+    return Math.max(0, deadline - System.currentTimeMillis());
+  }
+
+  public boolean isExhausted() {
+    return remainingMillis() == 0;
+  }
+
+  public boolean allows(WorkOrder workOrder, long worstCaseMillis) {
+    // Returns whether the given work order can be run, recording it as skipped if not.
+    if (remainingMillis() < worstCaseMillis || isExhausted()) {
+      skipped.add(workOrder);
+      return false;
+    }
+    return true;
+  }
+
+  public List<WorkOrder> skipped() {
+    return skipped;
+  }
+
+  public static List<WorkOrder> byValuePerMillisecond(List<Candidate> candidates) {
+    // Returns the candidates' work orders, most valuable per millisecond first. The sort is stable,
+    // so ties keep the order the candidates were given in.
+    List<Candidate> sorted = new ArrayList<Candidate>(candidates);
+    Collections.sort(sorted, new Comparator<Candidate>() {
+      public int compare(Candidate a, Candidate b) {
+        return Double.compare(b.valuePerMillisecond(), a.valuePerMillisecond());
+      }
+    });
+    List<WorkOrder> result = new ArrayList<WorkOrder>(sorted.size());
+    for (Candidate c : sorted) {
+      result.add(c.workOrder);
+    }
+    return result;
+  }
+}
@@ -0,0 +1,74 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap.matrix;
+
+/**
+ * A KillMatrix storing every cell, row by row, in one byte array. Good when most tests cover most
+ * mutants.
+ */
+class DenseKillMatrix extends KillMatrix {
+
+  private final byte[] cells; // cells[test * mutantCount() + mutant]
+
+  private final int runCellCount;
+
+  DenseKillMatrix(String[] testNames, int[] mutantIds, byte[] baselines, byte[] cells_) {
+    super(testNames, mutantIds, baselines);
+    cells = cells_;
+    int n = 0;
+    for (byte code : cells) {
+      if (code != NOT_RUN) {
+        n++;
+      }
+    }
+    runCellCount = n;
+  }
+
+  @Override
+  public byte get(int test, int mutant) {
+    return cells[test * mutantCount() + mutant];
+  }
+
+  @Override
+  public int runCellCount() {
+    return runCellCount;
+  }
+
+  @Override
+  public void forEachInRow(int test, CellVisitor visitor) {
+    int nMutants = mutantCount();
+    int offset = test * nMutants;
+    for (int mutant = 0; mutant < nMutants; mutant++) {
+      byte code = cells[offset + mutant];
+      if (code != NOT_RUN) {
+        visitor.visit(test, mutant, code);
+      }
+    }
+  }
+
+  @Override
+  public void forEachInColumn(int mutant, CellVisitor visitor) {
+    int nMutants = mutantCount();
+    int nTests = testCount();
+    for (int test = 0; test < nTests; test++) {
+      byte code = cells[test * nMutants + mutant];
+      if (code != NOT_RUN) {
+        visitor.visit(test, mutant, code);
+      }
+    }
+  }
+}
@@ -0,0 +1,296 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap.matrix;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import killmap.runners.communication.Outcome;
+
+/**
+ * An in-memory (test,mutant) => outcome matrix, as produced by killmap.Main.
+ *
+ * Tests and mutants are identified by dense indices (0..testCount()-1 and 0..mutantCount()-1);
+ * `testName` and `mutantId` map them back to what the output calls them. The run with no mutant
+ * enabled (mutant id 0) isn't a column: it's the test's "baseline", and `baseline(test)` gives its
+ * outcome code.
+ *
+ * Each cell holds a one-byte code: NOT_RUN if the output has no row for that (test,mutant) pair
+ * (usually because the test doesn't cover the mutant, so its outcome is the baseline's), or else
+ * the outcome type (see `codeOf`), possibly OR'ed with the KILLED flag if the outcome differs from
+ * the baseline in type or in stack trace (the same criterion as Main.behaviourChangingMutants).
+ *
+ * Rows and columns can be iterated with a CellVisitor, without allocating anything per cell. The
+ * bulk queries (killSets, killVectors, outcomeHistogram) are split across a fork-join pool.
+ *
+ * Build one with a KillMatrixBuilder, or load one from killmap's output with KillMatrixLoader.
+ */
+public abstract class KillMatrix {
+
+  public static final byte NOT_RUN = 0;
+
+  public static final byte KILLED = 0x10;
+
+  private static final byte TYPE_MASK = 0x0f;
+
+  public static final int HISTOGRAM_SIZE = 2 * KILLED; // every possible code is less than this
+
+  /**
+   * Gets told about every run cell in a row or column.
+   */
+  public static interface CellVisitor {
+    void visit(int test, int mutant, byte code);
+  }
+
+  // Rows/columns processed per fork-join task, in the bulk queries.
+  private static final int BULK_GRANULARITY = 64;
+
+  private static ForkJoinPool pool = null;
+
+  private final String[] testNames;
+
+  private final int[] mutantIds; // sorted, so mutantIndex can binary-search
+
+  private final byte[] baselines;
+
+  protected KillMatrix(String[] testNames_, int[] mutantIds_, byte[] baselines_) {
+    testNames = testNames_;
+    mutantIds = mutantIds_;
+    baselines = baselines_;
+  }
+
+  public static byte codeOf(Outcome.Type type) {
+    return (byte) (type.ordinal() + 1);
+  }
+
+  public static Outcome.Type typeOf(byte code) {
+    // Returns the outcome type of a run cell, or null for NOT_RUN.
+    int t = code & TYPE_MASK;
+    return t == NOT_RUN ? null : Outcome.Type.values()[t - 1];
+  }
+
+  public static boolean isKilled(byte code) {
+    return (code & KILLED) != 0;
+  }
+
+  public int testCount() {
+    return testNames.length;
+  }
+
+  public int mutantCount() {
+    return mutantIds.length;
+  }
+
+  public String testName(int test) {
+    return testNames[test];
+  }
+
+  public int testIndex(String testName) {
+    // Linear: meant for occasional lookups, not for inner loops.
+    for (int t = 0; t < testNames.length; t++) {
+      if (testNames[t].equals(testName)) {
+        return t;
+      }
+    }
+    return -1;
+  }
+
+  public int mutantId(int mutant) {
+    return mutantIds[mutant];
+  }
+
+  public int mutantIndex(int mutantId) {
+    // Returns the column of the given mutant, or -1 if it has none.
+    int i = Arrays.binarySearch(mutantIds, mutantId);
+    return i >= 0 ? i : -1;
+  }
+
+  public byte baseline(int test) {
+    return baselines[test];
+  }
+
+  public abstract byte get(int test, int mutant);
+
+  public abstract int runCellCount();
+
+  public abstract void forEachInRow(int test, CellVisitor visitor);
+
+  public abstract void forEachInColumn(int mutant, CellVisitor visitor);
+
+  private static synchronized ForkJoinPool pool() {
+    if (pool == null) {
+      pool = new ForkJoinPool();
+    }
+    return pool;
+  }
+
+  /**
+   * Runs `process(i)` for every i in [from,to), splitting the range across the fork-join pool.
+   */
+  private abstract static class RangeAction extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    final int from;
+
+    final int to;
+
+    RangeAction(int from_, int to_) {
+      from = from_;
+      to = to_;
+    }
+
+    abstract RangeAction split(int from, int to);
+
+    abstract void process(int i);
+
+    @Override
+    protected void compute() {
+      if (to - from <= BULK_GRANULARITY) {
+        for (int i = from; i < to; i++) {
+          process(i);
+        }
+        return;
+      }
+      int mid = (from + to) >>> 1;
+      invokeAll(split(from, mid), split(mid, to));
+    }
+  }
+
+  public BitSet killSet(int mutant) {
+    // Returns the indices of the tests that kill the given mutant.
+    final BitSet result = new BitSet(testCount());
+    forEachInColumn(mutant, new CellVisitor() {
+      public void visit(int test, int mutant, byte code) {
+        if (isKilled(code)) {
+          result.set(test);
+        }
+      }
+    });
+    return result;
+  }
+
+  public BitSet killVector(int test) {
+    // Returns the indices of the mutants that the given test kills.
+    final BitSet result = new BitSet(mutantCount());
+    forEachInRow(test, new CellVisitor() {
+      public void visit(int test, int mutant, byte code) {
+        if (isKilled(code)) {
+          result.set(mutant);
+        }
+      }
+    });
+    return result;
+  }
+
+  private class KillSetsAction extends RangeAction {
+    private static final long serialVersionUID = 1L;
+
+    final BitSet[] result;
+
+    KillSetsAction(int from_, int to_, BitSet[] result_) {
+      super(from_, to_);
+      result = result_;
+    }
+
+    RangeAction split(int from, int to) {
+      return new KillSetsAction(from, to, result);
+    }
+
+    void process(int mutant) {
+      result[mutant] = killSet(mutant);
+    }
+  }
+
+  public BitSet[] killSets() {
+    // For every mutant, the indices of the tests that kill it.
+    BitSet[] result = new BitSet[mutantCount()];
+    pool().invoke(new KillSetsAction(0, mutantCount(), result));
+    return result;
+  }
+
+  private class KillVectorsAction extends RangeAction {
+    private static final long serialVersionUID = 1L;
+
+    final BitSet[] result;
+
+    KillVectorsAction(int from_, int to_, BitSet[] result_) {
+      super(from_, to_);
+      result = result_;
+    }
+
+    RangeAction split(int from, int to) {
+      return new KillVectorsAction(from, to, result);
+    }
+
+    void process(int test) {
+      result[test] = killVector(test);
+    }
+  }
+
+  public BitSet[] killVectors() {
+    // For every test, the indices of the mutants it kills.
+    BitSet[] result = new BitSet[testCount()];
+    pool().invoke(new KillVectorsAction(0, testCount(), result));
+    return result;
+  }
+
+  private class HistogramTask extends RecursiveTask<long[]> {
+    private static final long serialVersionUID = 1L;
+
+    final int from;
+
+    final int to;
+
+    HistogramTask(int from_, int to_) {
+      from = from_;
+      to = to_;
+    }
+
+    @Override
+    protected long[] compute() {
+      if (to - from > BULK_GRANULARITY) {
+        int mid = (from + to) >>> 1;
+        HistogramTask left = new HistogramTask(from, mid);
+        left.fork();
+        long[] result = new HistogramTask(mid, to).compute();
+        long[] leftResult = left.join();
+        for (int code = 0; code < result.length; code++) {
+          result[code] += leftResult[code];
+        }
+        return result;
+      }
+      final long[] result = new long[HISTOGRAM_SIZE];
+      CellVisitor counter = new CellVisitor() {
+        public void visit(int test, int mutant, byte code) {
+          result[code]++;
+        }
+      };
+      for (int test = from; test < to; test++) {
+        forEachInRow(test, counter);
+      }
+      return result;
+    }
+  }
+
+  public long[] outcomeHistogram() {
+    // Counts the run cells with each code: result[code] is the number of cells with that code. (So
+    // e.g. result[codeOf(FAIL) | KILLED] is the number of failures that kill their mutant.)
+    return pool().invoke(new HistogramTask(0, testCount()));
+  }
+}
@@ -0,0 +1,208 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap.matrix;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import killmap.runners.communication.Outcome;
+
+/**
+ * Accumulates test-runs, in any order, and turns them into a KillMatrix.
+ *
+ * Only what a KillMatrix needs is kept: per run, the test's index, the mutant id, the outcome type
+ * and an integer standing for the stack trace. If the same (test,mutant) pair is added more than
+ * once, the last one wins.
+ */
+public class KillMatrixBuilder implements RunConsumer {
+
+  // Above this fraction of run cells, a DenseKillMatrix is smaller than a SparseKillMatrix.
+  private static final double DENSE_THRESHOLD = 0.2;
+
+  private final Map<String, Integer> testIndices;
+
+  private final List<String> testNames;
+
+  private final Map<String, Integer> traceIds;
+
+  private int[] cellTests;
+
+  private int[] cellMutantIds;
+
+  private byte[] cellTypes;
+
+  private int[] cellTraces;
+
+  private int nCells;
+
+  private byte[] baselineTypes; // NOT_RUN if the test has no baseline (yet)
+
+  private int[] baselineTraces;
+
+  public KillMatrixBuilder() {
+    testIndices = new HashMap<String, Integer>();
+    testNames = new ArrayList<String>();
+    traceIds = new HashMap<String, Integer>();
+    cellTests = new int[1024];
+    cellMutantIds = new int[1024];
+    cellTypes = new byte[1024];
+    cellTraces = new int[1024];
+    nCells = 0;
+    baselineTypes = new byte[64];
+    baselineTraces = new int[64];
+  }
+
+  private int testIndex(String testName) {
+    Integer index = testIndices.get(testName);
+    if (index == null) {
+      index = testNames.size();
+      testIndices.put(testName, index);
+      testNames.add(testName);
+      if (index == baselineTypes.length) {
+        baselineTypes = Arrays.copyOf(baselineTypes, 2 * index);
+        baselineTraces = Arrays.copyOf(baselineTraces, 2 * index);
+      }
+    }
+    return index;
+  }
+
+  private int traceId(String stackTrace) {
+    Integer id = traceIds.get(stackTrace);
+    if (id == null) {
+      id = traceIds.size();
+      traceIds.put(stackTrace, id);
+    }
+    return id;
+  }
+
+  @Override
+  public void add(String testName, int mutantId, Outcome.Type type, String stackTrace) {
+    int test = testIndex(testName);
+    int trace = traceId(stackTrace);
+    byte code = KillMatrix.codeOf(type);
+    if (mutantId == 0) {
+      baselineTypes[test] = code;
+      baselineTraces[test] = trace;
+      return;
+    }
+    if (nCells == cellTests.length) {
+      int capacity = 2 * nCells;
+      cellTests = Arrays.copyOf(cellTests, capacity);
+      cellMutantIds = Arrays.copyOf(cellMutantIds, capacity);
+      cellTypes = Arrays.copyOf(cellTypes, capacity);
+      cellTraces = Arrays.copyOf(cellTraces, capacity);
+    }
+    cellTests[nCells] = test;
+    cellMutantIds[nCells] = mutantId;
+    cellTypes[nCells] = code;
+    cellTraces[nCells] = trace;
+    nCells++;
+  }
+
+  private int[] sortedDistinctMutantIds() {
+    int[] ids = Arrays.copyOf(cellMutantIds, nCells);
+    Arrays.sort(ids);
+    int n = 0;
+    for (int i = 0; i < ids.length; i++) {
+      if (n == 0 || ids[n - 1] != ids[i]) {
+        ids[n++] = ids[i];
+      }
+    }
+    return Arrays.copyOf(ids, n);
+  }
+
+  private byte cellCode(int cell) {
+    int test = cellTests[cell];
+    byte code = cellTypes[cell];
+    if (baselineTypes[test] != KillMatrix.NOT_RUN
+        && (code != baselineTypes[test] || cellTraces[cell] != baselineTraces[test])) {
+      code |= KillMatrix.KILLED;
+    }
+    return code;
+  }
+
+  public KillMatrix build() {
+    long nTests = testNames.size();
+    long nMutants = sortedDistinctMutantIds().length;
+    long area = nTests * nMutants;
+    if (area > 0 && area < Integer.MAX_VALUE && nCells >= DENSE_THRESHOLD * area) {
+      return buildDense();
+    }
+    return buildSparse();
+  }
+
+  private byte[] baselineCodes() {
+    return Arrays.copyOf(baselineTypes, testNames.size());
+  }
+
+  public KillMatrix buildDense() {
+    int[] mutantIds = sortedDistinctMutantIds();
+    byte[] cells = new byte[testNames.size() * mutantIds.length];
+    for (int i = 0; i < nCells; i++) {
+      int mutant = Arrays.binarySearch(mutantIds, cellMutantIds[i]);
+      cells[cellTests[i] * mutantIds.length + mutant] = cellCode(i);
+    }
+    return new DenseKillMatrix(testNames.toArray(new String[0]), mutantIds, baselineCodes(),
+        cells);
+  }
+
+  public KillMatrix buildSparse() {
+    int[] mutantIds = sortedDistinctMutantIds();
+    int nTests = testNames.size();
+
+    // Sort the cells by (test, mutant, order of addition), via a counting sort on the test and
+    // then a sort of each row on (mutant << 32 | cell).
+    int[] rowStart = new int[nTests + 1];
+    for (int i = 0; i < nCells; i++) {
+      rowStart[cellTests[i] + 1]++;
+    }
+    for (int t = 0; t < nTests; t++) {
+      rowStart[t + 1] += rowStart[t];
+    }
+    int[] next = Arrays.copyOf(rowStart, nTests);
+    long[] keys = new long[nCells];
+    for (int i = 0; i < nCells; i++) {
+      long mutant = Arrays.binarySearch(mutantIds, cellMutantIds[i]);
+      keys[next[cellTests[i]]++] = (mutant << 32) | i;
+    }
+
+    // Then copy them out, keeping only the last-added cell for each (test, mutant).
+    int[] rowMutants = new int[nCells];
+    byte[] rowCodes = new byte[nCells];
+    int n = 0;
+    for (int t = 0; t < nTests; t++) {
+      Arrays.sort(keys, rowStart[t], rowStart[t + 1]);
+      int start = n;
+      for (int k = rowStart[t]; k < rowStart[t + 1]; k++) {
+        int mutant = (int) (keys[k] >>> 32);
+        int cell = (int) keys[k];
+        if (n > start && rowMutants[n - 1] == mutant) {
+          n--;
+        }
+        rowMutants[n] = mutant;
+        rowCodes[n] = cellCode(cell);
+        n++;
+      }
+      rowStart[t] = start;
+    }
+    rowStart[nTests] = n;
+    return new SparseKillMatrix(testNames.toArray(new String[0]), mutantIds, baselineCodes(),
+        rowStart, Arrays.copyOf(rowMutants, n), Arrays.copyOf(rowCodes, n));
+  }
+}
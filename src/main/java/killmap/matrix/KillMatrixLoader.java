@@ -0,0 +1,70 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap.matrix;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+
+/**
+ * Reads killmap's output (see killmap.Main), line by line, into a KillMatrix. (See MatrixParser for
+ * what is kept and what is skipped.)
+ */
+public class KillMatrixLoader {
+
+  private final KillMatrixBuilder builder;
+
+  private final MatrixParser parser;
+
+  public KillMatrixLoader() {
+    builder = new KillMatrixBuilder();
+    parser = new MatrixParser(builder);
+  }
+
+  public long rowCount() {
+    return parser.rowCount();
+  }
+
+  public long skippedLineCount() {
+    return parser.skippedLineCount();
+  }
+
+  public boolean addLine(String line) {
+    // Adds one line of output. Returns whether it was a well-formed row.
+    return parser.addLine(line);
+  }
+
+  public void addAll(BufferedReader reader) throws IOException {
+    parser.addAll(reader);
+  }
+
+  public KillMatrix build() {
+    return builder.build();
+  }
+
+  public static KillMatrix load(BufferedReader reader) throws IOException {
+    KillMatrixLoader loader = new KillMatrixLoader();
+    loader.addAll(reader);
+    return loader.build();
+  }
+
+  public static KillMatrix load(String path) throws IOException {
+    // Loads the matrix in the given file, which may be gzipped (if its name ends with ".gz").
+    try (BufferedReader reader = MatrixParser.open(path)) {
+      return load(reader);
+    }
+  }
+}
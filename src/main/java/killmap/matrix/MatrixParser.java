@@ -0,0 +1,104 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap.matrix;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.zip.GZIPInputStream;
+import killmap.OutcomeDictionary;
+import killmap.runners.communication.Outcome;
+
+/**
+ * Reads killmap's output (see killmap.Main) line by line, and feeds the test-runs it describes to a
+ * RunConsumer.
+ *
+ * Only the test, mutant, outcome type and stack trace of each row are passed on; covered-mutant
+ * lists, digests, etc. are skipped without being parsed. Dictionary entries (see OutcomeDictionary)
+ * are understood, and lines that don't look like rows (e.g. junk printed by a test) are ignored,
+ * like TestRunCache does.
+ */
+public class MatrixParser {
+
+  private final RunConsumer consumer;
+
+  private final OutcomeDictionary dictionary;
+
+  private long nRows;
+
+  private long nSkippedLines;
+
+  public MatrixParser(RunConsumer consumer_) {
+    consumer = consumer_;
+    dictionary = new OutcomeDictionary();
+    nRows = 0;
+    nSkippedLines = 0;
+  }
+
+  public long rowCount() {
+    return nRows;
+  }
+
+  public long skippedLineCount() {
+    return nSkippedLines;
+  }
+
+  public boolean addLine(String line) {
+    // Parses one line of output. Returns whether it was a well-formed row.
+    if (OutcomeDictionary.isEntry(line)) {
+      dictionary.define(line);
+      return false;
+    }
+    // test,mutant,timeout,type,runtime,digest,mutants,stackTrace
+    String[] fields = line.split(",", 8);
+    if (fields.length != 8) {
+      nSkippedLines++;
+      return false;
+    }
+    int mutantId;
+    Outcome.Type type;
+    try {
+      mutantId = Integer.parseInt(fields[1]);
+      type = Outcome.Type.valueOf(fields[3]);
+    } catch (IllegalArgumentException e) {
+      nSkippedLines++;
+      return false;
+    }
+    consumer.add(fields[0], mutantId, type, dictionary.resolve(fields[7]));
+    nRows++;
+    return true;
+  }
+
+  public void addAll(BufferedReader reader) throws IOException {
+    String line;
+    while ((line = reader.readLine()) != null) {
+      addLine(line);
+    }
+  }
+
+  public static BufferedReader open(String path) throws IOException {
+    // Opens the given file for reading; it may be gzipped (if its name ends with ".gz"), or "-" for
+    // stdin.
+    InputStream in = path.equals("-") ? System.in : new FileInputStream(path);
+    if (path.endsWith(".gz")) {
+      in = new GZIPInputStream(in, 1 << 16);
+    }
+    return new BufferedReader(new InputStreamReader(in, "UTF-8"), 1 << 16);
+  }
+}
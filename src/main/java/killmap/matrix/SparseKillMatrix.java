@@ -0,0 +1,95 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap.matrix;
+
+import java.util.Arrays;
+
+/**
+ * A KillMatrix storing only the run cells, indexed both by row and by column (i.e. in compressed
+ * sparse row and compressed sparse column form). Good when tests cover few of the mutants, which
+ * is the usual case.
+ */
+class SparseKillMatrix extends KillMatrix {
+
+  // Row-major: the cells of row t are at [rowStart[t], rowStart[t+1]), sorted by mutant.
+  private final int[] rowStart;
+
+  private final int[] rowMutants;
+
+  private final byte[] rowCodes;
+
+  // Column-major: the cells of column m are at [columnStart[m], columnStart[m+1]), sorted by test.
+  private final int[] columnStart;
+
+  private final int[] columnTests;
+
+  private final byte[] columnCodes;
+
+  SparseKillMatrix(String[] testNames, int[] mutantIds, byte[] baselines, int[] rowStart_,
+      int[] rowMutants_, byte[] rowCodes_) {
+    super(testNames, mutantIds, baselines);
+    rowStart = rowStart_;
+    rowMutants = rowMutants_;
+    rowCodes = rowCodes_;
+
+    // Transpose: count the cells in each column, then drop every cell into place. Going through
+    // the rows in order leaves each column sorted by test.
+    int nCells = rowMutants.length;
+    columnStart = new int[mutantIds.length + 1];
+    for (int i = 0; i < nCells; i++) {
+      columnStart[rowMutants[i] + 1]++;
+    }
+    for (int m = 0; m < mutantIds.length; m++) {
+      columnStart[m + 1] += columnStart[m];
+    }
+    int[] next = Arrays.copyOf(columnStart, mutantIds.length);
+    columnTests = new int[nCells];
+    columnCodes = new byte[nCells];
+    for (int t = 0; t < testNames.length; t++) {
+      for (int i = rowStart[t]; i < rowStart[t + 1]; i++) {
+        int j = next[rowMutants[i]]++;
+        columnTests[j] = t;
+        columnCodes[j] = rowCodes[i];
+      }
+    }
+  }
+
+  @Override
+  public byte get(int test, int mutant) {
+    int i = Arrays.binarySearch(rowMutants, rowStart[test], rowStart[test + 1], mutant);
+    return i >= 0 ? rowCodes[i] : NOT_RUN;
+  }
+
+  @Override
+  public int runCellCount() {
+    return rowMutants.length;
+  }
+
+  @Override
+  public void forEachInRow(int test, CellVisitor visitor) {
+    for (int i = rowStart[test]; i < rowStart[test + 1]; i++) {
+      visitor.visit(test, rowMutants[i], rowCodes[i]);
+    }
+  }
+
+  @Override
+  public void forEachInColumn(int mutant, CellVisitor visitor) {
+    for (int i = columnStart[mutant]; i < columnStart[mutant + 1]; i++) {
+      visitor.visit(columnTests[i], mutant, columnCodes[i]);
+    }
+  }
+}
@@ -0,0 +1,100 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap.mutants;
+
+/**
+ * One line of Major's mutants.log, i.e. what a mutant is and where it lives:
+ *   id:operator:original:replacement:class@method:line:description
+ * e.g.
+ *   12:ROR:<=(int,int):<(int,int):org.foo.Bar@baz(int):42:a <= b |==> a < b
+ */
+public class Mutant {
+
+  public final int id;
+
+  public final String operator; // e.g. "ROR"
+
+  public final String original; // e.g. "<=(int,int)"
+
+  public final String replacement; // e.g. "<(int,int)"
+
+  public final String className; // e.g. "org.foo.Bar" (may be a nested class, e.g. "org.foo.Bar$1")
+
+  public final String methodName; // e.g. "baz(int)", or "" if the mutant isn't inside a method
+
+  public final int line;
+
+  public Mutant(int id_, String operator_, String original_, String replacement_,
+      String className_, String methodName_, int line_) {
+    id = id_;
+    operator = operator_;
+    original = original_;
+    replacement = replacement_;
+    className = className_;
+    methodName = methodName_;
+    line = line_;
+  }
+
+  public String sourceFile() {
+    // The source file the mutant is in, as a path relative to the source root, e.g.
+    // "org/foo/Bar.java".
+    String topLevelClass = className;
+    int dollar = topLevelClass.indexOf('$');
+    if (dollar >= 0) {
+      topLevelClass = topLevelClass.substring(0, dollar);
+    }
+    return topLevelClass.replace('.', '/') + ".java";
+  }
+
+  public String lineKey() {
+    // Identifies the mutated line the way Defects4J's fault-localization data does, e.g.
+    // "org/foo/Bar.java#42".
+    return sourceFile() + "#" + line;
+  }
+
+  public String methodKey() {
+    // Identifies the mutated method, e.g. "org.foo.Bar@baz(int)".
+    return methodName.isEmpty() ? className : className + "@" + methodName;
+  }
+
+  public String signature() {
+    // Describes the mutant without its id, which changes whenever mutants are added or removed
+    // before it, e.g. "ROR:<=(int,int):<(int,int):org.foo.Bar@baz(int):42".
+    return operator + ":" + original + ":" + replacement + ":" + methodKey() + ":" + line;
+  }
+
+  public static Mutant fromString(String s) throws IllegalArgumentException {
+    // Parses a line of mutants.log.
+    String[] fields = s.split(":", 7);
+    if (fields.length < 6) {
+      throw new IllegalArgumentException(s);
+    }
+    int id = Integer.parseInt(fields[0]);
+    int line = Integer.parseInt(fields[5]);
+    String location = fields[4];
+    int at = location.indexOf('@');
+    String className = at >= 0 ? location.substring(0, at) : location;
+    String methodName = at >= 0 ? location.substring(at + 1) : "";
+    return new Mutant(id, fields[1], fields[2], fields[3], className, methodName, line);
+  }
+
+  @Override
+  public String toString() {
+    return id + ":" + operator + ":" + original + ":" + replacement + ":" + methodKey() + ":"
+        + line;
+  }
+}
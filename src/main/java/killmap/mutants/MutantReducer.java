@@ -0,0 +1,156 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap.mutants;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import killmap.matrix.RunConsumer;
+import killmap.runners.communication.Outcome;
+
+/**
+ * Finds redundant mutants: ones that, in a previously built matrix, behaved exactly like another
+ * mutant of the same expression, so that running one of them tells us what the other would do.
+ *
+ * Major mutates each expression several ways (e.g. `a < b` to `a <= b`, `a != b`, `true`, ...),
+ * and those mutants often subsume each other: every test that kills one kills the other, and the
+ * other way round. Fault localization needs each run's outcome, not just whether it killed the
+ * mutant, so only mutants that are mutually subsuming *with the same outcomes* are collapsed: two
+ * mutants are redundant if they come from the same site (same operator, original expression,
+ * method and line, according to mutants.log) and every test that was run on either had the same
+ * outcome type and stack trace with both. (A mutant that merely subsumes another still tells us
+ * nothing about the tests that don't kill it, so both are kept.)
+ *
+ * Of each group of redundant mutants, the one with the lowest id is the representative, which has
+ * to be run; the others' outcomes can be inferred from it. Mutants that aren't in the matrix, or
+ * aren't in mutants.log, are never inferred.
+ *
+ * Feed it the previous matrix with a MatrixParser. Mutant ids are assumed to be the same as in the
+ * current mutants.log.
+ */
+public class MutantReducer implements RunConsumer {
+
+  private final MutantsLog mutantsLog;
+
+  private final Map<Integer, Map<String, String>> behaviours; // mutant => test => type,stackTrace
+
+  private final Map<String, String> internedBehaviours;
+
+  private Map<Integer, Integer> representatives; // redundant mutant => its representative
+
+  private Set<Integer> representativeIds; // the mutants others are inferred from
+
+  private int nSites;
+
+  public MutantReducer(MutantsLog mutantsLog_) {
+    mutantsLog = mutantsLog_;
+    behaviours = new HashMap<Integer, Map<String, String>>();
+    internedBehaviours = new HashMap<String, String>();
+    representatives = null;
+    nSites = 0;
+  }
+
+  @Override
+  public void add(String testName, int mutantId, Outcome.Type type, String stackTrace) {
+    if (mutantId == 0) {
+      return;
+    }
+    String behaviour = type + "," + stackTrace;
+    String interned = internedBehaviours.get(behaviour);
+    if (interned == null) {
+      internedBehaviours.put(behaviour, behaviour);
+      interned = behaviour;
+    }
+    Map<String, String> byTest = behaviours.get(mutantId);
+    if (byTest == null) {
+      byTest = new TreeMap<String, String>();
+      behaviours.put(mutantId, byTest);
+    }
+    byTest.put(testName, interned);
+    representatives = null;
+  }
+
+  private static String siteOf(Mutant m) {
+    return m.operator + ":" + m.original + ":" + m.methodKey() + ":" + m.line;
+  }
+
+  private void reduce() {
+    // Groups the observed mutants by site, and each site's mutants by behaviour.
+    representatives = new HashMap<Integer, Integer>();
+    representativeIds = new HashSet<Integer>();
+    Map<String, Map<Map<String, String>, Integer>> sites =
+        new HashMap<String, Map<Map<String, String>, Integer>>();
+    for (Mutant m : mutantsLog.mutants()) { // (in increasing order of id)
+      Map<String, String> behaviour = behaviours.get(m.id);
+      if (behaviour == null) {
+        continue;
+      }
+      Map<Map<String, String>, Integer> site = sites.get(siteOf(m));
+      if (site == null) {
+        site = new HashMap<Map<String, String>, Integer>();
+        sites.put(siteOf(m), site);
+      }
+      Integer representative = site.get(behaviour);
+      if (representative == null) {
+        site.put(behaviour, m.id);
+      } else {
+        representatives.put(m.id, representative);
+        representativeIds.add(representative);
+      }
+    }
+    nSites = sites.size();
+  }
+
+  public Integer representativeOf(int mutantId) {
+    // Returns the mutant that the given one behaves like, or null if it has to be run itself.
+    if (representatives == null) {
+      reduce();
+    }
+    return representatives.get(mutantId);
+  }
+
+  public boolean isRepresentative(int mutantId) {
+    // Whether some other mutant's outcomes are inferred from the given one's.
+    if (representatives == null) {
+      reduce();
+    }
+    return representativeIds.contains(mutantId);
+  }
+
+  public int observedMutantCount() {
+    // How many mutants the previous matrix has runs of.
+    return behaviours.size();
+  }
+
+  public int redundantMutantCount() {
+    // How many of those can be inferred from another mutant.
+    if (representatives == null) {
+      reduce();
+    }
+    return representatives.size();
+  }
+
+  public int siteCount() {
+    // How many sites the observed mutants (that are in mutants.log) are at.
+    if (representatives == null) {
+      reduce();
+    }
+    return nSites;
+  }
+}
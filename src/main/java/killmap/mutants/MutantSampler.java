@@ -0,0 +1,109 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap.mutants;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import killmap.runners.communication.MutantSet;
+
+/**
+ * Draws reproducible random samples from a set of mutants, either uniformly or stratified by
+ * mutation operator or by mutated method (as given by mutants.log).
+ *
+ * Each stratum is shuffled once, with a generator seeded by the given seed, and a sample of
+ * fraction f takes the first ceil(f * n) mutants of each stratum of size n. So (a) the same seed
+ * always gives the same sample, and (b) a larger fraction always gives a superset of a smaller one,
+ * which is what lets a sample grow without throwing away the runs that have already been done.
+ *
+ * Mutants that aren't in mutants.log are put in a stratum of their own.
+ */
+public class MutantSampler {
+
+  public static enum Strata {
+    UNIFORM, OPERATOR, METHOD;
+  }
+
+  private final List<int[]> strata; // each one shuffled
+
+  private final int populationSize;
+
+  public MutantSampler(MutantSet population, MutantsLog mutantsLog, Strata by, long seed) {
+    // Group the population by stratum. A TreeMap, so that the strata (and hence the order in which
+    // the generator shuffles them) don't depend on hashing.
+    Map<String, MutantSet> groups = new TreeMap<String, MutantSet>();
+    for (int id = population.nextMutant(0); id >= 0; id = population.nextMutant(id + 1)) {
+      String key = stratumOf(id, mutantsLog, by);
+      MutantSet group = groups.get(key);
+      if (group == null) {
+        group = new MutantSet();
+        groups.put(key, group);
+      }
+      group.add(id);
+    }
+
+    Random random = new Random(seed);
+    strata = new ArrayList<int[]>(groups.size());
+    for (MutantSet group : groups.values()) {
+      int[] ids = group.toArray();
+      for (int i = ids.length - 1; i > 0; i--) {
+        int j = random.nextInt(i + 1);
+        int tmp = ids[i];
+        ids[i] = ids[j];
+        ids[j] = tmp;
+      }
+      strata.add(ids);
+    }
+    populationSize = population.size();
+  }
+
+  private static String stratumOf(int mutantId, MutantsLog mutantsLog, Strata by) {
+    if (by == Strata.UNIFORM) {
+      return "";
+    }
+    Mutant m = mutantsLog == null ? null : mutantsLog.get(mutantId);
+    if (m == null) {
+      return "?";
+    }
+    return by == Strata.OPERATOR ? m.operator : m.methodKey();
+  }
+
+  public int stratumCount() {
+    return strata.size();
+  }
+
+  public int populationSize() {
+    return populationSize;
+  }
+
+  public MutantSet sample(double fraction) {
+    // Returns the sample of the given fraction (between 0 and 1) of every stratum.
+    if (fraction < 0 || fraction > 1) {
+      throw new IllegalArgumentException("sampling fraction must be in [0,1]: " + fraction);
+    }
+    MutantSet result = new MutantSet();
+    for (int[] ids : strata) {
+      int n = (int) Math.min(ids.length, Math.ceil(fraction * ids.length - 1e-9));
+      for (int i = 0; i < n; i++) {
+        result.add(ids[i]);
+      }
+    }
+    return result;
+  }
+}
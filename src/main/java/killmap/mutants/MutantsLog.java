@@ -0,0 +1,109 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap.mutants;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The contents of Major's mutants.log: a description of every generated mutant, indexed by id.
+ *
+ * Lines that can't be parsed are skipped (and counted), rather than aborting the whole analysis.
+ */
+public class MutantsLog {
+
+  private final List<Mutant> mutantsById; // null where there is no such mutant
+
+  private int size;
+
+  private int nSkippedLines;
+
+  public MutantsLog() {
+    mutantsById = new ArrayList<Mutant>();
+    size = 0;
+    nSkippedLines = 0;
+  }
+
+  public static MutantsLog load(String path) throws IOException {
+    MutantsLog result = new MutantsLog();
+    try (BufferedReader reader = new BufferedReader(new FileReader(path))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        result.addLine(line);
+      }
+    }
+    return result;
+  }
+
+  public boolean addLine(String line) {
+    // Returns whether the line described a mutant.
+    Mutant mutant;
+    try {
+      mutant = Mutant.fromString(line);
+    } catch (IllegalArgumentException e) {
+      nSkippedLines++;
+      return false;
+    }
+    add(mutant);
+    return true;
+  }
+
+  public void add(Mutant mutant) {
+    while (mutantsById.size() <= mutant.id) {
+      mutantsById.add(null);
+    }
+    if (mutantsById.get(mutant.id) == null) {
+      size++;
+    }
+    mutantsById.set(mutant.id, mutant);
+  }
+
+  public Mutant get(int mutantId) {
+    // Returns the mutant with the given id, or null if there isn't one.
+    if (mutantId < 0 || mutantId >= mutantsById.size()) {
+      return null;
+    }
+    return mutantsById.get(mutantId);
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public int maxId() {
+    return mutantsById.size() - 1;
+  }
+
+  public int skippedLineCount() {
+    return nSkippedLines;
+  }
+
+  public Collection<Mutant> mutants() {
+    // All the mutants, in increasing order of id.
+    List<Mutant> result = new ArrayList<Mutant>(size);
+    for (Mutant m : mutantsById) {
+      if (m != null) {
+        result.add(m);
+      }
+    }
+    return result;
+  }
+}
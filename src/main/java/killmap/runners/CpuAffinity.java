@@ -0,0 +1,145 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap.runners;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Pins processes to sets of CPUs, so that a test's runtime doesn't depend on what else the machine
+ * happens to be running on the same cores: workers with `command` (which starts them under
+ * `taskset -c`), and killmap's own JVM, every thread of it, with `pin`.
+ *
+ * CPU sets are given in taskset's list format, e.g. "0", "2-3" or "0,4-7". Pinning needs Linux and
+ * util-linux's taskset; it sets the scheduler's affinity, so it doesn't stop processes outside
+ * killmap from using the same CPUs (for that, reserve them with e.g. the isolcpus boot option or a
+ * cgroup cpuset, and give killmap the reserved ones).
+ */
+public class CpuAffinity {
+
+  public static final String TASKSET = "taskset";
+
+  public static SortedSet<Integer> parseCpuList(String cpus) {
+    // Returns the CPUs in the given list, throwing an IllegalArgumentException if it isn't one.
+    SortedSet<Integer> result = new TreeSet<Integer>();
+    if (!cpus.matches("[0-9]+(-[0-9]+)?(,[0-9]+(-[0-9]+)?)*")) {
+      throw new IllegalArgumentException("not a CPU list (e.g. 0,2-3): " + cpus);
+    }
+    for (String range : cpus.split(",")) {
+      String[] bounds = range.split("-");
+      int first = Integer.parseInt(bounds[0]);
+      int last = Integer.parseInt(bounds[bounds.length - 1]);
+      if (last < first) {
+        throw new IllegalArgumentException("backwards CPU range: " + range);
+      }
+      for (int cpu = first; cpu <= last; cpu++) {
+        result.add(cpu);
+      }
+    }
+    return result;
+  }
+
+  public static String[] halves(String cpus) {
+    // Splits the given CPUs into two lists, the first half and the rest (e.g. "0-3" into "0,1" and
+    // "2,3"). Returns null if there's only one CPU.
+    List<Integer> all = new ArrayList<Integer>(parseCpuList(cpus));
+    if (all.size() < 2) {
+      return null;
+    }
+    int middle = (all.size() + 1) / 2;
+    return new String[] {join(all.subList(0, middle)), join(all.subList(middle, all.size()))};
+  }
+
+  private static String join(List<Integer> cpus) {
+    StringBuilder result = new StringBuilder();
+    for (Integer cpu : cpus) {
+      result.append(result.length() == 0 ? "" : ",").append(cpu);
+    }
+    return result.toString();
+  }
+
+  public static boolean overlap(String cpus, String otherCpus) {
+    return !Collections.disjoint(parseCpuList(cpus), parseCpuList(otherCpus));
+  }
+
+  public static List<String> command(String cpus) {
+    // What to start a process with to pin it to the given CPUs (followed by its own command).
+    return Arrays.asList(TASKSET, "-c", cpus);
+  }
+
+  public static Long ownPid() {
+    // Returns this JVM's PID, or null if it can't be found out. (RuntimeMXBean's name is
+    // "PID@HOSTNAME" on HotSpot.)
+    String name = ManagementFactory.getRuntimeMXBean().getName();
+    try {
+      return Long.parseLong(name.substring(0, name.indexOf('@')));
+    } catch (IndexOutOfBoundsException | NumberFormatException e) {
+      return null;
+    }
+  }
+
+  public static void pin(long pid, String cpus) throws IOException {
+    // Pins every thread of the given process (and so the threads it starts later) to the given
+    // CPUs.
+    run(Arrays.asList(TASKSET, "-a", "-p", "-c", cpus, Long.toString(pid)));
+  }
+
+  public static void check(String cpus) throws IOException {
+    // Throws an IOException if processes can't be started pinned to the given CPUs (e.g. there's no
+    // taskset, or no such CPU).
+    List<String> command = new ArrayList<String>(command(cpus));
+    command.add("true");
+    run(command);
+  }
+
+  private static void run(List<String> command) throws IOException {
+    Process p = new ProcessBuilder(command).redirectErrorStream(true).start();
+    StringBuilder output = new StringBuilder();
+    try (BufferedReader in = new BufferedReader(
+        new InputStreamReader(p.getInputStream(), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = in.readLine()) != null) {
+        output.append(line).append('\n');
+      }
+    }
+    try {
+      if (p.waitFor() != 0) {
+        throw new IOException("taskset failed: " + output.toString().trim());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("interrupted while running " + TASKSET);
+    }
+  }
+
+  public static void pinSelf(String cpus) throws IOException {
+    Long pid = ownPid();
+    if (pid == null) {
+      throw new IOException("unable to find out killmap's own PID");
+    }
+    pin(pid, cpus);
+  }
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap.runners;
+
+/**
+ * Keeps track of the heartbeats a worker sends while it runs a test (see TestRunner.main), so that
+ * a worker that has wedged (or been frozen, or is thrashing) can be given up on as soon as it goes
+ * quiet, instead of after the test's whole timeout.
+ *
+ * How long a worker may go quiet adapts to how regular its heartbeats have been, the way TCP
+ * adapts its retransmission timeout to the jitter of round-trip times: it keeps moving averages of
+ * the gaps between heartbeats and of their deviation, and allows twice the mean gap plus eight
+ * deviations, but never less than MIN_ALLOWED_SILENCE_MILLIS (long enough to ride out an ordinary
+ * garbage collection pause).
+ */
+public class HeartbeatMonitor {
+
+  public static final long INTERVAL_MILLIS = 100; // how often workers send heartbeats
+
+  public static final long MIN_ALLOWED_SILENCE_MILLIS = 2000;
+
+  private static final double MEAN_GAIN = 0.125;
+
+  private static final double DEVIATION_GAIN = 0.25;
+
+  private double meanGap;
+
+  private double gapDeviation;
+
+  private long lastBeat; // when the last heartbeat (or the test's start) was seen
+
+  private String lastProgress; // what the last heartbeat of this test said; null if none yet
+
+  public HeartbeatMonitor() {
+    meanGap = INTERVAL_MILLIS;
+    gapDeviation = INTERVAL_MILLIS / 2;
+    lastBeat = System.currentTimeMillis();
+    lastProgress = null;
+  }
+
+  public synchronized void testStarted(long now) {
+    // Starts waiting for heartbeats for a new test. (The wait for its first heartbeat isn't counted
+    // as a gap: it includes sending the work order and starting the test.)
+    lastBeat = now;
+    lastProgress = null;
+  }
+
+  public synchronized void beat(long now, String progress) {
+    if (lastProgress != null) {
+      double gap = now - lastBeat;
+      gapDeviation += DEVIATION_GAIN * (Math.abs(gap - meanGap) - gapDeviation);
+      meanGap += MEAN_GAIN * (gap - meanGap);
+    }
+    lastBeat = now;
+    lastProgress = progress;
+  }
+
+  public synchronized long silence(long now) {
+    return now - lastBeat;
+  }
+
+  public synchronized long allowedSilence() {
+    return Math.max(MIN_ALLOWED_SILENCE_MILLIS, Math.round(2 * meanGap + 8 * gapDeviation));
+  }
+
+  public synchronized String lastProgress() {
+    return lastProgress;
+  }
+}
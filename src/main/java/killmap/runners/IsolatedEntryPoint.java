@@ -0,0 +1,76 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap.runners;
+
+import java.util.Collection;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Request;
+import org.junit.runner.Result;
+import killmap.runners.isolation.ExitTrap;
+import major.mutation.Config;
+
+/**
+ * Runs a test in whatever class loader this class was loaded by, taking and returning only JDK
+ * types, so that it can be called from another class loader (see
+ * TestRunner.isolatedBlockingRunTest) without translating anything between the two loaders' copies
+ * of killmap's classes.
+ *
+ * It's kept small, and away from TestRunner, because every test gets a fresh IsolatingClassLoader,
+ * which has to load (and verify) this class and everything it mentions before the test can start.
+ */
+public final class IsolatedEntryPoint {
+
+  // The indexes of the fields of the result of `run`.
+  public static final int TYPE = 0; // String: the name of an Outcome.Type
+  public static final int RUN_TIME = 1; // Long: in ms
+  public static final int STACK_TRACE = 2; // String: not yet normalized; "" if it passed
+  public static final int COVERED_MUTANTS = 3; // int[]
+
+  private IsolatedEntryPoint() {
+  }
+
+  public static Object[] run(String testClassName, String testMethodName, int mutantId)
+      throws ClassNotFoundException {
+    // Just runs the test and records the covered mutants. No fancy stuff.
+    Config.reset();
+    Config.__M_NO = mutantId;
+    Result result = new JUnitCore().run(Request.method(Class.forName(testClassName),
+        testMethodName));
+    Object[] outcome = new Object[4];
+    outcome[TYPE] = result.wasSuccessful() ? "PASS" : "FAIL";
+    outcome[RUN_TIME] = result.getRunTime();
+    outcome[STACK_TRACE] = result.wasSuccessful() ? "" : result.getFailures().get(0).getTrace();
+    String exitAttempt = ExitTrap.takeAttempt();
+    if (exitAttempt != null) {
+      // (Whether or not the test caught the ExitAttempt, it would have ended the JVM.)
+      outcome[TYPE] = "EXIT";
+      outcome[STACK_TRACE] = exitAttempt;
+    }
+    outcome[COVERED_MUTANTS] = toArray(Config.getCoverageList());
+    Config.reset();
+    return outcome;
+  }
+
+  private static int[] toArray(Collection<Integer> mutants) {
+    int[] result = new int[mutants.size()];
+    int i = 0;
+    for (int mutant : mutants) {
+      result[i++] = mutant;
+    }
+    return result;
+  }
+}
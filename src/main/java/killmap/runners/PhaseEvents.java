@@ -0,0 +1,263 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap.runners;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import killmap.TestFinder;
+import killmap.runners.communication.Outcome;
+import killmap.runners.communication.WorkOrder;
+
+/**
+ * Java Flight Recorder events for the phases of a test-run, so that a recording shows where the
+ * time goes: starting workers, the startup handshake, the round trip to the worker, (de)serializing
+ * work orders and outcomes, and cache lookups, in killmap's own JVM; creating the isolating class
+ * loader, running JUnit, and digesting what the test printed, in the workers. Every event carries
+ * the test, the mutant and the outcome type of the test-run it was part of.
+ *
+ * One PhaseEvents collects the events of one test-run: `begin` a phase, `end` it, and `commit` them
+ * all once the outcome is known. Killmap is built for Java 7, so the event types are defined at run
+ * time with jdk.jfr.EventFactory, by reflection. Without JFR (before Java 11, or 8u262 for OpenJDK
+ * 8) nothing is recorded.
+ *
+ * Defining the event types takes a few hundred milliseconds, which would double a worker's startup
+ * time, so jdk.jfr isn't touched at all unless killmap records (with --flight-recording, which
+ * starts a recording with `startRecording`, and sets RECORDING_PROPERTY for the workers).
+ * Otherwise, each phase costs a check of a flag, and nothing else.
+ *
+ * See PhaseSummary for making sense of a recording.
+ */
+public class PhaseEvents {
+
+  public static enum Phase {
+    WORKER_SPAWN("Worker spawn", "Coordinator"),
+    HANDSHAKE("Handshake", "Coordinator"),
+    ROUND_TRIP("Round trip", "Coordinator"),
+    SERIALIZATION("Serialization", "Coordinator"),
+    CACHE_LOOKUP("Cache lookup", "Coordinator"),
+    CLASS_LOADER("Class loader creation", "Worker"),
+    JUNIT("JUnit execution", "Worker"),
+    OUTPUT_DIGEST("Output digesting", "Worker"),
+    WORKER_SERIALIZATION("Worker serialization", "Worker");
+
+    public final String label;
+
+    public final String eventName; // e.g. "killmap.JUnitExecution"
+
+    public final String side; // "Coordinator" (killmap's own JVM) or "Worker"
+
+    Phase(String label_, String side_) {
+      label = label_;
+      StringBuilder name = new StringBuilder(EVENT_NAME_PREFIX);
+      for (String word : label.split(" ")) {
+        name.append(Character.toUpperCase(word.charAt(0))).append(word.substring(1));
+      }
+      eventName = name.toString();
+      side = side_;
+    }
+  }
+
+  public static final String EVENT_NAME_PREFIX = "killmap.";
+
+  public static final String RECORDING_PROPERTY = "killmap.flightRecording";
+
+  // Whether the phases are recorded: once a recording has been started, or will be.
+  private static volatile boolean enabled = System.getProperty(RECORDING_PROPERTY) != null;
+
+  private static class Jfr {
+    // The bits of jdk.jfr used, or null if this JVM doesn't have it. (In a class of its own, so
+    // that they're only looked up, and the event types defined, once something is recorded.)
+    static final Method NEW_EVENT;
+
+    static final Method IS_ENABLED;
+
+    static final Method BEGIN;
+
+    static final Method END;
+
+    static final Method SET;
+
+    static final Method COMMIT;
+
+    static final Object[] FACTORIES = new Object[Phase.values().length]; // jdk.jfr.EventFactory
+
+    static final Object[] EVENT_TYPES = new Object[Phase.values().length];
+
+    static {
+      Method newEvent = null;
+      Method isEnabled = null;
+      Method begin = null;
+      Method end = null;
+      Method set = null;
+      Method commit = null;
+      try {
+        Class<?> annotationElement = Class.forName("jdk.jfr.AnnotationElement");
+        Constructor<?> newAnnotation = annotationElement.getConstructor(Class.class, Object.class);
+        Class<?> valueDescriptor = Class.forName("jdk.jfr.ValueDescriptor");
+        Constructor<?> newField = valueDescriptor.getConstructor(Class.class, String.class);
+        Class<?> eventFactory = Class.forName("jdk.jfr.EventFactory");
+        Method create = eventFactory.getMethod("create", List.class, List.class);
+        List<Object> fields = Arrays.asList(newField.newInstance(String.class, "test"),
+            newField.newInstance(int.class, "mutant"),
+            newField.newInstance(String.class, "outcome"));
+        for (Phase phase : Phase.values()) {
+          List<Object> annotations = Arrays.asList(
+              newAnnotation.newInstance(annotation("jdk.jfr.Name"), phase.eventName),
+              newAnnotation.newInstance(annotation("jdk.jfr.Label"), phase.label),
+              newAnnotation.newInstance(annotation("jdk.jfr.Category"),
+                  new String[] {"killmap", phase.side}));
+          Object factory = create.invoke(null, annotations, fields);
+          FACTORIES[phase.ordinal()] = factory;
+          EVENT_TYPES[phase.ordinal()] = eventFactory.getMethod("getEventType").invoke(factory);
+        }
+        newEvent = eventFactory.getMethod("newEvent");
+        isEnabled = Class.forName("jdk.jfr.EventType").getMethod("isEnabled");
+        Class<?> event = Class.forName("jdk.jfr.Event");
+        begin = event.getMethod("begin");
+        end = event.getMethod("end");
+        set = event.getMethod("set", int.class, Object.class);
+        commit = event.getMethod("commit");
+      } catch (ClassNotFoundException | NoSuchMethodException | InstantiationException
+          | IllegalAccessException | InvocationTargetException | RuntimeException e) {
+        newEvent = null; // (no JFR, or not one we understand)
+      }
+      NEW_EVENT = newEvent;
+      IS_ENABLED = isEnabled;
+      BEGIN = begin;
+      END = end;
+      SET = set;
+      COMMIT = commit;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Class<? extends Annotation> annotation(String name)
+        throws ClassNotFoundException {
+      return (Class<? extends Annotation>) Class.forName(name);
+    }
+  }
+
+  private List<Object> endedEvents = null; // created when first needed
+
+  public static boolean isAvailable() {
+    return Jfr.NEW_EVENT != null;
+  }
+
+  public Object begin(Phase phase) {
+    // Starts timing the given phase. Returns the event to pass to `end`: null if the phase's event
+    // isn't being recorded.
+    if (!enabled || Jfr.NEW_EVENT == null) {
+      return null;
+    }
+    try {
+      if (!(Boolean) Jfr.IS_ENABLED.invoke(Jfr.EVENT_TYPES[phase.ordinal()])) {
+        return null;
+      }
+      Object event = Jfr.NEW_EVENT.invoke(Jfr.FACTORIES[phase.ordinal()]);
+      Jfr.BEGIN.invoke(event);
+      return event;
+    } catch (IllegalAccessException | InvocationTargetException e) {
+      return null;
+    }
+  }
+
+  public synchronized void end(Object event) {
+    // Stops timing the phase that `begin` returned the event for. (It's committed by `commit`.)
+    if (event == null) {
+      return;
+    }
+    try {
+      Jfr.END.invoke(event);
+    } catch (IllegalAccessException | InvocationTargetException e) {
+      return;
+    }
+    if (endedEvents == null) {
+      endedEvents = new ArrayList<Object>();
+    }
+    endedEvents.add(event);
+  }
+
+  public synchronized void commit(String test, int mutant, String outcome) {
+    // Records the phases ended so far, as part of the given test-run.
+    if (endedEvents == null) {
+      return;
+    }
+    for (Object event : endedEvents) {
+      try {
+        Jfr.SET.invoke(event, 0, test);
+        Jfr.SET.invoke(event, 1, mutant);
+        Jfr.SET.invoke(event, 2, outcome);
+        Jfr.COMMIT.invoke(event);
+      } catch (IllegalAccessException | InvocationTargetException e) {
+        continue;
+      }
+    }
+    endedEvents = null;
+  }
+
+  public void commit(WorkOrder workOrder, Outcome.Type outcome) {
+    if (!enabled) {
+      return;
+    }
+    commit(TestFinder.getTestFullName(workOrder.test, "#"), workOrder.mutantId,
+        outcome == null ? "" : outcome.toString());
+  }
+
+  public static Closeable startRecording(String path) throws IOException {
+    // Starts recording the phase events (and only them) in this JVM, to be written to the given
+    // file when it exits, or when the returned recording is closed. Returns null if there's no JFR.
+    if (Jfr.NEW_EVENT == null) {
+      return null;
+    }
+    enabled = true;
+    try {
+      final Class<?> recordingClass = Class.forName("jdk.jfr.Recording");
+      final Object recording = recordingClass.getConstructor().newInstance();
+      for (Phase phase : Phase.values()) {
+        recordingClass.getMethod("enable", String.class).invoke(recording, phase.eventName);
+      }
+      recordingClass.getMethod("setDestination", Path.class).invoke(recording, Paths.get(path));
+      recordingClass.getMethod("setDumpOnExit", boolean.class).invoke(recording, true);
+      recordingClass.getMethod("start").invoke(recording);
+      return new Closeable() {
+        public void close() throws IOException {
+          try {
+            recordingClass.getMethod("stop").invoke(recording); // (which writes it out)
+            recordingClass.getMethod("close").invoke(recording);
+          } catch (InvocationTargetException e) {
+            throw new IOException("unable to write the flight recording", e.getCause());
+          } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new IOException(e);
+          }
+        }
+      };
+    } catch (InvocationTargetException e) {
+      throw new IOException("unable to start a flight recording to " + path, e.getCause());
+    } catch (ClassNotFoundException | NoSuchMethodException | InstantiationException
+        | IllegalAccessException e) {
+      return null;
+    }
+  }
+}
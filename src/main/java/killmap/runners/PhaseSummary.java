@@ -0,0 +1,148 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap.runners;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sums up the PhaseEvents in flight recordings: for each phase, how many times it happened, how
+ * long it took in total, on average and at most, and what share that is of the time spent in all
+ * phases on the same side (killmap's own JVM, or the workers). Coordinator-side round trips include
+ * everything the worker did for the test, so the worker-side phases break those down.
+ *
+ * Run as
+ *   java -jar killmap.jar phases killmap.jfr killmap-worker-*.jfr
+ * after a run with --flight-recording killmap.jfr. The summary is printed as CSV, with the phases
+ * that took longest first. Workers that crashed or had to be killed (e.g. for a timeout) don't get
+ * to write their recordings, so theirs are empty, and skipped.
+ *
+ * Reading recordings needs JFR's consumer API (Java 11 or later, or 8u262 for OpenJDK 8); the
+ * recordings can also be opened in JDK Mission Control.
+ */
+public class PhaseSummary {
+
+  private static class Totals {
+    long n = 0;
+
+    long totalNanos = 0;
+
+    long maxNanos = 0;
+  }
+
+  private final Map<PhaseEvents.Phase, Totals> totals =
+      new EnumMap<PhaseEvents.Phase, Totals>(PhaseEvents.Phase.class);
+
+  public void add(PhaseEvents.Phase phase, long nanos) {
+    Totals t = totals.get(phase);
+    if (t == null) {
+      t = new Totals();
+      totals.put(phase, t);
+    }
+    t.n++;
+    t.totalNanos += nanos;
+    t.maxNanos = Math.max(t.maxNanos, nanos);
+  }
+
+  public long count(PhaseEvents.Phase phase) {
+    return totals.containsKey(phase) ? totals.get(phase).n : 0;
+  }
+
+  public void addRecording(Path file) throws IOException {
+    // Adds the phase events in the given flight recording (ignoring any other events).
+    try {
+      Method readAllEvents = Class.forName("jdk.jfr.consumer.RecordingFile")
+          .getMethod("readAllEvents", Path.class);
+      Class<?> recordedEvent = Class.forName("jdk.jfr.consumer.RecordedEvent");
+      Method getEventType = recordedEvent.getMethod("getEventType");
+      Method getDuration = recordedEvent.getMethod("getDuration");
+      Method getName = Class.forName("jdk.jfr.EventType").getMethod("getName");
+      Method toNanos = Class.forName("java.time.Duration").getMethod("toNanos");
+      for (Object event : (List<?>) readAllEvents.invoke(null, file)) {
+        String name = (String) getName.invoke(getEventType.invoke(event));
+        if (!name.startsWith(PhaseEvents.EVENT_NAME_PREFIX)) {
+          continue;
+        }
+        for (PhaseEvents.Phase phase : PhaseEvents.Phase.values()) {
+          if (phase.eventName.equals(name)) {
+            add(phase, (Long) toNanos.invoke(getDuration.invoke(event)));
+          }
+        }
+      }
+    } catch (InvocationTargetException e) {
+      throw new IOException("unable to read " + file, e.getCause());
+    } catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException e) {
+      throw new IOException("this JVM can't read flight recordings (it needs jdk.jfr.consumer)");
+    }
+  }
+
+  public void print(PrintStream out) {
+    Map<String, Long> sideNanos = new HashMap<String, Long>();
+    for (Map.Entry<PhaseEvents.Phase, Totals> entry : totals.entrySet()) {
+      Long sum = sideNanos.get(entry.getKey().side);
+      sideNanos.put(entry.getKey().side, (sum == null ? 0 : sum) + entry.getValue().totalNanos);
+    }
+    List<PhaseEvents.Phase> phases = new ArrayList<PhaseEvents.Phase>(totals.keySet());
+    Collections.sort(phases, new Comparator<PhaseEvents.Phase>() {
+      public int compare(PhaseEvents.Phase a, PhaseEvents.Phase b) {
+        return Long.compare(totals.get(b).totalNanos, totals.get(a).totalNanos);
+      }
+    });
+    out.println("side,phase,events,total_ms,mean_ms,max_ms,percent");
+    for (PhaseEvents.Phase phase : phases) {
+      Totals t = totals.get(phase);
+      long sideTotal = sideNanos.get(phase.side);
+      out.println(String.format("%s,%s,%d,%.1f,%.3f,%.3f,%.1f", phase.side, phase.label, t.n,
+          t.totalNanos / 1e6, t.totalNanos / 1e6 / t.n, t.maxNanos / 1e6,
+          sideTotal == 0 ? 0 : 100.0 * t.totalNanos / sideTotal));
+    }
+  }
+
+  public static void main(String... args) {
+    if (args.length == 0) {
+      System.err.println("usage: java -jar killmap.jar phases RECORDING.jfr...");
+      System.exit(1);
+    }
+    PhaseSummary summary = new PhaseSummary();
+    for (String arg : args) {
+      if (new File(arg).length() == 0) {
+        // (A worker that had to be killed never got to write its recording.)
+        System.err.println("[skipping " + arg + ": empty]");
+        continue;
+      }
+      try {
+        summary.addRecording(Paths.get(arg));
+      } catch (IOException e) {
+        System.err.println(e.getMessage() + (e.getCause() == null ? "" : ": " + e.getCause()));
+        System.exit(1);
+      }
+    }
+    summary.print(System.out);
+  }
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap.runners;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * The stream behind the worker's System.out and System.err while it runs tests: it passes what
+ * each thread writes on to the current test's stream (see `setTarget`), except for threads that
+ * have been quarantined (see ThreadQuarantine), whose output is thrown away.
+ *
+ * Routing by thread, rather than just swapping System.out for each test, is what stops a test's
+ * leftover threads from printing into the output of the tests after it: they may have kept a
+ * reference to an earlier System.out, or look it up afresh, and either way end up here.
+ */
+public class QuarantiningOutputStream extends OutputStream {
+
+  private final ThreadQuarantine quarantine;
+
+  // (Each write reads this before checking the quarantine: a group is quarantined before the next
+  // test's stream is set, so a thread that sees that stream also sees that it's been quarantined.)
+  private volatile OutputStream target;
+
+  public QuarantiningOutputStream(ThreadQuarantine quarantine_, OutputStream target_) {
+    quarantine = quarantine_;
+    target = target_;
+  }
+
+  public void setTarget(OutputStream target_) {
+    target = target_;
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    OutputStream currentTarget = target;
+    if (!quarantine.isQuarantined(Thread.currentThread())) {
+      currentTarget.write(b);
+    }
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    OutputStream currentTarget = target;
+    if (!quarantine.isQuarantined(Thread.currentThread())) {
+      currentTarget.write(b, off, len);
+    }
+  }
+
+  @Override
+  public void flush() throws IOException {
+    OutputStream currentTarget = target;
+    if (!quarantine.isQuarantined(Thread.currentThread())) {
+      currentTarget.flush();
+    }
+  }
+}
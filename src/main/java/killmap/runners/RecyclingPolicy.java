@@ -0,0 +1,138 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap.runners;
+
+import killmap.runners.communication.WorkerTelemetry;
+
+/**
+ * Decides when a worker has run enough tests and should be swapped for a fresh one, before it's
+ * worn out enough to start timing out or crashing: after a fixed number of tests, once the memory
+ * still in use after garbage collection (heap, or metaspace where that's bounded) passes a fraction
+ * of the maximum, or once the worker spends too much of its time collecting garbage.
+ *
+ * After each test, `afterTest` says whether to keep the worker (KEEP), to keep it but start its
+ * replacement, since it's within 10% of a limit or about to run its last test (PREPARE), or to
+ * retire it now (RETIRE; see `reason`). Call `workerStarted` whenever a new worker takes over.
+ */
+public class RecyclingPolicy {
+
+  public static enum Verdict {
+    KEEP, PREPARE, RETIRE;
+  }
+
+  public static final double DEFAULT_MAX_MEMORY_FRACTION = 0.8;
+
+  public static final double DEFAULT_MAX_GC_OVERHEAD = 0.3;
+
+  // GC overhead is only judged once the worker has run tests for this long, so that one unlucky
+  // collection during a short test doesn't retire it.
+  public static final long GC_OVERHEAD_MIN_RUN_MILLIS = 5000;
+
+  private static final double PREPARE_FRACTION = 0.9;
+
+  private final int maxTests; // 0 for no limit
+
+  private final double maxMemoryFraction;
+
+  private final double maxGcOverhead;
+
+  private int testsRun; // by the current worker
+
+  private long runMillis; // total runtime of the current worker's tests
+
+  private long gcMillis; // time the current worker spent collecting garbage during them
+
+  private String reason;
+
+  private int nRetirements;
+
+  public RecyclingPolicy(int maxTests_, double maxMemoryFraction_, double maxGcOverhead_) {
+    maxTests = maxTests_;
+    maxMemoryFraction = maxMemoryFraction_;
+    maxGcOverhead = maxGcOverhead_;
+    reason = null;
+    nRetirements = 0;
+    workerStarted();
+  }
+
+  public void workerStarted() {
+    testsRun = 0;
+    runMillis = 0;
+    gcMillis = 0;
+  }
+
+  public int testsRun() {
+    return testsRun;
+  }
+
+  public String reason() {
+    // Why the last RETIRE (or PREPARE) verdict was given.
+    return reason;
+  }
+
+  public int retirementCount() {
+    return nRetirements;
+  }
+
+  public Verdict afterTest(WorkerTelemetry telemetry, long runTime) {
+    // Judges the current worker, given how it was doing after a test (or null, if it didn't say)
+    // and how long the test took.
+    testsRun++;
+    runMillis += Math.max(0, runTime);
+    double worst = 0;
+    String worstReason = null;
+    if (maxTests > 0) {
+      worst = (double) testsRun / maxTests;
+      worstReason = testsRun + " tests run";
+    }
+    if (telemetry != null) {
+      gcMillis += Math.max(0, telemetry.gcMillis);
+      if (telemetry.heapMax > 0) {
+        double fraction = (double) telemetry.heapLive / telemetry.heapMax;
+        if (fraction / maxMemoryFraction > worst) {
+          worst = fraction / maxMemoryFraction;
+          worstReason = String.format("%.0f%% of the heap in use", 100 * fraction);
+        }
+      }
+      if (telemetry.metaspaceMax > 0) {
+        double fraction = (double) telemetry.metaspaceUsed / telemetry.metaspaceMax;
+        if (fraction / maxMemoryFraction > worst) {
+          worst = fraction / maxMemoryFraction;
+          worstReason = String.format("%.0f%% of the metaspace in use", 100 * fraction);
+        }
+      }
+    }
+    if (runMillis >= GC_OVERHEAD_MIN_RUN_MILLIS) {
+      double overhead = (double) gcMillis / runMillis;
+      if (overhead / maxGcOverhead > worst) {
+        worst = overhead / maxGcOverhead;
+        worstReason = String.format("%.0f%% of the time spent collecting garbage", 100 * overhead);
+      }
+    }
+
+    if (worst >= 1) {
+      reason = worstReason;
+      nRetirements++;
+      return Verdict.RETIRE;
+    }
+    if (worst >= PREPARE_FRACTION || (maxTests > 0 && testsRun + 1 >= maxTests)) {
+      reason = worstReason;
+      return Verdict.PREPARE;
+    }
+    return Verdict.KEEP;
+  }
+}
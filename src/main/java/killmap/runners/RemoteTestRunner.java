@@ -18,11 +18,13 @@ package killmap.runners;
 
 import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.PrintStream;
-import java.lang.reflect.Field;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
@@ -32,16 +34,29 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import killmap.runners.communication.Outcome;
 import killmap.runners.communication.WorkOrder;
+import killmap.runners.communication.WorkerTelemetry;
+import killmap.runners.isolation.DeadEndDigestOutputStream;
+import killmap.runners.transport.Connection;
+import killmap.runners.transport.Transport;
 
 /**
  * Runs tests in a subprocess, to insulate this process from any possible damage inflicted by the
  * test (e.g. OutOfMemoryErrors).
  *
  * A RemoteTestRunner has a single "worker" subprocess, which is running TestRunner.main(). They
- * communicate over a socket, the RemoteTestRunner issuing WorkOrders and receiving Outcomes. If the
- * worker fails to respond within a reasonable amount of time (slightly larger than the timeout
- * associated with the test, to allow for small random overheads), the worker is killed and a new
- * one is spawned, under the assumption that something terrible has happened to the old one.
+ * communicate over a socket (or a pipe; see Transport), the RemoteTestRunner issuing WorkOrders
+ * and receiving Outcomes. If the worker fails to respond within a reasonable amount of time
+ * (slightly larger than the timeout associated with the test, to allow for small random
+ * overheads), the worker is killed and a new one is spawned, under the assumption that something
+ * terrible has happened to the old one.
+ * While it runs a test, the worker also sends heartbeats: if they stop for longer than usual (see
+ * HeartbeatMonitor), or the worker dies, it's given up on straight away rather than at the timeout.
+ * (The old one, and any processes it started, are killed in the background; see WorkerReaper.)
+ *
+ * Workers are also retired between tests when the RecyclingPolicy says they're wearing out, going
+ * by the WorkerTelemetry they send with each Outcome. When a worker gets close to retirement, its
+ * replacement is started in advance (the "spare"), so that it has finished starting up by the time
+ * it's needed.
  */
 public class RemoteTestRunner {
 
@@ -81,10 +96,20 @@ public class RemoteTestRunner {
     }
   }
 
-  private ServerSocket server; // socket the worker should connect to
+  private static final long RETIREMENT_GRACE_MILLIS = 5000;
+
+  private final Transport transport; // how workers connect to us
 
   private Process worker;
 
+  private Process spare; // started, but not yet connected to; null if there isn't one
+
+  private final WorkerReaper reaper; // tears down old workers in the background
+
+  private final HeartbeatMonitor heartbeats;
+
+  private Connection connection; // to the worker
+
   private PrintStream workOrderStream; // to send WorkOrders to the worker
 
   private BufferedReader outcomeStream; // to read the worker's responses
@@ -92,133 +117,222 @@ public class RemoteTestRunner {
   public Long workerTimeoutGracePeriod; // time the worker has to respond, on top of the test
                                         // timeout, before we kill it
 
+  public Integer maxLeakedThreads; // if not null, overrides ThreadQuarantine's default
+
+  public Long maxLeakedCpuMillis; // if not null, overrides ThreadQuarantine's default
+
+  public String outputDigest; // if not null, overrides DeadEndDigestOutputStream's default
+
+  public Long outputDigestMaxBytes; // if not null, overrides DeadEndDigestOutputStream's default
+
+  public RecyclingPolicy recyclingPolicy; // if null, workers are only replaced when they fail
+
+  public WorkerProfile workerProfile; // how worker JVMs are started
+
+  public String flightRecordingPrefix; // if not null, workers record to <prefix>-worker-<n>.jfr
+
+  private int nWorkersSpawned;
+
+  private long nWorkersStarted; // (connected to, i.e. not counting unused spares)
+
+  private final Map<String, Long> replacementCauses; // why workers had to go, e.g. "timeout"
+
   public RemoteTestRunner() throws SocketNotAvailableException {
+    this(Transport.DEFAULT);
+  }
+
+  public RemoteTestRunner(String transportName) throws SocketNotAvailableException {
+    // Talks to workers through the Transport of the given name (see Transport.create).
     try {
-      server = new ServerSocket(0/* any available port */);
+      transport = Transport.create(transportName);
     } catch (IOException e) {
       throw new SocketNotAvailableException(e);
     }
     worker = null;
+    spare = null;
+    reaper = new WorkerReaper();
+    heartbeats = new HeartbeatMonitor();
+    connection = null;
     workOrderStream = null;
     outcomeStream = null;
     workerTimeoutGracePeriod = null;
+    maxLeakedThreads = null;
+    maxLeakedCpuMillis = null;
+    outputDigest = null;
+    outputDigestMaxBytes = null;
+    recyclingPolicy = new RecyclingPolicy(0, RecyclingPolicy.DEFAULT_MAX_MEMORY_FRACTION,
+        RecyclingPolicy.DEFAULT_MAX_GC_OVERHEAD);
+    workerProfile = new WorkerProfile();
+    flightRecordingPrefix = null;
+    nWorkersSpawned = 0;
+    nWorkersStarted = 0;
+    replacementCauses = new TreeMap<String, Long>();
   }
 
-  private Integer waitForExit(final Process p, Long timeout) {
-    ExecutorService executor = Executors.newSingleThreadExecutor();
-    Future<Integer> futureExitValue = executor.submit(new Callable<Integer>() {
-      public Integer call() throws Exception {
-        p.waitFor();
-        return p.exitValue();
-      }
-    });
-    try {
-      return futureExitValue.get(timeout, TimeUnit.MILLISECONDS);
-    } catch (TimeoutException | InterruptedException | ExecutionException e) {
-      futureExitValue.cancel(true);
-      return null;
-    }
-  }
-
-  private Integer getPid(Process p) {
-    // Reflection black magic.
-    try {
-      Field pidField = p.getClass().getDeclaredField("pid");
-      pidField.setAccessible(true);
-      return (Integer) pidField.get(p);
-    } catch (NoSuchFieldException | IllegalAccessException e) {
-      System.err.println("unable to get PID of " + p);
-      e.printStackTrace();
-      return null;
-    }
-  }
-
-  private void kill9(Process p) {
-    Integer pid = getPid(p);
-
-    Process killer;
-    try {
-      killer = (new ProcessBuilder()).redirectError(ProcessBuilder.Redirect.INHERIT)
-          .command(new String[] {"kill", "-9", pid.toString()}).start();
-    } catch (IOException e) {
-      System.err.println("Arrrgh: unable start 'kill -9 " + pid + "'");
-      e.printStackTrace();
+  private void retireWorker() {
+    // Like killWorker, but for a worker that's still healthy: if it's making a flight recording, it
+    // is told to exit (by closing its work orders), and given a while to write the recording.
+    if (flightRecordingPrefix == null || worker == null) {
+      killWorker();
       return;
     }
-
-    Integer killerExitValue = waitForExit(killer, (long) 500);
-    if (killerExitValue == null) {
-      System.err.println("Warning: 'kill -9 " + pid + "' did not exit in 0.5s");
-    } else if (killerExitValue != 0) {
-      System.err.println("Warning: 'kill -9 " + pid + "' exited with status " + killerExitValue);
-    }
-
+    workOrderStream.close();
+    killWorker(RETIREMENT_GRACE_MILLIS);
   }
 
-  private void superDuperKillProcess(Process p) {
-    p.destroy();
-    if (waitForExit(p, (long) 100) == null) {
-      return;
-    }
-    kill9(p);
-    try {
-      p.waitFor();
-    } catch (InterruptedException e) {
-    }
+  private void killWorker() {
+    killWorker(0);
   }
 
-  private void killWorker() {
+  private void killWorker(long graceMillis) {
     Process oldWorker = worker;
+    Connection oldConnection = connection;
     worker = null;
+    connection = null;
     workOrderStream = null;
     outcomeStream = null;
     workerTimeoutGracePeriod = null;
     if (oldWorker != null) {
       System.err.println("killing worker");
-      superDuperKillProcess(oldWorker);
+      reaper.reap(oldWorker, oldConnection, graceMillis);
     }
   }
 
-  private void createFreshWorker() throws WorkerCreationError, WorkerCommunicationError {
-    killWorker();
+  private static boolean hasExited(Process process) {
+    try {
+      process.exitValue();
+      return true;
+    } catch (IllegalThreadStateException e) {
+      return false;
+    }
+  }
 
-    // Fork the worker
+  private Process spawnWorkerProcess(boolean spare) throws WorkerCreationError {
+    // Forks a worker (or a spare), which will connect through the transport (e.g. to a server
+    // socket, waiting in its backlog until it's accepted).
     String classpath = System.getenv("KILLMAP_CLASSPATH");
     try {
-      String[] command = {"java", "-Djava.awt.headless=true", "-XX:ReservedCodeCacheSize=512M",
-          "-XX:MaxPermSize=1G", "-XX:-OmitStackTraceInFastThrow", "-cp", classpath,
-          "killmap.runners.TestRunner", Integer.toString(server.getLocalPort())};
-      worker = new ProcessBuilder().redirectError(ProcessBuilder.Redirect.INHERIT).command(command)
+      List<String> command = new ArrayList<String>();
+      command.addAll(workerProfile.launcher(spare));
+      command.addAll(workerProfile.jvmArguments(classpath));
+      if (maxLeakedThreads != null) {
+        command.add("-D" + ThreadQuarantine.MAX_THREADS_PROPERTY + "=" + maxLeakedThreads);
+      }
+      if (maxLeakedCpuMillis != null) {
+        command.add("-D" + ThreadQuarantine.MAX_CPU_MILLIS_PROPERTY + "=" + maxLeakedCpuMillis);
+      }
+      if (outputDigest != null) {
+        command.add("-D" + DeadEndDigestOutputStream.ALGORITHM_PROPERTY + "=" + outputDigest);
+      }
+      if (outputDigestMaxBytes != null) {
+        command.add(
+            "-D" + DeadEndDigestOutputStream.MAX_BYTES_PROPERTY + "=" + outputDigestMaxBytes);
+      }
+      if (flightRecordingPrefix != null) {
+        nWorkersSpawned++;
+        command.add("-D" + PhaseEvents.RECORDING_PROPERTY + "=" + flightRecordingPrefix + "-worker-"
+            + nWorkersSpawned + ".jfr");
+      }
+      command.addAll(Arrays.asList("-cp", classpath, "killmap.runners.TestRunner"));
+      command.addAll(transport.workerArguments());
+      return new ProcessBuilder().redirectError(ProcessBuilder.Redirect.INHERIT).command(command)
           .start();
     } catch (IOException e) {
       throw new WorkerCreationError(e);
     }
+  }
+
+  private void prepareSpareWorker() {
+    if (spare != null) {
+      return;
+    }
+    try {
+      workerProfile.makeRoomForSpare(worker);
+    } catch (IOException e) {
+      System.err.println(
+          "[unable to move the worker off the spare's CPUs: " + e.getMessage() + "]");
+    }
+    try {
+      spare = spawnWorkerProcess(true);
+    } catch (WorkerCreationError e) {
+      // Never mind: createFreshWorker will try again when the spare is needed.
+      System.err.println("[unable to start a spare worker: " + e.getMessage() + "]");
+    }
+  }
+
+  private void createFreshWorker(PhaseEvents phases)
+      throws WorkerCreationError, WorkerCommunicationError {
+    killWorker();
+
+    Object spawn = phases.begin(PhaseEvents.Phase.WORKER_SPAWN);
+
+    // Fork the worker, unless there's a spare ready (and it hasn't died waiting).
+    if (spare != null && hasExited(spare)) {
+      reaper.reap(spare);
+      spare = null;
+    }
+    if (spare != null) {
+      worker = spare;
+      spare = null;
+      try {
+        workerProfile.spareTakesOver(worker);
+      } catch (IOException e) {
+        System.err.println("[unable to give the worker all its CPUs: " + e.getMessage() + "]");
+      }
+    } else {
+      worker = spawnWorkerProcess(false);
+    }
 
     // Let the worker connect
-    Socket socket = null;
     try {
-      socket = server.accept();
-      workOrderStream = new PrintStream(socket.getOutputStream());
-      outcomeStream = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+      connection = transport.accept(worker);
+      workOrderStream = connection.out;
+      outcomeStream = connection.in;
     } catch (IOException e) {
       throw new WorkerCreationError(e);
     }
+    phases.end(spawn);
 
     // Do the startup handshake and figure out the grace period.
+    Object handshake = phases.begin(PhaseEvents.Phase.HANDSHAKE);
     Long pingTime = null;
     try {
-      pingTime = TestRunner.initializeSocketToTestRunner(socket);
+      pingTime = TestRunner.initializeConnectionToTestRunner(connection);
     } catch (IOException e) {
       throw new WorkerCommunicationError(e);
     }
+    phases.end(handshake);
     workerTimeoutGracePeriod = gracePeriodFromPingTime(pingTime);
+    synchronized (this) {
+      nWorkersStarted++;
+    }
+    if (recyclingPolicy != null) {
+      recyclingPolicy.workerStarted();
+    }
 
-    System.err.println("Created worker with pid " + getPid(worker));
+    System.err.println("Created worker with pid " + WorkerReaper.pid(worker));
   }
 
-  private void ensureWorkerExists() throws WorkerCreationError, WorkerCommunicationError {
+  private synchronized void countReplacement(String cause) {
+    Long n = replacementCauses.get(cause);
+    replacementCauses.put(cause, n == null ? 1 : n + 1);
+  }
+
+  public synchronized long workersStarted() {
+    return nWorkersStarted;
+  }
+
+  public synchronized Map<String, Long> replacementCounts() {
+    // How many workers had to be got rid of between tests, by cause: "timeout", "no_heartbeats",
+    // "died", "lost_contact", "interrupted", "no_response", "bad_response", "out_of_memory",
+    // "leaked_threads" or "recycling_policy".
+    return new TreeMap<String, Long>(replacementCauses);
+  }
+
+  private void ensureWorkerExists(PhaseEvents phases)
+      throws WorkerCreationError, WorkerCommunicationError {
     if (worker == null) {
-      createFreshWorker();
+      createFreshWorker(phases);
     }
   }
 
@@ -226,6 +340,14 @@ public class RemoteTestRunner {
     // Runs the specified test in a worker JVM, gets the outcome from the worker,
     // and returns it. If the worker doesn't respect the timeout named in the WorkOrder, kills the
     // worker.
+    PhaseEvents phases = new PhaseEvents();
+    Outcome result = runTest(workOrder, phases);
+    phases.commit(workOrder, result.type);
+    return result;
+  }
+
+  private Outcome runTest(WorkOrder workOrder, PhaseEvents phases)
+      throws WorkerCreationError, WorkerCommunicationError {
 
     // For some reason the GC doesn't clean up after us very well, so let's trigger it manually if
     // there seem to be "too many" loose threads.
@@ -235,54 +357,152 @@ public class RemoteTestRunner {
     }
 
     // Send the command to the worker.
-    ensureWorkerExists();
-    workOrderStream.println(workOrder.toString());
+    ensureWorkerExists(phases);
+    Object serialization = phases.begin(PhaseEvents.Phase.SERIALIZATION);
+    String workOrderString = workOrder.toString();
+    phases.end(serialization);
+    Object roundTrip = phases.begin(PhaseEvents.Phase.ROUND_TRIP);
+    workOrderStream.println(workOrderString);
 
     // Read the response from the worker.
+    // (The outcome may be preceded by heartbeats, and lines with the worker's telemetry and a
+    // request to be recycled; see TestRunner.main. They're collected by prefix.)
     final BufferedReader thisWorkerOutcomeStream = outcomeStream;
+    final HeartbeatMonitor heartbeats = this.heartbeats;
+    heartbeats.testStarted(System.currentTimeMillis());
+    final Map<String, String> extraLines = new HashMap<String, String>();
+    final String[] prefixes = {TestRunner.TELEMETRY_PREFIX, TestRunner.RECYCLE_PREFIX};
     ExecutorService executor = Executors.newSingleThreadExecutor();
     Future<String> futureResponse = executor.submit(new Callable<String>() {
       public String call() throws IOException {
-        return thisWorkerOutcomeStream.readLine();
+        String line = thisWorkerOutcomeStream.readLine();
+        while (line != null) {
+          if (line.startsWith(TestRunner.HEARTBEAT_PREFIX)) {
+            heartbeats.beat(System.currentTimeMillis(),
+                line.substring(TestRunner.HEARTBEAT_PREFIX.length()));
+            line = thisWorkerOutcomeStream.readLine();
+            continue;
+          }
+          String prefix = null;
+          for (String p : prefixes) {
+            if (line.startsWith(p)) {
+              prefix = p;
+            }
+          }
+          if (prefix == null) {
+            break;
+          }
+          extraLines.put(prefix, line.substring(prefix.length()));
+          line = thisWorkerOutcomeStream.readLine();
+        }
+        return line;
       }
     });
-    String response = null;
-    try {
-      response = futureResponse.get(workOrder.timeout.intValue() + workerTimeoutGracePeriod,
-          TimeUnit.MILLISECONDS);
-    } catch (TimeoutException | InterruptedException | ExecutionException e) {
-      System.err.println("worker timed out without responding");
-      futureResponse.cancel(true);
+    executor.shutdown();
+    String response = waitForResponse(futureResponse, workOrder);
+    phases.end(roundTrip);
+    if (futureResponse.isCancelled()) {
       killWorker();
       return Outcome.createCrash();
     }
 
     if (response == null) {
       System.err.println("worker exited without responding");
+      countReplacement("no_response");
       killWorker();
       return Outcome.createCrash();
     }
 
     Outcome result = null;
+    serialization = phases.begin(PhaseEvents.Phase.SERIALIZATION);
     try {
       result = Outcome.fromString(response);
+      if (extraLines.containsKey(TestRunner.TELEMETRY_PREFIX)) {
+        result.telemetry = WorkerTelemetry.fromString(extraLines.get(TestRunner.TELEMETRY_PREFIX));
+      }
     } catch (IllegalArgumentException e) {
       System.err.println("worker printed nonsense to socket");
       e.printStackTrace();
+      countReplacement("bad_response");
       killWorker();
       return Outcome.createCrash();
     }
+    phases.end(serialization);
 
     // If the worker experienced an OutOfMemoryError, resource exhaustion might be an issue, even if
     // it's healthy enough to tell us the outcome. Let's not take any chances about corrupting
     // future test results: kill the worker. (This is a rare occurrence, so this isn't
     // computationally expensive.)
     if (result.stackTrace.startsWith("java.lang.RuntimeException: java.lang.OutOfMemoryError")) {
-      killWorker();
+      countReplacement("out_of_memory");
+      retireWorker();
+    } else if (extraLines.containsKey(TestRunner.RECYCLE_PREFIX)) {
+      // Threads left behind by timed-out tests have got out of hand (see ThreadQuarantine).
+      System.err.println(
+          "[recycling worker: " + extraLines.get(TestRunner.RECYCLE_PREFIX) + "]");
+      countReplacement("leaked_threads");
+      retireWorker();
+    } else if (recyclingPolicy != null) {
+      switch (recyclingPolicy.afterTest(result.telemetry, result.runTime)) {
+        case PREPARE:
+          prepareSpareWorker();
+          break;
+        case RETIRE:
+          System.err.println("[retiring worker after " + recyclingPolicy.testsRun() + " tests: "
+              + recyclingPolicy.reason() + "]");
+          countReplacement("recycling_policy");
+          retireWorker();
+          break;
+        default:
+          break;
+      }
     }
     return result;
   }
 
+  private String waitForResponse(Future<String> futureResponse, WorkOrder workOrder) {
+    // Waits for the worker's response, checking on its heartbeats every so often. Gives up, and
+    // cancels futureResponse, if the worker goes quiet for too long or dies, or doesn't respond
+    // within the timeout plus the grace period (the larger of the one measured at startup and the
+    // silence allowed between heartbeats).
+    long start = System.currentTimeMillis();
+    while (true) {
+      String problem = null;
+      String cause = null;
+      try {
+        return futureResponse.get(HeartbeatMonitor.INTERVAL_MILLIS / 2, TimeUnit.MILLISECONDS);
+      } catch (TimeoutException e) {
+        long now = System.currentTimeMillis();
+        long allowedSilence = heartbeats.allowedSilence();
+        if (now - start > workOrder.timeout + Math.max(workerTimeoutGracePeriod, allowedSilence)) {
+          problem = "worker timed out without responding";
+          cause = "timeout";
+        } else if (heartbeats.silence(now) > allowedSilence) {
+          String last = heartbeats.lastProgress();
+          problem = "worker stopped sending heartbeats for " + heartbeats.silence(now) + "ms ("
+              + (last == null ? "none received for this test" : "last: " + last) + ")";
+          cause = "no_heartbeats";
+        } else if (hasExited(worker)) {
+          problem = "worker died while running a test";
+          cause = "died";
+        }
+      } catch (ExecutionException e) {
+        problem = "lost contact with worker: " + e.getCause();
+        cause = "lost_contact";
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        problem = "interrupted while waiting for worker";
+        cause = "interrupted";
+      }
+      if (problem != null) {
+        System.err.println(problem);
+        countReplacement(cause);
+        futureResponse.cancel(true);
+        return null;
+      }
+    }
+  }
+
   private static long gracePeriodFromPingTime(long pingTime) {
     if (pingTime < 25) {
       return 100;
@@ -291,6 +511,25 @@ public class RemoteTestRunner {
   }
 
   public void close() throws IOException {
-    killWorker();
+    retireWorker();
+    if (spare != null) {
+      reaper.reap(spare);
+      spare = null;
+    }
+    transport.close();
+    if (recyclingPolicy != null && recyclingPolicy.retirementCount() > 0) {
+      System.err.println("[workers retired by the recycling policy: "
+          + recyclingPolicy.retirementCount() + "]");
+    }
+    try {
+      if (!reaper.close(5000 + (flightRecordingPrefix == null ? 0 : RETIREMENT_GRACE_MILLIS))) {
+        System.err.println("[warning: " + reaper.pendingCount() + " workers still not dead]");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    System.err.println("[worker teardowns: " + reaper.teardownCount() + ", taking "
+        + String.format("%.1f", reaper.meanTeardownMillis()) + "ms on average, "
+        + reaper.maxTeardownMillis() + "ms at most]");
   }
 }
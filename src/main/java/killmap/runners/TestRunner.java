@@ -16,25 +16,28 @@
  */
 package killmap.runners;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.PrintStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationTargetException;
-import java.net.Socket;
+import java.util.Arrays;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
-import org.junit.runner.JUnitCore;
-import org.junit.runner.Request;
-import org.junit.runner.Result;
+import killmap.runners.communication.MutantSet;
 import killmap.runners.communication.Outcome;
 import killmap.runners.communication.WorkOrder;
+import killmap.runners.communication.WorkerTelemetry;
 import killmap.runners.isolation.DeadEndDigestOutputStream;
 import killmap.runners.isolation.IsolatingClassLoader;
-import major.mutation.Config;
+import killmap.runners.transport.Connection;
+import killmap.runners.transport.Transport;
 
 /**
  * Runs JUnit tests.
@@ -44,56 +47,99 @@ import major.mutation.Config;
  * that test with that mutant and timeout write the Outcome to the socket repeat forever
  *
  * Sometimes, a test will crash the JVM. It's the other side's responsibility to notice when that
- * happens, kill this process, and fork a new one.
+ * happens, kill this process, and fork a new one. (Tests that time out but won't stop are left
+ * running, quarantined, until there are too many of them; see ThreadQuarantine.)
  */
 public class TestRunner {
 
-  public static Outcome simpleBlockingRunTest(WorkOrder workOrder) {
-    // Just run the test and record the covered mutants. No fancy stuff.
-    Config.reset();
-    Config.__M_NO = workOrder.mutantId;
-    Result result = (new JUnitCore())
-        .run(Request.method(workOrder.test.getTestClass(), workOrder.test.getName()));
-    Outcome outcome = new Outcome(result, "");
-    outcome.coveredMutants = Config.getCoverageList();
-    Config.reset();
-    return outcome;
-  }
+  public static final String RECYCLE_PREFIX = "recycle:";
+
+  public static final String TELEMETRY_PREFIX = "telemetry:";
+
+  public static final String HEARTBEAT_PREFIX = "heartbeat:";
 
-  private static Outcome simpleBlockingRunTestInOtherClassLoader(ClassLoader classLoader,
-      WorkOrder workOrder) throws ClassNotFoundException, NoSuchMethodException,
-      IllegalAccessException, InvocationTargetException {
-    // Call simpleBlockingRunTest in the other class loader, doing all the necessary translation
-    // between objects of classes loaded by our loader, and objects of the corresponding classes
-    // loaded by the other loader.
+  // The work order being run by main, and when it started, for the heartbeats; guarded by the
+  // outcome stream.
+  private static WorkOrder currentWorkOrder = null;
 
-    // The translation is done by converting to a string and back again.
+  private static long currentStartTime = 0;
 
-    Class<?> theirWorkOrderClass = classLoader.loadClass(WorkOrder.class.getCanonicalName());
-    Class<?> theirTestRunnerClass = classLoader.loadClass(TestRunner.class.getCanonicalName());
+  private static final MethodType ENTRY_POINT_TYPE =
+      MethodType.methodType(Object[].class, String.class, String.class, int.class);
 
-    Object theirWorkOrder = theirWorkOrderClass.getDeclaredMethod("fromString", String.class)
-        .invoke(null, workOrder.toString());
-    Object theirOutcome =
-        theirTestRunnerClass.getDeclaredMethod("simpleBlockingRunTest", theirWorkOrderClass)
-            .invoke(null, theirWorkOrder);
+  // Threads left behind by tests that timed out.
+  private static final ThreadQuarantine quarantine = ThreadQuarantine.fromSystemProperties();
 
-    return Outcome.fromString(theirOutcome.toString());
+  // What System.out and System.err write to while a test runs (see runTest).
+  private static final QuarantiningOutputStream stdoutRouter =
+      new QuarantiningOutputStream(quarantine, System.out);
+
+  private static final QuarantiningOutputStream stderrRouter =
+      new QuarantiningOutputStream(quarantine, System.err);
+
+  public static Outcome simpleBlockingRunTest(WorkOrder workOrder) throws ClassNotFoundException {
+    // Just run the test (in this class loader) and record the covered mutants. No fancy stuff.
+    return outcomeFrom(IsolatedEntryPoint.run(workOrder.test.getTestClass().getName(),
+        workOrder.test.getName(), workOrder.mutantId));
   }
 
-  public static Outcome isolatedBlockingRunTest(WorkOrder workOrder) throws ClassNotFoundException,
-      NoSuchMethodException, IllegalAccessException, InvocationTargetException {
+  private static Outcome outcomeFrom(Object[] fields) {
+    // Converts the result of IsolatedEntryPoint.run into an Outcome.
+    return Outcome.create(
+        Outcome.Type.valueOf((String) fields[IsolatedEntryPoint.TYPE]),
+        (Long) fields[IsolatedEntryPoint.RUN_TIME],
+        (String) fields[IsolatedEntryPoint.STACK_TRACE],
+        MutantSet.of((int[]) fields[IsolatedEntryPoint.COVERED_MUTANTS]));
+  }
+
+  private static Outcome simpleBlockingRunTestInOtherClassLoader(MethodHandle entryPoint,
+      WorkOrder workOrder) throws InvocationTargetException {
+    // Call IsolatedEntryPoint.run in the other class loader (given its entry point). It only takes
+    // and returns JDK types, which are shared by both loaders, so nothing needs translating.
+    Object[] fields;
+    try {
+      fields = (Object[]) entryPoint.invokeExact(workOrder.test.getTestClass().getName(),
+          workOrder.test.getName(), (int) workOrder.mutantId);
+    } catch (RuntimeException | Error e) {
+      throw e;
+    } catch (Throwable t) {
+      throw new InvocationTargetException(t);
+    }
+    return outcomeFrom(fields);
+  }
+
+  public static Outcome isolatedBlockingRunTest(WorkOrder workOrder)
+      throws ClassNotFoundException, InvocationTargetException {
+    return isolatedBlockingRunTest(workOrder, new PhaseEvents());
+  }
+
+  private static Outcome isolatedBlockingRunTest(WorkOrder workOrder, PhaseEvents phases)
+      throws ClassNotFoundException, InvocationTargetException {
 
     // Create a fresh, isolated classloader with the same classpath as the current one.
+    Object classLoaderCreation = phases.begin(PhaseEvents.Phase.CLASS_LOADER);
     ClassLoader theirClassLoader = new IsolatingClassLoader();
     // Make the isolated classloader our thread's new classloader. This method is called in a
     // dedicated thread that ends right after this method returns, so we don't need to worry about
     // restoring the old classloader when we're done.
     Thread.currentThread().setContextClassLoader(theirClassLoader);
 
+    // Look up IsolatedEntryPoint.run in their copy of it. (Every test has a fresh loader, and so a
+    // fresh copy, so there's no point caching the handle.)
+    MethodHandle entryPoint;
+    try {
+      entryPoint = MethodHandles.publicLookup().findStatic(
+          theirClassLoader.loadClass(IsolatedEntryPoint.class.getName()), "run", ENTRY_POINT_TYPE);
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      throw new IllegalStateException(e);
+    }
+    phases.end(classLoaderCreation);
+
+    Object junit = phases.begin(PhaseEvents.Phase.JUNIT);
     Long t0 = System.currentTimeMillis();
-    Outcome outcome = simpleBlockingRunTestInOtherClassLoader(theirClassLoader, workOrder);
+    Outcome outcome = simpleBlockingRunTestInOtherClassLoader(entryPoint, workOrder);
     Long t1 = System.currentTimeMillis();
+    phases.end(junit);
     outcome.runTime = t1 - t0;
     return outcome;
   }
@@ -105,12 +151,13 @@ public class TestRunner {
     }
   }
 
-  private static Outcome runTestWithoutCatchingStdStreams(final WorkOrder workOrder) {
+  private static Outcome runTestWithoutCatchingStdStreams(final WorkOrder workOrder,
+      final PhaseEvents phases) {
 
     FutureTask<Outcome> futureOutcome = new FutureTask<Outcome>(new Callable<Outcome>() {
       public Outcome call() throws Exception {
         try {
-          return TestRunner.isolatedBlockingRunTest(workOrder);
+          return TestRunner.isolatedBlockingRunTest(workOrder, phases);
         } catch (Exception e) {
           e.printStackTrace();
           throw e;
@@ -136,29 +183,49 @@ public class TestRunner {
       if (group.activeCount() == 0)
         return Outcome.createTimeout(workOrder);
 
-      System.exit(1);
-      return null;
+      // Some threads ignored the interrupt. Leave them be, as harmlessly as possible, until there
+      // are too many of them (see main).
+      quarantine.quarantine(group);
+      return Outcome.createTimeout(workOrder);
     }
   }
 
   public static Outcome runTest(WorkOrder workOrder) {
+    return runTest(workOrder, new PhaseEvents());
+  }
+
+  private static Outcome runTest(WorkOrder workOrder, PhaseEvents phases) {
     // Run the given test, with the given mutant, for the given time. If the test tries to print
     // anything to stdout/stderr, intercept that output and just remember the hash. (Mutants can
     // print out zillions of lines.) The test is run in a fresh classloader so it's not easy to
-    // change static state for future tests.
+    // change static state for future tests. (The streams are buffered, so that the hash function
+    // is fed big chunks rather than each print separately; see DeadEndDigestOutputStream for how
+    // to choose a faster one, or none.) The output goes through the routers, which throw away
+    // whatever threads left behind by earlier tests print, rather than let it into this test's
+    // hash (see QuarantiningOutputStream).
     PrintStream originalStdout = System.out;
     PrintStream originalStderr = System.err;
-    DeadEndDigestOutputStream fakeStdout = new DeadEndDigestOutputStream();
-    DeadEndDigestOutputStream fakeStderr = new DeadEndDigestOutputStream();
-    System.setOut(new PrintStream(fakeStdout));
-    System.setErr(new PrintStream(fakeStderr));
+    DeadEndDigestOutputStream fakeStdout = DeadEndDigestOutputStream.fromSystemProperties();
+    DeadEndDigestOutputStream fakeStderr = DeadEndDigestOutputStream.fromSystemProperties();
+    stdoutRouter.setTarget(new BufferedOutputStream(fakeStdout, 8192));
+    stderrRouter.setTarget(new BufferedOutputStream(fakeStderr, 8192));
+    PrintStream stdout = new PrintStream(stdoutRouter);
+    PrintStream stderr = new PrintStream(stderrRouter);
+    System.setOut(stdout);
+    System.setErr(stderr);
     try {
-      Outcome outcome = runTestWithoutCatchingStdStreams(workOrder);
+      Outcome outcome = runTestWithoutCatchingStdStreams(workOrder, phases);
+      Object digesting = phases.begin(PhaseEvents.Phase.OUTPUT_DIGEST);
+      stdout.flush();
+      stderr.flush();
       outcome.digest = fakeStdout.getDigestString() + fakeStderr.getDigestString();
+      phases.end(digesting);
       return outcome;
     } finally {
       System.setOut(originalStdout);
       System.setErr(originalStderr);
+      stdoutRouter.setTarget(originalStdout);
+      stderrRouter.setTarget(originalStderr);
     }
   }
 
@@ -166,12 +233,20 @@ public class TestRunner {
     /*
        Run as
          java -cp killmap.jar killmap.runners.TestRunner 12345
-       connects to port 12345 and, until the other end hangs up,
+       connects to port 12345 (or, given other arguments, to wherever Transport.connectAsWorker
+       says) and, until the other end hangs up,
          - reads a WorkOrder from the socket
          - runs the test, thoroughly isolated
-         - writes the Outcome to the socket
+         - writes the Outcome to the socket (preceded by a line TELEMETRY_PREFIX + how this
+           process is doing (see WorkerTelemetry))
+       and, while it runs the test, writes a line HEARTBEAT_PREFIX + how long it has been running
+       (in ms) + " " + the work order, every HeartbeatMonitor.INTERVAL_MILLIS;
+       until threads left behind by timed-out tests get out of hand (see ThreadQuarantine): then
+       the Outcome is preceded by a line RECYCLE_PREFIX + reason, and this process exits.
+       (Run with WorkerProfile.TRAINING_ARGUMENT instead, it just runs a trivial test a few times
+       and exits; see WorkerProfile.train.)
        It requires a short startup handshake with the other end, described in
-         the initializeSocketToTestRunner and initializeSocketAsTestRunner methods:
+         the initializeConnectionToTestRunner and initializeConnectionAsTestRunner methods:
 
          TestRunner          Other end
            "awake"   ----->
@@ -180,13 +255,21 @@ public class TestRunner {
                      <----- [work order]
           [outcome]  ----->
      */
-    int port = Integer.parseInt(args[0]);
-    Socket socket = new Socket("localhost", port);
-    initializeSocketAsTestRunner(socket);
+    if (args.length == 1 && args[0].equals(WorkerProfile.TRAINING_ARGUMENT)) {
+      WorkerProfile.train();
+      System.exit(0);
+    }
+    WorkerProfile.warmUp();
+    String flightRecording = System.getProperty(PhaseEvents.RECORDING_PROPERTY);
+    if (flightRecording != null) {
+      PhaseEvents.startRecording(flightRecording);
+    }
+    Connection connection = Transport.connectAsWorker(Arrays.asList(args));
+    initializeConnectionAsTestRunner(connection);
 
-    BufferedReader instructionStream =
-        new BufferedReader(new InputStreamReader(socket.getInputStream()));
-    PrintStream outcomeStream = new PrintStream(socket.getOutputStream());
+    BufferedReader instructionStream = connection.in;
+    PrintStream outcomeStream = connection.out;
+    startHeartbeats(outcomeStream);
 
     while (true) {
       String workOrderString = instructionStream.readLine();
@@ -196,24 +279,69 @@ public class TestRunner {
 
       WorkOrder workOrder = WorkOrder.fromString(workOrderString);
 
-      Outcome outcome = runTest(workOrder);
+      long gcMillisBefore = WorkerTelemetry.totalGcMillis();
+      synchronized (outcomeStream) {
+        currentWorkOrder = workOrder;
+        currentStartTime = System.currentTimeMillis();
+      }
+      PhaseEvents phases = new PhaseEvents();
+      Outcome outcome = runTest(workOrder, phases);
       if (outcome.type == Outcome.Type.TIMEOUT)
         outcome.runTime = workOrder.timeout;
 
-      outcomeStream.println(outcome.toString());
-      outcomeStream.flush();
+      String recycleReason = quarantine.recycleReasonOrNull();
+      synchronized (outcomeStream) {
+        currentWorkOrder = null;
+        outcomeStream.println(TELEMETRY_PREFIX + WorkerTelemetry.measure(gcMillisBefore));
+        if (recycleReason != null) {
+          outcomeStream.println(RECYCLE_PREFIX + recycleReason);
+        }
+        Object serialization = phases.begin(PhaseEvents.Phase.WORKER_SERIALIZATION);
+        outcomeStream.println(outcome.toString());
+        outcomeStream.flush();
+        phases.end(serialization);
+      }
+      phases.commit(workOrder, outcome.type);
+      if (recycleReason != null) {
+        System.exit(0);
+      }
     }
   }
 
-  public static Long initializeSocketToTestRunner(Socket socket) throws IOException {
+  private static void startHeartbeats(final PrintStream outcomeStream) {
+    // Starts a thread that sends heartbeats while main is running a test (see main).
+    Thread heartbeats = new Thread(new Runnable() {
+      public void run() {
+        while (true) {
+          try {
+            Thread.sleep(HeartbeatMonitor.INTERVAL_MILLIS);
+          } catch (InterruptedException e) {
+            return;
+          }
+          synchronized (outcomeStream) {
+            if (currentWorkOrder != null) {
+              outcomeStream.println(HEARTBEAT_PREFIX
+                  + (System.currentTimeMillis() - currentStartTime) + " " + currentWorkOrder);
+              outcomeStream.flush();
+            }
+          }
+        }
+      }
+    }, "killmap heartbeats");
+    heartbeats.setDaemon(true);
+    heartbeats.setPriority(Thread.MAX_PRIORITY);
+    heartbeats.start();
+  }
+
+  public static Long initializeConnectionToTestRunner(Connection connection) throws IOException {
     // Takes care of the "other side" of the startup handshake described in "main",
     // and returns the number of milliseconds a round-trip message takes.
-    PrintStream toRunner = new PrintStream(socket.getOutputStream());
-    BufferedReader fromRunner = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+    PrintStream toRunner = connection.out;
+    BufferedReader fromRunner = connection.in;
 
     String response = null;
     response = fromRunner.readLine();
-    if (!response.equals("awake")) {
+    if (!"awake".equals(response)) {
       throw new IOException(
           "expected TestRunner to start conversation with 'awake', got '" + response + "'");
     }
@@ -222,7 +350,7 @@ public class TestRunner {
     toRunner.println("ping");
     toRunner.flush();
     response = fromRunner.readLine();
-    if (!response.equals("pong")) {
+    if (!"pong".equals(response)) {
       throw new IOException(
           "expected TestRunner to respond to ping with 'pong', got '" + response + "'");
     }
@@ -231,14 +359,14 @@ public class TestRunner {
     return t1 - t0;
   }
 
-  private static void initializeSocketAsTestRunner(Socket socket) throws IOException {
+  private static void initializeConnectionAsTestRunner(Connection connection) throws IOException {
     // Takes care of the TestRunner's side of the startup handshake described in "main".
-    PrintStream toHost = new PrintStream(socket.getOutputStream());
-    BufferedReader fromHost = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+    PrintStream toHost = connection.out;
+    BufferedReader fromHost = connection.in;
     toHost.println("awake");
 
     String ping = fromHost.readLine();
-    if (!ping.equals("ping")) {
+    if (!"ping".equals(ping)) {
       throw new java.io.IOException("expected to hear 'ping', got '" + ping + "'");
     }
     toHost.println("pong");
@@ -0,0 +1,173 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap.runners;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps track of the threads that tests leave running after they've timed out and ignored being
+ * interrupted (e.g. a mutant that turns a loop into an infinite one), so the worker can carry on
+ * running tests rather than being restarted every time.
+ *
+ * Java can't kill such threads, or move them to another thread group, so they're made as harmless
+ * as possible: their group's (and their own) priority is lowered to the minimum, their context
+ * class loader is dropped, and whatever they print is thrown away (see `isQuarantined` and
+ * QuarantiningOutputStream). Threads they start later join their group, and are tracked too. How
+ * much CPU time they've burnt since they were quarantined is measured, where the JVM supports that.
+ *
+ * Thread priorities are only a hint, which Linux ignores, so a quarantined thread that spins still
+ * competes with the tests that come after it; what bounds that is the CPU budget, which is small
+ * by default. Once too many of them are still alive, or they've burnt too much CPU time between
+ * them, the worker should be recycled (see `recycleReasonOrNull`). The limits are given by the
+ * MAX_THREADS_PROPERTY and MAX_CPU_MILLIS_PROPERTY system properties.
+ */
+public class ThreadQuarantine {
+
+  public static final String MAX_THREADS_PROPERTY = "killmap.maxLeakedThreads";
+
+  public static final String MAX_CPU_MILLIS_PROPERTY = "killmap.maxLeakedCpuMillis";
+
+  public static final int DEFAULT_MAX_THREADS = 4;
+
+  public static final long DEFAULT_MAX_CPU_MILLIS = 1000;
+
+  private final int maxThreads;
+
+  private final long maxCpuMillis;
+
+  private final ThreadMXBean threadBean; // null if it can't measure threads' CPU time
+
+  private final List<ThreadGroup> groups;
+
+  // The same groups, for `isQuarantined`, which is called without holding the lock.
+  private final Set<ThreadGroup> quarantinedGroups;
+
+  // Each quarantined thread => {its CPU time when quarantined, its CPU time when last seen alive},
+  // in ns.
+  private final Map<Thread, long[]> cpuTimes;
+
+  private long cpuNanosOfDeadThreads;
+
+  public ThreadQuarantine(int maxThreads_, long maxCpuMillis_) {
+    maxThreads = maxThreads_;
+    maxCpuMillis = maxCpuMillis_;
+    ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    threadBean = bean.isThreadCpuTimeSupported() ? bean : null;
+    if (threadBean != null && !threadBean.isThreadCpuTimeEnabled()) {
+      threadBean.setThreadCpuTimeEnabled(true);
+    }
+    groups = new ArrayList<ThreadGroup>();
+    quarantinedGroups = Collections.newSetFromMap(new ConcurrentHashMap<ThreadGroup, Boolean>());
+    cpuTimes = new HashMap<Thread, long[]>();
+    cpuNanosOfDeadThreads = 0;
+  }
+
+  public static ThreadQuarantine fromSystemProperties() {
+    return new ThreadQuarantine(Integer.getInteger(MAX_THREADS_PROPERTY, DEFAULT_MAX_THREADS),
+        Long.getLong(MAX_CPU_MILLIS_PROPERTY, DEFAULT_MAX_CPU_MILLIS));
+  }
+
+  private long cpuNanos(Thread thread) {
+    // Returns -1 if the thread has died (or its CPU time can't be measured).
+    return threadBean == null ? -1 : threadBean.getThreadCpuTime(thread.getId());
+  }
+
+  public synchronized void quarantine(ThreadGroup group) {
+    // Quarantines the live threads of the given group, and any it gets later.
+    group.setMaxPriority(Thread.MIN_PRIORITY);
+    groups.add(group);
+    quarantinedGroups.add(group);
+    update();
+  }
+
+  public boolean isQuarantined(Thread thread) {
+    // Whether the given thread is in a quarantined group (or a group within one).
+    for (ThreadGroup group = thread.getThreadGroup(); group != null; group = group.getParent()) {
+      if (quarantinedGroups.contains(group)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void update() {
+    // Quarantines new threads in the quarantined groups, and forgets dead ones.
+    for (Iterator<ThreadGroup> it = groups.iterator(); it.hasNext();) {
+      ThreadGroup group = it.next();
+      Thread[] threads = new Thread[group.activeCount() + 8];
+      int n = group.enumerate(threads);
+      for (int i = 0; i < n; i++) {
+        Thread thread = threads[i];
+        if (!cpuTimes.containsKey(thread) && thread.isAlive()) {
+          thread.setPriority(Thread.MIN_PRIORITY);
+          thread.setContextClassLoader(null);
+          long now = Math.max(0, cpuNanos(thread));
+          cpuTimes.put(thread, new long[] {now, now});
+        }
+      }
+      if (n == 0) {
+        it.remove();
+        quarantinedGroups.remove(group);
+      }
+    }
+    for (Iterator<Map.Entry<Thread, long[]>> it = cpuTimes.entrySet().iterator(); it.hasNext();) {
+      Map.Entry<Thread, long[]> entry = it.next();
+      long now = cpuNanos(entry.getKey());
+      if (now >= 0 && entry.getKey().isAlive()) {
+        entry.getValue()[1] = now;
+      } else {
+        cpuNanosOfDeadThreads += entry.getValue()[1] - entry.getValue()[0];
+        it.remove();
+      }
+    }
+  }
+
+  public synchronized int liveThreadCount() {
+    update();
+    return cpuTimes.size();
+  }
+
+  public synchronized long cpuMillis() {
+    // CPU time burnt by quarantined threads since they were quarantined.
+    update();
+    long nanos = cpuNanosOfDeadThreads;
+    for (long[] times : cpuTimes.values()) {
+      nanos += times[1] - times[0];
+    }
+    return nanos / 1000000;
+  }
+
+  public synchronized String recycleReasonOrNull() {
+    // Returns why the worker should be recycled, or null if it's fine to carry on.
+    int nThreads = liveThreadCount();
+    long cpu = cpuMillis();
+    if (nThreads > maxThreads || cpu > maxCpuMillis) {
+      return nThreads + " leaked threads still running (at most " + maxThreads + " allowed), "
+          + cpu + "ms CPU time burnt by leaked threads (at most " + maxCpuMillis + "ms allowed)";
+    }
+    return null;
+  }
+}
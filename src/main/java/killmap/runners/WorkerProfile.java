@@ -0,0 +1,366 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap.runners;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import junit.framework.TestCase;
+import killmap.TestMethod;
+import killmap.runners.communication.Outcome;
+import killmap.runners.communication.WorkOrder;
+
+/**
+ * How worker JVMs are started: which `java`, with which options and how much heap, and with which
+ * class-data-sharing (AppCDS) archive, if any.
+ *
+ * Unless heapMegabytes is given, each worker's maximum heap is sized from the machine's physical
+ * memory: half of what killmap's own heap leaves, shared between the POOL_SIZE workers that can be
+ * alive at once.
+ *
+ * With a cdsDirectory, workers start from an AppCDS archive of the classes a worker loads, so that
+ * they don't each have to load and verify them from scratch. The archive is made the first time
+ * it's needed, by a training run of a worker (see `train`), and kept in cdsDirectory for later runs
+ * with the same java, options and classpath. That needs Java 10 or later workers (13 or later make
+ * it in one step); for older ones, or if making it fails, workers start without one. Only classes
+ * from the jars at the start of the classpath (e.g. killmap.jar, and JUnit) are archived, as
+ * directories can't be; and only those loaded by the JVM's own class loaders: the classes of each
+ * test, which get a fresh IsolatingClassLoader, are still loaded as usual.
+ *
+ * The worker JVM's version is found out by running `java -version` once. -XX:MaxPermSize is only
+ * passed to Java 7 and older workers, which have a permanent generation.
+ *
+ * With cpus, workers are pinned to those CPUs, so that their tests' runtimes (and so the timeouts
+ * derived from them) don't vary with what else runs on the machine. A worker gets all of them,
+ * except while a spare is starting up (see RemoteTestRunner), which, given more than one CPU, is
+ * done on half of them: the worker that is still running tests moves to the first half
+ * (`makeRoomForSpare`), the spare starts on the second, so that its startup (and JIT compilation)
+ * doesn't compete with the tests, and it gets all of them back when it takes over
+ * (`spareTakesOver`). With a single CPU, the spare shares it.
+ */
+public class WorkerProfile {
+
+  public static final int POOL_SIZE = 2; // the worker, and a spare started before it retires
+
+  public static final String TRAINING_ARGUMENT = "--cds-training";
+
+  private static final long MIN_HEAP_MEGABYTES = 256;
+
+  private static final long MAX_HEAP_MEGABYTES = 8192;
+
+  private static final long TRAINING_TIMEOUT_MILLIS = 120000;
+
+  public String java = "java";
+
+  public List<String> options = new ArrayList<String>(); // passed last, so they take precedence
+
+  public Long heapMegabytes = null; // null for automatic sizing; 0 to leave it to the JVM
+
+  public File cdsDirectory = null; // where AppCDS archives are kept; null for none
+
+  public String cpus = null; // the CPUs workers are pinned to (see CpuAffinity); null for any
+
+  private boolean prepared = false;
+
+  private int javaVersion = 0; // the workers' major Java version, or 0 if unknown
+
+  private File cdsArchive = null;
+
+  public static class Training extends TestCase {
+    public void testNothing() {
+      // (Just for `train` to run.)
+    }
+  }
+
+  private static WorkOrder trainingWorkOrder() {
+    return new WorkOrder(new TestMethod(Training.class, "testNothing"), 0, (long) 10000);
+  }
+
+  public static void train() throws Exception {
+    // What a worker does when run with TRAINING_ARGUMENT: runs a trivial test a few times, as a
+    // worker would, so that the classes that takes end up in the CDS archive.
+    WorkOrder workOrder = trainingWorkOrder();
+    for (int i = 0; i < 3; i++) {
+      String line = workOrder.toString();
+      WorkOrder.fromString(line).toString();
+      Outcome.fromString(TestRunner.runTest(workOrder).toString());
+    }
+  }
+
+  public static void warmUp() {
+    // What a worker does before it takes work orders: runs the trivial test once, so that the first
+    // real one doesn't pay, within its timeout, for loading and linking everything running a test
+    // involves (on Java 8, the first call through a method handle alone takes tens of ms).
+    TestRunner.runTest(trainingWorkOrder());
+  }
+
+  public static int parseJavaVersion(String versionOutput) {
+    // Given what `java -version` prints, returns the major version (e.g. 8 for "1.8.0_392", 17 for
+    // "17.0.9"), or 0 if it can't be found.
+    Matcher m = Pattern.compile("version \"(1\\.)?([0-9]+)").matcher(versionOutput);
+    return m.find() ? Integer.parseInt(m.group(2)) : 0;
+  }
+
+  public static Long autoHeapMegabytes() {
+    // Returns the heap each worker gets by default, or null if the machine's memory can't be found
+    // out.
+    Long physical = null;
+    try {
+      Object os = ManagementFactory.getOperatingSystemMXBean();
+      physical = (Long) Class.forName("com.sun.management.OperatingSystemMXBean")
+          .getMethod("getTotalPhysicalMemorySize").invoke(os);
+    } catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException
+        | InvocationTargetException | ClassCastException e) {
+      return null;
+    }
+    long available = physical - Runtime.getRuntime().maxMemory();
+    long megabytes = available / 2 / POOL_SIZE / (1024 * 1024);
+    return Math.max(MIN_HEAP_MEGABYTES, Math.min(MAX_HEAP_MEGABYTES, megabytes));
+  }
+
+  public synchronized List<String> launcher(boolean spare) {
+    // The command that starts a worker JVM (or a spare), before its arguments.
+    List<String> result = new ArrayList<String>();
+    if (cpus != null) {
+      String[] halves = CpuAffinity.halves(cpus);
+      result.addAll(CpuAffinity.command(spare && halves != null ? halves[1] : cpus));
+    }
+    result.add(java);
+    return result;
+  }
+
+  public void makeRoomForSpare(Process worker) throws IOException {
+    // Moves the given worker to the CPUs a spare doesn't start on, if there are any.
+    String[] halves = cpus == null ? null : CpuAffinity.halves(cpus);
+    if (halves != null) {
+      pin(worker, halves[0]);
+    }
+  }
+
+  public void spareTakesOver(Process spare) throws IOException {
+    // Gives the given spare, now that it's the worker, all the CPUs.
+    if (cpus != null && CpuAffinity.halves(cpus) != null) {
+      pin(spare, cpus);
+    }
+  }
+
+  private static void pin(Process worker, String cpuList) throws IOException {
+    // (Workers are started under taskset, which runs java in its own process: same PID.)
+    Long pid = WorkerReaper.pid(worker);
+    if (pid == null) {
+      throw new IOException("unable to find out the worker's PID");
+    }
+    CpuAffinity.pin(pid, cpuList);
+  }
+
+  public synchronized List<String> jvmArguments(String classpath) {
+    // The options to start a worker with (before -cp), making the CDS archive first if need be.
+    if (!prepared) {
+      prepared = true;
+      javaVersion = probeJavaVersion();
+      if (heapMegabytes == null) {
+        heapMegabytes = autoHeapMegabytes();
+      }
+      if (cdsDirectory != null) {
+        cdsArchive = findOrCreateCdsArchive(classpath);
+      }
+    }
+    List<String> result = baseArguments();
+    if (cdsArchive != null) {
+      List<String> cds = appCdsArguments();
+      cds.add("-XX:SharedArchiveFile=" + cdsArchive);
+      result.addAll(result.size() - options.size(), cds);
+    }
+    return result;
+  }
+
+  private List<String> appCdsArguments() {
+    // (Java 10 only archives application classes if asked to; later versions always do.)
+    return new ArrayList<String>(
+        javaVersion == 10 ? Arrays.asList("-XX:+UseAppCDS") : Arrays.<String>asList());
+  }
+
+  private List<String> baseArguments() {
+    List<String> result = new ArrayList<String>(Arrays.asList("-Djava.awt.headless=true",
+        "-XX:ReservedCodeCacheSize=512M", "-XX:-OmitStackTraceInFastThrow",
+        "-XX:+DisplayVMOutputToStderr"));
+    if (javaVersion > 0 && javaVersion <= 7) {
+      result.add("-XX:MaxPermSize=1G");
+    }
+    if (javaVersion >= 9) {
+      // (The JVM's own warnings go to stdout otherwise, which the pipe transport talks over.)
+      result.add("-Xlog:disable");
+      result.add("-Xlog:all=warning:stderr");
+    }
+    if (heapMegabytes != null && heapMegabytes > 0) {
+      result.add("-Xmx" + heapMegabytes + "m");
+    }
+    result.addAll(options);
+    return result;
+  }
+
+  private int probeJavaVersion() {
+    try {
+      Process p = new ProcessBuilder(java, "-version").redirectErrorStream(true).start();
+      StringBuilder output = new StringBuilder();
+      try (BufferedReader in = new BufferedReader(
+          new InputStreamReader(p.getInputStream(), StandardCharsets.UTF_8))) {
+        String line;
+        while ((line = in.readLine()) != null) {
+          output.append(line).append('\n');
+        }
+      }
+      p.waitFor();
+      return parseJavaVersion(output.toString());
+    } catch (IOException e) {
+      return 0;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return 0;
+    }
+  }
+
+  private String cdsKey(String classpath) {
+    // Identifies what an archive depends on: the JVM, the options and the classpath's contents.
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-1");
+      StringBuilder key = new StringBuilder(java).append('\n').append(javaVersion).append('\n')
+          .append(baseArguments()).append('\n').append(classpath).append('\n');
+      for (String entry : classpath.split(File.pathSeparator)) {
+        File file = new File(entry);
+        key.append(file.length()).append(' ').append(file.lastModified()).append('\n');
+      }
+      StringBuilder hex = new StringBuilder();
+      for (byte b : digest.digest(key.toString().getBytes(StandardCharsets.UTF_8))) {
+        hex.append(String.format("%02x", b));
+      }
+      return hex.substring(0, 16);
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e); // (every JVM has SHA-1)
+    }
+  }
+
+  private File findOrCreateCdsArchive(String classpath) {
+    if (javaVersion < 10) {
+      System.err.println("[no CDS archive for workers: it needs Java 10 or later, not "
+          + (javaVersion == 0 ? "an unknown version" : "Java " + javaVersion) + "]");
+      return null;
+    }
+    // Directories can't be archived from, so the archive covers the jars at the start of the
+    // classpath (e.g. killmap.jar); the classpath it's used with can go on from there.
+    StringBuilder jars = new StringBuilder();
+    for (String entry : classpath.split(File.pathSeparator)) {
+      if (!new File(entry).isFile()) {
+        break;
+      }
+      jars.append(jars.length() == 0 ? "" : File.pathSeparator).append(entry);
+    }
+    if (jars.length() == 0) {
+      System.err.println("[no CDS archive for workers: their classpath doesn't start with a jar]");
+      return null;
+    }
+    classpath = jars.toString();
+    File archive = new File(cdsDirectory, "worker-" + cdsKey(classpath) + ".jsa");
+    if (archive.isFile()) {
+      System.err.println("[workers start from CDS archive " + archive + "]");
+      return archive;
+    }
+    cdsDirectory.mkdirs();
+    long t0 = System.currentTimeMillis();
+    File tmp = new File(archive.getPath() + ".tmp");
+    File log = new File(archive.getPath() + ".log");
+    List<String> training = new ArrayList<String>();
+    training.add(java);
+    training.addAll(baseArguments());
+    training.addAll(appCdsArguments());
+    boolean ok;
+    if (javaVersion >= 13) {
+      training.add("-XX:ArchiveClassesAtExit=" + tmp);
+      ok = runOrFail(training, classpath, true, log);
+    } else {
+      File classList = new File(archive.getPath() + ".classlist");
+      training.add("-XX:DumpLoadedClassList=" + classList);
+      List<String> dump = new ArrayList<String>();
+      dump.add(java);
+      dump.addAll(baseArguments());
+      dump.addAll(appCdsArguments());
+      dump.addAll(Arrays.asList("-Xshare:dump", "-XX:SharedClassListFile=" + classList,
+          "-XX:SharedArchiveFile=" + tmp));
+      ok = runOrFail(training, classpath, true, log) && runOrFail(dump, classpath, false, log);
+      classList.delete();
+    }
+    try {
+      if (ok && tmp.isFile()) {
+        Files.move(tmp.toPath(), archive.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        log.delete();
+        System.err.println("[made CDS archive " + archive + " for workers in "
+            + (System.currentTimeMillis() - t0) + "ms]");
+        return archive;
+      }
+    } catch (IOException e) {
+      // (fall through)
+    }
+    tmp.delete();
+    System.err.println("[unable to make a CDS archive for workers (see " + log + ")]");
+    return null;
+  }
+
+  private static boolean runOrFail(List<String> command, String classpath, boolean train,
+      File log) {
+    // Runs the given java command with the classpath (and, if `train`, as a training worker).
+    // Returns whether it succeeded; its output goes to `log`.
+    List<String> full = new ArrayList<String>(command);
+    full.addAll(Arrays.asList("-cp", classpath));
+    if (train) {
+      full.addAll(Arrays.asList(TestRunner.class.getName(), TRAINING_ARGUMENT));
+    }
+    try {
+      Process p = new ProcessBuilder(full).redirectErrorStream(true)
+          .redirectOutput(ProcessBuilder.Redirect.appendTo(log)).start();
+      long deadline = System.currentTimeMillis() + TRAINING_TIMEOUT_MILLIS;
+      while (true) {
+        try {
+          return p.exitValue() == 0;
+        } catch (IllegalThreadStateException e) {
+          if (System.currentTimeMillis() > deadline) {
+            p.destroy();
+            return false;
+          }
+          Thread.sleep(50);
+        }
+      }
+    } catch (IOException e) {
+      return false;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+}
@@ -0,0 +1,288 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap.runners;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tears down worker processes: kills each worker and every process it started (tests sometimes
+ * start processes of their own, which would otherwise outlive the worker and pile up over a long
+ * run), and waits for the worker to exit -- in the background, so that the caller can get on with
+ * starting the next worker straight away.
+ *
+ * On Java 9+, the process tree is found and killed with ProcessHandle (looked up reflectively, as
+ * killmap is built for Java 7). Otherwise, the tree is found by reading /proc (so only on Linux)
+ * and killed with one `kill -9`.
+ *
+ * How long each teardown took, from `reap` to the worker's exit, is recorded.
+ */
+public class WorkerReaper {
+
+  // ProcessHandle's methods, or null if this JVM doesn't have it.
+  private static final Method TO_HANDLE;
+
+  private static final Method DESCENDANTS;
+
+  private static final Method DESTROY_FORCIBLY;
+
+  private static final Method HANDLE_PID;
+
+  private static final Method STREAM_TO_ARRAY;
+
+  static {
+    Method toHandle = null, descendants = null, destroyForcibly = null, pid = null, toArray = null;
+    try {
+      Class<?> handleClass = Class.forName("java.lang.ProcessHandle");
+      toHandle = Process.class.getMethod("toHandle");
+      descendants = handleClass.getMethod("descendants");
+      destroyForcibly = handleClass.getMethod("destroyForcibly");
+      pid = handleClass.getMethod("pid");
+      toArray = Class.forName("java.util.stream.Stream").getMethod("toArray");
+    } catch (ClassNotFoundException | NoSuchMethodException e) {
+      toHandle = null;
+    }
+    TO_HANDLE = toHandle;
+    DESCENDANTS = descendants;
+    DESTROY_FORCIBLY = destroyForcibly;
+    HANDLE_PID = pid;
+    STREAM_TO_ARRAY = toArray;
+  }
+
+  private final ExecutorService executor; // one thread, which does all the killing and waiting
+
+  private long nTeardowns;
+
+  private long totalTeardownMillis;
+
+  private long maxTeardownMillis;
+
+  private int nPending;
+
+  public WorkerReaper() {
+    executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "killmap-worker-reaper");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    nTeardowns = 0;
+    totalTeardownMillis = 0;
+    maxTeardownMillis = 0;
+    nPending = 0;
+  }
+
+  public static Long pid(Process p) {
+    // Returns the process's PID, or null if it can't be found out.
+    try {
+      if (TO_HANDLE != null) {
+        return (Long) HANDLE_PID.invoke(TO_HANDLE.invoke(p));
+      }
+      // Reflection black magic.
+      Field pidField = p.getClass().getDeclaredField("pid");
+      pidField.setAccessible(true);
+      return ((Integer) pidField.get(p)).longValue();
+    } catch (NoSuchFieldException | IllegalAccessException | InvocationTargetException e) {
+      return null;
+    }
+  }
+
+  public void reap(Process p) {
+    reap(p, null);
+  }
+
+  public void reap(Process p, Closeable connection) {
+    reap(p, connection, 0);
+  }
+
+  public void reap(final Process p, final Closeable connection, final long graceMillis) {
+    // Kills the given process and all its descendants, and waits for it to exit, in the background.
+    // Then closes the given connection to it, if any. (Closing it first might make the process
+    // exit by itself, leaving its descendants orphaned.)
+    // The process is first given up to graceMillis to exit by itself, for when it's been asked to.
+    final long t0 = System.currentTimeMillis();
+    synchronized (this) {
+      nPending++;
+    }
+    executor.execute(new Runnable() {
+      public void run() {
+        try {
+          while (!hasExited(p) && System.currentTimeMillis() - t0 < graceMillis) {
+            Thread.sleep(10);
+          }
+          if (!hasExited(p)) {
+            killTree(p);
+          }
+          p.waitFor();
+          if (connection != null) {
+            connection.close();
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        } catch (IOException e) {
+          // (It's dead anyway.)
+        }
+        recordTeardown(System.currentTimeMillis() - t0);
+      }
+    });
+  }
+
+  private synchronized void recordTeardown(long millis) {
+    nPending--;
+    nTeardowns++;
+    totalTeardownMillis += millis;
+    maxTeardownMillis = Math.max(maxTeardownMillis, millis);
+  }
+
+  private static boolean hasExited(Process p) {
+    try {
+      p.exitValue();
+      return true;
+    } catch (IllegalThreadStateException e) {
+      return false;
+    }
+  }
+
+  private static void killTree(Process p) {
+    if (TO_HANDLE != null) {
+      try {
+        Object handle = TO_HANDLE.invoke(p);
+        // (The descendants have to be found before the process dies: then they're orphaned.)
+        Object[] descendants = (Object[]) STREAM_TO_ARRAY.invoke(DESCENDANTS.invoke(handle));
+        DESTROY_FORCIBLY.invoke(handle);
+        for (Object descendant : descendants) {
+          DESTROY_FORCIBLY.invoke(descendant);
+        }
+        return;
+      } catch (IllegalAccessException | InvocationTargetException e) {
+        // Fall through to the old-fashioned way.
+      }
+    }
+    Long pid = pid(p);
+    if (pid == null) {
+      System.err.println("unable to get PID of " + p + "; killing it without its descendants");
+      p.destroy();
+      return;
+    }
+    List<String> command = new ArrayList<String>();
+    command.add("kill");
+    command.add("-9");
+    command.add(pid.toString());
+    for (long descendant : descendantsFromProc(pid)) {
+      command.add(Long.toString(descendant));
+    }
+    try {
+      Process killer = new ProcessBuilder().redirectError(ProcessBuilder.Redirect.INHERIT)
+          .command(command).start();
+      int exitValue = killer.waitFor();
+      if (exitValue != 0) {
+        // (Some descendant may have exited by itself in the meantime.)
+        System.err.println("Warning: '" + command + "' exited with status " + exitValue);
+      }
+    } catch (IOException e) {
+      System.err.println("Arrrgh: unable to start '" + command + "'");
+      e.printStackTrace();
+      p.destroy();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  public static List<Long> descendantsFromProc(long pid) {
+    // Finds the descendants of the given process by reading the parent PID of every process from
+    // /proc/<pid>/stat. Returns an empty list if there's no /proc.
+    Map<Long, List<Long>> children = new HashMap<Long, List<Long>>();
+    File[] entries = new File("/proc").listFiles();
+    for (File entry : entries == null ? new File[0] : entries) {
+      if (!entry.getName().matches("[0-9]+")) {
+        continue;
+      }
+      String stat;
+      try {
+        stat = new String(Files.readAllBytes(new File(entry, "stat").toPath()),
+            StandardCharsets.UTF_8);
+      } catch (IOException e) {
+        continue; // it's exited since we listed /proc
+      }
+      // "<pid> (<command, which may contain anything>) <state> <ppid> ..."
+      String[] fields = stat.substring(stat.lastIndexOf(')') + 1).trim().split(" ");
+      if (fields.length < 2) {
+        continue;
+      }
+      try {
+        Long ppid = Long.parseLong(fields[1]);
+        List<Long> siblings = children.get(ppid);
+        if (siblings == null) {
+          siblings = new ArrayList<Long>();
+          children.put(ppid, siblings);
+        }
+        siblings.add(Long.parseLong(entry.getName()));
+      } catch (NumberFormatException e) {
+        continue;
+      }
+    }
+    List<Long> result = new ArrayList<Long>();
+    List<Long> parents = new ArrayList<Long>();
+    parents.add(pid);
+    for (int i = 0; i < parents.size(); i++) {
+      List<Long> kids = children.get(parents.get(i));
+      if (kids != null) {
+        result.addAll(kids);
+        parents.addAll(kids);
+      }
+    }
+    return result;
+  }
+
+  public synchronized long teardownCount() {
+    return nTeardowns;
+  }
+
+  public synchronized long maxTeardownMillis() {
+    return maxTeardownMillis;
+  }
+
+  public synchronized double meanTeardownMillis() {
+    return nTeardowns == 0 ? 0 : (double) totalTeardownMillis / nTeardowns;
+  }
+
+  public synchronized int pendingCount() {
+    return nPending;
+  }
+
+  public boolean close(long timeoutMillis) throws InterruptedException {
+    // Waits (up to the given time) for the teardowns in progress to finish. Returns whether they
+    // did.
+    executor.shutdown();
+    return executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+  }
+}
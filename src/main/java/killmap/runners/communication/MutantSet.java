@@ -0,0 +1,199 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap.runners.communication;
+
+import java.util.BitSet;
+import java.util.Collection;
+
+/**
+ * A set of mutant ids, stored as a bitset rather than as boxed Integers.
+ *
+ * Tests can cover tens of thousands of mutants, and every test-run with mutant 0 reports the set of
+ * mutants it covered; so these sets get serialized, parsed, copied, unioned and intersected a lot.
+ *
+ * The string form is a space-separated list of ids in increasing order, in which every run of
+ * three or more consecutive ids is written as a range, e.g. "3 5 10-250 300". (A plain list of ids,
+ * in any order, parses too.)
+ */
+public class MutantSet {
+
+  private final BitSet bits;
+
+  public MutantSet() {
+    bits = new BitSet();
+  }
+
+  private MutantSet(BitSet bits_) {
+    bits = bits_;
+  }
+
+  public static MutantSet of(Collection<Integer> mutants) {
+    MutantSet result = new MutantSet();
+    for (Integer m : mutants) {
+      result.add(m);
+    }
+    return result;
+  }
+
+  public static MutantSet of(int... mutants) {
+    MutantSet result = new MutantSet();
+    for (int m : mutants) {
+      result.add(m);
+    }
+    return result;
+  }
+
+  public MutantSet copy() {
+    return new MutantSet((BitSet) bits.clone());
+  }
+
+  public void add(int mutantId) {
+    bits.set(mutantId);
+  }
+
+  public void addRange(int fromInclusive, int toInclusive) {
+    bits.set(fromInclusive, toInclusive + 1);
+  }
+
+  public void remove(int mutantId) {
+    bits.clear(mutantId);
+  }
+
+  public boolean contains(int mutantId) {
+    return mutantId >= 0 && bits.get(mutantId);
+  }
+
+  public int size() {
+    return bits.cardinality();
+  }
+
+  public boolean isEmpty() {
+    return bits.isEmpty();
+  }
+
+  public void addAll(MutantSet other) {
+    bits.or(other.bits);
+  }
+
+  public void retainAll(MutantSet other) {
+    bits.and(other.bits);
+  }
+
+  public void removeAll(MutantSet other) {
+    bits.andNot(other.bits);
+  }
+
+  public int nextMutant(int fromInclusive) {
+    // Returns the smallest mutant id >= fromInclusive in this set, or -1 if there is none.
+    // Iterate over a set `s` with
+    //   for (int m = s.nextMutant(0); m >= 0; m = s.nextMutant(m + 1)) {...}
+    return bits.nextSetBit(fromInclusive);
+  }
+
+  public int[] toArray() {
+    int[] result = new int[size()];
+    int i = 0;
+    for (int m = nextMutant(0); m >= 0; m = nextMutant(m + 1)) {
+      result[i++] = m;
+    }
+    return result;
+  }
+
+  @Override
+  public boolean equals(Object otherObj) {
+    if (!(otherObj instanceof MutantSet)) {
+      return false;
+    }
+    return bits.equals(((MutantSet) otherObj).bits);
+  }
+
+  @Override
+  public int hashCode() {
+    return bits.hashCode();
+  }
+
+  public StringBuilder appendTo(StringBuilder sb) {
+    // Appends the range-encoded string form (see class comment) to the given builder.
+    boolean first = true;
+    int start = bits.nextSetBit(0);
+    while (start >= 0) {
+      int end = bits.nextClearBit(start) - 1; // last id of this run
+      if (!first) {
+        sb.append(' ');
+      }
+      first = false;
+      if (end - start >= 2) {
+        sb.append(start).append('-').append(end);
+      } else {
+        sb.append(start);
+        if (end > start) {
+          sb.append(' ').append(end);
+        }
+      }
+      start = bits.nextSetBit(end + 1);
+    }
+    return sb;
+  }
+
+  @Override
+  public String toString() {
+    return appendTo(new StringBuilder()).toString();
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  public static MutantSet fromString(String s) throws IllegalArgumentException {
+    // Inverse of toString(), i.e.,
+    // forall m:MutantSet, MutantSet.fromString(m.toString()).equals(m)
+    // Parsed by hand, since this is done once per covered-mutant list and those can be very long.
+    MutantSet result = new MutantSet();
+    int n = s.length();
+    int i = 0;
+    while (i < n) {
+      if (s.charAt(i) == ' ') {
+        i++;
+        continue;
+      }
+      int from = 0;
+      int start = i;
+      while (i < n && isDigit(s.charAt(i))) {
+        from = 10 * from + (s.charAt(i++) - '0');
+      }
+      if (i == start) {
+        throw new IllegalArgumentException(s);
+      }
+      int to = from;
+      if (i < n && s.charAt(i) == '-') {
+        start = ++i;
+        to = 0;
+        while (i < n && isDigit(s.charAt(i))) {
+          to = 10 * to + (s.charAt(i++) - '0');
+        }
+        if (i == start || to < from) {
+          throw new IllegalArgumentException(s);
+        }
+      }
+      if (i < n && s.charAt(i) != ' ') {
+        throw new IllegalArgumentException(s);
+      }
+      result.addRange(from, to);
+    }
+    return result;
+  }
+}
@@ -16,21 +16,22 @@
  */
 package killmap.runners.communication;
 
-import java.util.ArrayList;
-import java.util.Collection;
 import org.junit.runner.Result;
 
 /**
  * Represents the result of a test-run.
  * 
- * Records: the general kind of outcome (pass/fail/timeout/crash) the hashes of what was printed to
- * stdout/stderr how long the test took to run the stack trace of the failure (or "") the set of
- * covered mutants.
+ * Records: the general kind of outcome (pass/fail/timeout/crash/exit) the hashes of what was
+ * printed to stdout/stderr how long the test took to run the stack trace of the failure (or "")
+ * the set of covered mutants.
+ *
+ * An Outcome may also be inferred rather than observed (see createInferred): its digest then starts
+ * with INFERRED_DIGEST_PREFIX.
  */
 public class Outcome {
 
   public static enum Type {
-    PASS, FAIL, TIMEOUT, CRASH;
+    PASS, FAIL, TIMEOUT, CRASH, EXIT; // EXIT: the test tried to exit the JVM (see ExitTrap)
   }
 
   public Type type;
@@ -41,7 +42,13 @@ public class Outcome {
 
   public String stackTrace;
 
-  public Collection<Integer> coveredMutants;
+  public MutantSet coveredMutants;
+
+  // What the worker looked like after the run (see WorkerTelemetry), if it said; otherwise null.
+  // Not part of the CSV row: the worker sends it on a line of its own.
+  public WorkerTelemetry telemetry;
+
+  public static final String INFERRED_DIGEST_PREFIX = "inferred:";
 
   public static String normalizeStackTrace(String stackTrace) {
     // Given a multi-line stack trace, crushes it down to one line and removes potentially-variable
@@ -56,7 +63,7 @@ public class Outcome {
     // test times out or crashes the JVM, there won't be a JUnit result to base the Outcome on. In
     // those cases, use createTimeout or createCrash.
     digest = digest_;
-    coveredMutants = new ArrayList<Integer>();
+    coveredMutants = new MutantSet();
     if (result.wasSuccessful()) {
       type = Type.PASS;
       runTime = result.getRunTime();
@@ -73,7 +80,17 @@ public class Outcome {
     digest = "";
     runTime = (long) -1;
     stackTrace = "";
-    coveredMutants = new ArrayList<Integer>();
+    coveredMutants = new MutantSet();
+  }
+
+  public static Outcome create(Type type, long runTime, String stackTrace,
+      MutantSet coveredMutants) {
+    // Constructs an Outcome from its parts (normalizing the stack trace), with an empty digest.
+    Outcome result = new Outcome(type);
+    result.runTime = runTime;
+    result.stackTrace = normalizeStackTrace(stackTrace);
+    result.coveredMutants = coveredMutants;
+    return result;
   }
 
   public static Outcome createTimeout(WorkOrder workOrder) {
@@ -86,6 +103,30 @@ public class Outcome {
     return new Outcome(Type.CRASH);
   }
 
+  public static Outcome createInferred(Outcome originalOutcome) {
+    // The outcome of a test-run that wasn't done because it's known to behave like another run of
+    // the same test (see MutantReducer): same type and stack trace, runtime 0, and a marked digest.
+    Outcome result = new Outcome(originalOutcome.type);
+    result.runTime = (long) 0;
+    result.digest = INFERRED_DIGEST_PREFIX + originalOutcome.digest;
+    result.stackTrace = originalOutcome.stackTrace;
+    return result;
+  }
+
+  public boolean isInferred() {
+    return digest.startsWith(INFERRED_DIGEST_PREFIX);
+  }
+
+  public Outcome copy() {
+    Outcome result = new Outcome(type);
+    result.runTime = runTime;
+    result.digest = digest;
+    result.stackTrace = stackTrace;
+    result.coveredMutants = coveredMutants.copy();
+    result.telemetry = telemetry;
+    return result;
+  }
+
   @Override
   public boolean equals(Object otherObj) {
     Outcome other = (Outcome) otherObj;
@@ -103,21 +144,18 @@ public class Outcome {
   public String toString() {
     // Converts the Outcome into a string suitable for a line in a CSV file:
     //   type,runTime,mutants,stackTrace
-    // where type is in {PASS,FAIL,TIMEOUT,CRASH}
+    // where type is in {PASS,FAIL,TIMEOUT,CRASH,EXIT}
     //       runTime is how long the test took to run in ms (or -1 for crashes)
-    //       mutants is a space-separated list of the covered mutants
+    //       mutants is a space-separated list of the covered mutants, with runs of consecutive
+    //         mutants written as ranges (see MutantSet)
     //       stackTrace is the normalized stack trace of the failure (or empty)
     // (Note: the stack trace may contain commas, so to parse the CSV you should
     //  only split on the first 3 commas.)
-    String mutants = "";
-    for (Integer m : coveredMutants) {
-      mutants = mutants + m + " ";
-    }
-    if (mutants.length() > 0) {
-      mutants = mutants.substring(0, mutants.length() - 1);
-    }
-    return type.toString() + "," + runTime.toString() + "," + digest.toString() + "," + mutants
-        + "," + stackTrace.toString();
+    StringBuilder sb = new StringBuilder();
+    sb.append(type.toString()).append(',').append(runTime).append(',').append(digest).append(',');
+    coveredMutants.appendTo(sb);
+    sb.append(',').append(stackTrace);
+    return sb.toString();
   }
 
   public static Outcome fromString(String s) throws IllegalArgumentException {
@@ -131,16 +169,9 @@ public class Outcome {
     Type type = Type.valueOf(type_runTime_digest_mutants_stackTrace[0]);
     Long runTime = Long.parseLong(type_runTime_digest_mutants_stackTrace[1]);
     String digest = type_runTime_digest_mutants_stackTrace[2];
-    String[] mutantStrs = type_runTime_digest_mutants_stackTrace[3].split(" ");
+    MutantSet coveredMutants = MutantSet.fromString(type_runTime_digest_mutants_stackTrace[3]);
     String stackTrace = type_runTime_digest_mutants_stackTrace[4];
 
-    ArrayList<Integer> coveredMutants = new ArrayList<Integer>();
-    for (String mutantStr : mutantStrs) {
-      if (mutantStr.matches("[0-9]+")) {
-        coveredMutants.add(Integer.parseInt(mutantStr));
-      }
-    }
-
     Outcome result = new Outcome(type);
     result.runTime = runTime;
     result.digest = digest;
@@ -0,0 +1,123 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap.runners.communication;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * How a worker JVM is doing, as measured right after it runs a test: how much heap it's using (and
+ * how much of that survived the last garbage collection, i.e. is probably really in use), how much
+ * metaspace (or permgen, before Java 8) the classes loaded for all its tests take up, how many
+ * threads it has, and how long it spent collecting garbage during the test.
+ *
+ * The worker sends it with each Outcome, on a line of its own (see TestRunner.main), e.g.
+ *   heapUsed=52428800 heapLive=20971520 heapMax=1073741824 metaspaceUsed=31457280
+ *   metaspaceMax=-1 threads=12 gcMillis=3
+ * (on one line). Sizes are in bytes, and a maximum of -1 means there isn't one.
+ */
+public class WorkerTelemetry {
+
+  public final long heapUsed;
+
+  public final long heapLive;
+
+  public final long heapMax;
+
+  public final long metaspaceUsed;
+
+  public final long metaspaceMax;
+
+  public final long threads;
+
+  public final long gcMillis;
+
+  public WorkerTelemetry(long heapUsed_, long heapLive_, long heapMax_, long metaspaceUsed_,
+      long metaspaceMax_, long threads_, long gcMillis_) {
+    heapUsed = heapUsed_;
+    heapLive = heapLive_;
+    heapMax = heapMax_;
+    metaspaceUsed = metaspaceUsed_;
+    metaspaceMax = metaspaceMax_;
+    threads = threads_;
+    gcMillis = gcMillis_;
+  }
+
+  public static long totalGcMillis() {
+    // How long this JVM has spent collecting garbage so far.
+    long result = 0;
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+      result += Math.max(0, gc.getCollectionTime());
+    }
+    return result;
+  }
+
+  public static WorkerTelemetry measure(long gcMillisBefore) {
+    // Measures this JVM, given what totalGcMillis() was before the test.
+    long heapLive = 0;
+    long metaspaceUsed = 0;
+    long metaspaceMax = -1;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        MemoryUsage afterLastGc = pool.getCollectionUsage();
+        heapLive += afterLastGc == null ? 0 : afterLastGc.getUsed();
+      } else if (pool.getName().equals("Metaspace") || pool.getName().endsWith("Perm Gen")) {
+        metaspaceUsed += pool.getUsage().getUsed();
+        metaspaceMax = pool.getUsage().getMax();
+      }
+    }
+    MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+    return new WorkerTelemetry(heap.getUsed(), heapLive,
+        heap.getMax() >= 0 ? heap.getMax() : Runtime.getRuntime().maxMemory(), metaspaceUsed,
+        metaspaceMax, ManagementFactory.getThreadMXBean().getThreadCount(),
+        totalGcMillis() - gcMillisBefore);
+  }
+
+  @Override
+  public String toString() {
+    return "heapUsed=" + heapUsed + " heapLive=" + heapLive + " heapMax=" + heapMax
+        + " metaspaceUsed=" + metaspaceUsed + " metaspaceMax=" + metaspaceMax + " threads="
+        + threads + " gcMillis=" + gcMillis;
+  }
+
+  public static WorkerTelemetry fromString(String s) throws IllegalArgumentException {
+    // Inverse of toString().
+    Map<String, Long> fields = new HashMap<String, Long>();
+    for (String field : s.trim().split(" ")) {
+      String[] key_value = field.split("=", 2);
+      if (key_value.length != 2) {
+        throw new IllegalArgumentException(s);
+      }
+      fields.put(key_value[0], Long.parseLong(key_value[1]));
+    }
+    String[] keys = {"heapUsed", "heapLive", "heapMax", "metaspaceUsed", "metaspaceMax",
+        "threads", "gcMillis"};
+    for (String key : keys) {
+      if (!fields.containsKey(key)) {
+        throw new IllegalArgumentException(s);
+      }
+    }
+    return new WorkerTelemetry(fields.get("heapUsed"), fields.get("heapLive"),
+        fields.get("heapMax"), fields.get("metaspaceUsed"), fields.get("metaspaceMax"),
+        fields.get("threads"), fields.get("gcMillis"));
+  }
+}
@@ -17,40 +17,117 @@
 package killmap.runners.isolation;
 
 import java.io.OutputStream;
-import java.security.DigestOutputStream;
 import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
 /**
  * An OutputStream that, instead of writing its output to a file or anything, feeds the output into
  * a hash-function. This lets us tell whether two test-runs printed the same stuff to stdout/stderr,
  * without having to store their entire output (which, with mutants, can be huge).
+ *
+ * The hash function is SHA-1 by default, but can be any MessageDigest algorithm, "murmur3" (see
+ * Murmur3Digest; much faster), or "none", for when the output doesn't matter: then the digest
+ * string is empty. Hashing can also stop after a given number of bytes, after which the output is
+ * only counted: the digest string is then the hash of the first bytes, "+", and the total number
+ * of bytes written. The worker gets these from the ALGORITHM_PROPERTY and MAX_BYTES_PROPERTY system
+ * properties (see `fromSystemProperties`).
+ *
+ * (It's synchronized, since threads left behind by a test may still be printing.)
  */
-public class DeadEndDigestOutputStream extends DigestOutputStream {
+public class DeadEndDigestOutputStream extends OutputStream {
 
-  private static class DeadEndStream extends OutputStream {
-    public void write(int b) {}
+  public static final String ALGORITHM_PROPERTY = "killmap.outputDigest";
 
-    public DeadEndStream() {}
-  }
+  public static final String MAX_BYTES_PROPERTY = "killmap.outputDigestMaxBytes";
+
+  public static final String DEFAULT_ALGORITHM = "SHA-1";
+
+  private final MessageDigest digest; // null for "none"
+
+  private final long maxDigestedBytes; // negative for no limit
+
+  private long nBytes;
 
   public DeadEndDigestOutputStream() {
-    super(new DeadEndStream(), null);
+    this(DEFAULT_ALGORITHM, -1);
+  }
+
+  public DeadEndDigestOutputStream(String algorithm, long maxDigestedBytes_)
+      throws IllegalArgumentException {
+    digest = createDigest(algorithm);
+    maxDigestedBytes = maxDigestedBytes_;
+    nBytes = 0;
+  }
+
+  public static DeadEndDigestOutputStream fromSystemProperties() {
+    return new DeadEndDigestOutputStream(System.getProperty(ALGORITHM_PROPERTY, DEFAULT_ALGORITHM),
+        Long.getLong(MAX_BYTES_PROPERTY, -1));
+  }
+
+  public static MessageDigest createDigest(String algorithm) throws IllegalArgumentException {
+    // Returns the named digest, or null for "none".
+    switch (algorithm.toLowerCase()) {
+      case "none":
+        return null;
+      case "murmur3":
+        return new Murmur3Digest();
+      case "sha1":
+        algorithm = "SHA-1";
+        break;
+      default:
+        break;
+    }
     try {
-      setMessageDigest(MessageDigest.getInstance("SHA-1"));
-    } catch (java.security.NoSuchAlgorithmException e) {
-      e.printStackTrace();
-      System.out.println(
-          "According to http://docs.oracle.com/javase/7/docs/api/java/security/MessageDigest.html , java.security.MessageDigest *must* provide SHA-1. What happened?");
-      System.exit(1);
+      return MessageDigest.getInstance(algorithm);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalArgumentException("unknown digest algorithm: " + algorithm, e);
+    }
+  }
+
+  private int digestibleBytes(int len) {
+    // How many of the next len bytes should be hashed, rather than just counted.
+    if (digest == null) {
+      return 0;
     }
+    if (maxDigestedBytes < 0) {
+      return len;
+    }
+    return (int) Math.max(0, Math.min(len, maxDigestedBytes - nBytes));
   }
 
-  public String getDigestString() {
+  @Override
+  public synchronized void write(int b) {
+    if (digestibleBytes(1) > 0) {
+      digest.update((byte) b);
+    }
+    nBytes++;
+  }
+
+  @Override
+  public synchronized void write(byte[] b, int off, int len) {
+    int n = digestibleBytes(len);
+    if (n > 0) {
+      digest.update(b, off, n);
+    }
+    nBytes += len;
+  }
+
+  public synchronized long byteCount() {
+    return nBytes;
+  }
+
+  public synchronized String getDigestString() {
     // Gives the hash as a typical hex string.
-    byte[] digestBytes = getMessageDigest().digest();
-    StringBuffer sb = new StringBuffer();
+    if (digest == null) {
+      return "";
+    }
+    byte[] digestBytes = digest.digest();
+    StringBuilder sb = new StringBuilder(2 * digestBytes.length);
     for (byte b : digestBytes) {
-      sb.append(String.format("%02x", b & 0xff));
+      sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+    }
+    if (maxDigestedBytes >= 0 && nBytes > maxDigestedBytes) {
+      sb.append('+').append(nBytes);
     }
     return sb.toString();
   }
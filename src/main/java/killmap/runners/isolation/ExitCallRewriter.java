@@ -0,0 +1,331 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap.runners.isolation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rewrites a class file so that its calls to System.exit, Runtime.exit and Runtime.halt call
+ * ExitTrap instead.
+ *
+ * No bytecode library is needed, because nothing moves:
+ *   - `invokestatic System.exit(I)V` only needs its constant-pool method reference to name ExitTrap
+ *     instead of System (ExitTrap.exit has the same name and descriptor);
+ *   - `invokevirtual Runtime.exit(I)V` (or halt) becomes `invokestatic ExitTrap.exit(Runtime, I)V`
+ *     (or halt), which takes the same operands off the stack and is the same length, so the
+ *     instruction is patched in place to point at a method reference appended to the constant pool.
+ * So no offsets, stack map frames or max_stack values change.
+ *
+ * (Exits by reflection or through method handles to Runtime.exit/halt aren't caught.)
+ */
+public class ExitCallRewriter {
+
+  private static final String TRAP_CLASS = ExitTrap.class.getName().replace('.', '/');
+
+  private static final String RUNTIME_DESCRIPTOR = "(Ljava/lang/Runtime;I)V";
+
+  private static final int CONSTANT_UTF8 = 1;
+
+  private static final int CONSTANT_CLASS = 7;
+
+  private static final int CONSTANT_METHODREF = 10;
+
+  private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+  private static final int INVOKEVIRTUAL = 0xb6;
+
+  private static final int INVOKESTATIC = 0xb8;
+
+  private byte[] bytes; // the class file; copied before anything is patched
+
+  private ByteBuffer in;
+
+  private int[] entryOffsets; // where each constant-pool entry starts, after its tag
+
+  private byte[] tags;
+
+  private ExitCallRewriter(byte[] classFile) {
+    bytes = classFile;
+    in = ByteBuffer.wrap(bytes);
+  }
+
+  public static byte[] rewrite(byte[] classFile) {
+    // Returns the rewritten class file, or the given array itself if it has no exit calls (or
+    // can't be understood, in which case the JVM can complain about it when it's defined). Only the
+    // constant pool is read unless there are exit calls, and nothing is copied.
+    try {
+      byte[] result = new ExitCallRewriter(classFile).rewrite();
+      return result == null ? classFile : result;
+    } catch (RuntimeException | IOException e) {
+      return classFile;
+    }
+  }
+
+  private String utf8(int index) {
+    int offset = entryOffsets[index];
+    int length = in.getShort(offset) & 0xffff;
+    return new String(bytes, offset + 2, length, StandardCharsets.UTF_8); // (ASCII names only)
+  }
+
+  private boolean utf8Equals(int index, String ascii) {
+    // Like utf8(index).equals(ascii), without decoding (most references are to other methods).
+    int offset = entryOffsets[index];
+    if (u2(offset) != ascii.length()) {
+      return false;
+    }
+    for (int i = 0; i < ascii.length(); i++) {
+      if (bytes[offset + 2 + i] != ascii.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private int u2(int offset) {
+    return in.getShort(offset) & 0xffff;
+  }
+
+  private byte[] rewrite() throws IOException {
+    // Returns null if there's nothing to rewrite.
+    if (in.getInt(0) != 0xcafebabe) {
+      return null;
+    }
+    int constantPoolCount = u2(8);
+    entryOffsets = new int[constantPoolCount];
+    tags = new byte[constantPoolCount];
+    int position = 10;
+    for (int i = 1; i < constantPoolCount; i++) {
+      tags[i] = bytes[position++];
+      entryOffsets[i] = position;
+      switch (tags[i]) {
+        case CONSTANT_UTF8:
+          position += 2 + u2(position);
+          break;
+        case 3: // Integer
+        case 4: // Float
+          position += 4;
+          break;
+        case 5: // Long
+        case 6: // Double
+          position += 8;
+          i++;
+          break;
+        case CONSTANT_CLASS:
+        case 8: // String
+        case 16: // MethodType
+        case 19: // Module
+        case 20: // Package
+          position += 2;
+          break;
+        case 9: // Fieldref
+        case CONSTANT_METHODREF:
+        case 11: // InterfaceMethodref
+        case CONSTANT_NAME_AND_TYPE:
+        case 17: // Dynamic
+        case 18: // InvokeDynamic
+          position += 4;
+          break;
+        case 15: // MethodHandle
+          position += 3;
+          break;
+        default:
+          return null;
+      }
+    }
+    int constantPoolEnd = position;
+
+    // Find the method references to rewrite.
+    List<Integer> systemExitCalls = new ArrayList<Integer>();
+    Map<Integer, String> runtimeCalls = new HashMap<Integer, String>(); // index => "exit"/"halt"
+    for (int i = 1; i < constantPoolCount; i++) {
+      if (tags[i] != CONSTANT_METHODREF) {
+        continue;
+      }
+      int nameAndType = entryOffsets[u2(entryOffsets[i] + 2)];
+      if (!utf8Equals(u2(nameAndType + 2), "(I)V")) {
+        continue;
+      }
+      int owner = u2(entryOffsets[u2(entryOffsets[i])]);
+      int name = u2(nameAndType);
+      if (utf8Equals(owner, "java/lang/System") && utf8Equals(name, "exit")) {
+        systemExitCalls.add(i);
+      } else if (utf8Equals(owner, "java/lang/Runtime")
+          && (utf8Equals(name, "exit") || utf8Equals(name, "halt"))) {
+        runtimeCalls.put(i, utf8(name));
+      }
+    }
+    if (systemExitCalls.isEmpty() && runtimeCalls.isEmpty()) {
+      return null;
+    }
+    bytes = bytes.clone();
+    in = ByteBuffer.wrap(bytes);
+
+    // Append the new constant-pool entries, pointing the System.exit references at ExitTrap.
+    ByteArrayOutputStream newEntries = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(newEntries);
+    int next = constantPoolCount;
+    out.writeByte(CONSTANT_UTF8);
+    out.writeUTF(TRAP_CLASS);
+    out.writeByte(CONSTANT_CLASS);
+    out.writeShort(next);
+    int trapClass = next + 1;
+    next += 2;
+    for (int i : systemExitCalls) {
+      in.putShort(entryOffsets[i], (short) trapClass);
+    }
+    Map<Integer, Integer> replacements = new HashMap<Integer, Integer>(); // old ref => new ref
+    if (!runtimeCalls.isEmpty()) {
+      out.writeByte(CONSTANT_UTF8);
+      out.writeUTF(RUNTIME_DESCRIPTOR);
+      int descriptor = next++;
+      Map<String, Integer> trapMethods = new HashMap<String, Integer>();
+      for (Map.Entry<Integer, String> call : runtimeCalls.entrySet()) {
+        Integer method = trapMethods.get(call.getValue());
+        if (method == null) {
+          out.writeByte(CONSTANT_UTF8);
+          out.writeUTF(call.getValue());
+          out.writeByte(CONSTANT_NAME_AND_TYPE);
+          out.writeShort(next);
+          out.writeShort(descriptor);
+          out.writeByte(CONSTANT_METHODREF);
+          out.writeShort(trapClass);
+          out.writeShort(next + 1);
+          method = next + 2;
+          next += 3;
+          trapMethods.put(call.getValue(), method);
+        }
+        replacements.put(call.getKey(), method);
+      }
+      patchRuntimeCalls(constantPoolEnd, replacements);
+    }
+    if (next > 0xffff) {
+      return null;
+    }
+
+    ByteArrayOutputStream result = new ByteArrayOutputStream(bytes.length + newEntries.size());
+    result.write(bytes, 0, 8);
+    new DataOutputStream(result).writeShort(next);
+    result.write(bytes, 10, constantPoolEnd - 10);
+    newEntries.writeTo(result);
+    result.write(bytes, constantPoolEnd, bytes.length - constantPoolEnd);
+    return result.toByteArray();
+  }
+
+  private int skipMembers(int position, Map<Integer, Integer> replacements) {
+    // Skips the fields or methods starting at the given position (patching their code on the way),
+    // and returns the position after them.
+    int count = u2(position);
+    position += 2;
+    for (int i = 0; i < count; i++) {
+      position += 6; // access flags, name, descriptor
+      int nAttributes = u2(position);
+      position += 2;
+      for (int j = 0; j < nAttributes; j++) {
+        int length = in.getInt(position + 2);
+        if (utf8(u2(position)).equals("Code")) {
+          int codeLength = in.getInt(position + 10);
+          patchCode(position + 14, codeLength, replacements);
+        }
+        position += 6 + length;
+      }
+    }
+    return position;
+  }
+
+  private void patchRuntimeCalls(int constantPoolEnd, Map<Integer, Integer> replacements) {
+    int position = constantPoolEnd + 6; // access flags, this class, superclass
+    position += 2 + 2 * u2(position); // interfaces
+    position = skipMembers(position, replacements); // fields (which have no code)
+    skipMembers(position, replacements); // methods
+  }
+
+  private void patchCode(int start, int length, Map<Integer, Integer> replacements) {
+    int pc = 0;
+    while (pc < length) {
+      int opcode = bytes[start + pc] & 0xff;
+      if (opcode == INVOKEVIRTUAL) {
+        Integer replacement = replacements.get(u2(start + pc + 1));
+        if (replacement != null) {
+          bytes[start + pc] = (byte) INVOKESTATIC;
+          in.putShort(start + pc + 1, (short) (int) replacement);
+        }
+      }
+      pc += instructionLength(start, pc, opcode);
+    }
+  }
+
+  private int instructionLength(int start, int pc, int opcode) {
+    switch (opcode) {
+      case 0x10: // bipush
+      case 0x12: // ldc
+      case 0x15: case 0x16: case 0x17: case 0x18: case 0x19: // iload ... aload
+      case 0x36: case 0x37: case 0x38: case 0x39: case 0x3a: // istore ... astore
+      case 0xa9: // ret
+      case 0xbc: // newarray
+        return 2;
+      case 0x11: // sipush
+      case 0x13: // ldc_w
+      case 0x14: // ldc2_w
+      case 0x84: // iinc
+      case 0xa7: // goto
+      case 0xa8: // jsr
+      case 0xbb: // new
+      case 0xbd: // anewarray
+      case 0xc0: // checkcast
+      case 0xc1: // instanceof
+      case 0xc6: // ifnull
+      case 0xc7: // ifnonnull
+        return 3;
+      case 0xc5: // multianewarray
+        return 4;
+      case 0xb9: // invokeinterface
+      case 0xba: // invokedynamic
+      case 0xc8: // goto_w
+      case 0xc9: // jsr_w
+        return 5;
+      case 0xc4: // wide
+        return (bytes[start + pc + 1] & 0xff) == 0x84 ? 6 : 4;
+      case 0xaa: { // tableswitch
+        int operands = start + pc + 1 + (3 - pc % 4); // (padded to a multiple of 4)
+        int low = in.getInt(operands + 4);
+        int high = in.getInt(operands + 8);
+        return operands - start - pc + 12 + 4 * (high - low + 1);
+      }
+      case 0xab: { // lookupswitch
+        int operands = start + pc + 1 + (3 - pc % 4);
+        int nPairs = in.getInt(operands + 4);
+        return operands - start - pc + 8 + 8 * nPairs;
+      }
+      default:
+        if (opcode >= 0x99 && opcode <= 0xa6) { // if<cond>, if_icmp<cond>, if_acmp<cond>
+          return 3;
+        }
+        if (opcode >= 0xb2 && opcode <= 0xb8) { // get/putstatic, get/putfield, invoke*
+          return 3;
+        }
+        return 1;
+    }
+  }
+}
@@ -0,0 +1,79 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap.runners.isolation;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import killmap.runners.communication.Outcome;
+
+/**
+ * Stands in for System.exit, Runtime.exit and Runtime.halt in the classes under test (see
+ * ExitCallRewriter), so that a test or mutant that tries to exit doesn't take the worker JVM with
+ * it.
+ *
+ * An exit attempt throws an ExitAttempt -- an Error, so that the usual `catch (Exception e)` won't
+ * swallow it -- which ends the test (or whichever thread tried to exit). The first attempt is also
+ * remembered, in case the test catches the Error anyway. Every test is run in a fresh
+ * IsolatingClassLoader, with its own copy of this class, so attempts never carry over.
+ */
+public final class ExitTrap {
+
+  public static class ExitAttempt extends Error {
+    private static final long serialVersionUID = 3187428351264938170L;
+
+    public ExitAttempt(String message) {
+      super(message);
+    }
+  }
+
+  private static String firstAttempt = null; // its normalized stack trace
+
+  private ExitTrap() {
+  }
+
+  private static synchronized ExitAttempt attempt(String call) {
+    ExitAttempt result = new ExitAttempt(call);
+    if (firstAttempt == null) {
+      StringWriter trace = new StringWriter();
+      result.printStackTrace(new PrintWriter(trace));
+      firstAttempt = Outcome.normalizeStackTrace(trace.toString());
+    }
+    return result;
+  }
+
+  public static synchronized String takeAttempt() {
+    // Returns the stack trace of the first exit attempt since the last call, or null if there
+    // wasn't one.
+    String result = firstAttempt;
+    firstAttempt = null;
+    return result;
+  }
+
+  // The replacements. Their descriptors must match what ExitCallRewriter calls.
+
+  public static void exit(int status) {
+    throw attempt("System.exit(" + status + ")");
+  }
+
+  public static void exit(Runtime runtime, int status) {
+    throw attempt("Runtime.exit(" + status + ")");
+  }
+
+  public static void halt(Runtime runtime, int status) {
+    throw attempt("Runtime.halt(" + status + ")");
+  }
+}
@@ -16,15 +16,165 @@
  */
 package killmap.runners.isolation;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.net.JarURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
 import java.net.URLClassLoader;
+import java.net.URLConnection;
+import java.security.CodeSource;
+import java.security.cert.Certificate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.jar.Manifest;
 
 /**
  * A classloader that should have the same classpath as the normal classloader, but shares
  * absolutely nothing with it. Ensures that no test will change static state that will affect later
  * tests.
+ *
+ * Calls to System.exit, Runtime.exit and Runtime.halt in the classes it loads are redirected to
+ * ExitTrap as the classes are defined (see ExitCallRewriter), so that tests can't kill the worker.
+ * JUnit's and Hamcrest's classes, and killmap's own when it runs from its jar, are loaded as they
+ * are: every test needs them, and they only run tests, never exit. The others are only copied if
+ * they do call one of those methods.
  */
 public class IsolatingClassLoader extends URLClassLoader {
+  // The packages of the classes defined so far. (Not ClassLoader.getPackage, which also looks in
+  // the parent loaders, and is deprecated on Java 9+.)
+  private final Set<String> definedPackages = new HashSet<String>();
+
+  // The packages of JUnit and Hamcrest, whose classes are never rewritten.
+  private static final String[] UNREWRITTEN_PACKAGES = {"org.junit.", "junit.", "org.hamcrest."};
+
+  // Whether killmap's own classes are never rewritten either (see isKillmapInJar).
+  private static final boolean KILLMAP_IN_JAR = isKillmapInJar();
+
   public IsolatingClassLoader() {
-    super(((URLClassLoader) Thread.currentThread().getContextClassLoader()).getURLs(), null);
+    super(classpathURLs(), platformClassLoader());
+  }
+
+  private static URL[] classpathURLs() {
+    // On Java 9+, the application class loader isn't a URLClassLoader; its classpath is then taken
+    // from java.class.path.
+    ClassLoader loader = Thread.currentThread().getContextClassLoader();
+    if (loader instanceof URLClassLoader) {
+      return ((URLClassLoader) loader).getURLs();
+    }
+    List<URL> urls = new ArrayList<URL>();
+    for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+      try {
+        urls.add(new File(entry.isEmpty() ? "." : entry).toURI().toURL());
+      } catch (MalformedURLException e) {
+        continue;
+      }
+    }
+    return urls.toArray(new URL[0]);
+  }
+
+  private static ClassLoader platformClassLoader() {
+    // The JDK's own classes: on Java 9+, those outside java.base (e.g. java.sql) are loaded by the
+    // platform class loader; before that, the bootstrap class loader (null) has them all.
+    try {
+      return (ClassLoader) ClassLoader.class.getMethod("getPlatformClassLoader").invoke(null);
+    } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+      return null;
+    }
+  }
+
+  private static boolean isKillmapInJar() {
+    // Whether killmap was loaded from a jar. (When it runs its own tests, from a directory, the
+    // tests that exit are in there too.)
+    CodeSource codeSource = IsolatingClassLoader.class.getProtectionDomain().getCodeSource();
+    return codeSource != null && codeSource.getLocation() != null
+        && codeSource.getLocation().getPath().endsWith(".jar");
+  }
+
+  private static boolean isRewritten(String className) {
+    // Decided by name, before the class file is looked up: URLClassLoader's own findClass is
+    // quickest for the classes that are left alone.
+    if (KILLMAP_IN_JAR && className.startsWith("killmap.")) {
+      return false;
+    }
+    for (String prefix : UNREWRITTEN_PACKAGES) {
+      if (className.startsWith(prefix)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  protected Class<?> findClass(String name) throws ClassNotFoundException {
+    if (!isRewritten(name)) {
+      return super.findClass(name); // (which defines the package itself, if need be)
+    }
+    URL url = findResource(name.replace('.', '/') + ".class");
+    if (url == null) {
+      throw new ClassNotFoundException(name);
+    }
+    byte[] original;
+    try (InputStream in = url.openStream()) {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      byte[] buffer = new byte[8192];
+      int n;
+      while ((n = in.read(buffer)) > 0) {
+        bytes.write(buffer, 0, n);
+      }
+      original = bytes.toByteArray();
+    } catch (IOException e) {
+      throw new ClassNotFoundException(name, e);
+    }
+    byte[] rewritten = ExitCallRewriter.rewrite(original);
+    URL classpathEntry = classpathEntryOf(url, name);
+    int dot = name.lastIndexOf('.');
+    if (dot >= 0 && definedPackages.add(name.substring(0, dot))) {
+      definePackage(name.substring(0, dot), url, classpathEntry);
+    }
+    return defineClass(name, rewritten, 0, rewritten.length,
+        new CodeSource(classpathEntry, (Certificate[]) null));
+  }
+
+  private static URL classpathEntryOf(URL classFile, String className) {
+    // The jar or directory the given class file is in: "jar:<jar>!/p/C.class" is in <jar>, and
+    // "<dir>/p/C.class" in <dir>.
+    String spec = classFile.toString();
+    try {
+      if (spec.startsWith("jar:") && spec.contains("!/")) {
+        return new URL(spec.substring("jar:".length(), spec.indexOf("!/")));
+      }
+      String path = className.replace('.', '/') + ".class";
+      if (spec.endsWith(path)) {
+        return new URL(spec.substring(0, spec.length() - path.length()));
+      }
+    } catch (MalformedURLException e) {
+      // (fall through)
+    }
+    return classFile;
+  }
+
+  private void definePackage(String packageName, URL classFile, URL classpathEntry) {
+    // Defines the package the way URLClassLoader would: with the jar's manifest information, if it
+    // has a manifest.
+    Manifest manifest = null;
+    try {
+      URLConnection connection = classFile.openConnection();
+      if (connection instanceof JarURLConnection) {
+        manifest = ((JarURLConnection) connection).getManifest();
+      }
+    } catch (IOException e) {
+      manifest = null;
+    }
+    if (manifest != null) {
+      definePackage(packageName, manifest, classpathEntry);
+    } else {
+      definePackage(packageName, null, null, null, null, null, null, null);
+    }
   }
 }
@@ -0,0 +1,152 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap.runners.isolation;
+
+import java.security.MessageDigest;
+
+/**
+ * MurmurHash3 (the x64, 128-bit variant, with seed 0) as a MessageDigest: a fast hash, but not a
+ * cryptographic one, which is all that's needed to tell whether two test-runs printed the same
+ * thing. The digest is h1 then h2, each little-endian (as in Guava's murmur3_128).
+ */
+public class Murmur3Digest extends MessageDigest {
+
+  private static final long C1 = 0x87c37b91114253d5L;
+
+  private static final long C2 = 0x4cf5ad432745937fL;
+
+  private long h1;
+
+  private long h2;
+
+  private long length;
+
+  private final byte[] block; // the bytes of the current, incomplete block
+
+  private int blockLength;
+
+  public Murmur3Digest() {
+    super("murmur3");
+    block = new byte[16];
+    engineReset();
+  }
+
+  @Override
+  protected int engineGetDigestLength() {
+    return 16;
+  }
+
+  @Override
+  protected void engineReset() {
+    h1 = 0;
+    h2 = 0;
+    length = 0;
+    blockLength = 0;
+  }
+
+  @Override
+  protected void engineUpdate(byte input) {
+    block[blockLength++] = input;
+    if (blockLength == 16) {
+      mixBlock(block, 0);
+      blockLength = 0;
+    }
+    length++;
+  }
+
+  @Override
+  protected void engineUpdate(byte[] input, int offset, int len) {
+    length += len;
+    int end = offset + len;
+    if (blockLength > 0) {
+      while (blockLength < 16 && offset < end) {
+        block[blockLength++] = input[offset++];
+      }
+      if (blockLength < 16) {
+        return;
+      }
+      mixBlock(block, 0);
+      blockLength = 0;
+    }
+    for (; offset + 16 <= end; offset += 16) {
+      mixBlock(input, offset);
+    }
+    while (offset < end) {
+      block[blockLength++] = input[offset++];
+    }
+  }
+
+  private static long littleEndianLong(byte[] b, int i) {
+    return (b[i] & 0xffL) | (b[i + 1] & 0xffL) << 8 | (b[i + 2] & 0xffL) << 16
+        | (b[i + 3] & 0xffL) << 24 | (b[i + 4] & 0xffL) << 32 | (b[i + 5] & 0xffL) << 40
+        | (b[i + 6] & 0xffL) << 48 | (b[i + 7] & 0xffL) << 56;
+  }
+
+  private static long mixK1(long k1) {
+    return Long.rotateLeft(k1 * C1, 31) * C2;
+  }
+
+  private static long mixK2(long k2) {
+    return Long.rotateLeft(k2 * C2, 33) * C1;
+  }
+
+  private void mixBlock(byte[] b, int i) {
+    h1 ^= mixK1(littleEndianLong(b, i));
+    h1 = Long.rotateLeft(h1, 27) + h2;
+    h1 = h1 * 5 + 0x52dce729;
+    h2 ^= mixK2(littleEndianLong(b, i + 8));
+    h2 = Long.rotateLeft(h2, 31) + h1;
+    h2 = h2 * 5 + 0x38495ab5;
+  }
+
+  private static long fmix(long k) {
+    k ^= k >>> 33;
+    k *= 0xff51afd7ed558ccdL;
+    k ^= k >>> 33;
+    k *= 0xc4ceb9fe1a85ec53L;
+    k ^= k >>> 33;
+    return k;
+  }
+
+  @Override
+  protected byte[] engineDigest() {
+    // Mix in the last, incomplete block, then finalize.
+    long k1 = 0;
+    long k2 = 0;
+    for (int i = blockLength - 1; i >= 8; i--) {
+      k2 = k2 << 8 | (block[i] & 0xffL);
+    }
+    for (int i = Math.min(blockLength, 8) - 1; i >= 0; i--) {
+      k1 = k1 << 8 | (block[i] & 0xffL);
+    }
+    long a = h1 ^ mixK1(k1) ^ length;
+    long b = h2 ^ mixK2(k2) ^ length;
+    a += b;
+    b += a;
+    a = fmix(a);
+    b = fmix(b);
+    a += b;
+    b += a;
+    byte[] result = new byte[16];
+    for (int i = 0; i < 8; i++) {
+      result[i] = (byte) (a >>> (8 * i));
+      result[8 + i] = (byte) (b >>> (8 * i));
+    }
+    engineReset();
+    return result;
+  }
+}
@@ -0,0 +1,56 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap.runners.transport;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * One end of a line-based, two-way conversation between the host and a worker (see Transport).
+ *
+ * Lines written to `out` are sent as soon as they're complete (i.e. each println is sent in one
+ * go, rather than as a string and then a newline).
+ */
+public class Connection implements Closeable {
+
+  public final BufferedReader in;
+
+  public final PrintStream out;
+
+  private final Closeable underlying; // closed by close(), e.g. the socket
+
+  public Connection(InputStream in_, OutputStream out_, Closeable underlying_) {
+    in = new BufferedReader(new InputStreamReader(in_));
+    out = new PrintStream(new BufferedOutputStream(out_), true);
+    underlying = underlying_;
+  }
+
+  @Override
+  public void close() throws IOException {
+    // (Closes what's underneath rather than `in`, since another thread may be blocked reading it,
+    // and holding its lock.)
+    if (underlying != null) {
+      underlying.close();
+    }
+  }
+}
@@ -0,0 +1,56 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap.runners.transport;
+
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Talks to each worker through its stdin and stdout, so no socket is needed at all.
+ *
+ * The worker's System.out becomes its System.err, so that nothing else it prints gets mixed up
+ * with the conversation.
+ */
+public class PipeTransport extends Transport {
+
+  @Override
+  public String name() {
+    return "pipe";
+  }
+
+  @Override
+  public List<String> workerArguments() {
+    return Arrays.asList("pipe");
+  }
+
+  @Override
+  public Connection accept(Process worker) throws IOException {
+    // (Only the worker's stdin is closed with the connection: its stdout is closed when it exits.)
+    return new Connection(worker.getInputStream(), worker.getOutputStream(),
+        worker.getOutputStream());
+  }
+
+  static Connection connect() {
+    FileOutputStream stdout = new FileOutputStream(FileDescriptor.out);
+    System.setOut(System.err);
+    return new Connection(new FileInputStream(FileDescriptor.in), stdout, stdout);
+  }
+}
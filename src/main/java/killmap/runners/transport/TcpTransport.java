@@ -0,0 +1,65 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap.runners.transport;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Connects workers through a socket on a loopback TCP port, chosen by the OS.
+ */
+public class TcpTransport extends Transport {
+
+  private final ServerSocket server;
+
+  public TcpTransport() throws IOException {
+    server = new ServerSocket(0/* any available port */, 50, InetAddress.getLoopbackAddress());
+  }
+
+  @Override
+  public String name() {
+    return "tcp";
+  }
+
+  @Override
+  public List<String> workerArguments() {
+    return Arrays.asList("tcp", Integer.toString(server.getLocalPort()));
+  }
+
+  @Override
+  public Connection accept(Process worker) throws IOException {
+    return connection(server.accept());
+  }
+
+  @Override
+  public void close() throws IOException {
+    server.close();
+  }
+
+  static Connection connect(int port) throws IOException {
+    return connection(new Socket(InetAddress.getLoopbackAddress(), port));
+  }
+
+  private static Connection connection(Socket socket) throws IOException {
+    socket.setTcpNoDelay(true);
+    return new Connection(socket.getInputStream(), socket.getOutputStream(), socket);
+  }
+}
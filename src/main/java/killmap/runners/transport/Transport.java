@@ -0,0 +1,84 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap.runners.transport;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * How the host (RemoteTestRunner) and its workers (TestRunner.main) talk to each other.
+ *
+ * The host creates a Transport, starts each worker with `workerArguments()` on its command line,
+ * and then `accept`s the worker's Connection. The worker passes those arguments to
+ * `connectAsWorker`. What's sent over the Connection is the same whatever the Transport: see
+ * TestRunner.main.
+ *
+ * Transports (see `create`):
+ *   - "tcp": a socket on a loopback TCP port (the default);
+ *   - "unix": a Unix domain socket in a temporary directory, which avoids the TCP stack and
+ *     doesn't use up ports (needs Java 16 or later, on both ends);
+ *   - "pipe": the worker's stdin and stdout.
+ */
+public abstract class Transport implements Closeable {
+
+  public static final String DEFAULT = "tcp";
+
+  public static final String[] NAMES = {"tcp", "unix", "pipe"};
+
+  public abstract String name();
+
+  public abstract List<String> workerArguments();
+
+  public abstract Connection accept(Process worker) throws IOException;
+
+  @Override
+  public void close() throws IOException {
+  }
+
+  public static Transport create(String name) throws IOException, IllegalArgumentException {
+    switch (name) {
+      case "tcp":
+        return new TcpTransport();
+      case "unix":
+        return new UnixSocketTransport();
+      case "pipe":
+        return new PipeTransport();
+      default:
+        throw new IllegalArgumentException("unknown transport: " + name);
+    }
+  }
+
+  public static Connection connectAsWorker(List<String> args)
+      throws IOException, IllegalArgumentException {
+    // The worker's side: connects to the host given the arguments from workerArguments(). (A bare
+    // port number means TCP.)
+    if (args.size() == 1 && args.get(0).matches("[0-9]+")) {
+      return TcpTransport.connect(Integer.parseInt(args.get(0)));
+    }
+    switch (args.isEmpty() ? "" : args.get(0)) {
+      case "tcp":
+        return TcpTransport.connect(Integer.parseInt(args.get(1)));
+      case "unix":
+        return UnixSocketTransport.connect(args.get(1));
+      case "pipe":
+        return PipeTransport.connect();
+      default:
+        throw new IllegalArgumentException("can't connect to host with arguments " + args);
+    }
+  }
+}
@@ -0,0 +1,166 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap.runners.transport;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Connects workers through a Unix domain socket, in a fresh temporary directory.
+ *
+ * Unix domain socket channels only exist from Java 16, so they're reached by reflection; on older
+ * JVMs, creating this transport fails with an IOException.
+ *
+ * (The channels are read and written directly, rather than through Channels.newInputStream and
+ * newOutputStream, because those lock the channel for as long as a read blocks, and the worker
+ * sends heartbeats while the host may be waiting to read.)
+ */
+public class UnixSocketTransport extends Transport {
+
+  private final File directory;
+
+  private final File socketFile;
+
+  private final ServerSocketChannel server;
+
+  public UnixSocketTransport() throws IOException {
+    directory = Files.createTempDirectory("killmap").toFile();
+    socketFile = new File(directory, "worker.sock");
+    ServerSocketChannel channel;
+    try {
+      channel = (ServerSocketChannel) ServerSocketChannel.class
+          .getMethod("open", ProtocolFamily.class).invoke(null, unixFamily());
+    } catch (InvocationTargetException e) {
+      directory.delete();
+      throw asIOException(e.getCause());
+    } catch (ReflectiveOperationException | IOException e) {
+      directory.delete();
+      throw asIOException(e);
+    }
+    try {
+      channel.bind(address(socketFile.getPath()));
+    } catch (IOException e) {
+      channel.close();
+      directory.delete();
+      throw e;
+    }
+    server = channel;
+  }
+
+  @Override
+  public String name() {
+    return "unix";
+  }
+
+  @Override
+  public List<String> workerArguments() {
+    return Arrays.asList("unix", socketFile.getPath());
+  }
+
+  @Override
+  public Connection accept(Process worker) throws IOException {
+    return connection(server.accept());
+  }
+
+  @Override
+  public void close() throws IOException {
+    server.close();
+    socketFile.delete();
+    directory.delete();
+  }
+
+  static Connection connect(String path) throws IOException {
+    try {
+      SocketChannel channel = (SocketChannel) SocketChannel.class
+          .getMethod("open", ProtocolFamily.class).invoke(null, unixFamily());
+      channel.connect(address(path));
+      return connection(channel);
+    } catch (InvocationTargetException e) {
+      throw asIOException(e.getCause());
+    } catch (ReflectiveOperationException e) {
+      throw asIOException(e);
+    }
+  }
+
+  private static IOException asIOException(Throwable t) {
+    if (t instanceof IOException) {
+      return (IOException) t;
+    }
+    return new IOException("Unix domain sockets need Java 16 or later", t);
+  }
+
+  private static ProtocolFamily unixFamily() throws IOException {
+    try {
+      return StandardProtocolFamily.valueOf("UNIX");
+    } catch (IllegalArgumentException e) {
+      throw asIOException(e);
+    }
+  }
+
+  private static SocketAddress address(String path) throws IOException {
+    try {
+      return (SocketAddress) Class.forName("java.net.UnixDomainSocketAddress")
+          .getMethod("of", String.class).invoke(null, path);
+    } catch (InvocationTargetException e) {
+      throw asIOException(e.getCause());
+    } catch (ReflectiveOperationException e) {
+      throw asIOException(e);
+    }
+  }
+
+  private static Connection connection(final SocketChannel channel) {
+    InputStream in = new InputStream() {
+      @Override
+      public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+        return len == 0 ? 0 : channel.read(ByteBuffer.wrap(b, off, len));
+      }
+    };
+    OutputStream out = new OutputStream() {
+      @Override
+      public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+        while (buffer.hasRemaining()) {
+          channel.write(buffer);
+        }
+      }
+    };
+    return new Connection(in, out, channel);
+  }
+}
@@ -0,0 +1,198 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap.score;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import killmap.matrix.MatrixParser;
+import killmap.mutants.MutantsLog;
+import killmap.runners.communication.MutantSet;
+
+/**
+ * The "score" stage: reads a matrix as it's being produced, and writes the fault-localization
+ * scores it implies (see SuspiciousnessScorer).
+ *
+ * Usage:
+ *   java -jar killmap.jar score [--formula metallaxis|muse|ochiai] [--update-every SECONDS]
+ *     [--sample SAMPLE_FILE] [--bootstrap REPLICATES] [--seed SEED]
+ *     mutants.log matrix.csv mutant-scores.csv line-scores.csv
+ *
+ * matrix.csv may be gzipped (if its name ends with ".gz"), or "-" to read the matrix from stdin, so
+ * that it can be fed by a running killmap:
+ *   java -jar killmap.jar ... | tee matrix.csv | java -jar killmap.jar score mutants.log - ...
+ * While the matrix is being read, the score files are rewritten every --update-every seconds (60 by
+ * default), so a ranking is available before the run finishes; they're rewritten once more at the
+ * end. Each rewrite replaces the whole file at once, so readers never see half a ranking.
+ *
+ * line-scores.csv lists the mutated lines, most suspicious (according to --formula, METALLAXIS by
+ * default) first.
+ *
+ * If the matrix was made with a sample of the mutants (Main's --sample-fraction), pass the file
+ * that --sample-output wrote as --sample, so that only the sampled mutants are scored; and
+ * --bootstrap to add 95% confidence intervals to line-scores.csv, computed from that many resamples
+ * (a few hundred is plenty), with the generator seeded by --seed.
+ */
+public class Score {
+
+  private static final String USAGE =
+      "java -jar killmap.jar score [--formula metallaxis|muse|ochiai] [--update-every SECONDS] [--sample SAMPLE_FILE] [--bootstrap REPLICATES] [--seed SEED] mutants.log matrix.csv mutant-scores.csv line-scores.csv";
+
+  private static SuspiciousnessScorer.Formula formula = SuspiciousnessScorer.Formula.METALLAXIS;
+
+  private static long updateIntervalMillis = 60000;
+
+  private static final double CONFIDENCE = 0.95;
+
+  private static MutantSet sample = null;
+
+  private static int bootstrapReplicates = 0;
+
+  private static long seed = 0;
+
+  private static void writeAtomically(String path, SuspiciousnessScorer scorer, boolean lines)
+      throws IOException {
+    File target = new File(path);
+    File tmp = new File(path + ".tmp");
+    try (PrintStream out = new PrintStream(new FileOutputStream(tmp), false, "UTF-8")) {
+      if (lines) {
+        scorer.writeLineScores(out, formula, bootstrapReplicates == 0 ? null
+            : scorer.lineScoreIntervals(bootstrapReplicates, CONFIDENCE, seed));
+      } else {
+        scorer.writeMutantScores(out);
+      }
+    }
+    Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private static void writeScoresOrExit(SuspiciousnessScorer scorer, String mutantScoresPath,
+      String lineScoresPath) {
+    try {
+      writeAtomically(mutantScoresPath, scorer, false);
+      writeAtomically(lineScoresPath, scorer, true);
+    } catch (IOException e) {
+      System.err.println("unable to write scores");
+      e.printStackTrace();
+      System.exit(1);
+    }
+  }
+
+  private static MutantSet readSampleOrExit(String path) {
+    // Reads a sample, as written by Main's --sample-output: a single line listing the mutants.
+    try (BufferedReader reader = MatrixParser.open(path)) {
+      String line = reader.readLine();
+      return MutantSet.fromString(line == null ? "" : line);
+    } catch (IOException | IllegalArgumentException e) {
+      System.err.println("unable to read sample from " + path);
+      e.printStackTrace();
+      System.exit(1);
+    }
+    return null;
+  }
+
+  public static void main(String... args) {
+    List<String> argv = new ArrayList<String>(Arrays.asList(args));
+    while (!argv.isEmpty() && argv.get(0).startsWith("--")) {
+      switch (argv.get(0)) {
+        case "--help":
+          System.err.println("usage: " + USAGE);
+          System.exit(0);
+          return;
+        case "--formula":
+          formula = SuspiciousnessScorer.Formula.valueOf(argv.get(1).toUpperCase());
+          argv.remove(0);
+          argv.remove(0);
+          break;
+        case "--update-every":
+          updateIntervalMillis = 1000 * Long.parseLong(argv.get(1));
+          argv.remove(0);
+          argv.remove(0);
+          break;
+        case "--sample":
+          sample = readSampleOrExit(argv.get(1));
+          argv.remove(0);
+          argv.remove(0);
+          break;
+        case "--bootstrap":
+          bootstrapReplicates = Integer.parseInt(argv.get(1));
+          argv.remove(0);
+          argv.remove(0);
+          break;
+        case "--seed":
+          seed = Long.parseLong(argv.get(1));
+          argv.remove(0);
+          argv.remove(0);
+          break;
+        default:
+          System.err.println("usage: " + USAGE);
+          System.exit(1);
+      }
+    }
+    if (argv.size() != 4) {
+      System.err.println("usage: " + USAGE);
+      System.exit(1);
+    }
+
+    MutantsLog mutantsLog = null;
+    try {
+      mutantsLog = MutantsLog.load(argv.get(0));
+    } catch (IOException e) {
+      System.err.println("unable to read " + argv.get(0));
+      e.printStackTrace();
+      System.exit(1);
+    }
+    System.err.println("[" + mutantsLog.size() + " mutants in " + argv.get(0) + "; "
+        + mutantsLog.skippedLineCount() + " unparseable lines]");
+
+    SuspiciousnessScorer scorer = new SuspiciousnessScorer(mutantsLog);
+    if (sample != null) {
+      System.err.println("[only scoring the " + sample.size() + " sampled mutants]");
+      scorer.restrictTo(sample);
+    }
+    MatrixParser parser = new MatrixParser(scorer);
+    long lastUpdate = System.currentTimeMillis();
+    try (BufferedReader reader = MatrixParser.open(argv.get(1))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        parser.addLine(line);
+        if (System.currentTimeMillis() - lastUpdate >= updateIntervalMillis) {
+          writeScoresOrExit(scorer, argv.get(2), argv.get(3));
+          System.err.println("[scored " + parser.rowCount() + " rows so far]");
+          lastUpdate = System.currentTimeMillis();
+        }
+      }
+    } catch (IOException e) {
+      System.err.println("unable to read " + argv.get(1));
+      e.printStackTrace();
+      System.exit(1);
+    }
+    writeScoresOrExit(scorer, argv.get(2), argv.get(3));
+
+    System.err.println("[scored " + parser.rowCount() + " rows (" + scorer.testCount() + " tests, "
+        + scorer.failingTestCount() + " failing); skipped " + parser.skippedLineCount()
+        + " malformed lines and " + scorer.runsWithoutBaselineCount()
+        + " runs of tests without an unmutated run]");
+  }
+}
@@ -0,0 +1,434 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap.score;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import killmap.matrix.RunConsumer;
+import killmap.mutants.Mutant;
+import killmap.mutants.MutantsLog;
+import killmap.runners.communication.MutantSet;
+import killmap.runners.communication.Outcome;
+
+/**
+ * Computes mutation-based fault-localization scores from a stream of test-runs, in one pass.
+ *
+ * A test is "failing" if it doesn't pass with no mutant enabled, and "passing" otherwise. A test
+ * "kills" a mutant if its outcome with the mutant differs from its outcome without it, in type or
+ * in stack trace (the same criterion as Main.behaviourChangingMutants). Runs that aren't in the
+ * stream (because the test doesn't cover the mutant) count as not killing it.
+ *
+ * For each mutant m, with F the number of failing tests:
+ *   ochiai(m) = killedByFailing(m) / sqrt(F * (killedByFailing(m) + killedByPassing(m)))
+ *   muse(m) = failToPass(m) / (F2P + 1) - passToFail(m) / (P2F + 1)
+ * where failToPass(m) counts failing tests that pass with m, passToFail(m) counts passing tests
+ * that don't pass with m, and F2P/P2F are their totals over all mutants. For each line s, with
+ * mut(s) the mutants that mutants.log puts on s:
+ *   Metallaxis(s) = max of ochiai(m) over mut(s)  (Papadakis and Le Traon)
+ *   MUSE(s) = sum of muse(m) over mut(s), divided by |mut(s)| + 1  (Moon et al.)
+ *   Ochiai(s) = mean of ochiai(m) over mut(s)  (the average aggregation of Pearson et al.)
+ *
+ * Only a few counters per mutant, and the outcome of each test with no mutant, are kept; so scores
+ * can be asked for at any point while the stream is still being read, and memory doesn't grow with
+ * the size of the matrix. Each (test,mutant) pair should only appear once in the stream, after that
+ * test's run with no mutant (which is how Main prints them).
+ *
+ * If only a sample of the mutants was run (see MutantSampler), `restrictTo` the sample: the other
+ * mutants were only run by some of the tests, so their counters would be biased. The score of a
+ * line is then an estimate from its sampled mutants, and `lineScoreIntervals` gives bootstrap
+ * confidence intervals for it: the line's sampled mutants are resampled with replacement, and the
+ * interval is the central `confidence` fraction of the resampled scores. (For Metallaxis, which is
+ * a maximum, the interval can only fall below the observed score; since the true maximum can be
+ * higher than the sampled one, read it as a spread rather than a bound.)
+ */
+public class SuspiciousnessScorer implements RunConsumer {
+
+  public static enum Formula {
+    METALLAXIS, MUSE, OCHIAI;
+  }
+
+  private static class Baseline {
+    final Outcome.Type type;
+
+    final String stackTrace;
+
+    Baseline(Outcome.Type type_, String stackTrace_) {
+      type = type_;
+      stackTrace = stackTrace_;
+    }
+
+    boolean isFailing() {
+      return type != Outcome.Type.PASS;
+    }
+  }
+
+  /**
+   * Confidence intervals for the scores of one line.
+   */
+  public static class ScoreInterval {
+    public final double metallaxisLow;
+
+    public final double metallaxisHigh;
+
+    public final double museLow;
+
+    public final double museHigh;
+
+    public final double ochiaiLow;
+
+    public final double ochiaiHigh;
+
+    ScoreInterval(double metallaxisLow_, double metallaxisHigh_, double museLow_,
+        double museHigh_, double ochiaiLow_, double ochiaiHigh_) {
+      metallaxisLow = metallaxisLow_;
+      metallaxisHigh = metallaxisHigh_;
+      museLow = museLow_;
+      museHigh = museHigh_;
+      ochiaiLow = ochiaiLow_;
+      ochiaiHigh = ochiaiHigh_;
+    }
+  }
+
+  /**
+   * The scores of one line.
+   */
+  public static class LineScore {
+    public final String line;
+
+    public final int nMutants;
+
+    public final double metallaxis;
+
+    public final double muse;
+
+    public final double ochiai;
+
+    LineScore(String line_, int nMutants_, double metallaxis_, double muse_, double ochiai_) {
+      line = line_;
+      nMutants = nMutants_;
+      metallaxis = metallaxis_;
+      muse = muse_;
+      ochiai = ochiai_;
+    }
+
+    public double get(Formula formula) {
+      switch (formula) {
+        case METALLAXIS:
+          return metallaxis;
+        case MUSE:
+          return muse;
+        default:
+          return ochiai;
+      }
+    }
+  }
+
+  private final MutantsLog mutantsLog;
+
+  private final Map<String, Baseline> baselines;
+
+  private int nFailingTests;
+
+  // Per-mutant counters, indexed by mutant id.
+  private int[] killedByFailing;
+
+  private int[] killedByPassing;
+
+  private int[] failToPass;
+
+  private int[] passToFail;
+
+  private final BitSet seenMutants;
+
+  private MutantSet scoredMutants; // null to score every mutant
+
+  private long totalFailToPass;
+
+  private long totalPassToFail;
+
+  private long nRuns;
+
+  private long nRunsWithoutBaseline;
+
+  public SuspiciousnessScorer(MutantsLog mutantsLog_) {
+    mutantsLog = mutantsLog_;
+    baselines = new HashMap<String, Baseline>();
+    nFailingTests = 0;
+    int capacity = Math.max(mutantsLog.maxId() + 1, 16);
+    killedByFailing = new int[capacity];
+    killedByPassing = new int[capacity];
+    failToPass = new int[capacity];
+    passToFail = new int[capacity];
+    seenMutants = new BitSet();
+    scoredMutants = null;
+    totalFailToPass = 0;
+    totalPassToFail = 0;
+    nRuns = 0;
+    nRunsWithoutBaseline = 0;
+  }
+
+  public long runCount() {
+    return nRuns;
+  }
+
+  public long runsWithoutBaselineCount() {
+    return nRunsWithoutBaseline;
+  }
+
+  public int testCount() {
+    return baselines.size();
+  }
+
+  public int failingTestCount() {
+    return nFailingTests;
+  }
+
+  public synchronized void restrictTo(MutantSet mutants) {
+    // Only score the given mutants (or every mutant, if null). Runs of the other mutants are still
+    // counted, so the set can be changed at any point.
+    scoredMutants = mutants == null ? null : mutants.copy();
+  }
+
+  private boolean isScored(int mutantId) {
+    return scoredMutants == null || scoredMutants.contains(mutantId);
+  }
+
+  private void ensureCapacity(int mutantId) {
+    if (mutantId < killedByFailing.length) {
+      return;
+    }
+    int capacity = Math.max(2 * killedByFailing.length, mutantId + 1);
+    killedByFailing = Arrays.copyOf(killedByFailing, capacity);
+    killedByPassing = Arrays.copyOf(killedByPassing, capacity);
+    failToPass = Arrays.copyOf(failToPass, capacity);
+    passToFail = Arrays.copyOf(passToFail, capacity);
+  }
+
+  @Override
+  public synchronized void add(String testName, int mutantId, Outcome.Type type,
+      String stackTrace) {
+    nRuns++;
+    if (mutantId == 0) {
+      Baseline old = baselines.put(testName, new Baseline(type, stackTrace));
+      if (old != null && old.isFailing()) {
+        nFailingTests--;
+      }
+      if (type != Outcome.Type.PASS) {
+        nFailingTests++;
+      }
+      return;
+    }
+
+    Baseline baseline = baselines.get(testName);
+    if (baseline == null) {
+      nRunsWithoutBaseline++;
+      return;
+    }
+    ensureCapacity(mutantId);
+    seenMutants.set(mutantId);
+    boolean killed = type != baseline.type || !stackTrace.equals(baseline.stackTrace);
+    if (baseline.isFailing()) {
+      if (killed) {
+        killedByFailing[mutantId]++;
+      }
+      if (type == Outcome.Type.PASS) {
+        failToPass[mutantId]++;
+        totalFailToPass++;
+      }
+    } else {
+      if (killed) {
+        killedByPassing[mutantId]++;
+      }
+      if (type != Outcome.Type.PASS) {
+        passToFail[mutantId]++;
+        totalPassToFail++;
+      }
+    }
+  }
+
+  private int counter(int[] counters, int mutantId) {
+    return mutantId < counters.length ? counters[mutantId] : 0;
+  }
+
+  public synchronized double ochiai(int mutantId) {
+    int kf = counter(killedByFailing, mutantId);
+    int kp = counter(killedByPassing, mutantId);
+    double denominator = Math.sqrt((double) nFailingTests * (kf + kp));
+    return denominator == 0 ? 0 : kf / denominator;
+  }
+
+  private long[] museTotals() {
+    // Returns {F2P, P2F}, over the scored mutants.
+    if (scoredMutants == null) {
+      return new long[] {totalFailToPass, totalPassToFail};
+    }
+    long[] result = new long[2];
+    for (int id = scoredMutants.nextMutant(0); id >= 0; id = scoredMutants.nextMutant(id + 1)) {
+      result[0] += counter(failToPass, id);
+      result[1] += counter(passToFail, id);
+    }
+    return result;
+  }
+
+  private double muse(int mutantId, long[] totals) {
+    return counter(failToPass, mutantId) / (totals[0] + 1.0)
+        - counter(passToFail, mutantId) / (totals[1] + 1.0);
+  }
+
+  public synchronized double muse(int mutantId) {
+    return muse(mutantId, museTotals());
+  }
+
+  private Map<String, List<Mutant>> scoredMutantsByLine() {
+    Map<String, List<Mutant>> result = new LinkedHashMap<String, List<Mutant>>();
+    for (Mutant m : mutantsLog.mutants()) {
+      if (!isScored(m.id)) {
+        continue;
+      }
+      List<Mutant> line = result.get(m.lineKey());
+      if (line == null) {
+        line = new ArrayList<Mutant>();
+        result.put(m.lineKey(), line);
+      }
+      line.add(m);
+    }
+    return result;
+  }
+
+  public synchronized List<LineScore> lineScores(final Formula orderBy) {
+    // Returns the score of every line with a mutant on it, most suspicious first (ties broken by
+    // line, so the order is deterministic).
+    long[] totals = museTotals();
+    Map<String, List<Mutant>> lines = scoredMutantsByLine();
+    List<LineScore> result = new ArrayList<LineScore>(lines.size());
+    for (Map.Entry<String, List<Mutant>> e : lines.entrySet()) {
+      double maxOchiai = 0;
+      double ochiaiSum = 0;
+      double museSum = 0;
+      for (Mutant m : e.getValue()) {
+        double ochiai = ochiai(m.id);
+        maxOchiai = Math.max(maxOchiai, ochiai);
+        ochiaiSum += ochiai;
+        museSum += muse(m.id, totals);
+      }
+      int n = e.getValue().size();
+      result.add(new LineScore(e.getKey(), n, maxOchiai, museSum / (n + 1), ochiaiSum / n));
+    }
+    Collections.sort(result, new Comparator<LineScore>() {
+      public int compare(LineScore a, LineScore b) {
+        int c = Double.compare(b.get(orderBy), a.get(orderBy));
+        return c != 0 ? c : a.line.compareTo(b.line);
+      }
+    });
+    return result;
+  }
+
+  public synchronized Map<String, ScoreInterval> lineScoreIntervals(int replicates,
+      double confidence, long seed) {
+    // Returns bootstrap confidence intervals for the score of every line, computed from the given
+    // number of resamples of the line's scored mutants.
+    long[] totals = museTotals();
+    Random random = new Random(seed);
+    double[] metallaxis = new double[replicates];
+    double[] muse = new double[replicates];
+    double[] meanOchiai = new double[replicates];
+    int low = (int) Math.floor((1 - confidence) / 2 * (replicates - 1));
+    int high = replicates - 1 - low;
+
+    Map<String, ScoreInterval> result = new LinkedHashMap<String, ScoreInterval>();
+    for (Map.Entry<String, List<Mutant>> e : scoredMutantsByLine().entrySet()) {
+      List<Mutant> mutants = e.getValue();
+      int n = mutants.size();
+      double[] ochiais = new double[n];
+      double[] muses = new double[n];
+      for (int i = 0; i < n; i++) {
+        ochiais[i] = ochiai(mutants.get(i).id);
+        muses[i] = muse(mutants.get(i).id, totals);
+      }
+      for (int r = 0; r < replicates; r++) {
+        double maxOchiai = 0;
+        double ochiaiSum = 0;
+        double museSum = 0;
+        for (int i = 0; i < n; i++) {
+          int pick = random.nextInt(n);
+          maxOchiai = Math.max(maxOchiai, ochiais[pick]);
+          ochiaiSum += ochiais[pick];
+          museSum += muses[pick];
+        }
+        metallaxis[r] = maxOchiai;
+        muse[r] = museSum / (n + 1);
+        meanOchiai[r] = ochiaiSum / n;
+      }
+      Arrays.sort(metallaxis);
+      Arrays.sort(muse);
+      Arrays.sort(meanOchiai);
+      result.put(e.getKey(), new ScoreInterval(metallaxis[low], metallaxis[high], muse[low],
+          muse[high], meanOchiai[low], meanOchiai[high]));
+    }
+    return result;
+  }
+
+  public synchronized void writeMutantScores(PrintStream out) {
+    // Prints a CSV with the counters and scores of every scored mutant that's in mutants.log or
+    // that has been run.
+    out.println("MutantId,Line,KilledByFailing,KilledByPassing,FailToPass,PassToFail,Ochiai,MUSE");
+    long[] totals = museTotals();
+    int maxId = Math.max(mutantsLog.maxId(), seenMutants.length() - 1);
+    for (int id = 1; id <= maxId; id++) {
+      Mutant m = mutantsLog.get(id);
+      if ((m == null && !seenMutants.get(id)) || !isScored(id)) {
+        continue;
+      }
+      out.println(id + "," + (m == null ? "" : m.lineKey()) + "," + counter(killedByFailing, id)
+          + "," + counter(killedByPassing, id) + "," + counter(failToPass, id) + ","
+          + counter(passToFail, id) + "," + ochiai(id) + "," + muse(id, totals));
+    }
+  }
+
+  public synchronized void writeLineScores(PrintStream out, Formula orderBy) {
+    writeLineScores(out, orderBy, null);
+  }
+
+  public synchronized void writeLineScores(PrintStream out, Formula orderBy,
+      Map<String, ScoreInterval> intervals) {
+    // Prints a CSV with the scores of every mutated line, most suspicious first; and, if intervals
+    // are given, their confidence intervals.
+    out.println(intervals == null ? "Line,Mutants,Metallaxis,MUSE,Ochiai"
+        : "Line,Mutants,Metallaxis,MUSE,Ochiai,MetallaxisLow,MetallaxisHigh,MUSELow,MUSEHigh,"
+            + "OchiaiLow,OchiaiHigh");
+    for (LineScore s : lineScores(orderBy)) {
+      String row = s.line + "," + s.nMutants + "," + s.metallaxis + "," + s.muse + "," + s.ochiai;
+      ScoreInterval i = intervals == null ? null : intervals.get(s.line);
+      if (i != null) {
+        row += "," + i.metallaxisLow + "," + i.metallaxisHigh + "," + i.museLow + "," + i.museHigh
+            + "," + i.ochiaiLow + "," + i.ochiaiHigh;
+      } else if (intervals != null) {
+        row += ",,,,,,";
+      }
+      out.println(row);
+    }
+  }
+}
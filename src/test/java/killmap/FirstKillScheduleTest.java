@@ -0,0 +1,60 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import junit.framework.TestCase;
+
+public class FirstKillScheduleTest extends TestCase {
+
+  private static TestMethod test(String name) throws Exception {
+    return TestFinder.parseTestFullName("killmap.FirstKillScheduleTest#" + name, "#");
+  }
+
+  @Test
+  public void testQuickTestsGoFirst() throws Exception {
+    Map<TestMethod, Long> runTimes = new HashMap<TestMethod, Long>();
+    runTimes.put(test("testQuickTestsGoFirst"), (long) 100);
+    runTimes.put(test("testKillersGoFirst"), (long) 10);
+    FirstKillSchedule schedule = new FirstKillSchedule(runTimes);
+    List<TestMethod> ordered = schedule
+        .order(Arrays.asList(test("testQuickTestsGoFirst"), test("testKillersGoFirst")));
+    assertEquals(test("testKillersGoFirst"), ordered.get(0));
+  }
+
+  @Test
+  public void testKillersGoFirst() throws Exception {
+    Map<TestMethod, Long> runTimes = new HashMap<TestMethod, Long>();
+    runTimes.put(test("testQuickTestsGoFirst"), (long) 20);
+    runTimes.put(test("testKillersGoFirst"), (long) 10);
+    FirstKillSchedule schedule = new FirstKillSchedule(runTimes);
+    assertEquals(0.5, schedule.killRate(test("testKillersGoFirst")), 1e-9);
+    for (int i = 0; i < 8; i++) {
+      schedule.record(test("testQuickTestsGoFirst"), true);
+      schedule.record(test("testKillersGoFirst"), false);
+    }
+    assertEquals(0.9, schedule.killRate(test("testQuickTestsGoFirst")), 1e-9);
+    assertEquals(0.1, schedule.killRate(test("testKillersGoFirst")), 1e-9);
+    List<TestMethod> ordered = schedule
+        .order(Arrays.asList(test("testKillersGoFirst"), test("testQuickTestsGoFirst")));
+    assertEquals(test("testQuickTestsGoFirst"), ordered.get(0));
+  }
+}
@@ -0,0 +1,148 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import org.junit.Test;
+import killmap.runners.communication.MutantSet;
+import killmap.runners.communication.Outcome;
+import killmap.runners.communication.WorkOrder;
+import junit.framework.TestCase;
+
+public class MetricsTest extends TestCase {
+
+  private static WorkOrder order(int mutantId) throws Exception {
+    return new WorkOrder(TestFinder.parseTestFullName("killmap.MetricsTest#testRows", "#"),
+        mutantId, (long) 100);
+  }
+
+  private static Outcome outcome(Outcome.Type type, long runTime) {
+    return Outcome.create(type, runTime, "", new MutantSet());
+  }
+
+  @Test
+  public void testRowsAndCache() throws Exception {
+    Metrics metrics = new Metrics();
+    metrics.cacheHit("partial_run");
+    metrics.rowPrinted(order(0), outcome(Outcome.Type.PASS, 10));
+    metrics.ran(outcome(Outcome.Type.FAIL, 10), 30);
+    metrics.rowPrinted(order(1), outcome(Outcome.Type.FAIL, 10));
+    metrics.ran(outcome(Outcome.Type.FAIL, 10), 3000);
+    metrics.rowPrinted(order(2), outcome(Outcome.Type.FAIL, 10));
+    String text = metrics.render();
+    assertTrue(text.contains("\nkillmap_work_orders_total{outcome=\"PASS\"} 1\n"));
+    assertTrue(text.contains("\nkillmap_work_orders_total{outcome=\"FAIL\"} 2\n"));
+    assertTrue(text.contains("\nkillmap_cache_hits_total{source=\"partial_run\"} 1\n"));
+    assertTrue(text.contains("\nkillmap_cache_misses_total 2\n"));
+    assertTrue(text.contains("\nkillmap_cache_hit_ratio 0.3333333333333333\n"));
+    assertTrue(text.contains(
+        "\nkillmap_work_order_duration_seconds_bucket{outcome=\"FAIL\",le=\"0.025\"} 0\n"));
+    assertTrue(text.contains(
+        "\nkillmap_work_order_duration_seconds_bucket{outcome=\"FAIL\",le=\"0.05\"} 1\n"));
+    assertTrue(text.contains(
+        "\nkillmap_work_order_duration_seconds_bucket{outcome=\"FAIL\",le=\"5\"} 2\n"));
+    assertTrue(text.contains(
+        "\nkillmap_work_order_duration_seconds_bucket{outcome=\"FAIL\",le=\"+Inf\"} 2\n"));
+    assertTrue(
+        text.contains("\nkillmap_work_order_duration_seconds_sum{outcome=\"FAIL\"} 3.03\n"));
+    assertTrue(text.contains("# TYPE killmap_work_order_duration_seconds histogram\n"));
+  }
+
+  @Test
+  public void testEta() throws Exception {
+    Metrics metrics = new Metrics();
+    assertTrue(Double.isNaN(metrics.etaSeconds()));
+    metrics.testsPlanned(3);
+    metrics.testStarted();
+    assertTrue(Double.isNaN(metrics.etaSeconds()));
+    metrics.ran(outcome(Outcome.Type.PASS, 100), 150); // (50ms overhead)
+    metrics.mutantsPlanned(9, 100);
+    // This test: 9 mutants * 150ms; the other two: 10 work orders * 150ms each.
+    assertEquals(1.35 + 2 * 1.5, metrics.etaSeconds(), 1e-9);
+    for (int i = 1; i <= 4; i++) {
+      metrics.rowPrinted(order(i), outcome(Outcome.Type.PASS, 100));
+    }
+    assertEquals(0.75 + 2 * 1.5, metrics.etaSeconds(), 1e-9);
+    metrics.testStarted();
+    metrics.testStarted();
+    metrics.mutantsPlanned(0, 100);
+    assertEquals(0, metrics.etaSeconds(), 1e-9);
+  }
+
+  @Test
+  public void testEtaOfOtherKindsOfRun() throws Exception {
+    // --time-budget: each test's mutants are run after the other tests' unmutated runs.
+    Metrics metrics = new Metrics();
+    metrics.limitTo(TimeBudget.fromNow(3600 * 1000));
+    metrics.testsPlanned(2);
+    metrics.testStarted();
+    metrics.mutantsPlanned(4, 100);
+    metrics.deferMutants();
+    // This test's 4 mutants, and then another test like it.
+    assertEquals(0.4 + 0.5, metrics.etaSeconds(), 1e-9);
+    metrics.testStarted();
+    metrics.mutantsPlanned(2, 100);
+    metrics.deferMutants();
+    assertEquals(0.6, metrics.etaSeconds(), 1e-9);
+    metrics.rowPrinted(order(1), outcome(Outcome.Type.PASS, 100));
+    metrics.runsSkipped(1);
+    assertEquals(0.4, metrics.etaSeconds(), 1e-9);
+    metrics.limitTo(TimeBudget.fromNow(0));
+    assertEquals(0, metrics.etaSeconds(), 1e-9);
+
+    // --first-kill: every covering test might run, until one kills the mutant.
+    metrics = new Metrics();
+    metrics.testsPlanned(1);
+    metrics.testStarted();
+    metrics.mutantsPlanned(0, 100);
+    metrics.runsPlanned(3, 100);
+    assertEquals(0.3, metrics.etaSeconds(), 1e-9);
+    metrics.rowPrinted(order(1), outcome(Outcome.Type.FAIL, 100));
+    metrics.runsSkipped(2);
+    assertEquals(0, metrics.etaSeconds(), 1e-9);
+  }
+
+  @Test
+  public void testServe() throws Exception {
+    Metrics metrics = new Metrics();
+    metrics.rowPrinted(order(0), outcome(Outcome.Type.PASS, 10));
+    HttpServer server =
+        metrics.serve(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    try {
+      HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:"
+          + server.getAddress().getPort() + "/metrics").openConnection();
+      assertEquals(200, connection.getResponseCode());
+      assertTrue(connection.getContentType().startsWith("text/plain"));
+      ByteArrayOutputStream body = new ByteArrayOutputStream();
+      try (InputStream in = connection.getInputStream()) {
+        byte[] buffer = new byte[4096];
+        for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+          body.write(buffer, 0, n);
+        }
+      }
+      assertTrue(body.toString("UTF-8").contains("killmap_work_orders_total{outcome=\"PASS\"} 1"));
+    } finally {
+      server.stop(0);
+    }
+  }
+}
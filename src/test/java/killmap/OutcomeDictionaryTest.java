@@ -0,0 +1,89 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import org.junit.Test;
+import killmap.runners.communication.Outcome;
+import junit.framework.TestCase;
+
+public class OutcomeDictionaryTest extends TestCase {
+
+  private static Outcome crashWith(String digest, String stackTrace) {
+    Outcome result = Outcome.createCrash();
+    result.digest = digest;
+    result.stackTrace = stackTrace;
+    return result;
+  }
+
+  @Test
+  public void testInternReturnsCanonicalInstance() {
+    OutcomeDictionary dictionary = new OutcomeDictionary();
+    String a = new String("java.lang.AssertionError: boom");
+    String b = new String("java.lang.AssertionError: boom");
+    assertSame(dictionary.intern(a), dictionary.intern(b));
+    assertEquals(1, dictionary.size());
+    assertEquals("", dictionary.intern(""));
+    assertEquals(1, dictionary.size());
+  }
+
+  @Test
+  public void testEncodePrintsEachEntryOnce() {
+    OutcomeDictionary dictionary = new OutcomeDictionary();
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    PrintStream entries = new PrintStream(bytes);
+
+    Outcome first = dictionary.encode(crashWith("abc", "java.lang.Error: x, y"), entries);
+    Outcome second = dictionary.encode(crashWith("abc", ""), entries);
+    entries.flush();
+
+    assertEquals("@0", first.digest);
+    assertEquals("@1", first.stackTrace);
+    assertEquals("@0", second.digest);
+    assertEquals("", second.stackTrace);
+    assertEquals("!0,abc\n!1,java.lang.Error: x, y\n", bytes.toString().replace("\r", ""));
+  }
+
+  @Test
+  public void testDecodeIsInverseOfEncode() {
+    OutcomeDictionary writer = new OutcomeDictionary();
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    PrintStream entries = new PrintStream(bytes);
+    Outcome original = crashWith("abc", "java.lang.Error: x");
+    Outcome encoded = writer.encode(original, entries);
+    entries.flush();
+
+    OutcomeDictionary reader = new OutcomeDictionary();
+    for (String line : bytes.toString().split("\r?\n")) {
+      assertTrue(reader.define(line));
+    }
+    Outcome decoded = Outcome.fromString(encoded.toString());
+    reader.decode(decoded);
+    assertEquals(original, decoded);
+  }
+
+  @Test
+  public void testDecodeLeavesUnknownReferencesAlone() {
+    OutcomeDictionary reader = new OutcomeDictionary();
+    assertFalse(reader.define("killmap.Foo#testBar,0,100,PASS,1,,,"));
+    Outcome outcome = crashWith("@3", "@x");
+    reader.decode(outcome);
+    assertEquals("@3", outcome.digest);
+    assertEquals("@x", outcome.stackTrace);
+  }
+}
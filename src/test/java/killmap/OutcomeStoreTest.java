@@ -0,0 +1,152 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import killmap.mutants.MutantsLog;
+import killmap.runners.communication.Outcome;
+import killmap.runners.communication.WorkOrder;
+import junit.framework.TestCase;
+
+public class OutcomeStoreTest extends TestCase {
+
+  private static MutantsLog exampleLog() {
+    // Both mutants are in this test class, so "the classes the test covers" are on the classpath.
+    MutantsLog log = new MutantsLog();
+    log.addLine("1:ROR:<:<=:killmap.OutcomeStoreTest@f():10:");
+    log.addLine("2:ROR:<:>:killmap.OutcomeStoreTest@f():10:");
+    return log;
+  }
+
+  private static WorkOrder order(int mutantId) throws Exception {
+    return new WorkOrder(TestFinder.parseTestFullName("killmap.OutcomeStoreTest#testHits", "#"),
+        mutantId, (long) 100);
+  }
+
+  private final List<File> storeDirectories = new ArrayList<File>();
+
+  private File newStoreDirectory() throws Exception {
+    File dir = Files.createTempDirectory("outcome-store").toFile();
+    storeDirectories.add(dir);
+    return dir;
+  }
+
+  private static void deleteRecursively(File file) {
+    File[] children = file.listFiles();
+    for (File child : children == null ? new File[0] : children) {
+      deleteRecursively(child);
+    }
+    file.delete();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    for (File dir : storeDirectories) {
+      deleteRecursively(dir);
+    }
+    super.tearDown();
+  }
+
+  @Test
+  public void testHits() throws Exception {
+    File dir = newStoreDirectory();
+    Outcome original = Outcome.fromString("PASS,12,abc,1 2,");
+    Outcome mutated = Outcome.fromString("FAIL,15,abc,,Boom");
+
+    OutcomeStore store = new OutcomeStore(dir, 1 << 20, exampleLog());
+    assertNull(store.get(order(1))); // the test's coverage isn't known yet
+    store.put(order(0), original);
+    store.put(order(1), mutated);
+    assertEquals(mutated, store.get(order(1)));
+    assertNull(store.get(order(2)));
+
+    // Another process, with the mutants renumbered, finds them too, once it knows the coverage.
+    MutantsLog renumbered = new MutantsLog();
+    renumbered.addLine("7:ROR:<:<=:killmap.OutcomeStoreTest@f():10:");
+    renumbered.addLine("8:ROR:<:>:killmap.OutcomeStoreTest@f():10:");
+    OutcomeStore other = new OutcomeStore(dir, 1 << 20, renumbered);
+    assertNull(other.get(order(7)));
+    assertEquals(Outcome.fromString("PASS,12,abc,7 8,"), other.get(order(0)));
+    assertEquals(mutated, other.get(order(7)));
+    assertEquals(2, other.hitCount());
+    assertEquals(1, other.missCount());
+  }
+
+  @Test
+  public void testRenumbersCoveredMutants() throws Exception {
+    File dir = newStoreDirectory();
+    OutcomeStore store = new OutcomeStore(dir, 1 << 20, exampleLog());
+    store.put(order(0), Outcome.fromString("PASS,12,abc,1 2,"));
+    store.put(order(2), Outcome.fromString("FAIL,15,abc,1 2,Boom"));
+
+    // A mutant was added before these two, so they're 2 and 3 now.
+    MutantsLog renumbered = new MutantsLog();
+    renumbered.addLine("1:AOR:+:-:killmap.OutcomeStoreTest@g():5:");
+    renumbered.addLine("2:ROR:<:<=:killmap.OutcomeStoreTest@f():10:");
+    renumbered.addLine("3:ROR:<:>:killmap.OutcomeStoreTest@f():10:");
+    OutcomeStore other = new OutcomeStore(dir, 1 << 20, renumbered);
+    assertEquals(Outcome.fromString("PASS,12,abc,2 3,"), other.get(order(0)));
+    assertEquals(Outcome.fromString("FAIL,15,abc,2 3,Boom"), other.get(order(3)));
+
+    // And here the first one is gone: the entries cover a mutant this build doesn't have.
+    MutantsLog removed = new MutantsLog();
+    removed.addLine("1:ROR:<:>:killmap.OutcomeStoreTest@f():10:");
+    OutcomeStore third = new OutcomeStore(dir, 1 << 20, removed);
+    assertNull(third.get(order(0)));
+    assertEquals(0, third.hitCount());
+    assertEquals(1, third.missCount());
+  }
+
+  @Test
+  public void testDoesNotStoreCrashes() throws Exception {
+    OutcomeStore store = new OutcomeStore(newStoreDirectory(), 1 << 20, exampleLog());
+    store.put(order(0), Outcome.fromString("PASS,12,abc,1,"));
+    store.put(order(1), Outcome.createCrash());
+    assertNull(store.get(order(1)));
+  }
+
+  @Test
+  public void testEvictsLeastRecentlyUsed() throws Exception {
+    File dir = newStoreDirectory();
+    OutcomeStore store = new OutcomeStore(dir, 1 << 20, exampleLog());
+    String bigStackTrace = new String(new char[1000]).replace('\0', 'x');
+    store.put(order(0), Outcome.fromString("PASS,12,abc,1 2,"));
+    store.put(order(1), Outcome.fromString("FAIL,15,abc,," + bigStackTrace));
+    store.put(order(2), Outcome.fromString("FAIL,15,abc,," + bigStackTrace));
+    // Make mutant 1's entry the least recently used, then shrink the limit to just under the size of
+    // the store: evicting that one entry is enough.
+    long now = System.currentTimeMillis();
+    long totalBytes = 0;
+    for (File shard : dir.listFiles()) {
+      for (File entry : shard.isDirectory() ? shard.listFiles() : new File[0]) {
+        entry.setLastModified(now - 10000);
+        totalBytes += entry.length();
+      }
+    }
+    assertNotNull(store.get(order(0)));
+    assertNotNull(store.get(order(2)));
+    OutcomeStore small = new OutcomeStore(dir, totalBytes - 1, exampleLog());
+    small.evict();
+    assertNotNull(small.get(order(0)));
+    assertNull(small.get(order(1)));
+    assertNotNull(small.get(order(2)));
+  }
+}
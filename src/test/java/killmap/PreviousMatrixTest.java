@@ -0,0 +1,138 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import org.junit.Test;
+import killmap.mutants.MutantsLog;
+import killmap.runners.communication.MutantSet;
+import killmap.runners.communication.Outcome;
+import killmap.runners.communication.WorkOrder;
+import junit.framework.TestCase;
+
+public class PreviousMatrixTest extends TestCase {
+
+  private static final String CARRY_OVER =
+      "killmap.PreviousMatrixTest#testCarriesOverUnaffectedTests";
+
+  private static final String RENUMBER = "killmap.PreviousMatrixTest#testRenumbersMutants";
+
+  private static WorkOrder order(String test, int mutantId, long timeout) throws Exception {
+    return new WorkOrder(TestFinder.parseTestFullName(test, "#"), mutantId, timeout);
+  }
+
+  private File previousBuildDirectory = null;
+
+  private ClassHasher previousBuild() throws Exception {
+    // A build in which this test class is the same, but ClassHasher is different.
+    File dir = Files.createTempDirectory("previous-build").toFile();
+    previousBuildDirectory = dir;
+    File packageDir = new File(dir, "killmap");
+    packageDir.mkdirs();
+    try (InputStream in =
+        PreviousMatrixTest.class.getResourceAsStream("/killmap/PreviousMatrixTest.class")) {
+      Files.copy(in, new File(packageDir, "PreviousMatrixTest.class").toPath());
+    }
+    Files.write(new File(packageDir, "ClassHasher.class").toPath(), new byte[] {1, 2, 3});
+    return ClassHasher.forClasspath(dir.getPath());
+  }
+
+  private static void deleteRecursively(File file) {
+    File[] children = file.listFiles();
+    for (File child : children == null ? new File[0] : children) {
+      deleteRecursively(child);
+    }
+    file.delete();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    if (previousBuildDirectory != null) {
+      deleteRecursively(previousBuildDirectory);
+    }
+    super.tearDown();
+  }
+
+  @Test
+  public void testCarriesOverUnaffectedTests() throws Exception {
+    MutantsLog log = new MutantsLog();
+    log.addLine("1:ROR:<:<=:killmap.PreviousMatrixTest@f():10:");
+    log.addLine("2:ROR:<:<=:killmap.ClassHasher@hash(java.lang.String):20:");
+    PreviousMatrix previous = new PreviousMatrix(null, log, previousBuild(),
+        new ClassHasher(ClassLoader.getSystemClassLoader()));
+    previous.addLine(CARRY_OVER + ",0,60000,PASS,12,abc,1,");
+    previous.addLine("!0,Boom");
+    previous.addLine(CARRY_OVER + ",1,200,FAIL,15,abc,,@0");
+    previous.addLine(RENUMBER + ",0,60000,PASS,12,abc,1 2,");
+    previous.addLine(RENUMBER + ",1,200,FAIL,15,abc,,Boom");
+    assertFalse(previous.addLine("killmap.NoSuchTest#test,0,60000,PASS,12,abc,,"));
+    assertFalse(previous.addLine("junk"));
+    assertEquals(2, previous.skippedLineCount());
+
+    assertEquals(Outcome.fromString("PASS,12,abc,1,"),
+        previous.get(order(CARRY_OVER, 0, 60000)));
+    assertEquals(Outcome.fromString("FAIL,15,abc,,Boom"), previous.get(order(CARRY_OVER, 1, 200)));
+    assertNull(previous.get(order(CARRY_OVER, 1, 400))); // a different timeout: run it again
+    assertNull(previous.get(order(CARRY_OVER, 2, 200))); // not run last time
+
+    // This test covers mutants in ClassHasher, which has changed.
+    assertNull(previous.get(order(RENUMBER, 0, 60000)));
+    assertNull(previous.get(order(RENUMBER, 1, 200)));
+
+    assertEquals(1, previous.unaffectedTestCount());
+    assertEquals(2, previous.testCount());
+    assertEquals(2, previous.carriedOverCount());
+  }
+
+  @Test
+  public void testRenumbersMutants() throws Exception {
+    // A mutant has been added before the previous build's mutant 1, which is now mutant 2.
+    MutantsLog previousLog = new MutantsLog();
+    previousLog.addLine("1:ROR:<:<=:killmap.PreviousMatrixTest@f():10:");
+    MutantsLog log = new MutantsLog();
+    log.addLine("1:ROR:<:>:killmap.PreviousMatrixTest@g():5:");
+    log.addLine("2:ROR:<:<=:killmap.PreviousMatrixTest@f():10:");
+    PreviousMatrix previous = new PreviousMatrix(previousLog, log, previousBuild(),
+        new ClassHasher(ClassLoader.getSystemClassLoader()));
+    previous.addLine(RENUMBER + ",0,60000,PASS,12,abc,1,");
+    previous.addLine(RENUMBER + ",1,200,FAIL,15,abc,,Boom");
+
+    assertEquals(MutantSet.of(2), previous.get(order(RENUMBER, 0, 60000)).coveredMutants);
+    assertEquals(Outcome.fromString("FAIL,15,abc,,Boom"), previous.get(order(RENUMBER, 2, 200)));
+    assertNull(previous.get(order(RENUMBER, 1, 200))); // new, so never run
+  }
+
+  @Test
+  public void testRerunsRunsCoveringUnmatchedMutants() throws Exception {
+    // The previous build's mutant 2 is gone, but the run with mutant 1 covered it.
+    MutantsLog previousLog = new MutantsLog();
+    previousLog.addLine("1:ROR:<:<=:killmap.PreviousMatrixTest@f():10:");
+    previousLog.addLine("2:ROR:<:>:killmap.PreviousMatrixTest@f():11:");
+    MutantsLog log = new MutantsLog();
+    log.addLine("1:ROR:<:<=:killmap.PreviousMatrixTest@f():10:");
+    PreviousMatrix previous = new PreviousMatrix(previousLog, log, previousBuild(),
+        new ClassHasher(ClassLoader.getSystemClassLoader()));
+    previous.addLine(RENUMBER + ",0,60000,PASS,12,abc,1,");
+    previous.addLine(RENUMBER + ",1,200,FAIL,15,abc,1 2,Boom");
+
+    assertEquals(MutantSet.of(1), previous.get(order(RENUMBER, 0, 60000)).coveredMutants);
+    assertNull(previous.get(order(RENUMBER, 1, 200)));
+    assertEquals(1, previous.carriedOverCount());
+  }
+}
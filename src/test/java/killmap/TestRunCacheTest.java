@@ -23,6 +23,7 @@ import org.junit.Test;
 import org.junit.runner.JUnitCore;
 import org.junit.runner.Request;
 import org.junit.runner.Result;
+import killmap.runners.communication.Outcome;
 import killmap.runners.communication.WorkOrder;
 import junit.framework.TestCase;
 
@@ -65,4 +66,17 @@ public class TestRunCacheTest extends TestCase {
     assertEquals("1234abcdef", cache.tryGet(dummyWorkOrder(0, 123L)).digest);
     assertNull(cache.tryGet(dummyWorkOrder(0, 321L)));
   }
+
+  @Test
+  public void testResolvesDictionaryReferences() throws IOException {
+    BufferedWriter w = new BufferedWriter(new FileWriter("/tmp/killmap_cache_test"));
+    w.write(
+        "!0,1234abcdef\nkillmap.TestRunCacheTest$DummyTestSuite#testThatPasses,0,123,PASS,12,@0,7 8 9,\n!1,java.lang.Error: oops\nkillmap.TestRunCacheTest$DummyTestSuite#testThatPasses,0,321,FAIL,21,@0,,@1\n\n");
+    w.close();
+    TestRunCache cache = new TestRunCache("/tmp/killmap_cache_test");
+    assertEquals("1234abcdef", cache.tryGet(dummyWorkOrder(0, 123L)).digest);
+    Outcome second = cache.tryGet(dummyWorkOrder(0, 321L));
+    assertEquals("1234abcdef", second.digest);
+    assertEquals("java.lang.Error: oops", second.stackTrace);
+  }
 }
@@ -0,0 +1,59 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import killmap.runners.communication.WorkOrder;
+import junit.framework.TestCase;
+
+public class TimeBudgetTest extends TestCase {
+
+  private static WorkOrder order(int mutantId) throws Exception {
+    return new WorkOrder(TestFinder.parseTestFullName("killmap.TimeBudgetTest#testSkips", "#"),
+        mutantId, (long) 100);
+  }
+
+  @Test
+  public void testOrdersByValuePerMillisecond() throws Exception {
+    List<TimeBudget.Candidate> candidates = new ArrayList<TimeBudget.Candidate>();
+    candidates.add(new TimeBudget.Candidate(order(1), 1, 100)); // 0.01
+    candidates.add(new TimeBudget.Candidate(order(2), 3, 10)); // 0.3
+    candidates.add(new TimeBudget.Candidate(order(3), 1, 0)); // 1 (runtimes count as >= 1ms)
+    candidates.add(new TimeBudget.Candidate(order(4), 1, 100)); // 0.01, after mutant 1
+    List<WorkOrder> ordered = TimeBudget.byValuePerMillisecond(candidates);
+    assertEquals(3, (int) ordered.get(0).mutantId);
+    assertEquals(2, (int) ordered.get(1).mutantId);
+    assertEquals(1, (int) ordered.get(2).mutantId);
+    assertEquals(4, (int) ordered.get(3).mutantId);
+  }
+
+  @Test
+  public void testSkips() throws Exception {
+    TimeBudget budget = TimeBudget.fromNow(60000);
+    assertTrue(budget.allows(order(1), 1000));
+    assertFalse(budget.allows(order(2), 120000));
+    assertTrue(budget.allows(order(3), 0));
+    assertEquals(1, budget.skipped().size());
+    assertEquals(order(2), budget.skipped().get(0));
+
+    TimeBudget exhausted = new TimeBudget(System.currentTimeMillis() - 1);
+    assertTrue(exhausted.isExhausted());
+    assertFalse(exhausted.allows(order(1), 0));
+  }
+}
@@ -0,0 +1,50 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap.matrix;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import org.junit.Test;
+import killmap.runners.communication.Outcome.Type;
+import junit.framework.TestCase;
+
+public class KillMatrixLoaderTest extends TestCase {
+
+  @Test
+  public void testLoadsRowsAndDictionaryEntries() throws Exception {
+    String output = "!0,java.lang.AssertionError: a, b\n"
+        + "p.T#t1,0,60000,FAIL,12,abc,1-3,@0\n"
+        + "some junk a test printed\n"
+        + "p.T#t1,1,200,FAIL,10,abc,,@0\n"
+        + "p.T#t1,2,200,FAIL,10,abc,,java.lang.AssertionError: a\n"
+        + "p.T#t1,3,200,PASS,10,abc,,\n"
+        + "p.T#t2,0,60000,PASS,12,abc,2,\n"
+        + "p.T#t2,2,200,PASS,10,abc,,\n";
+    KillMatrixLoader loader = new KillMatrixLoader();
+    loader.addAll(new BufferedReader(new StringReader(output)));
+    assertEquals(6, loader.rowCount());
+    assertEquals(1, loader.skippedLineCount());
+
+    KillMatrix matrix = loader.build();
+    int t1 = matrix.testIndex("p.T#t1");
+    assertEquals(Type.FAIL, KillMatrix.typeOf(matrix.baseline(t1)));
+    assertFalse(KillMatrix.isKilled(matrix.get(t1, matrix.mutantIndex(1))));
+    assertTrue(KillMatrix.isKilled(matrix.get(t1, matrix.mutantIndex(2))));
+    assertTrue(KillMatrix.isKilled(matrix.get(t1, matrix.mutantIndex(3))));
+    assertFalse(KillMatrix.isKilled(matrix.get(matrix.testIndex("p.T#t2"), matrix.mutantIndex(2))));
+  }
+}
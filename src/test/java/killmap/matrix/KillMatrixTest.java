@@ -0,0 +1,135 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap.matrix;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import org.junit.Test;
+import killmap.runners.communication.Outcome.Type;
+import junit.framework.TestCase;
+
+public class KillMatrixTest extends TestCase {
+
+  private static KillMatrixBuilder exampleBuilder() {
+    // t1 fails originally; mutant 3 makes it pass, mutant 5 changes its stack trace, mutant 7
+    // changes nothing. t2 passes originally; mutant 7 makes it time out.
+    KillMatrixBuilder builder = new KillMatrixBuilder();
+    builder.add("T#t1", 0, Type.FAIL, "boom");
+    builder.add("T#t1", 3, Type.PASS, "");
+    builder.add("T#t1", 5, Type.FAIL, "bang");
+    builder.add("T#t1", 7, Type.FAIL, "boom");
+    builder.add("T#t2", 0, Type.PASS, "");
+    builder.add("T#t2", 7, Type.CRASH, "");
+    builder.add("T#t2", 7, Type.TIMEOUT, ""); // re-run: the last one wins
+    return builder;
+  }
+
+  private static BitSet bits(int... indices) {
+    BitSet result = new BitSet();
+    for (int i : indices) {
+      result.set(i);
+    }
+    return result;
+  }
+
+  private static void checkExample(KillMatrix matrix) {
+    assertEquals(2, matrix.testCount());
+    assertEquals(3, matrix.mutantCount());
+    assertEquals(4, matrix.runCellCount());
+    int t1 = matrix.testIndex("T#t1");
+    int t2 = matrix.testIndex("T#t2");
+    int m3 = matrix.mutantIndex(3);
+    int m5 = matrix.mutantIndex(5);
+    int m7 = matrix.mutantIndex(7);
+    assertEquals(-1, matrix.mutantIndex(4));
+    assertEquals(7, matrix.mutantId(m7));
+
+    assertEquals(Type.FAIL, KillMatrix.typeOf(matrix.baseline(t1)));
+    assertEquals(KillMatrix.codeOf(Type.PASS) | KillMatrix.KILLED, matrix.get(t1, m3));
+    assertTrue(KillMatrix.isKilled(matrix.get(t1, m5)));
+    assertEquals(KillMatrix.codeOf(Type.FAIL), matrix.get(t1, m7));
+    assertEquals(KillMatrix.NOT_RUN, matrix.get(t2, m3));
+    assertEquals(Type.TIMEOUT, KillMatrix.typeOf(matrix.get(t2, m7)));
+    assertNull(KillMatrix.typeOf(KillMatrix.NOT_RUN));
+
+    assertEquals(bits(t1), matrix.killSet(m3));
+    assertEquals(bits(t2), matrix.killSet(m7));
+    assertEquals(bits(m3, m5), matrix.killVector(t1));
+
+    BitSet[] killSets = matrix.killSets();
+    assertEquals(bits(t1), killSets[m5]);
+    assertEquals(bits(t2), killSets[m7]);
+    BitSet[] killVectors = matrix.killVectors();
+    assertEquals(bits(m7), killVectors[t2]);
+
+    long[] histogram = matrix.outcomeHistogram();
+    assertEquals(1, histogram[KillMatrix.codeOf(Type.PASS) | KillMatrix.KILLED]);
+    assertEquals(1, histogram[KillMatrix.codeOf(Type.FAIL) | KillMatrix.KILLED]);
+    assertEquals(1, histogram[KillMatrix.codeOf(Type.FAIL)]);
+    assertEquals(1, histogram[KillMatrix.codeOf(Type.TIMEOUT) | KillMatrix.KILLED]);
+    assertEquals(0, histogram[KillMatrix.codeOf(Type.CRASH) | KillMatrix.KILLED]);
+  }
+
+  @Test
+  public void testDenseMatrix() {
+    checkExample(exampleBuilder().buildDense());
+  }
+
+  @Test
+  public void testSparseMatrix() {
+    checkExample(exampleBuilder().buildSparse());
+  }
+
+  private static long checksum(KillMatrix matrix, boolean byRows) {
+    final long[] sum = {0};
+    KillMatrix.CellVisitor summer = new KillMatrix.CellVisitor() {
+      public void visit(int test, int mutant, byte code) {
+        sum[0] += 31L * test + 7L * mutant + code;
+      }
+    };
+    if (byRows) {
+      for (int t = 0; t < matrix.testCount(); t++) {
+        matrix.forEachInRow(t, summer);
+      }
+    } else {
+      for (int m = 0; m < matrix.mutantCount(); m++) {
+        matrix.forEachInColumn(m, summer);
+      }
+    }
+    return sum[0];
+  }
+
+  @Test
+  public void testRowAndColumnIterationAgree() {
+    KillMatrixBuilder builder = new KillMatrixBuilder();
+    for (int t = 0; t < 300; t++) {
+      builder.add("T#t" + t, 0, Type.PASS, "");
+      for (int m = 1 + t % 7; m < 500; m += 1 + t % 13) {
+        builder.add("T#t" + t, m, (t + m) % 3 == 0 ? Type.FAIL : Type.PASS, "");
+      }
+    }
+    KillMatrix sparse = builder.buildSparse();
+    KillMatrix dense = builder.buildDense();
+    long expected = checksum(sparse, true);
+    assertEquals(expected, checksum(sparse, false));
+    assertEquals(expected, checksum(dense, true));
+    assertEquals(expected, checksum(dense, false));
+    assertEquals(sparse.runCellCount(), dense.runCellCount());
+    assertEquals(Arrays.asList(sparse.killSets()), Arrays.asList(dense.killSets()));
+    assertEquals(Arrays.asList(sparse.killVectors()), Arrays.asList(dense.killVectors()));
+  }
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap.mutants;
+
+import org.junit.Test;
+import killmap.runners.communication.Outcome;
+import junit.framework.TestCase;
+
+public class MutantReducerTest extends TestCase {
+
+  private static MutantsLog exampleLog() {
+    MutantsLog log = new MutantsLog();
+    log.addLine("1:ROR:<(int,int):<=(int,int):org.foo.Bar@baz(int):42:a < b |==> a <= b");
+    log.addLine("2:ROR:<(int,int):!=(int,int):org.foo.Bar@baz(int):42:a < b |==> a != b");
+    log.addLine("3:ROR:<(int,int):TRUE(int,int):org.foo.Bar@baz(int):42:a < b |==> true");
+    log.addLine("4:ROR:<(int,int):<=(int,int):org.foo.Bar@baz(int):43:a < b |==> a <= b");
+    log.addLine("5:ROR:<(int,int):!=(int,int):org.foo.Bar@baz(int):42:a < b |==> a != b");
+    return log;
+  }
+
+  @Test
+  public void testReducesIdenticallyBehavingMutantsAtTheSameSite() {
+    MutantReducer reducer = new MutantReducer(exampleLog());
+    reducer.add("T#a", 0, Outcome.Type.PASS, ""); // (unmutated runs don't matter)
+    for (int id = 1; id <= 5; id++) {
+      reducer.add("T#a", id, Outcome.Type.FAIL, "Boom");
+      reducer.add("T#b", id, Outcome.Type.PASS, "");
+    }
+    // Mutant 3 behaves differently with another test; mutant 4 is on another line.
+    reducer.add("T#c", 3, Outcome.Type.TIMEOUT, "");
+    reducer.add("T#c", 2, Outcome.Type.PASS, "");
+    reducer.add("T#c", 1, Outcome.Type.PASS, "");
+    reducer.add("T#c", 5, Outcome.Type.PASS, "");
+
+    assertNull(reducer.representativeOf(1));
+    assertEquals(Integer.valueOf(1), reducer.representativeOf(2));
+    assertNull(reducer.representativeOf(3));
+    assertNull(reducer.representativeOf(4));
+    assertEquals(Integer.valueOf(1), reducer.representativeOf(5));
+    assertNull(reducer.representativeOf(6)); // never observed
+    assertTrue(reducer.isRepresentative(1));
+    assertFalse(reducer.isRepresentative(2));
+    assertFalse(reducer.isRepresentative(3));
+    assertEquals(5, reducer.observedMutantCount());
+    assertEquals(2, reducer.redundantMutantCount());
+    assertEquals(2, reducer.siteCount());
+  }
+
+  @Test
+  public void testDifferentStackTracesAreDifferentBehaviour() {
+    MutantReducer reducer = new MutantReducer(exampleLog());
+    reducer.add("T#a", 1, Outcome.Type.FAIL, "Boom");
+    reducer.add("T#a", 2, Outcome.Type.FAIL, "Bang");
+    assertNull(reducer.representativeOf(2));
+    reducer.add("T#a", 2, Outcome.Type.FAIL, "Boom"); // (a later row replaces an earlier one)
+    assertEquals(Integer.valueOf(1), reducer.representativeOf(2));
+  }
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap.mutants;
+
+import org.junit.Test;
+import killmap.runners.communication.MutantSet;
+import junit.framework.TestCase;
+
+public class MutantSamplerTest extends TestCase {
+
+  private static MutantsLog exampleLog() {
+    // Mutants 1-40 are ROR, 41-50 are LVR.
+    MutantsLog log = new MutantsLog();
+    for (int id = 1; id <= 50; id++) {
+      log.addLine(id + ":" + (id <= 40 ? "ROR" : "LVR") + ":a:b:p.C@f():" + id + ":");
+    }
+    return log;
+  }
+
+  private static MutantSet oneTo(int n) {
+    MutantSet result = new MutantSet();
+    result.addRange(1, n);
+    return result;
+  }
+
+  @Test
+  public void testSameSeedGivesSameSample() {
+    MutantSampler a = new MutantSampler(oneTo(50), null, MutantSampler.Strata.UNIFORM, 7);
+    MutantSampler b = new MutantSampler(oneTo(50), null, MutantSampler.Strata.UNIFORM, 7);
+    MutantSampler c = new MutantSampler(oneTo(50), null, MutantSampler.Strata.UNIFORM, 8);
+    assertEquals(a.sample(0.2), b.sample(0.2));
+    assertEquals(10, a.sample(0.2).size());
+    assertFalse(a.sample(0.2).equals(c.sample(0.2)));
+  }
+
+  @Test
+  public void testLargerSamplesContainSmallerOnes() {
+    MutantSampler sampler =
+        new MutantSampler(oneTo(50), exampleLog(), MutantSampler.Strata.OPERATOR, 3);
+    MutantSet small = sampler.sample(0.1);
+    MutantSet large = sampler.sample(0.3);
+    MutantSet difference = small.copy();
+    difference.removeAll(large);
+    assertTrue(difference.isEmpty());
+    assertEquals(oneTo(50), sampler.sample(1));
+    assertTrue(sampler.sample(0).isEmpty());
+  }
+
+  @Test
+  public void testStratifiedSampleCoversEveryStratum() {
+    MutantSampler sampler =
+        new MutantSampler(oneTo(50), exampleLog(), MutantSampler.Strata.OPERATOR, 0);
+    assertEquals(2, sampler.stratumCount());
+    MutantSet sample = sampler.sample(0.3);
+    int nRor = 0, nLvr = 0;
+    for (int id : sample.toArray()) {
+      if (id <= 40) {
+        nRor++;
+      } else {
+        nLvr++;
+      }
+    }
+    assertEquals(12, nRor);
+    assertEquals(3, nLvr);
+  }
+
+  @Test
+  public void testMutantsMissingFromLogGetTheirOwnStratum() {
+    MutantSampler sampler =
+        new MutantSampler(oneTo(60), exampleLog(), MutantSampler.Strata.METHOD, 0);
+    assertEquals(2, sampler.stratumCount());
+    assertEquals(60, sampler.populationSize());
+  }
+}
@@ -0,0 +1,62 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap.mutants;
+
+import org.junit.Test;
+import junit.framework.TestCase;
+
+public class MutantsLogTest extends TestCase {
+
+  @Test
+  public void testParsesMutant() {
+    Mutant m = Mutant.fromString(
+        "12:ROR:<=(int,int):<(int,int):org.foo.Bar$Inner@baz(int):42:a <= b |==> a < b");
+    assertEquals(12, m.id);
+    assertEquals("ROR", m.operator);
+    assertEquals("<=(int,int)", m.original);
+    assertEquals("<(int,int)", m.replacement);
+    assertEquals("org.foo.Bar$Inner", m.className);
+    assertEquals("baz(int)", m.methodName);
+    assertEquals(42, m.line);
+    assertEquals("org/foo/Bar.java#42", m.lineKey());
+    assertEquals("org.foo.Bar$Inner@baz(int)", m.methodKey());
+  }
+
+  @Test
+  public void testParsesMutantOutsideMethod() {
+    Mutant m = Mutant.fromString("3:LVR:0:1:org.foo.Bar:7:0 |==> 1");
+    assertEquals("org.foo.Bar", m.className);
+    assertEquals("", m.methodName);
+    assertEquals("org.foo.Bar", m.methodKey());
+  }
+
+  @Test
+  public void testSkipsMalformedLines() {
+    MutantsLog log = new MutantsLog();
+    assertTrue(log.addLine("2:LVR:0:1:org.foo.Bar@f:7:0 |==> 1"));
+    assertFalse(log.addLine("garbage"));
+    assertFalse(log.addLine("x:LVR:0:1:org.foo.Bar@f:7:"));
+    assertTrue(log.addLine("5:LVR:0:1:org.foo.Bar@f:8:0 |==> 1"));
+    assertEquals(2, log.size());
+    assertEquals(2, log.skippedLineCount());
+    assertEquals(5, log.maxId());
+    assertNull(log.get(3));
+    assertNull(log.get(99));
+    assertEquals(8, log.get(5).line);
+    assertEquals(2, log.mutants().size());
+  }
+}
@@ -0,0 +1,127 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap.runners;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import org.junit.Test;
+import junit.framework.TestCase;
+
+public class CpuAffinityTest extends TestCase {
+
+  @Test
+  public void testParseCpuList() {
+    assertEquals(Arrays.asList(0), Arrays.asList(CpuAffinity.parseCpuList("0").toArray()));
+    assertEquals(Arrays.asList(0, 2, 3, 4, 7),
+        Arrays.asList(CpuAffinity.parseCpuList("7,2-4,0").toArray()));
+    assertEquals(Arrays.asList(1, 2), Arrays.asList(CpuAffinity.parseCpuList("1-2,2").toArray()));
+  }
+
+  @Test
+  public void testBadCpuLists() {
+    for (String cpus : new String[] {"", "a", "1-", "-1", "1,,2", "0x3", "3-1"}) {
+      try {
+        CpuAffinity.parseCpuList(cpus);
+        fail("accepted " + cpus);
+      } catch (IllegalArgumentException e) {
+        // (expected)
+      }
+    }
+  }
+
+  @Test
+  public void testOverlap() {
+    assertTrue(CpuAffinity.overlap("0-3", "3,5"));
+    assertFalse(CpuAffinity.overlap("0-1", "2-3"));
+  }
+
+  @Test
+  public void testHalves() {
+    assertEquals(Arrays.asList("0,1", "2,3"), Arrays.asList(CpuAffinity.halves("0-3")));
+    assertEquals(Arrays.asList("2,4", "7"), Arrays.asList(CpuAffinity.halves("2,4,7")));
+    assertNull(CpuAffinity.halves("3"));
+  }
+
+  @Test
+  public void testWorkerLauncher() {
+    WorkerProfile profile = new WorkerProfile();
+    assertEquals(Arrays.asList("java"), profile.launcher(false));
+    assertEquals(Arrays.asList("java"), profile.launcher(true));
+    profile = new WorkerProfile();
+    profile.cpus = "2-3";
+    // Workers get all the CPUs; a spare starts on the half the worker moves off of.
+    assertEquals(Arrays.asList("taskset", "-c", "2-3", "java"), profile.launcher(false));
+    assertEquals(Arrays.asList("taskset", "-c", "3", "java"), profile.launcher(true));
+    assertEquals(Arrays.asList("taskset", "-c", "2-3", "java"), profile.launcher(false));
+    profile.cpus = "5";
+    assertEquals(Arrays.asList("taskset", "-c", "5", "java"), profile.launcher(true));
+  }
+
+  private static String allowedCpus(Process process) throws Exception {
+    for (String line : Files.readAllLines(
+        Paths.get("/proc/" + WorkerReaper.pid(process) + "/status"), StandardCharsets.UTF_8)) {
+      if (line.startsWith("Cpus_allowed_list:")) {
+        return line.substring(line.indexOf(':') + 1).trim();
+      }
+    }
+    return null;
+  }
+
+  @Test
+  public void testSpareCpus() throws Exception {
+    try {
+      CpuAffinity.check("0-1");
+    } catch (IOException e) {
+      return; // (not Linux, or no CPU 1: nothing to test)
+    }
+    if (Runtime.getRuntime().availableProcessors() < 2) {
+      return;
+    }
+    WorkerProfile profile = new WorkerProfile();
+    profile.cpus = "0-1";
+    Process worker = new ProcessBuilder("sleep", "60").start();
+    try {
+      profile.makeRoomForSpare(worker);
+      assertEquals("0", allowedCpus(worker));
+      profile.spareTakesOver(worker);
+      assertEquals("0,1", allowedCpus(worker));
+    } finally {
+      worker.destroy();
+    }
+  }
+
+  @Test
+  public void testOwnPid() {
+    Long pid = CpuAffinity.ownPid();
+    if (pid != null) {
+      assertTrue(pid > 0);
+    }
+  }
+
+  @Test
+  public void testCheckFailsForMissingCpu() {
+    try {
+      CpuAffinity.check("65535"); // (no such CPU; or no taskset at all)
+      fail();
+    } catch (IOException e) {
+      // (expected)
+    }
+  }
+}
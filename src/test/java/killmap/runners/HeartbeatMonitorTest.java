@@ -0,0 +1,69 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap.runners;
+
+import org.junit.Test;
+import junit.framework.TestCase;
+
+public class HeartbeatMonitorTest extends TestCase {
+
+  @Test
+  public void testSilence() {
+    HeartbeatMonitor monitor = new HeartbeatMonitor();
+    monitor.testStarted(1000);
+    assertNull(monitor.lastProgress());
+    assertEquals(50, monitor.silence(1050));
+    monitor.beat(1100, "100 Foo#bar,0,60000");
+    assertEquals("100 Foo#bar,0,60000", monitor.lastProgress());
+    assertEquals(0, monitor.silence(1100));
+    assertEquals(HeartbeatMonitor.MIN_ALLOWED_SILENCE_MILLIS, monitor.allowedSilence());
+  }
+
+  @Test
+  public void testAllowedSilenceAdaptsToJitter() {
+    HeartbeatMonitor monitor = new HeartbeatMonitor();
+    monitor.testStarted(0);
+    long now = 0;
+    // Regular heartbeats: the minimum applies.
+    for (int i = 0; i < 100; i++) {
+      now += HeartbeatMonitor.INTERVAL_MILLIS;
+      monitor.beat(now, "");
+    }
+    assertEquals(HeartbeatMonitor.MIN_ALLOWED_SILENCE_MILLIS, monitor.allowedSilence());
+    // Erratic heartbeats (e.g. an overloaded machine): more silence is allowed.
+    for (int i = 0; i < 100; i++) {
+      now += i % 2 == 0 ? 10 : 1000;
+      monitor.beat(now, "");
+    }
+    assertTrue(monitor.allowedSilence() > HeartbeatMonitor.MIN_ALLOWED_SILENCE_MILLIS);
+    long erratic = monitor.allowedSilence();
+    // ... and less again once they settle down.
+    for (int i = 0; i < 100; i++) {
+      now += HeartbeatMonitor.INTERVAL_MILLIS;
+      monitor.beat(now, "");
+    }
+    assertTrue(monitor.allowedSilence() < erratic);
+  }
+
+  @Test
+  public void testFirstHeartbeatOfATestIsNotAGap() {
+    HeartbeatMonitor monitor = new HeartbeatMonitor();
+    monitor.testStarted(0);
+    monitor.beat(100000, ""); // (e.g. slow to start the test)
+    assertEquals(HeartbeatMonitor.MIN_ALLOWED_SILENCE_MILLIS, monitor.allowedSilence());
+  }
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap.runners;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.PrintStream;
+import org.junit.Test;
+import junit.framework.TestCase;
+import killmap.runners.PhaseEvents.Phase;
+
+public class PhaseEventsTest extends TestCase {
+
+  @Test
+  public void testNothingRecordedWithoutARecording() {
+    PhaseEvents phases = new PhaseEvents();
+    Object event = phases.begin(Phase.JUNIT);
+    assertNull(event);
+    phases.end(event);
+    phases.commit("a.B#c", 1, "PASS");
+  }
+
+  @Test
+  public void testEventNames() {
+    assertEquals("killmap.JUnitExecution", Phase.JUNIT.eventName);
+    assertEquals("Worker", Phase.JUNIT.side);
+    assertEquals("Coordinator", Phase.ROUND_TRIP.side);
+  }
+
+  @Test
+  public void testRecording() throws Exception {
+    if (!PhaseEvents.isAvailable()) {
+      return; // (no JFR in this JVM)
+    }
+    File file = File.createTempFile("phases", ".jfr");
+    file.deleteOnExit();
+    Closeable recording = PhaseEvents.startRecording(file.getPath());
+    PhaseEvents phases = new PhaseEvents();
+    for (int i = 0; i < 3; i++) {
+      Object event = phases.begin(Phase.JUNIT);
+      assertNotNull(event);
+      phases.end(event);
+    }
+    phases.end(phases.begin(Phase.CLASS_LOADER));
+    phases.begin(Phase.OUTPUT_DIGEST); // (never ended, so never committed)
+    phases.commit("a.B#c", 1, "PASS");
+    recording.close();
+
+    PhaseSummary summary = new PhaseSummary();
+    summary.addRecording(file.toPath());
+    assertEquals(3, summary.count(Phase.JUNIT));
+    assertEquals(1, summary.count(Phase.CLASS_LOADER));
+    assertEquals(0, summary.count(Phase.OUTPUT_DIGEST));
+  }
+
+  @Test
+  public void testSummary() {
+    PhaseSummary summary = new PhaseSummary();
+    summary.add(Phase.JUNIT, 3000000);
+    summary.add(Phase.JUNIT, 1000000);
+    summary.add(Phase.CLASS_LOADER, 4000000);
+    summary.add(Phase.ROUND_TRIP, 10000000);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    summary.print(new PrintStream(bytes));
+    String[] lines = bytes.toString().split("\n");
+    assertEquals("side,phase,events,total_ms,mean_ms,max_ms,percent", lines[0]);
+    assertEquals("Coordinator,Round trip,1,10.0,10.000,10.000,100.0", lines[1]);
+    assertTrue(lines[2].startsWith("Worker,"));
+    assertTrue(lines[2].endsWith(",50.0"));
+    assertEquals("Worker,JUnit execution,2,4.0,2.000,3.000,50.0", lines[2].contains("JUnit")
+        ? lines[2] : lines[3]);
+  }
+}
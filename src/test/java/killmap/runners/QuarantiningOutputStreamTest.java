@@ -0,0 +1,63 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap.runners;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import org.junit.Test;
+import junit.framework.TestCase;
+
+public class QuarantiningOutputStreamTest extends TestCase {
+
+  private static volatile boolean stop = false;
+
+  @Test
+  public void testDropsQuarantinedThreadsOutput() throws Exception {
+    stop = false;
+    ThreadQuarantine quarantine = new ThreadQuarantine(10, 1000000);
+    ByteArrayOutputStream first = new ByteArrayOutputStream();
+    QuarantiningOutputStream router = new QuarantiningOutputStream(quarantine, first);
+    final PrintStream out = new PrintStream(router, true);
+
+    // A leftover thread that keeps printing, through a subgroup of its test's group.
+    ThreadGroup group = new ThreadGroup("leaky test");
+    ThreadGroup subgroup = new ThreadGroup(group, "leaky test's pool");
+    Thread printer = new Thread(subgroup, new Runnable() {
+      public void run() {
+        while (!stop) {
+          out.print("x");
+          Thread.yield();
+        }
+      }
+    });
+    printer.start();
+    while (first.size() == 0) {
+      Thread.sleep(1);
+    }
+    quarantine.quarantine(group);
+    assertTrue(quarantine.isQuarantined(printer));
+    assertFalse(quarantine.isQuarantined(Thread.currentThread()));
+
+    ByteArrayOutputStream second = new ByteArrayOutputStream();
+    router.setTarget(second);
+    out.print("next test");
+    Thread.sleep(50);
+    stop = true;
+    printer.join();
+    assertEquals("next test", second.toString("UTF-8"));
+  }
+}
@@ -0,0 +1,86 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap.runners;
+
+import org.junit.Test;
+import junit.framework.TestCase;
+import killmap.runners.RecyclingPolicy.Verdict;
+import killmap.runners.communication.WorkerTelemetry;
+
+public class RecyclingPolicyTest extends TestCase {
+
+  private static WorkerTelemetry telemetry(long heapLive, long heapMax, long gcMillis) {
+    return new WorkerTelemetry(heapLive, heapLive, heapMax, 0, -1, 10, gcMillis);
+  }
+
+  @Test
+  public void testMaxTests() {
+    RecyclingPolicy policy = new RecyclingPolicy(10, 0.8, 0.3);
+    for (int i = 0; i < 8; i++) {
+      assertEquals(Verdict.KEEP, policy.afterTest(null, 10));
+    }
+    assertEquals(Verdict.PREPARE, policy.afterTest(null, 10));
+    assertEquals(Verdict.RETIRE, policy.afterTest(null, 10));
+    assertEquals(1, policy.retirementCount());
+    assertTrue(policy.reason().contains("10 tests"));
+
+    policy.workerStarted();
+    assertEquals(0, policy.testsRun());
+    assertEquals(Verdict.KEEP, policy.afterTest(null, 10));
+  }
+
+  @Test
+  public void testNoLimitOnTests() {
+    RecyclingPolicy policy = new RecyclingPolicy(0, 0.8, 0.3);
+    for (int i = 0; i < 1000; i++) {
+      assertEquals(Verdict.KEEP, policy.afterTest(telemetry(10, 100, 0), 10));
+    }
+  }
+
+  @Test
+  public void testHeap() {
+    RecyclingPolicy policy = new RecyclingPolicy(0, 0.8, 0.3);
+    assertEquals(Verdict.KEEP, policy.afterTest(telemetry(50, 100, 0), 10));
+    assertEquals(Verdict.PREPARE, policy.afterTest(telemetry(75, 100, 0), 10));
+    assertEquals(Verdict.RETIRE, policy.afterTest(telemetry(81, 100, 0), 10));
+    assertTrue(policy.reason().contains("heap"));
+  }
+
+  @Test
+  public void testMetaspace() {
+    RecyclingPolicy policy = new RecyclingPolicy(0, 0.8, 0.3);
+    // Unbounded metaspace never counts.
+    assertEquals(Verdict.KEEP,
+        policy.afterTest(new WorkerTelemetry(0, 0, 100, 1000, -1, 10, 0), 10));
+    assertEquals(Verdict.RETIRE,
+        policy.afterTest(new WorkerTelemetry(0, 0, 100, 90, 100, 10, 0), 10));
+    assertTrue(policy.reason().contains("metaspace"));
+  }
+
+  @Test
+  public void testGcOverhead() {
+    RecyclingPolicy policy = new RecyclingPolicy(0, 0.8, 0.3);
+    // A lot of garbage collection during a short run isn't enough...
+    assertEquals(Verdict.KEEP, policy.afterTest(telemetry(0, 100, 900), 1000));
+    // ... but it is once the worker has run tests for long enough.
+    for (int i = 0; i < 3; i++) {
+      assertEquals(Verdict.KEEP, policy.afterTest(telemetry(0, 100, 100), 1000));
+    }
+    assertEquals(Verdict.RETIRE, policy.afterTest(telemetry(0, 100, 800), 1000));
+    assertTrue(policy.reason().contains("garbage"));
+  }
+}
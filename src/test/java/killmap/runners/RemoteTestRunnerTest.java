@@ -16,10 +16,13 @@
  */
 package killmap.runners;
 
+import java.io.File;
+import java.lang.management.ManagementFactory;
 import org.junit.Test;
 import killmap.TestMethod;
 import killmap.runners.communication.Outcome;
 import killmap.runners.communication.WorkOrder;
+import killmap.runners.transport.Transport;
 import junit.framework.TestCase;
 
 public class RemoteTestRunnerTest extends TestCase {
@@ -32,11 +35,24 @@ public class RemoteTestRunnerTest extends TestCase {
       assertTrue(isFirstRun);
       isFirstRun = false;
     }
+
+    @Test
+    public void testThatFreezesItsJvm() throws Exception {
+      // Like a JVM wedged by a pathological GC or stopped by the OS: no more heartbeats.
+      String pid = ManagementFactory.getRuntimeMXBean().getName().split("@")[0];
+      new ProcessBuilder("kill", "-STOP", pid).start().waitFor();
+      Thread.sleep(60000);
+    }
   }
 
   private static WorkOrder getWorkOrderForName(String testName) throws NoSuchMethodException {
+    return getWorkOrderForName(testName, 100);
+  }
+
+  private static WorkOrder getWorkOrderForName(String testName, long timeout)
+      throws NoSuchMethodException {
     TestMethod test = new TestMethod(DummyTest.class, testName);
-    return new WorkOrder(test, 0, (long) 100);
+    return new WorkOrder(test, 0, timeout);
   }
 
   @Test
@@ -48,4 +64,38 @@ public class RemoteTestRunnerTest extends TestCase {
     assertEquals(Outcome.Type.PASS, outcome1.type);
     assertEquals(Outcome.Type.PASS, outcome2.type);
   }
+
+  @Test
+  public void testTransports() throws Exception {
+    for (String transport : Transport.NAMES) {
+      RemoteTestRunner runner;
+      try {
+        runner = new RemoteTestRunner(transport);
+      } catch (RemoteTestRunner.SocketNotAvailableException e) {
+        assertEquals("unix", transport); // (needs Java 16)
+        continue;
+      }
+      Outcome outcome1 = runner.runTest(getWorkOrderForName("testThatPassesOnFirstRunOnly"));
+      Outcome outcome2 = runner.runTest(getWorkOrderForName("testThatPassesOnFirstRunOnly"));
+      runner.close();
+      assertEquals(transport, Outcome.Type.PASS, outcome1.type);
+      assertEquals(transport, Outcome.Type.PASS, outcome2.type);
+    }
+  }
+
+  @Test
+  public void testFrozenWorkerIsGivenUpOnEarly() throws Exception {
+    if (!new File("/proc/self").isDirectory()) {
+      return; // (needs `kill -STOP`)
+    }
+    RemoteTestRunner runner = new RemoteTestRunner();
+    long start = System.currentTimeMillis();
+    Outcome outcome = runner.runTest(getWorkOrderForName("testThatFreezesItsJvm", 60000));
+    long elapsed = System.currentTimeMillis() - start;
+    Outcome after = runner.runTest(getWorkOrderForName("testThatPassesOnFirstRunOnly"));
+    runner.close();
+    assertEquals(Outcome.Type.CRASH, outcome.type);
+    assertTrue(elapsed < 20000);
+    assertEquals(Outcome.Type.PASS, after.type);
+  }
 }
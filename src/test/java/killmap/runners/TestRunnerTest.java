@@ -48,6 +48,15 @@ public class TestRunnerTest extends TestCase {
     public void testThatPrintsToStderr() {
       System.err.println("hi");
     }
+
+    @Test
+    public void testThatExits() {
+      try {
+        System.exit(3);
+      } catch (Throwable t) {
+        // (Even if the test hides the attempt, it's noticed.)
+      }
+    }
   }
 
   private static WorkOrder getWorkOrderForName(String testName) throws NoSuchMethodException {
@@ -76,6 +85,13 @@ public class TestRunnerTest extends TestCase {
     assertEquals(Outcome.Type.PASS, outcome2.type);
   }
 
+  @Test
+  public void testExitIsIntercepted() throws Exception {
+    Outcome outcome = TestRunner.isolatedBlockingRunTest(getWorkOrderForName("testThatExits"));
+    assertEquals(Outcome.Type.EXIT, outcome.type);
+    assertTrue(outcome.stackTrace.contains("System.exit(3)"));
+  }
+
   @Test
   public void testStreamCatching() throws Exception {
     Outcome reference = TestRunner.runTest(getWorkOrderForName("testThatPrintsNothing"));
@@ -0,0 +1,88 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap.runners;
+
+import java.lang.management.ManagementFactory;
+import org.junit.Test;
+import junit.framework.TestCase;
+
+public class ThreadQuarantineTest extends TestCase {
+
+  private static volatile boolean stop = false;
+
+  private static Thread startSpinner(ThreadGroup group) {
+    // A thread that ignores interrupts, like a mutant stuck in a loop.
+    Thread thread = new Thread(group, new Runnable() {
+      public void run() {
+        long x = 0;
+        while (!stop) {
+          x++;
+        }
+      }
+    });
+    thread.start();
+    return thread;
+  }
+
+  @Test
+  public void testQuarantine() throws Exception {
+    stop = false;
+    ThreadGroup group = new ThreadGroup("leaky test");
+    Thread spinner = startSpinner(group);
+    ThreadQuarantine quarantine = new ThreadQuarantine(1, 1000000);
+    quarantine.quarantine(group);
+    assertEquals(Thread.MIN_PRIORITY, spinner.getPriority());
+    assertNull(spinner.getContextClassLoader());
+    assertEquals(1, quarantine.liveThreadCount());
+    assertNull(quarantine.recycleReasonOrNull());
+
+    // Threads started later by the quarantined ones are quarantined too.
+    Thread second = startSpinner(group);
+    assertEquals(2, quarantine.liveThreadCount());
+    assertEquals(Thread.MIN_PRIORITY, second.getPriority());
+    assertNotNull(quarantine.recycleReasonOrNull());
+
+    Thread.sleep(200);
+    if (ManagementFactory.getThreadMXBean().isThreadCpuTimeSupported()) {
+      assertTrue(quarantine.cpuMillis() > 0);
+    }
+    stop = true;
+    spinner.join();
+    second.join();
+    long cpuMillis = quarantine.cpuMillis();
+    assertEquals(0, quarantine.liveThreadCount());
+    assertEquals(cpuMillis, quarantine.cpuMillis()); // dead threads' CPU time still counts
+  }
+
+  @Test
+  public void testCpuLimit() throws Exception {
+    if (!ManagementFactory.getThreadMXBean().isThreadCpuTimeSupported()) {
+      return;
+    }
+    stop = false;
+    ThreadGroup group = new ThreadGroup("leaky test");
+    Thread spinner = startSpinner(group);
+    ThreadQuarantine quarantine = new ThreadQuarantine(10, 50);
+    quarantine.quarantine(group);
+    for (int i = 0; i < 100 && quarantine.recycleReasonOrNull() == null; i++) {
+      Thread.sleep(20);
+    }
+    assertNotNull(quarantine.recycleReasonOrNull());
+    stop = true;
+    spinner.join();
+  }
+}
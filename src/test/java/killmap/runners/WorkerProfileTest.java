@@ -0,0 +1,79 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap.runners;
+
+import java.io.File;
+import java.util.List;
+import org.junit.Test;
+import junit.framework.TestCase;
+
+public class WorkerProfileTest extends TestCase {
+
+  private static String thisJava() {
+    return System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+  }
+
+  @Test
+  public void testParseJavaVersion() {
+    assertEquals(8, WorkerProfile.parseJavaVersion("openjdk version \"1.8.0_392\"\nOpenJDK ..."));
+    assertEquals(7, WorkerProfile.parseJavaVersion("java version \"1.7.0_80\""));
+    assertEquals(17, WorkerProfile.parseJavaVersion("openjdk version \"17.0.9\" 2023-10-17"));
+    assertEquals(21, WorkerProfile.parseJavaVersion("openjdk version \"21\" 2023-09-19"));
+    assertEquals(0, WorkerProfile.parseJavaVersion("bash: java: command not found"));
+  }
+
+  @Test
+  public void testAutoHeap() {
+    Long megabytes = WorkerProfile.autoHeapMegabytes();
+    if (megabytes != null) {
+      assertTrue(megabytes >= 256);
+      assertTrue(megabytes <= 8192);
+    }
+  }
+
+  @Test
+  public void testArguments() {
+    WorkerProfile profile = new WorkerProfile();
+    profile.java = thisJava();
+    profile.heapMegabytes = (long) 300;
+    profile.options.add("-Dfoo=bar");
+    List<String> arguments = profile.jvmArguments(System.getProperty("java.class.path"));
+    assertTrue(arguments.contains("-Xmx300m"));
+    assertEquals("-Dfoo=bar", arguments.get(arguments.size() - 1));
+    assertFalse(arguments.contains("-XX:MaxPermSize=1G")); // (this JVM has no permanent generation)
+  }
+
+  @Test
+  public void testHeapLeftToTheJvm() {
+    WorkerProfile profile = new WorkerProfile();
+    profile.java = thisJava();
+    profile.heapMegabytes = (long) 0;
+    for (String argument : profile.jvmArguments(System.getProperty("java.class.path"))) {
+      assertFalse(argument.startsWith("-Xmx"));
+    }
+  }
+
+  @Test
+  public void testNoArchiveForUnknownJava() throws Exception {
+    WorkerProfile profile = new WorkerProfile();
+    profile.java = "/nonexistent/java";
+    profile.cdsDirectory = new File(System.getProperty("java.io.tmpdir"), "killmap-cds-test");
+    for (String argument : profile.jvmArguments(System.getProperty("java.class.path"))) {
+      assertFalse(argument.startsWith("-XX:SharedArchiveFile"));
+    }
+  }
+}
@@ -0,0 +1,62 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap.runners;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import org.junit.Test;
+import junit.framework.TestCase;
+
+public class WorkerReaperTest extends TestCase {
+
+  private static boolean isAlive(long pid) throws Exception {
+    // (A killed process whose parent has died may linger as a zombie until someone reaps it.)
+    File stat = new File("/proc/" + pid + "/stat");
+    try {
+      String s = new String(Files.readAllBytes(stat.toPath()), "UTF-8");
+      return !s.substring(s.lastIndexOf(')') + 1).trim().startsWith("Z");
+    } catch (java.io.IOException e) {
+      return false;
+    }
+  }
+
+  @Test
+  public void testKillsDescendants() throws Exception {
+    if (!new File("/proc/self/stat").exists()) {
+      return; // descendants can only be found without ProcessHandle on Linux
+    }
+    Process shell =
+        new ProcessBuilder("sh", "-c", "sleep 100 & echo $!; wait").redirectErrorStream(true)
+            .start();
+    long grandchild = Long.parseLong(
+        new BufferedReader(new InputStreamReader(shell.getInputStream())).readLine().trim());
+    assertTrue(isAlive(grandchild));
+    assertTrue(WorkerReaper.descendantsFromProc(WorkerReaper.pid(shell)).contains(grandchild));
+
+    WorkerReaper reaper = new WorkerReaper();
+    reaper.reap(shell);
+    assertTrue(reaper.close(5000));
+    assertEquals(1, reaper.teardownCount());
+    assertEquals(0, reaper.pendingCount());
+    for (int i = 0; i < 50 && isAlive(grandchild); i++) {
+      Thread.sleep(20);
+    }
+    assertFalse(isAlive(grandchild));
+  }
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap.runners.communication;
+
+import static org.junit.Assert.assertArrayEquals;
+import java.util.Arrays;
+import org.junit.Test;
+import junit.framework.TestCase;
+
+public class MutantSetTest extends TestCase {
+
+  @Test
+  public void testToStringWritesRunsAsRanges() {
+    assertEquals("", new MutantSet().toString());
+    assertEquals("7", MutantSet.of(7).toString());
+    assertEquals("10 11", MutantSet.of(10, 11).toString());
+    assertEquals("3 5 10-12 300", MutantSet.of(300, 10, 11, 12, 5, 3).toString());
+  }
+
+  @Test
+  public void testFromStringIsInverseOfToString() {
+    for (MutantSet s : new MutantSet[] {new MutantSet(), MutantSet.of(0), MutantSet.of(1, 2),
+        MutantSet.of(1, 2, 3, 5, 7, 8, 9, 10, 20000)}) {
+      assertEquals(s, MutantSet.fromString(s.toString()));
+    }
+  }
+
+  @Test
+  public void testFromStringAcceptsPlainLists() {
+    assertEquals(MutantSet.of(1, 2, 3, 9), MutantSet.fromString("9 1 2 3 "));
+    assertEquals(MutantSet.of(4, 5, 6), MutantSet.fromString("4-6"));
+  }
+
+  @Test
+  public void testFromStringRejectsNonsense() {
+    for (String s : Arrays.asList("a", "1,2", "3-", "5-4", "-2", "1--2")) {
+      try {
+        MutantSet.fromString(s);
+        fail("parsed nonsense: " + s);
+      } catch (IllegalArgumentException e) {
+      }
+    }
+  }
+
+  @Test
+  public void testSetAlgebra() {
+    MutantSet s = MutantSet.of(1, 2, 3, 4);
+    s.retainAll(MutantSet.of(2, 4, 6));
+    assertEquals(MutantSet.of(2, 4), s);
+    s.addAll(MutantSet.of(9));
+    assertEquals(MutantSet.of(2, 4, 9), s);
+    s.removeAll(MutantSet.of(4));
+    assertEquals(MutantSet.of(2, 9), s);
+    assertEquals(2, s.size());
+    assertTrue(s.contains(9));
+    assertFalse(s.contains(4));
+    assertFalse(s.contains(-1));
+  }
+
+  @Test
+  public void testIterationIsInIncreasingOrder() {
+    assertArrayEquals(new int[] {1, 5, 6, 100}, MutantSet.of(100, 6, 5, 1).toArray());
+  }
+}
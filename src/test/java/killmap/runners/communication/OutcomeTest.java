@@ -78,6 +78,10 @@ public class OutcomeTest extends TestCase {
     assertEquals(
         csvLine("PASS", Long.toString(result.getRunTime()), "0123456789abcdef", "10 11", ""),
         o.toString());
+    o.coveredMutants.add(12);
+    assertEquals(
+        csvLine("PASS", Long.toString(result.getRunTime()), "0123456789abcdef", "10-12", ""),
+        o.toString());
   }
 
   @Test
@@ -126,6 +130,22 @@ public class OutcomeTest extends TestCase {
     assertThat(Outcome.createCrash(), not(equalTo(Outcome.createTimeout(workOrder))));
   }
 
+  @Test
+  public void testFromStringReadsPlainMutantLists() {
+    Outcome o = Outcome.fromString(csvLine("PASS", "12", "abc", "1 2 3 7 ", ""));
+    assertEquals(MutantSet.of(1, 2, 3, 7), o.coveredMutants);
+  }
+
+  @Test
+  public void testInferred() {
+    Outcome original = Outcome.fromString(csvLine("FAIL", "12", "abc", "1-3", "Boom"));
+    Outcome inferred = Outcome.createInferred(original);
+    assertTrue(inferred.isInferred());
+    assertFalse(original.isInferred());
+    assertEquals(csvLine("FAIL", "0", "inferred:abc", "", "Boom"), inferred.toString());
+    assertTrue(Outcome.fromString(inferred.toString()).isInferred());
+  }
+
   @Test
   public void testFromStringIsInverseOfToString() {
     for (Outcome o : new Outcome[] {new Outcome(passingJUnitResult(), "digest"),
@@ -0,0 +1,56 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap.runners.communication;
+
+import org.junit.Test;
+import junit.framework.TestCase;
+
+public class WorkerTelemetryTest extends TestCase {
+
+  @Test
+  public void testRoundTrip() {
+    WorkerTelemetry telemetry = new WorkerTelemetry(1, 2, 3, 4, -1, 6, 7);
+    WorkerTelemetry parsed = WorkerTelemetry.fromString(telemetry.toString());
+    assertEquals(telemetry.toString(), parsed.toString());
+    assertEquals(2, parsed.heapLive);
+    assertEquals(-1, parsed.metaspaceMax);
+    assertEquals(7, parsed.gcMillis);
+  }
+
+  @Test
+  public void testFromStringRejectsNonsense() {
+    try {
+      WorkerTelemetry.fromString("heapUsed=1 threads=2");
+      fail();
+    } catch (IllegalArgumentException e) {
+    }
+    try {
+      WorkerTelemetry.fromString("heapUsed");
+      fail();
+    } catch (IllegalArgumentException e) {
+    }
+  }
+
+  @Test
+  public void testMeasure() {
+    WorkerTelemetry telemetry = WorkerTelemetry.measure(WorkerTelemetry.totalGcMillis());
+    assertTrue(telemetry.heapUsed > 0);
+    assertTrue(telemetry.heapMax >= telemetry.heapLive);
+    assertTrue(telemetry.threads > 0);
+    assertTrue(telemetry.gcMillis >= 0);
+  }
+}
@@ -46,4 +46,55 @@ public class DeadEndDigestOutputStreamTest extends TestCase {
 
     stream.close();
   }
+
+  @Test
+  public void testBulkWritesMatchSingleBytes() throws java.io.IOException {
+    byte[] data = "some output\n".getBytes("UTF-8");
+    for (String algorithm : new String[] {"sha1", "murmur3"}) {
+      DeadEndDigestOutputStream bulk = new DeadEndDigestOutputStream(algorithm, -1);
+      DeadEndDigestOutputStream single = new DeadEndDigestOutputStream(algorithm, -1);
+      bulk.write(data);
+      for (byte b : data) {
+        single.write(b);
+      }
+      assertEquals(single.getDigestString(), bulk.getDigestString());
+    }
+    // SHA-1 is the default.
+    DeadEndDigestOutputStream sha1 = new DeadEndDigestOutputStream("sha1", -1);
+    assertEquals(new DeadEndDigestOutputStream().getDigestString(), sha1.getDigestString());
+    assertEquals(40, sha1.getDigestString().length());
+  }
+
+  @Test
+  public void testByteCap() throws java.io.IOException {
+    DeadEndDigestOutputStream capped = new DeadEndDigestOutputStream("murmur3", 4);
+    DeadEndDigestOutputStream uncapped = new DeadEndDigestOutputStream("murmur3", -1);
+    capped.write("abcd".getBytes("UTF-8"));
+    uncapped.write("abcd".getBytes("UTF-8"));
+    assertEquals(uncapped.getDigestString(), capped.getDigestString());
+
+    capped = new DeadEndDigestOutputStream("murmur3", 4);
+    uncapped = new DeadEndDigestOutputStream("murmur3", -1);
+    capped.write("abcdefgh".getBytes("UTF-8"));
+    capped.write('i');
+    uncapped.write("abcd".getBytes("UTF-8"));
+    assertEquals(uncapped.getDigestString() + "+9", capped.getDigestString());
+  }
+
+  @Test
+  public void testNoDigest() throws java.io.IOException {
+    DeadEndDigestOutputStream stream = new DeadEndDigestOutputStream("none", -1);
+    stream.write("abcd".getBytes("UTF-8"));
+    assertEquals("", stream.getDigestString());
+    assertEquals(4, stream.byteCount());
+  }
+
+  @Test
+  public void testUnknownAlgorithm() {
+    try {
+      new DeadEndDigestOutputStream("no-such-hash", -1);
+      fail();
+    } catch (IllegalArgumentException e) {
+    }
+  }
 }
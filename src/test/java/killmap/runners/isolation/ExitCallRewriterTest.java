@@ -0,0 +1,121 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap.runners.isolation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import org.junit.Test;
+import junit.framework.TestCase;
+
+public class ExitCallRewriterTest extends TestCase {
+
+  public static class Exiter {
+    // The switches are there to check that instructions after padded ones are found.
+    public static int viaSystem(int k) {
+      switch (k) {
+        case 1:
+          k += 10;
+          break;
+        case 2:
+          k += 20;
+          break;
+        case 3:
+          k += 30;
+          break;
+        default:
+          break;
+      }
+      System.exit(k);
+      return k;
+    }
+
+    public static int viaRuntimeExit(int k) {
+      switch (k) {
+        case 1:
+          k += 10;
+          break;
+        case 1000:
+          k += 20;
+          break;
+        default:
+          break;
+      }
+      Runtime.getRuntime().exit(k);
+      return k;
+    }
+
+    public static int viaRuntimeHalt(int k) {
+      long big = 1L << 40; // (a two-slot constant)
+      Runtime.getRuntime().halt(k + (int) (big >> 40));
+      return k;
+    }
+  }
+
+  private static class DefiningLoader extends ClassLoader {
+    DefiningLoader() {
+      super(ExitCallRewriterTest.class.getClassLoader());
+    }
+
+    Class<?> define(String name, byte[] bytes) {
+      return defineClass(name, bytes, 0, bytes.length);
+    }
+  }
+
+  private static byte[] classFile(Class<?> c) throws Exception {
+    try (InputStream in = c.getResourceAsStream("/" + c.getName().replace('.', '/') + ".class")) {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      byte[] buffer = new byte[8192];
+      int n;
+      while ((n = in.read(buffer)) > 0) {
+        bytes.write(buffer, 0, n);
+      }
+      return bytes.toByteArray();
+    }
+  }
+
+  private static String exitAttempt(Class<?> exiter, String method) throws Exception {
+    // Calls the given method of the rewritten Exiter, and returns the exit attempt's message.
+    ExitTrap.takeAttempt();
+    try {
+      exiter.getMethod(method, int.class).invoke(null, 2);
+      fail(method + " returned");
+    } catch (InvocationTargetException e) {
+      assertTrue(e.getCause() instanceof ExitTrap.ExitAttempt);
+      assertNotNull(ExitTrap.takeAttempt());
+      return e.getCause().getMessage();
+    }
+    return null;
+  }
+
+  @Test
+  public void testRewritesExitCalls() throws Exception {
+    byte[] rewritten = ExitCallRewriter.rewrite(classFile(Exiter.class));
+    Class<?> exiter = new DefiningLoader().define(Exiter.class.getName(), rewritten);
+    assertEquals("System.exit(22)", exitAttempt(exiter, "viaSystem"));
+    assertEquals("Runtime.exit(2)", exitAttempt(exiter, "viaRuntimeExit"));
+    assertEquals("Runtime.halt(3)", exitAttempt(exiter, "viaRuntimeHalt"));
+  }
+
+  @Test
+  public void testLeavesOtherClassesAlone() throws Exception {
+    byte[] original = classFile(ExitTrap.class);
+    assertSame(original, ExitCallRewriter.rewrite(original));
+    byte[] garbage = {1, 2, 3};
+    assertSame(garbage, ExitCallRewriter.rewrite(garbage));
+  }
+}
@@ -0,0 +1,63 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap.runners.isolation;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import org.junit.Test;
+import junit.framework.TestCase;
+
+public class Murmur3DigestTest extends TestCase {
+
+  private static String hex(byte[] bytes) {
+    StringBuilder sb = new StringBuilder();
+    for (byte b : bytes) {
+      sb.append(String.format("%02x", b & 0xff));
+    }
+    return sb.toString();
+  }
+
+  @Test
+  public void testKnownValues() {
+    Murmur3Digest digest = new Murmur3Digest();
+    assertEquals("00000000000000000000000000000000", hex(digest.digest()));
+    assertEquals("6c1b07bc7bbc4be347939ac4a93c437a", hex(digest.digest(
+        "The quick brown fox jumps over the lazy dog".getBytes(StandardCharsets.US_ASCII))));
+  }
+
+  @Test
+  public void testChunkingDoesNotMatter() {
+    byte[] data = new byte[1000];
+    new Random(1).nextBytes(data);
+    String whole = hex(new Murmur3Digest().digest(data));
+
+    Murmur3Digest bytewise = new Murmur3Digest();
+    for (byte b : data) {
+      bytewise.update(b);
+    }
+    assertEquals(whole, hex(bytewise.digest()));
+
+    Murmur3Digest chunked = new Murmur3Digest();
+    Random random = new Random(2);
+    for (int offset = 0; offset < data.length;) {
+      int len = Math.min(random.nextInt(40), data.length - offset);
+      chunked.update(data, offset, len);
+      offset += len;
+    }
+    assertEquals(whole, hex(chunked.digest()));
+  }
+}
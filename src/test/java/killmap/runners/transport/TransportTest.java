@@ -0,0 +1,108 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap.runners.transport;
+
+import java.io.File;
+import java.io.IOException;
+import org.junit.Test;
+import junit.framework.TestCase;
+
+public class TransportTest extends TestCase {
+
+  private static Thread startEchoWorker(final Transport transport) {
+    // Connects to the transport as a worker would, in a thread of this process, and echoes lines.
+    Thread thread = new Thread(new Runnable() {
+      public void run() {
+        try {
+          Connection connection = Transport.connectAsWorker(transport.workerArguments());
+          String line;
+          while ((line = connection.in.readLine()) != null) {
+            connection.out.println(line);
+          }
+          connection.close();
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    });
+    thread.setDaemon(true);
+    thread.start();
+    return thread;
+  }
+
+  private static void checkEcho(Connection connection) throws IOException {
+    for (int i = 0; i < 100; i++) {
+      connection.out.println("line " + i + ", with a comma");
+      assertEquals("line " + i + ", with a comma", connection.in.readLine());
+    }
+  }
+
+  @Test
+  public void testTcp() throws Exception {
+    Transport transport = Transport.create("tcp");
+    Thread worker = startEchoWorker(transport);
+    Connection connection = transport.accept(null);
+    checkEcho(connection);
+    connection.close();
+    worker.join(5000);
+    assertFalse(worker.isAlive());
+    transport.close();
+  }
+
+  @Test
+  public void testUnix() throws Exception {
+    Transport transport;
+    try {
+      transport = Transport.create("unix");
+    } catch (IOException e) {
+      return; // (needs Java 16)
+    }
+    File socketFile = new File(transport.workerArguments().get(1));
+    Thread worker = startEchoWorker(transport);
+    Connection connection = transport.accept(null);
+    checkEcho(connection);
+    connection.close();
+    worker.join(5000);
+    assertFalse(worker.isAlive());
+    transport.close();
+    assertFalse(socketFile.exists());
+    assertFalse(socketFile.getParentFile().exists());
+  }
+
+  @Test
+  public void testPipe() throws Exception {
+    if (!new File("/bin/cat").canExecute()) {
+      return;
+    }
+    Transport transport = Transport.create("pipe");
+    Process cat = new ProcessBuilder("/bin/cat").start();
+    Connection connection = transport.accept(cat);
+    checkEcho(connection);
+    connection.close(); // (so cat sees the end of its input)
+    assertEquals(0, cat.waitFor());
+    transport.close();
+  }
+
+  @Test
+  public void testUnknownTransport() throws Exception {
+    try {
+      Transport.create("carrier-pigeon");
+      fail();
+    } catch (IllegalArgumentException e) {
+    }
+  }
+}
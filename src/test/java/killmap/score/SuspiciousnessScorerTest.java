@@ -0,0 +1,138 @@
+/**
+ * Copyright (C) 2018 Spencer Pearson, José Campos and killmap contributors.
+ * 
+ * This file is part of killmap.
+ * 
+ * killmap is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * killmap is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with killmap.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package killmap.score;
+
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import killmap.mutants.MutantsLog;
+import killmap.runners.communication.MutantSet;
+import killmap.runners.communication.Outcome.Type;
+import junit.framework.TestCase;
+
+public class SuspiciousnessScorerTest extends TestCase {
+
+  private static final double EPSILON = 1e-9;
+
+  private static SuspiciousnessScorer exampleScorer() {
+    // Mutants 1 and 2 are on line 10, mutant 3 on line 20, mutant 4 (never run) on line 30.
+    MutantsLog log = new MutantsLog();
+    log.addLine("1:ROR:<:<=:p.C@f():10:a < b |==> a <= b");
+    log.addLine("2:ROR:<:>:p.C@f():10:a < b |==> a > b");
+    log.addLine("3:LVR:0:1:p.C@g():20:0 |==> 1");
+    log.addLine("4:LVR:0:1:p.C@h():30:0 |==> 1");
+    SuspiciousnessScorer scorer = new SuspiciousnessScorer(log);
+
+    // One failing test, killed by mutants 1 (which makes it pass) and 2 (new stack trace).
+    scorer.add("T#failing", 0, Type.FAIL, "AssertionError: x");
+    scorer.add("T#failing", 1, Type.PASS, "");
+    scorer.add("T#failing", 2, Type.FAIL, "AssertionError: y");
+    scorer.add("T#failing", 3, Type.FAIL, "AssertionError: x");
+    // Two passing tests; mutant 2 and 3 each kill one of them.
+    scorer.add("T#passing1", 0, Type.PASS, "");
+    scorer.add("T#passing1", 1, Type.PASS, "");
+    scorer.add("T#passing1", 2, Type.FAIL, "AssertionError: z");
+    scorer.add("T#passing2", 0, Type.PASS, "");
+    scorer.add("T#passing2", 3, Type.TIMEOUT, "");
+    return scorer;
+  }
+
+  @Test
+  public void testMutantScores() {
+    SuspiciousnessScorer scorer = exampleScorer();
+    assertEquals(3, scorer.testCount());
+    assertEquals(1, scorer.failingTestCount());
+    assertEquals(1.0, scorer.ochiai(1), EPSILON);
+    assertEquals(1 / Math.sqrt(2), scorer.ochiai(2), EPSILON);
+    assertEquals(0.0, scorer.ochiai(3), EPSILON);
+    assertEquals(0.0, scorer.ochiai(4), EPSILON);
+    // F2P = 1 (mutant 1), P2F = 2 (mutants 2 and 3)
+    assertEquals(1 / 2.0, scorer.muse(1), EPSILON);
+    assertEquals(-1 / 3.0, scorer.muse(2), EPSILON);
+    assertEquals(-1 / 3.0, scorer.muse(3), EPSILON);
+  }
+
+  @Test
+  public void testLineScores() {
+    List<SuspiciousnessScorer.LineScore> byMetallaxis =
+        exampleScorer().lineScores(SuspiciousnessScorer.Formula.METALLAXIS);
+    assertEquals(3, byMetallaxis.size());
+    assertEquals("p/C.java#10", byMetallaxis.get(0).line);
+    assertEquals(2, byMetallaxis.get(0).nMutants);
+    assertEquals(1.0, byMetallaxis.get(0).metallaxis, EPSILON);
+    assertEquals((1 / 2.0 - 1 / 3.0) / 3, byMetallaxis.get(0).muse, EPSILON);
+    // lines 20 and 30 tie on Metallaxis, so they're ordered by name
+    assertEquals("p/C.java#20", byMetallaxis.get(1).line);
+    assertEquals("p/C.java#30", byMetallaxis.get(2).line);
+
+    List<SuspiciousnessScorer.LineScore> byMuse =
+        exampleScorer().lineScores(SuspiciousnessScorer.Formula.MUSE);
+    assertEquals("p/C.java#10", byMuse.get(0).line);
+    assertEquals("p/C.java#30", byMuse.get(1).line);
+    assertEquals("p/C.java#20", byMuse.get(2).line);
+
+    List<SuspiciousnessScorer.LineScore> byOchiai =
+        exampleScorer().lineScores(SuspiciousnessScorer.Formula.OCHIAI);
+    assertEquals("p/C.java#10", byOchiai.get(0).line);
+    assertEquals((1 + 1 / Math.sqrt(2)) / 2, byOchiai.get(0).ochiai, EPSILON);
+    assertEquals(0.0, byOchiai.get(1).ochiai, EPSILON);
+  }
+
+  @Test
+  public void testIgnoresRunsBeforeTheirBaseline() {
+    SuspiciousnessScorer scorer = new SuspiciousnessScorer(new MutantsLog());
+    scorer.add("T#t", 5, Type.PASS, "");
+    assertEquals(1, scorer.runsWithoutBaselineCount());
+    assertEquals(0.0, scorer.ochiai(5), EPSILON);
+  }
+
+  @Test
+  public void testRestrictToSample() {
+    SuspiciousnessScorer scorer = exampleScorer();
+    scorer.restrictTo(MutantSet.of(1, 3));
+    // P2F is now only mutant 3's
+    assertEquals(1 / 2.0, scorer.muse(1), EPSILON);
+    assertEquals(-1 / 2.0, scorer.muse(3), EPSILON);
+    List<SuspiciousnessScorer.LineScore> scores =
+        scorer.lineScores(SuspiciousnessScorer.Formula.METALLAXIS);
+    assertEquals(2, scores.size());
+    assertEquals("p/C.java#10", scores.get(0).line);
+    assertEquals(1, scores.get(0).nMutants);
+    assertEquals("p/C.java#20", scores.get(1).line);
+  }
+
+  @Test
+  public void testLineScoreIntervals() {
+    SuspiciousnessScorer scorer = exampleScorer();
+    Map<String, SuspiciousnessScorer.ScoreInterval> intervals =
+        scorer.lineScoreIntervals(200, 0.95, 1);
+    assertEquals(3, intervals.size());
+    // Line 10's mutants score 1 and 1/sqrt(2); resamples without mutant 1 are rare but possible.
+    SuspiciousnessScorer.ScoreInterval line10 = intervals.get("p/C.java#10");
+    assertTrue(line10.metallaxisLow >= 1 / Math.sqrt(2) - EPSILON);
+    assertEquals(1.0, line10.metallaxisHigh, EPSILON);
+    assertTrue(line10.museLow <= line10.museHigh);
+    assertTrue(line10.ochiaiLow >= 1 / Math.sqrt(2) - EPSILON);
+    assertTrue(line10.ochiaiHigh <= 1.0 + EPSILON);
+    // A line with a single mutant has nothing to resample.
+    SuspiciousnessScorer.ScoreInterval line20 = intervals.get("p/C.java#20");
+    assertEquals(0.0, line20.metallaxisLow, EPSILON);
+    assertEquals(0.0, line20.metallaxisHigh, EPSILON);
+    assertEquals(scorer.muse(3) / 2, line20.museLow, EPSILON);
+    assertEquals(scorer.muse(3) / 2, line20.museHigh, EPSILON);
+  }
+}